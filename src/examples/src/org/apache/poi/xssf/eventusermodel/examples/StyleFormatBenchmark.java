@@ -0,0 +1,163 @@
+/* ====================================================================
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+==================================================================== */
+
+package org.apache.poi.xssf.eventusermodel.examples;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Method;
+
+import javax.xml.parsers.SAXParserFactory;
+
+import org.apache.poi.ss.usermodel.BuiltinFormats;
+import org.apache.poi.ss.usermodel.DataFormatter;
+import org.apache.poi.ss.util.CellReference;
+import org.apache.poi.xssf.eventusermodel.XSSFSheetXMLHandler;
+import org.apache.poi.xssf.eventusermodel.XSSFSheetXMLHandler.SheetContentsHandler;
+import org.apache.poi.xssf.eventusermodel.XSSFSheetXMLHandler.SheetValuesHandler;
+import org.apache.poi.xssf.model.StylesTable;
+import org.apache.poi.xssf.usermodel.XSSFCellStyle;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.xml.sax.InputSource;
+import org.xml.sax.XMLReader;
+
+/**
+ * Measures the formatting of styled numeric cells while streaming a sheet with
+ * {@link XSSFSheetXMLHandler}.
+ * <p>
+ * The "per cell" run creates the cell style and resolves its number format for every cell,
+ * the way the handler used to. The "cached" run uses the handler, which looks the formats
+ * up once per style. The bytes allocated by each run are reported where the JVM can
+ * measure them.
+ * </p>
+ *
+ * Usage: StyleFormatBenchmark rows
+ */
+public class StyleFormatBenchmark {
+    private static final int COLUMNS = 10;
+
+    public static void main(String[] args) throws Exception {
+        if (args.length != 1) {
+            System.err.println("usage: java StyleFormatBenchmark rows");
+            System.exit(1);
+        }
+        int rows = Integer.parseInt(args[0]);
+
+        XSSFWorkbook wb = new XSSFWorkbook();
+        String[] formats = { "0.00", "#,##0", "yyyy-mm-dd", "0%", "General" };
+        for (String format : formats) {
+            XSSFCellStyle style = wb.createCellStyle();
+            style.setDataFormat(wb.createDataFormat().getFormat(format));
+        }
+        StylesTable styles = wb.getStylesSource();
+        byte[] sheet = createSheet(rows, styles.getNumCellStyles());
+
+        for (int i = 0; i < 2; i++) {
+            run("per cell", new XSSFSheetXMLHandler(new PerCellFormatter(styles)), sheet);
+            run("cached", new XSSFSheetXMLHandler(styles, null, new NoOutput(), false), sheet);
+        }
+    }
+
+    private static void run(String name, XSSFSheetXMLHandler handler, byte[] sheet) throws Exception {
+        XMLReader parser = SAXParserFactory.newInstance().newSAXParser().getXMLReader();
+        parser.setContentHandler(handler);
+
+        long allocatedBefore = allocatedBytes();
+        long timeStarted = System.currentTimeMillis();
+        parser.parse(new InputSource(new ByteArrayInputStream(sheet)));
+        long timeFinished = System.currentTimeMillis();
+        long allocatedAfter = allocatedBytes();
+
+        System.out.print(name + ": " + (timeFinished - timeStarted) + " ms");
+        if (allocatedBefore >= 0) {
+            System.out.print(", " + (allocatedAfter - allocatedBefore) / 1024 / 1024 + " MB allocated");
+        }
+        System.out.println();
+    }
+
+    private static byte[] createSheet(int rows, int styles) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Writer w = new OutputStreamWriter(out, "UTF-8");
+        w.write("<worksheet xmlns=\"http://schemas.openxmlformats.org/spreadsheetml/2006/main\"><sheetData>");
+        for (int r = 0; r < rows; r++) {
+            w.write("<row r=\"" + (r + 1) + "\">");
+            for (int c = 0; c < COLUMNS; c++) {
+                String ref = new CellReference(r, c).formatAsString();
+                int style = 1 + (r + c) % (styles - 1);
+                w.write("<c r=\"" + ref + "\" s=\"" + style + "\"><v>" + (r * 0.25 + c + 40000) + "</v></c>");
+            }
+            w.write("</row>");
+        }
+        w.write("</sheetData></worksheet>");
+        w.close();
+        return out.toByteArray();
+    }
+
+    /**
+     * @return the bytes allocated by the current thread so far or -1 if the JVM can't tell
+     */
+    private static long allocatedBytes() {
+        try {
+            // only available with the extended MXBean of some JVMs
+            Method method = Class.forName("com.sun.management.ThreadMXBean")
+                    .getMethod("getThreadAllocatedBytes", long.class);
+            return (Long) method.invoke(ManagementFactory.getThreadMXBean(), Thread.currentThread().getId());
+        } catch (Exception e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Formats every numeric cell after looking its style up
+     */
+    private static class PerCellFormatter implements SheetValuesHandler {
+        private final StylesTable styles;
+        private final DataFormatter formatter = new DataFormatter();
+
+        PerCellFormatter(StylesTable styles) {
+            this.styles = styles;
+        }
+
+        public void numericCell(int rowNum, int column, int styleIndex, double value, CharSequence formula) {
+            XSSFCellStyle style = styles.getStyleAt(styleIndex);
+            short formatIndex = style.getDataFormat();
+            String formatString = style.getDataFormatString();
+            if (formatString == null)
+                formatString = BuiltinFormats.getBuiltinFormat(formatIndex);
+            formatter.formatRawCellContents(value, formatIndex, formatString);
+        }
+
+        public void startRow(int rowNum) {}
+        public void endRow(int rowNum) {}
+        public void booleanCell(int rowNum, int column, int styleIndex, boolean value, CharSequence formula) {}
+        public void errorCell(int rowNum, int column, int styleIndex, CharSequence errorCode, CharSequence formula) {}
+        public void sharedStringCell(int rowNum, int column, int styleIndex, int sstIndex) {}
+        public void stringCell(int rowNum, int column, int styleIndex, CharSequence text, CharSequence formula) {}
+        public void headerFooter(String text, boolean isHeader, String tagName) {}
+    }
+
+    private static class NoOutput implements SheetContentsHandler {
+        public void startRow(int rowNum) {}
+        public void endRow() {}
+        public void cell(String cellReference, String formattedValue) {}
+        public void headerFooter(String text, boolean isHeader, String tagName) {}
+    }
+}
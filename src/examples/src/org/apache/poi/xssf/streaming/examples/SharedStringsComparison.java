@@ -0,0 +1,76 @@
+/* ====================================================================
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+==================================================================== */
+
+package org.apache.poi.xssf.streaming.examples;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+
+/**
+ * Compares file size and throughput of SXSSF with inline strings against
+ * SXSSF with a shared strings table.
+ * <p>
+ * Each row has <code>cols</code> string cells, each column repeats one of
+ * <code>labels</code> distinct labels, plus one unique value per row.
+ * </p>
+ *
+ * Usage: SharedStringsComparison rows cols labels
+ */
+public class SharedStringsComparison {
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 3) {
+            System.err.println("usage: java SharedStringsComparison rows cols labels");
+            System.exit(1);
+        }
+        int rows = Integer.parseInt(args[0]);
+        int cols = Integer.parseInt(args[1]);
+        int labels = Integer.parseInt(args[2]);
+
+        run("inline strings", false, rows, cols, labels);
+        run("shared strings", true, rows, cols, labels);
+    }
+
+    private static void run(String name, boolean useSharedStringsTable, int rows, int cols, int labels)
+            throws IOException {
+        long timeStarted = System.currentTimeMillis();
+
+        SXSSFWorkbook wb = new SXSSFWorkbook(null, SXSSFWorkbook.DEFAULT_WINDOW_SIZE, false, useSharedStringsTable);
+        Sheet sheet = wb.createSheet();
+        for (int rowIndex = 0; rowIndex < rows; rowIndex++) {
+            Row row = sheet.createRow(rowIndex);
+            for (int colIndex = 0; colIndex < cols; colIndex++) {
+                row.createCell(colIndex).setCellValue("Column " + colIndex + " label " + (rowIndex % labels));
+            }
+            row.createCell(cols).setCellValue("unique value " + rowIndex);
+        }
+
+        File file = File.createTempFile("shared-strings-comparison", ".xlsx");
+        FileOutputStream out = new FileOutputStream(file);
+        wb.write(out);
+        out.close();
+
+        long timeFinished = System.currentTimeMillis();
+        System.out.println(name + ": " + (timeFinished - timeStarted) + " ms, " + file.length() + " bytes");
+        file.delete();
+    }
+}
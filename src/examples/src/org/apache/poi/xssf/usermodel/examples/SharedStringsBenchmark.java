@@ -0,0 +1,81 @@
+/* ====================================================================
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+==================================================================== */
+
+package org.apache.poi.xssf.usermodel.examples;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import org.apache.poi.xssf.model.SharedStringsTable;
+import org.apache.poi.xssf.usermodel.XSSFRichTextString;
+
+/**
+ * Measures the heap taken by a {@link SharedStringsTable} holding many unique strings,
+ * and the time to fill, save and read it back.
+ *
+ * Usage: SharedStringsBenchmark strings
+ */
+public class SharedStringsBenchmark {
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 1) {
+            System.err.println("usage: java SharedStringsBenchmark strings");
+            System.exit(1);
+        }
+        int strings = Integer.parseInt(args[0]);
+
+        long heapBefore = usedHeap();
+        long timeStarted = System.currentTimeMillis();
+        SharedStringsTable sst = new SharedStringsTable();
+        for (int i = 0; i < strings; i++) {
+            sst.addEntry(new XSSFRichTextString("Customer " + i).getCTRst());
+            // every string is used twice
+            sst.addEntry(new XSSFRichTextString("Customer " + i).getCTRst());
+        }
+        long timeFinished = System.currentTimeMillis();
+        System.out.println("add: " + (timeFinished - timeStarted) + " ms, "
+                + (usedHeap() - heapBefore) / 1024 / 1024 + " MB");
+
+        timeStarted = System.currentTimeMillis();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        sst.writeTo(out);
+        timeFinished = System.currentTimeMillis();
+        System.out.println("write: " + (timeFinished - timeStarted) + " ms, "
+                + out.size() / 1024 + " KB");
+
+        byte[] bytes = out.toByteArray();
+        out = null;
+        sst = null;
+        heapBefore = usedHeap();
+        timeStarted = System.currentTimeMillis();
+        sst = new SharedStringsTable();
+        sst.readFrom(new ByteArrayInputStream(bytes));
+        timeFinished = System.currentTimeMillis();
+        System.out.println("read: " + (timeFinished - timeStarted) + " ms, "
+                + (usedHeap() - heapBefore) / 1024 / 1024 + " MB, "
+                + sst.getUniqueCount() + " unique strings");
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
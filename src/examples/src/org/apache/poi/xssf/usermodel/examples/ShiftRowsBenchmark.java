@@ -0,0 +1,87 @@
+/* ====================================================================
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+==================================================================== */
+
+package org.apache.poi.xssf.usermodel.examples;
+
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.xssf.usermodel.XSSFSheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+
+/**
+ * Measures {@link XSSFSheet#shiftRows(int, int, int)} on a large sheet.
+ * <p>
+ * Every row holds two numbers and two formulas, one of them repeated on every row and
+ * one referencing the row itself, plus a second sheet with formulas referencing the first.
+ * The "insert at top" run makes room for new rows at the top of the sheet one row at a time,
+ * which shifts every row and every formula. The "move block" run shifts a small block of rows
+ * in the middle of the sheet, which should cost time proportional to the block rather than the sheet.
+ * </p>
+ *
+ * Usage: ShiftRowsBenchmark rows inserts
+ */
+public class ShiftRowsBenchmark {
+
+    public static void main(String[] args) {
+        if (args.length != 2) {
+            System.err.println("usage: java ShiftRowsBenchmark rows inserts");
+            System.exit(1);
+        }
+        int rows = Integer.parseInt(args[0]);
+        int inserts = Integer.parseInt(args[1]);
+
+        XSSFWorkbook wb = createWorkbook(rows);
+        XSSFSheet sheet = wb.getSheetAt(0);
+
+        long timeStarted = System.currentTimeMillis();
+        for (int i = 0; i < inserts; i++) {
+            sheet.shiftRows(0, sheet.getLastRowNum(), 1);
+            sheet.createRow(0).createCell(0).setCellValue(-i);
+        }
+        long timeFinished = System.currentTimeMillis();
+        System.out.println("insert at top: " + (timeFinished - timeStarted) / Math.max(inserts, 1)
+                + " ms per insert, " + sheet.getPhysicalNumberOfRows() + " rows");
+
+        timeStarted = System.currentTimeMillis();
+        int middle = rows / 2;
+        for (int i = 0; i < inserts; i++) {
+            sheet.shiftRows(middle, middle + 9, i % 2 == 0 ? 20 : -20);
+        }
+        timeFinished = System.currentTimeMillis();
+        System.out.println("move block: " + (timeFinished - timeStarted) / Math.max(inserts, 1)
+                + " ms per shift");
+    }
+
+    private static XSSFWorkbook createWorkbook(int rows) {
+        XSSFWorkbook wb = new XSSFWorkbook();
+        XSSFSheet sheet = wb.createSheet("Data");
+        for (int rowIndex = 0; rowIndex < rows; rowIndex++) {
+            Row row = sheet.createRow(rowIndex);
+            int rownum = rowIndex + 1;
+            row.createCell(0).setCellValue(rowIndex);
+            row.createCell(1).setCellValue(rowIndex * 0.5);
+            row.createCell(2).setCellFormula("A" + rownum + "*B" + rownum);
+            row.createCell(3).setCellFormula("SUM($A$1:$A$100)");
+        }
+        XSSFSheet summary = wb.createSheet("Summary");
+        for (int rowIndex = 0; rowIndex < 100; rowIndex++) {
+            Row row = summary.createRow(rowIndex);
+            row.createCell(0).setCellFormula("Data!C" + (rowIndex * (rows / 100) + 1));
+            row.createCell(1).setCellFormula("A" + (rowIndex + 1) + "*2");
+        }
+        return wb;
+    }
+}
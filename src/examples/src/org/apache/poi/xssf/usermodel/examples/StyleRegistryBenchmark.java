@@ -0,0 +1,100 @@
+/* ====================================================================
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+==================================================================== */
+
+package org.apache.poi.xssf.usermodel.examples;
+
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.Font;
+import org.apache.poi.ss.usermodel.IndexedColors;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.xssf.usermodel.XSSFCellStyle;
+import org.apache.poi.xssf.usermodel.XSSFFont;
+import org.apache.poi.xssf.usermodel.XSSFSheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+
+/**
+ * Measures style-heavy workbook generation, which spends its time in the lookups of
+ * {@link org.apache.poi.xssf.model.StylesTable}.
+ * <p>
+ * The first phase registers the styles: every style asks {@link XSSFWorkbook#findFont}
+ * for its font and creates it only if it doesn't exist yet, and gets a border and a fill,
+ * which are looked up by <code>putBorder</code> and <code>putFill</code>.
+ * The second phase applies the styles to the cells, each of which looks up the style
+ * with <code>putStyle</code>.
+ * </p>
+ * <p>
+ * Only API which is older than the hash indexes of <code>StylesTable</code> is used, so
+ * the same program measures the previous implementation when it is run with the
+ * poi-ooxml jar of a release before the indexes were added on the class path.
+ * </p>
+ *
+ * Usage: StyleRegistryBenchmark styles rows
+ */
+public class StyleRegistryBenchmark {
+
+    public static void main(String[] args) {
+        if (args.length != 2) {
+            System.err.println("usage: java StyleRegistryBenchmark styles rows");
+            System.exit(1);
+        }
+        int styles = Integer.parseInt(args[0]);
+        int rows = Integer.parseInt(args[1]);
+
+        XSSFWorkbook wb = new XSSFWorkbook();
+
+        long timeStarted = System.currentTimeMillis();
+        XSSFCellStyle[] registered = new XSSFCellStyle[styles];
+        for (int i = 0; i < styles; i++) {
+            short height = (short)(20 * (8 + i % 400));
+            boolean italic = i % 800 >= 400;
+            XSSFFont font = wb.findFont(Font.BOLDWEIGHT_NORMAL, IndexedColors.BLACK.getIndex(), height,
+                    XSSFFont.DEFAULT_FONT_NAME, italic, false, Font.SS_NONE, Font.U_NONE);
+            if (font == null) {
+                font = wb.createFont();
+                font.setFontHeight(height);
+                font.setItalic(italic);
+            }
+
+            XSSFCellStyle style = wb.createCellStyle();
+            style.setFont(font);
+            style.setBorderBottom(CellStyle.BORDER_THIN);
+            style.setBottomBorderColor((short)(8 + i % 56));
+            style.setFillPattern(CellStyle.SOLID_FOREGROUND);
+            style.setFillForegroundColor((short)(8 + i / 56 % 56));
+            registered[i] = style;
+        }
+        long timeRegistered = System.currentTimeMillis();
+
+        XSSFSheet sheet = wb.createSheet();
+        for (int rowIndex = 0; rowIndex < rows; rowIndex++) {
+            Row row = sheet.createRow(rowIndex);
+            for (int colIndex = 0; colIndex < 10; colIndex++) {
+                int variant = (rowIndex * 10 + colIndex) % styles;
+                Cell cell = row.createCell(colIndex);
+                cell.setCellValue(variant);
+                cell.setCellStyle(registered[variant]);
+            }
+        }
+        long timeApplied = System.currentTimeMillis();
+
+        System.out.println("register: " + (timeRegistered - timeStarted) + " ms, "
+                + wb.getNumberOfFonts() + " fonts, " + wb.getStylesSource().getBorders().size() + " borders, "
+                + wb.getStylesSource().getFills().size() + " fills, " + wb.getNumCellStyles() + " styles");
+        System.out.println("apply: " + (timeApplied - timeRegistered) + " ms, " + rows * 10 + " cells");
+    }
+}
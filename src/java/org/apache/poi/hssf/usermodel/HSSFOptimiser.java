@@ -16,8 +16,10 @@
 ==================================================================== */
 package org.apache.poi.hssf.usermodel;
 
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.Map;
 
 import org.apache.poi.hssf.record.ExtendedFormatRecord;
 import org.apache.poi.hssf.record.FontRecord;
@@ -195,21 +197,17 @@ public class HSSFOptimiser {
 		//  as an earlier one. If it is, point users of the
 		//  later duplicate copy to the earlier one, and 
 		//  mark the later one as needing deleting
-		// Only work on user added ones, which come after 20
-		for(int i=21; i<newPos.length; i++) {
-			// Check this one for being a duplicate
-			//  of an earlier one
-			int earlierDuplicate = -1;
-			for(int j=0; j<i && earlierDuplicate == -1; j++) {
-				ExtendedFormatRecord xfCheck = workbook.getWorkbook().getExFormatAt(j);
-				if(xfCheck.equals(xfrs[i])) {
-					earlierDuplicate = j;
-				}
-			}
-			
-			// If we got a duplicate, mark it as such
-			if(earlierDuplicate != -1) {
-				newPos[i] = (short)earlierDuplicate;
+		// The earlier ones are looked up by their content
+		//  rather than compared one by one
+		Map<ExtendedFormatRecord, Integer> firstPos =
+			new HashMap<ExtendedFormatRecord, Integer>();
+		for(int i=0; i<newPos.length; i++) {
+			Integer earlierDuplicate = firstPos.get(xfrs[i]);
+			if(earlierDuplicate == null) {
+				firstPos.put(xfrs[i], Integer.valueOf(i));
+			} else if(i > 20) {
+				// Only work on user added ones, which come after 20
+				newPos[i] = earlierDuplicate.shortValue();
 				zapRecords[i] = true;
 			}
 		}
@@ -217,18 +215,14 @@ public class HSSFOptimiser {
 		// Update the new positions based on
 		//  deletes that have occurred between
 		//  the start and them
+		// deletedBefore[j] is the number deleted before position j
+		short[] deletedBefore = new short[newPos.length + 1];
+		for(int j=0; j<newPos.length; j++) {
+			deletedBefore[j+1] = (short)(deletedBefore[j] + (zapRecords[j] ? 1 : 0));
+		}
 		// Only work on user added ones, which come after 20
 		for(int i=21; i<newPos.length; i++) {
-			// Find the number deleted to that
-			//  point, and adjust
-			short preDeletePos = newPos[i];
-			short newPosition = preDeletePos;
-			for(int j=0; j<preDeletePos; j++) {
-				if(zapRecords[j]) newPosition--;
-			}
-			
-			// Update the new position
-			newPos[i] = newPosition;
+			newPos[i] = (short)(newPos[i] - deletedBefore[newPos[i]]);
 		}
 		
 		// Zap the un-needed user style records
@@ -242,6 +236,7 @@ public class HSSFOptimiser {
 		
 		// Finally, update the cells to point at
 		//  their new extended format records
+		HSSFCellStyle[] newStyles = new HSSFCellStyle[newPos.length];
 		for(int sheetNum=0; sheetNum<workbook.getNumberOfSheets(); sheetNum++) {
 			HSSFSheet s = workbook.getSheetAt(sheetNum);
 			Iterator rIt = s.rowIterator();
@@ -251,10 +246,10 @@ public class HSSFOptimiser {
 				while(cIt.hasNext()) {
 					HSSFCell cell = (HSSFCell)cIt.next();
 					short oldXf = cell.getCellValueRecord().getXFIndex();
-					HSSFCellStyle newStyle = workbook.getCellStyleAt(
-							newPos[oldXf]
-					);
-					cell.setCellStyle(newStyle);
+					if(newStyles[oldXf] == null) {
+						newStyles[oldXf] = workbook.getCellStyleAt(newPos[oldXf]);
+					}
+					cell.setCellStyle(newStyles[oldXf]);
 				}
 			}
 		}
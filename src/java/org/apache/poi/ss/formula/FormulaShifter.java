@@ -96,6 +96,27 @@ public final class FormulaShifter {
 		return sb.toString();
 	}
 
+	/**
+	 * A row shift only adjusts references and areas whose first or last row is among the
+	 * moved rows or their destination. Callers can use this to skip formulas which reference
+	 * none of these rows without parsing them.
+	 *
+	 * @param rowIndex 0-based index of the first or last row of a reference
+	 * @return whether a reference ending on the given row may be changed, always
+	 *  <code>true</code> when shifting sheets
+	 */
+	public boolean isRowAffected(int rowIndex) {
+		if (_mode != ShiftMode.Row) {
+			return true;
+		}
+		if (_firstMovedIndex <= rowIndex && rowIndex <= _lastMovedIndex) {
+			return true;
+		}
+		int destFirstRowIndex = _firstMovedIndex + _amountToMove;
+		int destLastRowIndex = _lastMovedIndex + _amountToMove;
+		return destFirstRowIndex <= rowIndex && rowIndex <= destLastRowIndex;
+	}
+
 	/**
 	 * @param ptgs - if necessary, will get modified by this method
 	 * @param currentExternSheetIx - the extern sheet index of the sheet that contains the formula being adjusted
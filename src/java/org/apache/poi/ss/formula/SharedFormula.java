@@ -18,6 +18,7 @@ package org.apache.poi.ss.formula;
 
 import org.apache.poi.ss.formula.ptg.*;
 import org.apache.poi.ss.SpreadsheetVersion;
+import org.apache.poi.ss.util.CellReference;
 
 /**
  *   Encapsulates logic to convert shared formulaa into non shared equivalent
@@ -51,7 +52,29 @@ public class SharedFormula {
             if (!ptg.isBaseToken()) {
                 originalOperandClass = ptg.getPtgClass();
             }
-            if (ptg instanceof RefPtgBase) {
+            if (ptg instanceof Ref3DPtg) {
+                // keep the sheet of 3D references
+                Ref3DPtg refPtg = (Ref3DPtg)ptg;
+                ptg = new Ref3DPtg(new CellReference(
+                                fixupRelativeRow(formulaRow,refPtg.getRow(),refPtg.isRowRelative()),
+                                fixupRelativeColumn(formulaColumn,refPtg.getColumn(),refPtg.isColRelative()),
+                                !refPtg.isRowRelative(),
+                                !refPtg.isColRelative()),
+                        refPtg.getExternSheetIndex());
+                ptg.setClass(originalOperandClass);
+            } else if (ptg instanceof Area3DPtg) {
+                Area3DPtg areaPtg = (Area3DPtg)ptg;
+                ptg = new Area3DPtg(fixupRelativeRow(formulaRow,areaPtg.getFirstRow(),areaPtg.isFirstRowRelative()),
+                                fixupRelativeRow(formulaRow,areaPtg.getLastRow(),areaPtg.isLastRowRelative()),
+                                fixupRelativeColumn(formulaColumn,areaPtg.getFirstColumn(),areaPtg.isFirstColRelative()),
+                                fixupRelativeColumn(formulaColumn,areaPtg.getLastColumn(),areaPtg.isLastColRelative()),
+                                areaPtg.isFirstRowRelative(),
+                                areaPtg.isLastRowRelative(),
+                                areaPtg.isFirstColRelative(),
+                                areaPtg.isLastColRelative(),
+                                areaPtg.getExternSheetIndex());
+                ptg.setClass(originalOperandClass);
+            } else if (ptg instanceof RefPtgBase) {
                 RefPtgBase refNPtg = (RefPtgBase)ptg;
                 ptg = new RefPtg(fixupRelativeRow(formulaRow,refNPtg.getRow(),refNPtg.isRowRelative()),
                                      fixupRelativeColumn(formulaColumn,refNPtg.getColumn(),refNPtg.isColRelative()),
@@ -689,8 +689,19 @@ public class DataFormatter {
      * @see #formatCellValue(Cell)
      */
     public String formatRawCellContents(double value, int formatIndex, String formatString, boolean use1904Windowing) {
+        return formatRawCellContents(value, formatIndex, formatString, use1904Windowing,
+                DateUtil.isADateFormat(formatIndex,formatString));
+    }
+    /**
+     * Formats the given raw cell value like {@link #formatRawCellContents(double, int, String, boolean)},
+     *  for callers which already checked whether the format is a date format, see
+     *  {@link DateUtil#isADateFormat(int, String)}. That check is costly, so callers formatting
+     *  many values with a few formats may want to do it once per format.
+     */
+    public String formatRawCellContents(double value, int formatIndex, String formatString,
+            boolean use1904Windowing, boolean isDateFormat) {
         // Is it a date?
-        if(DateUtil.isADateFormat(formatIndex,formatString)) {
+        if(isDateFormat) {
             if(DateUtil.isValidExcelDate(value)) {
                 Format dateFormat = getFormat(value, formatIndex, formatString);
                 if(dateFormat instanceof ExcelStyleDateFormatter) {
@@ -0,0 +1,197 @@
+/* ====================================================================
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+==================================================================== */
+
+package org.apache.poi.ss.util;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.Workbook;
+
+/**
+ * Maps style descriptions to the cell styles of a workbook, so that cells with the
+ * same formatting share one style instead of each getting a style of their own.
+ * Works with any {@link Workbook}, e.g. HSSF and XSSF.
+ * <p>
+ * A style is described by the map of format properties used by
+ * {@link CellUtil#setCellStyleProperty(Cell, Workbook, String, Object)}, keyed by the property
+ * names defined in {@link CellUtil} such as {@link CellUtil#ALIGNMENT}. Numeric properties are
+ * {@link Short}s, the font is given by its index and flags are {@link Boolean}s.
+ * </p>
+ * <p>
+ * Unlike <code>CellUtil</code>, which compares the properties of every style in the workbook,
+ * the interner keeps a hash index of the styles, so the cost of a lookup does not depend on the
+ * number of styles. Styles created by other means are picked up on the next lookup.
+ * A style modified after it has been indexed is detected when it is found, and the index is
+ * rebuilt, so a lookup never returns a style with different properties.
+ * </p>
+ * <p>
+ * The interner does not merge styles that already are duplicates of each other, see
+ * {@link org.apache.poi.hssf.usermodel.HSSFOptimiser#optimiseCellStyles} and
+ * <code>XSSFOptimiser.optimiseCellStyles</code> for that.
+ * </p>
+ */
+public final class CellStyleInterner {
+	private static final class Entry {
+		final short index;
+
+		/**
+		 * the properties of the style when it was indexed
+		 */
+		final Map<String, Object> properties;
+
+		Entry(short index, Map<String, Object> properties) {
+			this.index = index;
+			this.properties = properties;
+		}
+	}
+
+	private final Workbook _workbook;
+
+	/**
+	 * the properties of the default style, which define the names and types of all properties
+	 */
+	private final Map<String, Object> _defaults;
+
+	/**
+	 * the first style with the given properties. Styles created by the interner are also
+	 * registered under the properties they were requested with.
+	 */
+	private final Map<Map<String, Object>, Entry> _styles = new HashMap<Map<String, Object>, Entry>();
+
+	/**
+	 * number of styles of the workbook that have been indexed
+	 */
+	private int _numIndexed;
+
+	public CellStyleInterner(Workbook workbook) {
+		_workbook = workbook;
+		_defaults = getProperties(workbook.getCellStyleAt((short)0));
+	}
+
+	/**
+	 * @param style a style of the workbook
+	 * @return the format properties of the style
+	 */
+	public static Map<String, Object> getProperties(CellStyle style) {
+		return CellUtil.getFormatProperties(style);
+	}
+
+	/**
+	 * Returns a style with the given properties, creating it if the workbook does not have one.
+	 *
+	 * @param properties the format properties, missing properties default to zero or <code>false</code>
+	 * @return a style of the workbook
+	 */
+	public CellStyle getCellStyle(Map<String, Object> properties) {
+		Map<String, Object> key = normalize(properties);
+		CellStyle style = findCellStyle(key);
+		if (style == null) {
+			style = _workbook.createCellStyle();
+			CellUtil.setFormatProperties(style, _workbook, key);
+			index();
+			// the properties read back may differ in details, e.g. colors which don't apply
+			_styles.put(key, new Entry(style.getIndex(), Collections.unmodifiableMap(getProperties(style))));
+		}
+		return style;
+	}
+
+	/**
+	 * Returns a style which is the given one with a single property changed.
+	 *
+	 * @param style a style of the workbook
+	 * @param propertyName the property to change, one of the property names of {@link CellUtil}
+	 * @param propertyValue the new value of the property
+	 * @return a style of the workbook
+	 */
+	public CellStyle getCellStyle(CellStyle style, String propertyName, Object propertyValue) {
+		Map<String, Object> properties = getProperties(style);
+		properties.put(propertyName, propertyValue);
+		return getCellStyle(properties);
+	}
+
+	/**
+	 * Does the same as {@link CellUtil#setCellStyleProperty(Cell, Workbook, String, Object)}
+	 * with a hash lookup instead of a search of all styles.
+	 *
+	 * @param cell the cell to change the style of
+	 * @param propertyName the property to change, one of the property names of {@link CellUtil}
+	 * @param propertyValue the new value of the property
+	 */
+	public void setCellStyleProperty(Cell cell, String propertyName, Object propertyValue) {
+		cell.setCellStyle(getCellStyle(cell.getCellStyle(), propertyName, propertyValue));
+	}
+
+	/**
+	 * @return the first style with the given normalized properties or <code>null</code>
+	 */
+	private CellStyle findCellStyle(Map<String, Object> key) {
+		index();
+		Entry entry = _styles.get(key);
+		if (entry == null) {
+			return null;
+		}
+		CellStyle style = _workbook.getCellStyleAt(entry.index);
+		if (!entry.properties.equals(getProperties(style))) {
+			// a style has been modified since it was indexed
+			_styles.clear();
+			_numIndexed = 0;
+			index();
+			entry = _styles.get(key);
+			style = entry == null ? null : _workbook.getCellStyleAt(entry.index);
+		}
+		return style;
+	}
+
+	/**
+	 * Index the styles that have been added to the workbook since the last call
+	 */
+	private void index() {
+		int numStyles = _workbook.getNumCellStyles();
+		if (numStyles < _numIndexed) {
+			// styles have been removed, e.g. by an optimiser
+			_styles.clear();
+			_numIndexed = 0;
+		}
+		for (int i = _numIndexed; i < numStyles; i++) {
+			Map<String, Object> properties = Collections.unmodifiableMap(getProperties(_workbook.getCellStyleAt((short)i)));
+			if (!_styles.containsKey(properties)) {
+				_styles.put(properties, new Entry((short)i, properties));
+			}
+		}
+		_numIndexed = numStyles;
+	}
+
+	/**
+	 * @return all properties with the types they are read back with
+	 */
+	private Map<String, Object> normalize(Map<String, Object> properties) {
+		Map<String, Object> key = new HashMap<String, Object>();
+		for (String name : _defaults.keySet()) {
+			Object value = properties.get(name);
+			if (_defaults.get(name) instanceof Boolean) {
+				key.put(name, Boolean.valueOf(value instanceof Boolean && ((Boolean)value).booleanValue()));
+			} else {
+				key.put(name, Short.valueOf(value instanceof Number ? ((Number)value).shortValue() : 0));
+			}
+		}
+		return Collections.unmodifiableMap(key);
+	}
+}
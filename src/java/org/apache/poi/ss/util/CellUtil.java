@@ -173,6 +173,10 @@ public final class CellUtil {
 	 * style to be. If it does not find the style, then it creates a new one. If it does create a
 	 * new one, then it applies the propertyName and propertyValue to the style. This is necessary
 	 * because Excel has an upper limit on the number of Styles that it supports.
+	 * <p>
+	 * Every call compares the properties of all styles of the workbook. Use a
+	 * {@link CellStyleInterner} when changing the styles of many cells.
+	 * </p>
 	 *
 	 *@param workbook The workbook that is being worked with.
 	 *@param propertyName The name of the property that is to be changed.
@@ -215,7 +219,7 @@ public final class CellUtil {
 	 * @return map of format properties (String -> Object)
 	 * @see #setFormatProperties(org.apache.poi.ss.usermodel.CellStyle, org.apache.poi.ss.usermodel.Workbook, java.util.Map)
 	 */
-	private static Map<String, Object> getFormatProperties(CellStyle style) {
+	static Map<String, Object> getFormatProperties(CellStyle style) {
 		Map<String, Object> properties = new HashMap<String, Object>();
 		putShort(properties, ALIGNMENT, style.getAlignment());
 		putShort(properties, BORDER_BOTTOM, style.getBorderBottom());
@@ -248,7 +252,7 @@ public final class CellUtil {
 	 * @param properties map of format properties (String -> Object)
 	 * @see #getFormatProperties(CellStyle)
 	 */
-	private static void setFormatProperties(CellStyle style, Workbook workbook, Map<String, Object> properties) {
+	static void setFormatProperties(CellStyle style, Workbook workbook, Map<String, Object> properties) {
 		style.setAlignment(getShort(properties, ALIGNMENT));
 		style.setBorderBottom(getShort(properties, BORDER_BOTTOM));
 		style.setBorderLeft(getShort(properties, BORDER_LEFT));
@@ -104,85 +104,100 @@ public class SheetUtil {
         }
 
         CellStyle style = cell.getCellStyle();
-        int cellType = cell.getCellType();
-
-        // for formula cells we compute the cell width for the cached formula result
-        if(cellType == Cell.CELL_TYPE_FORMULA) cellType = cell.getCachedFormulaResultType();
-
         Font font = wb.getFontAt(style.getFontIndex());
 
-        AttributedString str;
-        TextLayout layout;
-
         double width = -1;
-        if (cellType == Cell.CELL_TYPE_STRING) {
-            RichTextString rt = cell.getRichStringCellValue();
-            String[] lines = rt.getString().split("\\n");
+        String[] lines = getCellLines(cell, formatter);
+        if (lines != null) {
             for (int i = 0; i < lines.length; i++) {
-                String txt = lines[i] + defaultChar;
+                width = Math.max(width, ((getStringWidth(lines[i], font, style.getRotation()) / colspan) / defaultCharWidth) + style.getIndention());
+            }
+        }
+        return width;
+    }
 
-                str = new AttributedString(txt);
-                copyAttributes(font, str, 0, txt.length());
+    /**
+     * Get the text of a cell as it is measured by {@link #getCellWidth(Cell, int, DataFormatter, boolean)}.
+     * String cells are split into lines, numbers are formatted to look the same as in Excel
+     * and formula cells yield their cached result.
+     *
+     * @param cell the cell to format
+     * @param formatter formatter used to prepare the text to be measured
+     * @return  the lines of text or <code>null</code> if the cell has no text to be measured
+     */
+    public static String[] getCellLines(Cell cell, DataFormatter formatter) {
+        int cellType = cell.getCellType();
 
-                if (rt.numFormattingRuns() > 0) {
-                    // TODO: support rich text fragments
-                }
+        // for formula cells we compute the cell width for the cached formula result
+        if(cellType == Cell.CELL_TYPE_FORMULA) cellType = cell.getCachedFormulaResultType();
 
-                layout = new TextLayout(str.getIterator(), fontRenderContext);
-                if(style.getRotation() != 0){
-                    /*
-                     * Transform the text using a scale so that it's height is increased by a multiple of the leading,
-                     * and then rotate the text before computing the bounds. The scale results in some whitespace around
-                     * the unrotated top and bottom of the text that normally wouldn't be present if unscaled, but
-                     * is added by the standard Excel autosize.
-                     */
-                    AffineTransform trans = new AffineTransform();
-                    trans.concatenate(AffineTransform.getRotateInstance(style.getRotation()*2.0*Math.PI/360.0));
-                    trans.concatenate(
-                    AffineTransform.getScaleInstance(1, fontHeightMultiple)
-                    );
-                    width = Math.max(width, ((layout.getOutline(trans).getBounds().getWidth() / colspan) / defaultCharWidth) + cell.getCellStyle().getIndention());
-                } else {
-                    width = Math.max(width, ((layout.getBounds().getWidth() / colspan) / defaultCharWidth) + cell.getCellStyle().getIndention());
-                }
-            }
-        } else {
-            String sval = null;
-            if (cellType == Cell.CELL_TYPE_NUMERIC) {
-                // Try to get it formatted to look the same as excel
-                try {
-                    sval = formatter.formatCellValue(cell, dummyEvaluator);
-                } catch (Exception e) {
-                    sval = String.valueOf(cell.getNumericCellValue());
-                }
-            } else if (cellType == Cell.CELL_TYPE_BOOLEAN) {
-                sval = String.valueOf(cell.getBooleanCellValue()).toUpperCase();
+        if (cellType == Cell.CELL_TYPE_STRING) {
+            RichTextString rt = cell.getRichStringCellValue();
+            if (rt.numFormattingRuns() > 0) {
+                // TODO: support rich text fragments
             }
-            if(sval != null) {
-                String txt = sval + defaultChar;
-                str = new AttributedString(txt);
-                copyAttributes(font, str, 0, txt.length());
-
-                layout = new TextLayout(str.getIterator(), fontRenderContext);
-                if(style.getRotation() != 0){
-                    /*
-                     * Transform the text using a scale so that it's height is increased by a multiple of the leading,
-                     * and then rotate the text before computing the bounds. The scale results in some whitespace around
-                     * the unrotated top and bottom of the text that normally wouldn't be present if unscaled, but
-                     * is added by the standard Excel autosize.
-                     */
-                    AffineTransform trans = new AffineTransform();
-                    trans.concatenate(AffineTransform.getRotateInstance(style.getRotation()*2.0*Math.PI/360.0));
-                    trans.concatenate(
-                    AffineTransform.getScaleInstance(1, fontHeightMultiple)
-                    );
-                    width = Math.max(width, ((layout.getOutline(trans).getBounds().getWidth() / colspan) / defaultCharWidth) + cell.getCellStyle().getIndention());
-                } else {
-                    width = Math.max(width, ((layout.getBounds().getWidth() / colspan) / defaultCharWidth) + cell.getCellStyle().getIndention());
-                }
+            return rt.getString().split("\\n");
+        }
+        String sval = null;
+        if (cellType == Cell.CELL_TYPE_NUMERIC) {
+            // Try to get it formatted to look the same as excel
+            try {
+                sval = formatter.formatCellValue(cell, dummyEvaluator);
+            } catch (Exception e) {
+                sval = String.valueOf(cell.getNumericCellValue());
             }
+        } else if (cellType == Cell.CELL_TYPE_BOOLEAN) {
+            sval = String.valueOf(cell.getBooleanCellValue()).toUpperCase();
         }
-        return width;
+        return sval == null ? null : new String[] { sval };
+    }
+
+    /**
+     * Compute the width of a single line of text, without the indention and the column span
+     * applied by {@link #getCellWidth(Cell, int, DataFormatter, boolean)}
+     *
+     * @param text the text to measure
+     * @param font the font the text is rendered with
+     * @param rotation the rotation of the text in degrees, see {@link CellStyle#getRotation()}
+     * @return  the width in pixels
+     */
+    public static double getStringWidth(String text, Font font, short rotation) {
+        String txt = text + defaultChar;
+        AttributedString str = new AttributedString(txt);
+        copyAttributes(font, str, 0, txt.length());
+
+        TextLayout layout = new TextLayout(str.getIterator(), fontRenderContext);
+        if(rotation != 0){
+            /*
+             * Transform the text using a scale so that it's height is increased by a multiple of the leading,
+             * and then rotate the text before computing the bounds. The scale results in some whitespace around
+             * the unrotated top and bottom of the text that normally wouldn't be present if unscaled, but
+             * is added by the standard Excel autosize.
+             */
+            AffineTransform trans = new AffineTransform();
+            trans.concatenate(AffineTransform.getRotateInstance(rotation*2.0*Math.PI/360.0));
+            trans.concatenate(
+            AffineTransform.getScaleInstance(1, fontHeightMultiple)
+            );
+            return layout.getOutline(trans).getBounds().getWidth();
+        }
+        return layout.getBounds().getWidth();
+    }
+
+    /**
+     * Compute the width of the default character in the default font of the workbook,
+     * the unit of the widths returned by {@link #getCellWidth(Cell, int, DataFormatter, boolean)}
+     *
+     * @param wb the workbook
+     * @return  the width in pixels
+     */
+    public static int getDefaultCharWidth(Workbook wb) {
+        Font defaultFont = wb.getFontAt((short) 0);
+
+        AttributedString str = new AttributedString(String.valueOf(defaultChar));
+        copyAttributes(defaultFont, str, 0, 1);
+        TextLayout layout = new TextLayout(str.getIterator(), fontRenderContext);
+        return (int)layout.getAdvance();
     }
 
     /**
@@ -194,17 +209,8 @@ public class SheetUtil {
      * @return  the width in pixels
      */
     public static double getColumnWidth(Sheet sheet, int column, boolean useMergedCells){
-        AttributedString str;
-        TextLayout layout;
-
-        Workbook wb = sheet.getWorkbook();
         DataFormatter formatter = new DataFormatter();
-        Font defaultFont = wb.getFontAt((short) 0);
-
-        str = new AttributedString(String.valueOf(defaultChar));
-        copyAttributes(defaultFont, str, 0, 1);
-        layout = new TextLayout(str.getIterator(), fontRenderContext);
-        int defaultCharWidth = (int)layout.getAdvance();
+        int defaultCharWidth = getDefaultCharWidth(sheet.getWorkbook());
 
         double width = -1;
         for (Row row : sheet) {
@@ -231,17 +237,8 @@ public class SheetUtil {
      * @return  the width in pixels
      */
     public static double getColumnWidth(Sheet sheet, int column, boolean useMergedCells, int firstRow, int lastRow){
-        AttributedString str;
-        TextLayout layout;
-
-        Workbook wb = sheet.getWorkbook();
         DataFormatter formatter = new DataFormatter();
-        Font defaultFont = wb.getFontAt((short) 0);
-
-        str = new AttributedString(String.valueOf(defaultChar));
-        copyAttributes(defaultFont, str, 0, 1);
-        layout = new TextLayout(str.getIterator(), fontRenderContext);
-        int defaultCharWidth = (int)layout.getAdvance();
+        int defaultCharWidth = getDefaultCharWidth(sheet.getWorkbook());
 
         double width = -1;
         for (int rowIdx = firstRow; rowIdx <= lastRow; ++rowIdx) {
@@ -68,6 +68,12 @@ public class POIXMLDocumentPart {
      */
     private int relationCounter = 0;
 
+    /**
+     * Whether the "model" of this part may differ from the content of the package part.
+     * Parts are dirty unless a sub-class knows better.
+     */
+    private boolean dirty = true;
+
     int incrementRelationCounter() {
         relationCounter++;
         return relationCounter;
@@ -303,14 +309,43 @@ public class POIXMLDocumentPart {
 
     }
 
+    /**
+     * Whether this part has to be committed when the document is saved.
+     * <p>
+     * A part that is not dirty is left unmodified and its original content
+     * is copied to the output as is, saving the cost of serializing the "model".
+     * If the package was opened from a file, the compressed data of the part is
+     * copied without inflating and deflating it again.
+     * By default every part is dirty. Sub-classes which track their modifications
+     * call {@link #setDirty(boolean)} or override this method.
+     * </p>
+     *
+     * @return <code>true</code> if {@link #commit()} is called on save
+     */
+    public boolean isDirty() {
+        return dirty;
+    }
+
+    /**
+     * Mark this part as modified or unmodified since it was read.
+     *
+     * @param dirty <code>true</code> if the part has to be committed on save
+     * @see #isDirty()
+     */
+    protected void setDirty(boolean dirty) {
+        this.dirty = dirty;
+    }
+
     /**
      * Save changes in the underlying OOXML package.
-     * Recursively fires {@link #commit()} for each package part
+     * Recursively fires {@link #commit()} for each dirty package part
      *
      * @param alreadySaved    context set containing already visited nodes
      */
     protected final void onSave(Set<PackagePart> alreadySaved) throws IOException{
-        commit();
+        if (isDirty()) {
+            commit();
+        }
         alreadySaved.add(this.getPackagePart());
         for(POIXMLDocumentPart p : relations.values()){
             if (!alreadySaved.contains(p.getPackagePart())) {
@@ -27,6 +27,7 @@ import org.apache.poi.openxml4j.exceptions.InvalidFormatException;
 import org.apache.poi.openxml4j.exceptions.InvalidOperationException;
 import org.apache.poi.openxml4j.exceptions.OpenXML4JException;
 import org.apache.poi.openxml4j.opc.internal.ContentType;
+import org.apache.poi.openxml4j.opc.internal.MemoryPackagePart;
 
 /**
  * Provides a base class for parts stored in a Package.
@@ -512,26 +513,57 @@ public abstract class PackagePart implements RelationshipSource {
 	 * @see org.apache.poi.openxml4j.opc.internal.MemoryPackagePart
 	 */
 	public OutputStream getOutputStream() {
-		OutputStream outStream;
-		// If this part is a zip package part (read only by design) we convert
-		// this part into a MemoryPackagePart instance for write purpose.
-		if (this instanceof ZipPackagePart) {
-			// Delete logically this part
-			_container.removePart(this._partName);
-
-			// Create a memory part
-			PackagePart part = _container.createPart(this._partName,
-					this._contentType.toString(), false);
-			part._relationships = this._relationships;
-			if (part == null) {
-				throw new InvalidOperationException(
-						"Can't create a temporary part !");
-			}
-			outStream = part.getOutputStreamImpl();
+		return getWritablePart().getOutputStreamImpl();
+	}
+
+	/**
+	 * Let the content of this part be written by the specified writer when the
+	 * package is saved. Unlike {@link #getOutputStream()}, the content is not
+	 * buffered: the writer is called once the zip entry of the part is open and
+	 * writes straight into it. The writer reflects the state of its source at
+	 * the time the package is saved, not at the time it is registered.
+	 * <p>
+	 * Parts which don't support deferred content call the writer immediately
+	 * and store what it produces.
+	 * </p>
+	 *
+	 * @param writer
+	 *            The writer producing the content of this part.
+	 * @throws IOException
+	 *             If the writer is called immediately and fails.
+	 * @see PartContentWriter
+	 */
+	public void setContentWriter(PartContentWriter writer) throws IOException {
+		PackagePart part = getWritablePart();
+		if (part instanceof MemoryPackagePart) {
+			((MemoryPackagePart) part).setContentWriter(writer);
 		} else {
-			outStream = this.getOutputStreamImpl();
+			OutputStream out = part.getOutputStreamImpl();
+			writer.write(out);
+			out.close();
+		}
+	}
+
+	/**
+	 * If this part is a zip package part (read only by design) we convert
+	 * this part into a MemoryPackagePart instance for write purpose.
+	 */
+	private PackagePart getWritablePart() {
+		if (!(this instanceof ZipPackagePart)) {
+			return this;
+		}
+		// Delete logically this part
+		_container.removePart(this._partName);
+
+		// Create a memory part
+		PackagePart part = _container.createPart(this._partName,
+				this._contentType.toString(), false);
+		if (part == null) {
+			throw new InvalidOperationException(
+					"Can't create a temporary part !");
 		}
-		return outStream;
+		part._relationships = this._relationships;
+		return part;
 	}
 
 	/**
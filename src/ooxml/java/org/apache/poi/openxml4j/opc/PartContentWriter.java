@@ -0,0 +1,44 @@
+/* ====================================================================
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+==================================================================== */
+
+package org.apache.poi.openxml4j.opc;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Produces the content of a part at the time the package is saved.
+ * <p>
+ * Parts registered with {@link PackagePart#setContentWriter(PartContentWriter)}
+ * are serialized straight into the entry of the zip stream the package is saved
+ * into, so that the content of a large part is never held in memory as a whole.
+ * </p>
+ *
+ * @see PackagePart#setContentWriter(PartContentWriter)
+ */
+public interface PartContentWriter {
+
+	/**
+	 * Write the content of the part.
+	 *
+	 * @param out
+	 *            The stream to write the content into. It must not be closed.
+	 * @throws IOException
+	 *             If the content can't be written.
+	 */
+	void write(OutputStream out) throws IOException;
+}
@@ -35,6 +35,7 @@ import org.apache.poi.openxml4j.opc.internal.ContentTypeManager;
 import org.apache.poi.openxml4j.opc.internal.FileHelper;
 import org.apache.poi.openxml4j.opc.internal.MemoryPackagePart;
 import org.apache.poi.openxml4j.opc.internal.PartMarshaller;
+import org.apache.poi.openxml4j.opc.internal.RawZipOutputStream;
 import org.apache.poi.openxml4j.opc.internal.ZipContentTypeManager;
 import org.apache.poi.openxml4j.opc.internal.ZipHelper;
 import org.apache.poi.openxml4j.opc.internal.marshallers.ZipPackagePropertiesMarshaller;
@@ -409,7 +410,7 @@ public final class ZipPackage extends Package {
 
 		try {
 			if (!(outputStream instanceof ZipOutputStream))
-				zos = new ZipOutputStream(outputStream);
+				zos = new RawZipOutputStream(outputStream);
 			else
 				zos = (ZipOutputStream) outputStream;
 
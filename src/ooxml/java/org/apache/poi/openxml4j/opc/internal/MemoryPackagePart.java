@@ -28,6 +28,7 @@ import org.apache.poi.openxml4j.exceptions.OpenXML4JException;
 import org.apache.poi.openxml4j.opc.OPCPackage;
 import org.apache.poi.openxml4j.opc.PackagePart;
 import org.apache.poi.openxml4j.opc.PackagePartName;
+import org.apache.poi.openxml4j.opc.PartContentWriter;
 import org.apache.poi.openxml4j.opc.internal.marshallers.ZipPartMarshaller;
 import org.apache.poi.util.IOUtils;
 
@@ -49,6 +50,12 @@ public final class MemoryPackagePart extends PackagePart {
 	 */
 	protected int length;
 
+	/**
+	 * Writes the content of this part when the package is saved, or
+	 * <code>null</code> if the content is held in {@link #data}.
+	 */
+	private PartContentWriter contentWriter;
+
 	/**
 	 * Constructor.
 	 * 
@@ -87,7 +94,13 @@ public final class MemoryPackagePart extends PackagePart {
 	}
 
 	@Override
-	protected InputStream getInputStreamImpl() {
+	protected InputStream getInputStreamImpl() throws IOException {
+		if (contentWriter != null) {
+			// the content is produced on demand and is not kept
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			contentWriter.write(out);
+			return new ByteArrayInputStream(out.toByteArray());
+		}
 		// If this part has been created from scratch and/or the data buffer is
 		// not
 		// initialize, so we do it now.
@@ -99,12 +112,33 @@ public final class MemoryPackagePart extends PackagePart {
 
 	@Override
 	protected OutputStream getOutputStreamImpl() {
+		contentWriter = null;
 		return new MemoryPackagePartOutputStream(this);
 	}
 
 	public void clear() {
 		data = null;
 		length = 0;
+		contentWriter = null;
+	}
+
+	/**
+	 * Replace the content of this part by the output of the specified writer,
+	 * which is called each time the part is saved or read.
+	 *
+	 * @see PackagePart#setContentWriter(PartContentWriter)
+	 */
+	public void setContentWriter(PartContentWriter writer) {
+		clear();
+		contentWriter = writer;
+	}
+
+	/**
+	 * @return the writer producing the content of this part, or
+	 *         <code>null</code> if the content is held in memory
+	 */
+	public PartContentWriter getContentWriter() {
+		return contentWriter;
 	}
 
 	@Override
@@ -123,6 +157,7 @@ public final class MemoryPackagePart extends PackagePart {
 	   }
 	   
 	   // Save it
+	   contentWriter = null;
 	   data = baos.toByteArray();
 	   length = data.length;
 	   
@@ -0,0 +1,550 @@
+/* ====================================================================
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+==================================================================== */
+
+package org.apache.poi.openxml4j.opc.internal;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * A <code>ZipOutputStream</code> which can also copy entries that are already
+ * compressed, see {@link #writeRawEntry(ZipEntry, InputStream)}.
+ * <p>
+ * <code>java.util.zip.ZipOutputStream</code> compresses every entry it is given,
+ * so an entry taken from another zip file has to be inflated and deflated again.
+ * This class writes the zip format itself: the local headers, the data descriptors
+ * of streamed entries, the central directory and, for large archives, the Zip64
+ * records. Entries written with {@link #putNextEntry(ZipEntry)} are compressed as
+ * usual, so the class can be passed wherever a <code>ZipOutputStream</code> is
+ * expected.
+ * </p>
+ */
+public class RawZipOutputStream extends ZipOutputStream {
+	private static final int LOCAL_HEADER_SIG = 0x04034b50;
+	private static final int DATA_DESCRIPTOR_SIG = 0x08074b50;
+	private static final int CENTRAL_HEADER_SIG = 0x02014b50;
+	private static final int ZIP64_END_SIG = 0x06064b50;
+	private static final int ZIP64_LOCATOR_SIG = 0x07064b50;
+	private static final int END_SIG = 0x06054b50;
+
+	private static final int ZIP64_EXTRA_ID = 0x0001;
+	private static final long ZIP64_MAGIC = 0xFFFFFFFFL;
+	private static final int ZIP64_MAGIC_COUNT = 0xFFFF;
+
+	private static final int VERSION_DEFAULT = 20;
+	private static final int VERSION_ZIP64 = 45;
+
+	/** general purpose flag: sizes and crc follow the data */
+	private static final int FLAG_DATA_DESCRIPTOR = 0x08;
+	/** general purpose flag: the name is UTF-8 encoded */
+	private static final int FLAG_UTF8 = 0x800;
+
+	private final List<Entry> _entries = new ArrayList<Entry>();
+	private final Set<String> _names = new HashSet<String>();
+	private final CRC32 _crc = new CRC32();
+	private final byte[] _buf = new byte[ZipHelper.READ_WRITE_FILE_BUFFER_SIZE];
+	private final byte[] _one = new byte[1];
+	private Deflater _deflater;
+	private int _level = Deflater.DEFAULT_COMPRESSION;
+	private int _method = DEFLATED;
+	private byte[] _comment;
+
+	/** the entry being written, <code>null</code> between entries */
+	private Entry _current;
+	private long _written;
+	private boolean _finished;
+	private boolean _closed;
+
+	public RawZipOutputStream(OutputStream out) {
+		super(out);
+	}
+
+	@Override
+	public void setComment(String comment) {
+		_comment = comment == null ? null : utf8(comment);
+		if (_comment != null && _comment.length > 0xFFFF) {
+			throw new IllegalArgumentException("ZIP file comment too long.");
+		}
+	}
+
+	@Override
+	public void setMethod(int method) {
+		if (method != DEFLATED && method != STORED) {
+			throw new IllegalArgumentException("invalid compression method");
+		}
+		_method = method;
+	}
+
+	@Override
+	public void setLevel(int level) {
+		if ((level < 0 || level > 9) && level != Deflater.DEFAULT_COMPRESSION) {
+			throw new IllegalArgumentException("invalid compression level");
+		}
+		_level = level;
+		if (_deflater != null) {
+			_deflater.setLevel(level);
+		}
+	}
+
+	/**
+	 * Begins an entry which is compressed as it is written. Stored entries need
+	 * their size and crc to be set in advance, as with <code>ZipOutputStream</code>.
+	 */
+	@Override
+	public void putNextEntry(ZipEntry e) throws IOException {
+		ensureOpen();
+		if (_current != null) {
+			closeEntry();
+		}
+		int method = e.getMethod() == -1 ? _method : e.getMethod();
+		Entry entry = newEntry(e, method);
+		if (method == STORED) {
+			if (e.getSize() == -1 || e.getCrc() == -1) {
+				throw new ZipException("STORED entry missing size or crc: " + e.getName());
+			}
+			entry._size = e.getSize();
+			entry._compressedSize = e.getSize();
+			entry._crc = e.getCrc();
+		} else {
+			entry._flag |= FLAG_DATA_DESCRIPTOR;
+			if (_deflater == null) {
+				_deflater = newDeflater();
+			}
+		}
+		writeLocalHeader(entry);
+		_crc.reset();
+		_current = entry;
+		_current._dataStart = _written;
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		_one[0] = (byte)b;
+		write(_one, 0, 1);
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		ensureOpen();
+		if (_current == null) {
+			throw new ZipException("no current ZIP entry");
+		}
+		if (len == 0) {
+			return;
+		}
+		if (_current._method == STORED) {
+			writeOut(b, off, len);
+		} else {
+			_deflater.setInput(b, off, len);
+			while (!_deflater.needsInput()) {
+				deflateBuffer();
+			}
+		}
+		_crc.update(b, off, len);
+	}
+
+	@Override
+	public void closeEntry() throws IOException {
+		ensureOpen();
+		Entry entry = _current;
+		if (entry == null) {
+			return;
+		}
+		_current = null;
+		if (entry._method == STORED) {
+			long written = _written - entry._dataStart;
+			if (written != entry._size) {
+				throw new ZipException("invalid entry size (expected " + entry._size
+						+ " but got " + written + " bytes)");
+			}
+			if (_crc.getValue() != entry._crc) {
+				throw new ZipException("invalid entry crc-32 (expected 0x"
+						+ Long.toHexString(entry._crc) + " but got 0x"
+						+ Long.toHexString(_crc.getValue()) + ")");
+			}
+			return;
+		}
+		_deflater.finish();
+		while (!_deflater.finished()) {
+			deflateBuffer();
+		}
+		entry._size = _deflater.getBytesRead();
+		entry._compressedSize = _deflater.getBytesWritten();
+		entry._crc = _crc.getValue();
+		_deflater.reset();
+		writeDataDescriptor(entry);
+	}
+
+	/**
+	 * @return a deflater like the one compressing the entries written with
+	 *  {@link #putNextEntry(ZipEntry)}, for data passed to
+	 *  {@link #writeDeflatedEntry(ZipEntry, InputStream)}
+	 */
+	protected Deflater newDeflater() {
+		return new Deflater(_level, true);
+	}
+
+	/**
+	 * Copies an entry which was compressed elsewhere with a deflater from
+	 * {@link #newDeflater()}. The entry is written exactly as if its uncompressed
+	 * data had been passed to {@link #putNextEntry(ZipEntry)} and
+	 * {@link #write(byte[], int, int)}, so the entry needs its time, crc, size and
+	 * compressed size to be set.
+	 *
+	 * @param e the entry, closes the current entry if there is one
+	 * @param data exactly the compressed size bytes of data of the entry
+	 */
+	public void writeDeflatedEntry(ZipEntry e, InputStream data) throws IOException {
+		ensureOpen();
+		if (_current != null) {
+			closeEntry();
+		}
+		if (e.getTime() == -1 || e.getCrc() == -1 || e.getSize() == -1 || e.getCompressedSize() == -1) {
+			throw new ZipException("deflated entry missing time, crc or sizes: " + e.getName());
+		}
+		Entry entry = newEntry(e, DEFLATED);
+		entry._flag |= FLAG_DATA_DESCRIPTOR;
+		entry._crc = e.getCrc();
+		entry._size = e.getSize();
+		entry._compressedSize = e.getCompressedSize();
+		writeLocalHeader(entry);
+		copy(e, data, entry._compressedSize);
+		writeDataDescriptor(entry);
+	}
+
+	private void writeDataDescriptor(Entry entry) throws IOException {
+		byte[] descriptor = new byte[24];
+		int pos = putInt(descriptor, 0, DATA_DESCRIPTOR_SIG);
+		pos = putInt(descriptor, pos, entry._crc);
+		if (entry._size >= ZIP64_MAGIC || entry._compressedSize >= ZIP64_MAGIC) {
+			entry._version = VERSION_ZIP64;
+			pos = putLong(descriptor, pos, entry._compressedSize);
+			pos = putLong(descriptor, pos, entry._size);
+		} else {
+			pos = putInt(descriptor, pos, entry._compressedSize);
+			pos = putInt(descriptor, pos, entry._size);
+		}
+		writeOut(descriptor, 0, pos);
+	}
+
+	/**
+	 * Copies an entry whose data is already compressed, for example the data of an
+	 * entry of another zip file. The data is written as is, so the entry needs its
+	 * method, crc, size and compressed size to be set.
+	 *
+	 * @param e the entry, closes the current entry if there is one
+	 * @param data exactly the compressed size bytes of data of the entry
+	 */
+	public void writeRawEntry(ZipEntry e, InputStream data) throws IOException {
+		ensureOpen();
+		if (_current != null) {
+			closeEntry();
+		}
+		if (e.getMethod() == -1 || e.getCrc() == -1 || e.getSize() == -1 || e.getCompressedSize() == -1) {
+			throw new ZipException("raw entry missing method, crc or sizes: " + e.getName());
+		}
+		Entry entry = newEntry(e, e.getMethod());
+		entry._crc = e.getCrc();
+		entry._size = e.getSize();
+		entry._compressedSize = e.getCompressedSize();
+		writeLocalHeader(entry);
+		copy(e, data, entry._compressedSize);
+	}
+
+	private void copy(ZipEntry e, InputStream data, long length) throws IOException {
+		long remaining = length;
+		while (remaining > 0) {
+			int count = data.read(_buf, 0, (int)Math.min(_buf.length, remaining));
+			if (count == -1) {
+				throw new ZipException("unexpected end of data of raw entry " + e.getName()
+						+ ", " + remaining + " bytes missing");
+			}
+			writeOut(_buf, 0, count);
+			remaining -= count;
+		}
+	}
+
+	@Override
+	public void finish() throws IOException {
+		ensureOpen();
+		if (_finished) {
+			return;
+		}
+		if (_current != null) {
+			closeEntry();
+		}
+		long centralStart = _written;
+		for (Entry entry : _entries) {
+			writeCentralHeader(entry);
+		}
+		long centralLength = _written - centralStart;
+		int count = _entries.size();
+
+		if (count >= ZIP64_MAGIC_COUNT || centralStart >= ZIP64_MAGIC || centralLength >= ZIP64_MAGIC) {
+			long zip64EndStart = _written;
+			byte[] zip64 = new byte[56 + 20];
+			int pos = putInt(zip64, 0, ZIP64_END_SIG);
+			pos = putLong(zip64, pos, 44);  // size of the rest of the record
+			pos = putShort(zip64, pos, VERSION_ZIP64);
+			pos = putShort(zip64, pos, VERSION_ZIP64);
+			pos = putInt(zip64, pos, 0);  // number of this disk
+			pos = putInt(zip64, pos, 0);  // disk with the central directory
+			pos = putLong(zip64, pos, count);
+			pos = putLong(zip64, pos, count);
+			pos = putLong(zip64, pos, centralLength);
+			pos = putLong(zip64, pos, centralStart);
+			pos = putInt(zip64, pos, ZIP64_LOCATOR_SIG);
+			pos = putInt(zip64, pos, 0);  // disk with the zip64 end record
+			pos = putLong(zip64, pos, zip64EndStart);
+			pos = putInt(zip64, pos, 1);  // total number of disks
+			writeOut(zip64, 0, pos);
+		}
+
+		int commentLength = _comment == null ? 0 : _comment.length;
+		byte[] end = new byte[22];
+		int pos = putInt(end, 0, END_SIG);
+		pos = putShort(end, pos, 0);  // number of this disk
+		pos = putShort(end, pos, 0);  // disk with the central directory
+		pos = putShort(end, pos, Math.min(count, ZIP64_MAGIC_COUNT));
+		pos = putShort(end, pos, Math.min(count, ZIP64_MAGIC_COUNT));
+		pos = putInt(end, pos, Math.min(centralLength, ZIP64_MAGIC));
+		pos = putInt(end, pos, Math.min(centralStart, ZIP64_MAGIC));
+		pos = putShort(end, pos, commentLength);
+		writeOut(end, 0, pos);
+		if (commentLength > 0) {
+			writeOut(_comment, 0, commentLength);
+		}
+		_finished = true;
+	}
+
+	@Override
+	public void flush() throws IOException {
+		out.flush();
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (_closed) {
+			return;
+		}
+		try {
+			finish();
+		} finally {
+			_closed = true;
+			if (_deflater != null) {
+				_deflater.end();
+			}
+			// the deflater of ZipOutputStream is never used
+			def.end();
+			out.close();
+		}
+	}
+
+	private void ensureOpen() throws IOException {
+		if (_closed) {
+			throw new IOException("Stream closed");
+		}
+		if (_finished) {
+			throw new ZipException("ZIP file has already been finished");
+		}
+	}
+
+	private Entry newEntry(ZipEntry e, int method) throws ZipException {
+		if (!_names.add(e.getName())) {
+			throw new ZipException("duplicate entry: " + e.getName());
+		}
+		Entry entry = new Entry();
+		entry._name = utf8(e.getName());
+		if (entry._name.length > 0xFFFF) {
+			throw new IllegalArgumentException("name too long");
+		}
+		if (entry._name.length != e.getName().length()) {
+			entry._flag |= FLAG_UTF8;
+		}
+		entry._method = method;
+		entry._time = dosTime(e.getTime() == -1 ? System.currentTimeMillis() : e.getTime());
+		entry._offset = _written;
+		_entries.add(entry);
+		return entry;
+	}
+
+	private void writeLocalHeader(Entry entry) throws IOException {
+		boolean zip64 = (entry._flag & FLAG_DATA_DESCRIPTOR) == 0
+				&& (entry._size >= ZIP64_MAGIC || entry._compressedSize >= ZIP64_MAGIC);
+		if (zip64) {
+			entry._version = VERSION_ZIP64;
+		}
+		int extraLength = zip64 ? 20 : 0;
+		byte[] header = new byte[30 + entry._name.length + extraLength];
+		int pos = putInt(header, 0, LOCAL_HEADER_SIG);
+		pos = putShort(header, pos, entry._version);
+		pos = putShort(header, pos, entry._flag);
+		pos = putShort(header, pos, entry._method);
+		pos = putInt(header, pos, entry._time);
+		if ((entry._flag & FLAG_DATA_DESCRIPTOR) != 0) {
+			// crc and sizes follow in the data descriptor
+			pos = putInt(header, pos, 0);
+			pos = putInt(header, pos, 0);
+			pos = putInt(header, pos, 0);
+		} else if (zip64) {
+			pos = putInt(header, pos, entry._crc);
+			pos = putInt(header, pos, ZIP64_MAGIC);
+			pos = putInt(header, pos, ZIP64_MAGIC);
+		} else {
+			pos = putInt(header, pos, entry._crc);
+			pos = putInt(header, pos, entry._compressedSize);
+			pos = putInt(header, pos, entry._size);
+		}
+		pos = putShort(header, pos, entry._name.length);
+		pos = putShort(header, pos, extraLength);
+		System.arraycopy(entry._name, 0, header, pos, entry._name.length);
+		pos += entry._name.length;
+		if (zip64) {
+			pos = putShort(header, pos, ZIP64_EXTRA_ID);
+			pos = putShort(header, pos, 16);
+			pos = putLong(header, pos, entry._size);
+			pos = putLong(header, pos, entry._compressedSize);
+		}
+		writeOut(header, 0, pos);
+	}
+
+	private void writeCentralHeader(Entry entry) throws IOException {
+		boolean size64 = entry._size >= ZIP64_MAGIC;
+		boolean compressedSize64 = entry._compressedSize >= ZIP64_MAGIC;
+		boolean offset64 = entry._offset >= ZIP64_MAGIC;
+		int extraLength = 0;
+		if (size64) extraLength += 8;
+		if (compressedSize64) extraLength += 8;
+		if (offset64) extraLength += 8;
+		if (extraLength > 0) {
+			extraLength += 4;
+			entry._version = VERSION_ZIP64;
+		}
+
+		byte[] header = new byte[46 + entry._name.length + extraLength];
+		int pos = putInt(header, 0, CENTRAL_HEADER_SIG);
+		pos = putShort(header, pos, entry._version);  // version made by
+		pos = putShort(header, pos, entry._version);  // version needed to extract
+		pos = putShort(header, pos, entry._flag);
+		pos = putShort(header, pos, entry._method);
+		pos = putInt(header, pos, entry._time);
+		pos = putInt(header, pos, entry._crc);
+		pos = putInt(header, pos, compressedSize64 ? ZIP64_MAGIC : entry._compressedSize);
+		pos = putInt(header, pos, size64 ? ZIP64_MAGIC : entry._size);
+		pos = putShort(header, pos, entry._name.length);
+		pos = putShort(header, pos, extraLength);
+		pos = putShort(header, pos, 0);  // comment length
+		pos = putShort(header, pos, 0);  // disk number
+		pos = putShort(header, pos, 0);  // internal attributes
+		pos = putInt(header, pos, 0);    // external attributes
+		pos = putInt(header, pos, offset64 ? ZIP64_MAGIC : entry._offset);
+		System.arraycopy(entry._name, 0, header, pos, entry._name.length);
+		pos += entry._name.length;
+		if (extraLength > 0) {
+			pos = putShort(header, pos, ZIP64_EXTRA_ID);
+			pos = putShort(header, pos, extraLength - 4);
+			if (size64) pos = putLong(header, pos, entry._size);
+			if (compressedSize64) pos = putLong(header, pos, entry._compressedSize);
+			if (offset64) pos = putLong(header, pos, entry._offset);
+		}
+		writeOut(header, 0, pos);
+	}
+
+	private void deflateBuffer() throws IOException {
+		int count = _deflater.deflate(_buf, 0, _buf.length);
+		if (count > 0) {
+			writeOut(_buf, 0, count);
+		}
+	}
+
+	private void writeOut(byte[] b, int off, int len) throws IOException {
+		out.write(b, off, len);
+		_written += len;
+	}
+
+	private static byte[] utf8(String s) {
+		try {
+			return s.getBytes("UTF-8");
+		} catch (java.io.UnsupportedEncodingException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	private static long dosTime(long time) {
+		Calendar cal = Calendar.getInstance();
+		cal.setTimeInMillis(time);
+		int year = cal.get(Calendar.YEAR);
+		if (year < 1980) {
+			return (1 << 21) | (1 << 16);
+		}
+		return (long)(year - 1980) << 25
+				| (cal.get(Calendar.MONTH) + 1) << 21
+				| cal.get(Calendar.DAY_OF_MONTH) << 16
+				| cal.get(Calendar.HOUR_OF_DAY) << 11
+				| cal.get(Calendar.MINUTE) << 5
+				| cal.get(Calendar.SECOND) >> 1;
+	}
+
+	private static int putShort(byte[] b, int pos, int v) {
+		b[pos] = (byte)v;
+		b[pos + 1] = (byte)(v >>> 8);
+		return pos + 2;
+	}
+
+	private static int putInt(byte[] b, int pos, long v) {
+		for (int i = 0; i < 4; i++) {
+			b[pos + i] = (byte)(v >>> (8 * i));
+		}
+		return pos + 4;
+	}
+
+	private static int putLong(byte[] b, int pos, long v) {
+		for (int i = 0; i < 8; i++) {
+			b[pos + i] = (byte)(v >>> (8 * i));
+		}
+		return pos + 8;
+	}
+
+	/**
+	 * What the central directory needs to know about an entry
+	 */
+	private static final class Entry {
+		byte[] _name;
+		int _version = VERSION_DEFAULT;
+		int _flag;
+		int _method;
+		long _time;
+		long _crc;
+		long _size;
+		long _compressedSize;
+		/** position of the local header */
+		long _offset;
+		/** position of the data of a stored entry */
+		long _dataStart;
+	}
+}
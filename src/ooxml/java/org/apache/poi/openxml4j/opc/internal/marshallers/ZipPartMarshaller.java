@@ -36,10 +36,17 @@ import org.apache.poi.openxml4j.opc.PackagePartName;
 import org.apache.poi.openxml4j.opc.PackageRelationship;
 import org.apache.poi.openxml4j.opc.PackageRelationshipCollection;
 import org.apache.poi.openxml4j.opc.PackagingURIHelper;
+import org.apache.poi.openxml4j.opc.PartContentWriter;
 import org.apache.poi.openxml4j.opc.StreamHelper;
 import org.apache.poi.openxml4j.opc.TargetMode;
+import org.apache.poi.openxml4j.opc.ZipPackage;
+import org.apache.poi.openxml4j.opc.ZipPackagePart;
+import org.apache.poi.openxml4j.opc.internal.MemoryPackagePart;
 import org.apache.poi.openxml4j.opc.internal.PartMarshaller;
+import org.apache.poi.openxml4j.opc.internal.RawZipOutputStream;
 import org.apache.poi.openxml4j.opc.internal.ZipHelper;
+import org.apache.poi.openxml4j.util.ZipEntrySource;
+import org.apache.poi.openxml4j.util.ZipFileZipEntrySource;
 import org.apache.poi.util.POILogger;
 import org.apache.poi.util.POILogFactory;
 
@@ -71,21 +78,30 @@ public final class ZipPartMarshaller implements PartMarshaller {
 				.getZipItemNameFromOPCName(part.getPartName().getURI()
 						.getPath()));
 		try {
-			// Create next zip entry
-			zos.putNextEntry(partEntry);
-
-			// Saving data in the ZIP file
-			InputStream ins = part.getInputStream();
-			byte[] buff = new byte[ZipHelper.READ_WRITE_FILE_BUFFER_SIZE];
-			while (ins.available() > 0) {
-				int resultRead = ins.read(buff);
-				if (resultRead == -1) {
-					// End of file reached
-					break;
+			if (!copyRawEntry(part, partEntry, zos)) {
+				// Create next zip entry
+				zos.putNextEntry(partEntry);
+
+				PartContentWriter writer = part instanceof MemoryPackagePart
+						? ((MemoryPackagePart) part).getContentWriter() : null;
+				if (writer != null) {
+					// Stream the content into the entry without buffering it
+					writer.write(new EntryOutputStream(zos));
+				} else {
+					// Saving data in the ZIP file
+					InputStream ins = part.getInputStream();
+					byte[] buff = new byte[ZipHelper.READ_WRITE_FILE_BUFFER_SIZE];
+					while (ins.available() > 0) {
+						int resultRead = ins.read(buff);
+						if (resultRead == -1) {
+							// End of file reached
+							break;
+						}
+						zos.write(buff, 0, resultRead);
+					}
 				}
-				zos.write(buff, 0, resultRead);
+				zos.closeEntry();
 			}
-			zos.closeEntry();
 		} catch (IOException ioe) {
 			logger.log(POILogger.ERROR,"Cannot write: " + part.getPartName() + ": in ZIP",
 					ioe);
@@ -104,6 +120,43 @@ public final class ZipPartMarshaller implements PartMarshaller {
 		return true;
 	}
 
+	/**
+	 * Copies the data of a part which is still backed by the zip file the
+	 * package was read from as it is, without inflating and deflating it again.
+	 *
+	 * @return <code>false</code> if the part has to be written as usual
+	 */
+	private static boolean copyRawEntry(PackagePart part, ZipEntry partEntry,
+			ZipOutputStream zos) throws IOException {
+		if (!(part instanceof ZipPackagePart) || !(zos instanceof RawZipOutputStream)
+				|| !(part.getPackage() instanceof ZipPackage)) {
+			return false;
+		}
+		ZipEntrySource source = ((ZipPackage) part.getPackage()).getZipArchive();
+		if (!(source instanceof ZipFileZipEntrySource)) {
+			// the entries of a package read from a stream are inflated in memory
+			return false;
+		}
+		ZipEntry original = ((ZipPackagePart) part).getZipArchive();
+		InputStream raw = ((ZipFileZipEntrySource) source).getRawInputStream(original);
+		if (raw == null) {
+			return false;
+		}
+		try {
+			partEntry.setMethod(original.getMethod());
+			partEntry.setCrc(original.getCrc());
+			partEntry.setSize(original.getSize());
+			partEntry.setCompressedSize(original.getCompressedSize());
+			if (original.getTime() != -1) {
+				partEntry.setTime(original.getTime());
+			}
+			((RawZipOutputStream) zos).writeRawEntry(partEntry, raw);
+		} finally {
+			raw.close();
+		}
+		return true;
+	}
+
 	/**
 	 * Save relationships into the part.
 	 *
@@ -189,4 +242,36 @@ public final class ZipPartMarshaller implements PartMarshaller {
 		}
 		return true; // success
 	}
+
+	/**
+	 * Passes the content written by a {@link PartContentWriter} to the current
+	 * zip entry. Closing it leaves the zip stream open.
+	 */
+	private static final class EntryOutputStream extends OutputStream {
+		private final ZipOutputStream _zos;
+
+		EntryOutputStream(ZipOutputStream zos) {
+			_zos = zos;
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			_zos.write(b);
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			_zos.write(b, off, len);
+		}
+
+		@Override
+		public void flush() throws IOException {
+			_zos.flush();
+		}
+
+		@Override
+		public void close() {
+			// the entry is closed by the marshaller
+		}
+	}
 }
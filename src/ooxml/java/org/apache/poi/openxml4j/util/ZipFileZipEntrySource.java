@@ -16,9 +16,13 @@
 ==================================================================== */
 package org.apache.poi.openxml4j.util;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.RandomAccessFile;
 import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
 
@@ -28,7 +32,19 @@ import java.util.zip.ZipFile;
  *  normal ZipFile implementation is.
  */
 public class ZipFileZipEntrySource implements ZipEntrySource {
+   private static final int LOCAL_HEADER_SIG = 0x04034b50;
+   private static final int CENTRAL_HEADER_SIG = 0x02014b50;
+   private static final int ZIP64_LOCATOR_SIG = 0x07064b50;
+   private static final int ZIP64_END_SIG = 0x06064b50;
+   private static final int END_SIG = 0x06054b50;
+   private static final long ZIP64_MAGIC = 0xFFFFFFFFL;
+
    private ZipFile zipArchive;
+
+   /** the zip file read by {@link #getRawInputStream(ZipEntry)}, opened on first use */
+   private RandomAccessFile rawFile;
+   /** positions of the local headers keyed by entry name, empty if the file can't be read */
+   private Map<String, Long> localHeaders;
    public ZipFileZipEntrySource(ZipFile zipFile) {
       this.zipArchive = zipFile;
    }
@@ -38,6 +54,13 @@ public class ZipFileZipEntrySource implements ZipEntrySource {
          zipArchive.close();
       }
       zipArchive = null;
+      synchronized (this) {
+         if(rawFile != null) {
+            rawFile.close();
+         }
+         rawFile = null;
+         localHeaders = null;
+      }
    }
 
    public Enumeration<? extends ZipEntry> getEntries() {
@@ -53,4 +76,196 @@ public class ZipFileZipEntrySource implements ZipEntrySource {
       
       return zipArchive.getInputStream(entry);
    }
+
+   /**
+    * Returns the data of the entry as it is stored in the zip file, without
+    *  inflating it. Together with the method, crc and sizes of the entry this
+    *  lets an unmodified entry be copied into another zip file as it is.
+    *
+    * @return exactly <code>entry.getCompressedSize()</code> bytes, or
+    *  <code>null</code> if the data can't be located, e.g. because the entry
+    *  is encrypted or the file has changed since it was opened
+    */
+   public synchronized InputStream getRawInputStream(ZipEntry entry) throws IOException {
+      if (zipArchive == null)
+         throw new IllegalStateException("Zip File is closed");
+
+      int method = entry.getMethod();
+      if ((method != ZipEntry.DEFLATED && method != ZipEntry.STORED)
+            || entry.getCompressedSize() < 0 || entry.getSize() < 0 || entry.getCrc() < 0) {
+         return null;
+      }
+      if (localHeaders == null) {
+         rawFile = new RandomAccessFile(new File(zipArchive.getName()), "r");
+         localHeaders = readLocalHeaderPositions(rawFile);
+      }
+      Long offset = localHeaders.get(entry.getName());
+      if (offset == null) {
+         return null;
+      }
+
+      byte[] header = new byte[30];
+      rawFile.seek(offset.longValue());
+      rawFile.readFully(header);
+      int flag = getShort(header, 6);
+      if (getInt(header, 0) != LOCAL_HEADER_SIG || (flag & 1) != 0
+            || getShort(header, 8) != method) {
+         // not the entry found by the central directory or encrypted
+         return null;
+      }
+      byte[] name = new byte[getShort(header, 26)];
+      rawFile.readFully(name);
+      if (!entry.getName().equals(new String(name, "UTF-8"))) {
+         return null;
+      }
+      long dataStart = offset.longValue() + 30 + name.length + getShort(header, 28);
+      if (dataStart + entry.getCompressedSize() > rawFile.length()) {
+         return null;
+      }
+      return new RawEntryInputStream(dataStart, entry.getCompressedSize());
+   }
+
+   /**
+    * Reads the positions of the local headers from the central directory,
+    *  including the Zip64 records of large files
+    */
+   private static Map<String, Long> readLocalHeaderPositions(RandomAccessFile raf) throws IOException {
+      Map<String, Long> positions = new HashMap<String, Long>();
+      long length = raf.length();
+
+      // the end of central directory record is followed by a comment of up to 64k
+      int tailLength = (int)Math.min(length, 22 + 0xFFFF);
+      byte[] tail = new byte[tailLength];
+      raf.seek(length - tailLength);
+      raf.readFully(tail);
+      int end = -1;
+      for (int i = tailLength - 22; i >= 0; i--) {
+         if (getInt(tail, i) == END_SIG && i + 22 + getShort(tail, i + 20) == tailLength) {
+            end = i;
+            break;
+         }
+      }
+      if (end == -1) {
+         return positions;
+      }
+      long count = getShort(tail, end + 10);
+      long centralLength = getInt(tail, end + 12) & ZIP64_MAGIC;
+      long centralStart = getInt(tail, end + 16) & ZIP64_MAGIC;
+      if (count == 0xFFFF || centralLength == ZIP64_MAGIC || centralStart == ZIP64_MAGIC) {
+         long locator = length - tailLength + end - 20;
+         if (locator < 0) {
+            return positions;
+         }
+         byte[] buf = new byte[56];
+         raf.seek(locator);
+         raf.readFully(buf, 0, 20);
+         if (getInt(buf, 0) != ZIP64_LOCATOR_SIG) {
+            return positions;
+         }
+         raf.seek(getLong(buf, 8));
+         raf.readFully(buf, 0, 56);
+         if (getInt(buf, 0) != ZIP64_END_SIG) {
+            return positions;
+         }
+         centralLength = getLong(buf, 40);
+         centralStart = getLong(buf, 48);
+      }
+      if (centralLength > Integer.MAX_VALUE || centralStart + centralLength > length) {
+         return positions;
+      }
+
+      byte[] central = new byte[(int)centralLength];
+      raf.seek(centralStart);
+      raf.readFully(central);
+      int pos = 0;
+      while (pos + 46 <= central.length && getInt(central, pos) == CENTRAL_HEADER_SIG) {
+         int nameLength = getShort(central, pos + 28);
+         int extraLength = getShort(central, pos + 30);
+         int commentLength = getShort(central, pos + 32);
+         if (pos + 46 + nameLength + extraLength > central.length) {
+            break;
+         }
+         String name = new String(central, pos + 46, nameLength, "UTF-8");
+         long offset = getInt(central, pos + 42) & ZIP64_MAGIC;
+         if (offset == ZIP64_MAGIC) {
+            offset = zip64Offset(central, pos);
+         }
+         if (offset >= 0) {
+            positions.put(name, Long.valueOf(offset));
+         }
+         pos += 46 + nameLength + extraLength + commentLength;
+      }
+      return positions;
+   }
+
+   /**
+    * @return the local header position held by the Zip64 extra field of a central
+    *  directory header, -1 if there is none
+    */
+   private static long zip64Offset(byte[] central, int header) {
+      int extra = header + 46 + getShort(central, header + 28);
+      int extraEnd = extra + getShort(central, header + 30);
+      while (extra + 4 <= extraEnd) {
+         int id = getShort(central, extra);
+         int size = getShort(central, extra + 2);
+         if (id == 0x0001) {
+            // the 64 bit values present are the size, the compressed size and the offset
+            int value = extra + 4;
+            if ((getInt(central, header + 24) & ZIP64_MAGIC) == ZIP64_MAGIC) value += 8;
+            if ((getInt(central, header + 20) & ZIP64_MAGIC) == ZIP64_MAGIC) value += 8;
+            return value + 8 <= extraEnd ? getLong(central, value) : -1;
+         }
+         extra += 4 + size;
+      }
+      return -1;
+   }
+
+   private static int getShort(byte[] b, int pos) {
+      return (b[pos] & 0xFF) | (b[pos + 1] & 0xFF) << 8;
+   }
+
+   private static int getInt(byte[] b, int pos) {
+      return getShort(b, pos) | getShort(b, pos + 2) << 16;
+   }
+
+   private static long getLong(byte[] b, int pos) {
+      return (getInt(b, pos) & ZIP64_MAGIC) | (long)getInt(b, pos + 4) << 32;
+   }
+
+   /**
+    * Reads a range of the zip file, shares the file with the other streams
+    */
+   private final class RawEntryInputStream extends InputStream {
+      private long position;
+      private long remaining;
+
+      RawEntryInputStream(long position, long length) {
+         this.position = position;
+         this.remaining = length;
+      }
+
+      @Override
+      public int read() throws IOException {
+         byte[] b = new byte[1];
+         return read(b, 0, 1) == -1 ? -1 : b[0] & 0xFF;
+      }
+
+      @Override
+      public int read(byte[] b, int off, int len) throws IOException {
+         if (remaining <= 0) {
+            return -1;
+         }
+         synchronized (ZipFileZipEntrySource.this) {
+            if (rawFile == null)
+               throw new IllegalStateException("Zip File is closed");
+            rawFile.seek(position);
+            int count = rawFile.read(b, off, (int)Math.min(len, remaining));
+            if (count > 0) {
+               position += count;
+               remaining -= count;
+            }
+            return count;
+         }
+      }
+   }
 }
@@ -0,0 +1,394 @@
+/* ====================================================================
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+==================================================================== */
+
+package org.apache.poi.xssf.eventusermodel;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackagePart;
+import org.apache.poi.util.TempFile;
+import org.apache.poi.xssf.usermodel.XSSFRelation;
+import org.xml.sax.Attributes;
+import org.xml.sax.SAXException;
+
+/**
+ * A {@link ReadOnlySharedStringsTable} for workbooks with very many unique strings.
+ * <p>
+ * Rather than keeping a <code>String</code> per entry, the text of all entries is encoded
+ *  into one byte arena with an offset per entry, which takes about a quarter of the memory
+ *  for mostly ASCII text. The arena lives on the heap, or in a memory-mapped temporary file
+ *  which keeps it out of the heap altogether. Strings are decoded when asked for, and the
+ *  most recently decoded ones are cached.
+ * </p>
+ * <p>
+ * Reading entries is safe from several threads, so one table can serve the handlers of
+ *  all sheets. Call {@link #close()} to remove the temporary file once done.
+ * </p>
+ */
+public class CompactSharedStringsTable extends ReadOnlySharedStringsTable {
+    // the arena is split into pages, so it can grow without copying
+    private static final int HEAP_PAGE_BITS = 20;
+    // and into mappings of up to 1 GB when it is in a file
+    private static final int FILE_PAGE_BITS = 30;
+
+    private static final int CACHE_SIZE = 1024;
+
+    private final boolean useTempFile;
+
+    private int count;
+    private int uniqueCount;
+
+    /**
+     * The number of entries, and where each one starts in the arena.
+     *  offsets[size] is the end of the last one.
+     */
+    private int size;
+    private long[] offsets = new long[1];
+
+    private int pageBits;
+    private byte[][] heapPages;
+    private ByteBuffer[] mappedPages;
+
+    private File file;
+    private OutputStream fileOut;
+
+    private final CachedString[] cache = new CachedString[CACHE_SIZE];
+
+    // used while reading
+    private byte[] encoded;
+    private StringBuilder characters;
+    private boolean tIsOpen;
+
+    /**
+     * Read the shared strings table of the package into a heap arena
+     */
+    public CompactSharedStringsTable(OPCPackage pkg) throws IOException, SAXException {
+        this(pkg, false);
+    }
+
+    /**
+     * @param useTempFile whether the strings are kept in a memory-mapped temporary file
+     *  rather than on the heap
+     */
+    public CompactSharedStringsTable(OPCPackage pkg, boolean useTempFile)
+            throws IOException, SAXException {
+        this.useTempFile = useTempFile;
+        ArrayList<PackagePart> parts =
+                pkg.getPartsByContentType(XSSFRelation.SHARED_STRINGS.getContentType());
+
+        // Some workbooks have no shared strings table.
+        if (parts.size() > 0) {
+            readFrom(parts.get(0).getInputStream());
+        }
+    }
+
+    /**
+     * @param useTempFile whether the strings are kept in a memory-mapped temporary file
+     *  rather than on the heap
+     */
+    public CompactSharedStringsTable(PackagePart part, boolean useTempFile)
+            throws IOException, SAXException {
+        this.useTempFile = useTempFile;
+        readFrom(part.getInputStream());
+    }
+
+    @Override
+    public void readFrom(InputStream is) throws IOException, SAXException {
+        close();
+        count = 0;
+        uniqueCount = 0;
+        size = 0;
+        offsets = new long[1];
+        encoded = new byte[256];
+        if (useTempFile) {
+            pageBits = FILE_PAGE_BITS;
+            file = TempFile.createTempFile("poi-sst-", ".tmp");
+            fileOut = new BufferedOutputStream(new FileOutputStream(file), 65536);
+        } else {
+            pageBits = HEAP_PAGE_BITS;
+            heapPages = new byte[16][];
+        }
+        try {
+            super.readFrom(is);
+        } finally {
+            if (fileOut != null) {
+                fileOut.close();
+                fileOut = null;
+            }
+        }
+        if (useTempFile) {
+            mapFile();
+        }
+        encoded = null;
+        characters = null;
+    }
+
+    /**
+     * Release the strings and remove the temporary file, if there is one
+     */
+    public void close() {
+        heapPages = null;
+        mappedPages = null;
+        for (int i = 0; i < cache.length; i++) {
+            cache[i] = null;
+        }
+        if (fileOut != null) {
+            try {
+                fileOut.close();
+            } catch (IOException e) {
+                // the file is removed anyway
+            }
+            fileOut = null;
+        }
+        if (file != null) {
+            // may fail while the mapping isn't garbage collected yet, the file
+            //  is then removed when the VM exits
+            file.delete();
+            file = null;
+        }
+    }
+
+    @Override
+    public int getCount() {
+        return count;
+    }
+
+    @Override
+    public int getUniqueCount() {
+        return uniqueCount;
+    }
+
+    /**
+     * Return the string at a given index.
+     * Formatting is ignored.
+     *
+     * @param idx index of item to return.
+     * @return the item at the specified position in this Shared String table.
+     */
+    @Override
+    public String getEntryAt(int idx) {
+        if (idx < 0 || idx >= size) {
+            throw new IndexOutOfBoundsException("Index: " + idx + ", Size: " + size);
+        }
+        int slot = idx & (CACHE_SIZE - 1);
+        CachedString cached = cache[slot];
+        if (cached != null && cached.index == idx) {
+            return cached.value;
+        }
+        long start = offsets[idx];
+        byte[] bytes = new byte[(int)(offsets[idx + 1] - start)];
+        read(start, bytes);
+        String value = decode(bytes);
+        cache[slot] = new CachedString(idx, value);
+        return value;
+    }
+
+    /**
+     * @return a read-only view of the strings, which are decoded as they are accessed
+     */
+    @Override
+    public List<String> getItems() {
+        return new AbstractList<String>() {
+            public String get(int index) {
+                return getEntryAt(index);
+            }
+
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    //// ContentHandler methods ////
+
+    @Override
+    public void startElement(String uri, String localName, String name,
+                             Attributes attributes) throws SAXException {
+        if ("sst".equals(name)) {
+            String count = attributes.getValue("count");
+            if(count != null) this.count = Integer.parseInt(count);
+            String uniqueCount = attributes.getValue("uniqueCount");
+            if(uniqueCount != null) this.uniqueCount = Integer.parseInt(uniqueCount);
+
+            offsets = new long[Math.max(this.uniqueCount, 0) + 1];
+            characters = new StringBuilder();
+        } else if ("si".equals(name)) {
+            characters.setLength(0);
+        } else if ("t".equals(name)) {
+            tIsOpen = true;
+        }
+    }
+
+    @Override
+    public void endElement(String uri, String localName, String name)
+            throws SAXException {
+        if ("si".equals(name)) {
+            try {
+                append(characters);
+            } catch (IOException e) {
+                throw new SAXException(e);
+            }
+        } else if ("t".equals(name)) {
+            tIsOpen = false;
+        }
+    }
+
+    /**
+     * Captures characters only if a t(ext) element is open.
+     */
+    @Override
+    public void characters(char[] ch, int start, int length)
+            throws SAXException {
+        if (tIsOpen)
+            characters.append(ch, start, length);
+    }
+
+    /**
+     * Encode a string into the arena. Characters take one to three bytes like in UTF-8,
+     *  surrogates are encoded one by one so that any text comes back unchanged.
+     */
+    private void append(CharSequence text) throws IOException {
+        int len = text.length();
+        if (encoded.length < len * 3) {
+            encoded = new byte[Math.max(len * 3, encoded.length * 2)];
+        }
+        int n = 0;
+        for (int i = 0; i < len; i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                encoded[n++] = (byte)c;
+            } else if (c < 0x800) {
+                encoded[n++] = (byte)(0xC0 | (c >> 6));
+                encoded[n++] = (byte)(0x80 | (c & 0x3F));
+            } else {
+                encoded[n++] = (byte)(0xE0 | (c >> 12));
+                encoded[n++] = (byte)(0x80 | ((c >> 6) & 0x3F));
+                encoded[n++] = (byte)(0x80 | (c & 0x3F));
+            }
+        }
+        long start = offsets[size];
+        write(start, encoded, n);
+
+        if (size + 1 == offsets.length) {
+            long[] grown = new long[offsets.length * 2];
+            System.arraycopy(offsets, 0, grown, 0, offsets.length);
+            offsets = grown;
+        }
+        offsets[++size] = start + n;
+    }
+
+    private void write(long position, byte[] b, int len) throws IOException {
+        if (fileOut != null) {
+            fileOut.write(b, 0, len);
+            return;
+        }
+        int pageSize = 1 << pageBits;
+        int done = 0;
+        while (done < len) {
+            int page = (int)(position >>> pageBits);
+            int pos = (int)(position & (pageSize - 1));
+            if (page == heapPages.length) {
+                byte[][] grown = new byte[heapPages.length * 2][];
+                System.arraycopy(heapPages, 0, grown, 0, heapPages.length);
+                heapPages = grown;
+            }
+            if (heapPages[page] == null) {
+                heapPages[page] = new byte[pageSize];
+            }
+            int n = Math.min(len - done, pageSize - pos);
+            System.arraycopy(b, done, heapPages[page], pos, n);
+            done += n;
+            position += n;
+        }
+    }
+
+    private void read(long position, byte[] b) {
+        int pageSize = 1 << pageBits;
+        int done = 0;
+        while (done < b.length) {
+            int page = (int)(position >>> pageBits);
+            int pos = (int)(position & (pageSize - 1));
+            int n = Math.min(b.length - done, pageSize - pos);
+            if (heapPages != null) {
+                System.arraycopy(heapPages[page], pos, b, done, n);
+            } else {
+                // a view of its own, the mapping is shared between threads
+                ByteBuffer buf = mappedPages[page].duplicate();
+                buf.position(pos);
+                buf.get(b, done, n);
+            }
+            done += n;
+            position += n;
+        }
+    }
+
+    private static String decode(byte[] b) {
+        char[] chars = new char[b.length];
+        int n = 0;
+        for (int i = 0; i < b.length; ) {
+            int c = b[i++] & 0xFF;
+            if (c < 0x80) {
+                chars[n++] = (char)c;
+            } else if (c < 0xE0) {
+                chars[n++] = (char)(((c & 0x1F) << 6) | (b[i++] & 0x3F));
+            } else {
+                chars[n++] = (char)(((c & 0x0F) << 12) | ((b[i++] & 0x3F) << 6) | (b[i++] & 0x3F));
+            }
+        }
+        return new String(chars, 0, n);
+    }
+
+    private void mapFile() throws IOException {
+        long length = offsets[size];
+        int pageSize = 1 << pageBits;
+        mappedPages = new ByteBuffer[(int)((length + pageSize - 1) >>> pageBits)];
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            for (int i = 0; i < mappedPages.length; i++) {
+                long start = (long)i << pageBits;
+                mappedPages[i] = channel.map(FileChannel.MapMode.READ_ONLY,
+                        start, Math.min(pageSize, length - start));
+            }
+        } finally {
+            // the mappings stay valid
+            raf.close();
+        }
+    }
+
+    private static final class CachedString {
+        final int index;
+        final String value;
+
+        CachedString(int index, String value) {
+            this.index = index;
+            this.value = value;
+        }
+    }
+}
@@ -95,6 +95,13 @@ public class ReadOnlySharedStringsTable extends DefaultHandler {
      */
     private List<String> strings;
 
+    /**
+     * For subclasses which store the strings themselves. They read the table
+     *  with {@link #readFrom(InputStream)} once they are set up.
+     */
+    protected ReadOnlySharedStringsTable() {
+    }
+
     /**
      * @param pkg
      * @throws IOException
@@ -0,0 +1,210 @@
+/* ====================================================================
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+==================================================================== */
+
+package org.apache.poi.xssf.eventusermodel;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.poi.ss.SpreadsheetVersion;
+import org.apache.poi.ss.formula.EvaluationName;
+import org.apache.poi.ss.formula.EvaluationWorkbook.ExternalSheet;
+import org.apache.poi.ss.formula.FormulaParseException;
+import org.apache.poi.ss.formula.FormulaParser;
+import org.apache.poi.ss.formula.FormulaParsingWorkbook;
+import org.apache.poi.ss.formula.FormulaRenderer;
+import org.apache.poi.ss.formula.FormulaRenderingWorkbook;
+import org.apache.poi.ss.formula.FormulaType;
+import org.apache.poi.ss.formula.SharedFormula;
+import org.apache.poi.ss.formula.ptg.NamePtg;
+import org.apache.poi.ss.formula.ptg.NameXPtg;
+import org.apache.poi.ss.formula.ptg.Ptg;
+import org.apache.poi.ss.util.CellRangeAddress;
+import org.apache.poi.util.POILogFactory;
+import org.apache.poi.util.POILogger;
+
+/**
+ * Remembers the shared formulas of a sheet while it is streamed, and renders the formula
+ *  of the cells which use them.
+ * <p>
+ * The formula of the master cell is parsed when it is first needed and the tokens are
+ *  kept, every dependent cell only shifts and renders them. The workbook isn't loaded, so
+ *  sheet names and defined names are carried over as they are written rather than looked up.
+ * </p>
+ */
+final class SharedFormulaTable {
+    private static final POILogger logger = POILogFactory.getLogger(SharedFormulaTable.class);
+    private static final SharedFormula SHIFTER = new SharedFormula(SpreadsheetVersion.EXCEL2007);
+
+    private final Map<String, Master> masters = new HashMap<String, Master>();
+    private final NameRecordingWorkbook workbook = new NameRecordingWorkbook();
+
+    /**
+     * Record the shared formula defined by a master cell
+     *
+     * @param si the shared index of the formula
+     * @param ref the range of cells sharing the formula
+     * @param formula the formula of the master cell
+     */
+    void addMaster(String si, String ref, String formula) {
+        CellRangeAddress range = CellRangeAddress.valueOf(ref);
+        masters.put(si, new Master(formula, range.getFirstRow(), range.getFirstColumn()));
+    }
+
+    /**
+     * @param si the shared index of the formula
+     * @param rowNum the 0-based row of the cell using it
+     * @param column the 0-based column of the cell using it
+     * @return the formula of the cell or <code>null</code> if the shared formula isn't known
+     *  or can't be parsed
+     */
+    String getFormula(String si, int rowNum, int column) {
+        Master master = masters.get(si);
+        if (master == null) {
+            logger.log(POILogger.WARN, "Shared formula " + si + " was not found");
+            return null;
+        }
+        if (master.ptgs == null) {
+            if (master.failed) return null;
+            try {
+                master.ptgs = FormulaParser.parse(master.formula, workbook, FormulaType.CELL, 0);
+            } catch (FormulaParseException e) {
+                logger.log(POILogger.WARN, "Shared formula '" + master.formula
+                        + "' can't be parsed: " + e.getMessage());
+                master.failed = true;
+                return null;
+            }
+        }
+        Ptg[] ptgs = SHIFTER.convertSharedFormulas(master.ptgs,
+                rowNum - master.firstRow, column - master.firstColumn);
+        return FormulaRenderer.toFormulaString(workbook, ptgs);
+    }
+
+    private static final class Master {
+        final String formula;
+        final int firstRow;
+        final int firstColumn;
+        Ptg[] ptgs;
+        boolean failed;
+
+        Master(String formula, int firstRow, int firstColumn) {
+            this.formula = formula;
+            this.firstRow = firstRow;
+            this.firstColumn = firstColumn;
+        }
+    }
+
+    /**
+     * Gives every sheet and defined name an index as the parser asks for it, so that
+     *  the renderer writes them back unchanged
+     */
+    private static final class NameRecordingWorkbook
+            implements FormulaParsingWorkbook, FormulaRenderingWorkbook {
+        private final List<ExternalSheet> sheets = new ArrayList<ExternalSheet>();
+        private final Map<String, Integer> sheetIndexes = new HashMap<String, Integer>();
+        private final List<String> names = new ArrayList<String>();
+        private final Map<String, Integer> nameIndexes = new HashMap<String, Integer>();
+
+        public EvaluationName getName(String name, int sheetIndex) {
+            String key = name.toUpperCase();
+            Integer index = nameIndexes.get(key);
+            if (index == null) {
+                index = Integer.valueOf(names.size());
+                names.add(name);
+                nameIndexes.put(key, index);
+            }
+            return new RecordedName(name, index.intValue());
+        }
+
+        public NameXPtg getNameXPtg(String name) {
+            // every name is a defined name
+            return null;
+        }
+
+        public int getExternalSheetIndex(String sheetName) {
+            return getExternalSheetIndex(null, sheetName);
+        }
+
+        public int getExternalSheetIndex(String workbookName, String sheetName) {
+            String key = workbookName == null ? sheetName : "[" + workbookName + "]" + sheetName;
+            Integer index = sheetIndexes.get(key);
+            if (index == null) {
+                index = Integer.valueOf(sheets.size());
+                sheets.add(new ExternalSheet(workbookName, sheetName));
+                sheetIndexes.put(key, index);
+            }
+            return index.intValue();
+        }
+
+        public SpreadsheetVersion getSpreadsheetVersion() {
+            return SpreadsheetVersion.EXCEL2007;
+        }
+
+        public ExternalSheet getExternalSheet(int externSheetIndex) {
+            ExternalSheet sheet = sheets.get(externSheetIndex);
+            return sheet.getWorkbookName() == null ? null : sheet;
+        }
+
+        public String getSheetNameByExternSheet(int externSheetIndex) {
+            return sheets.get(externSheetIndex).getSheetName();
+        }
+
+        public String resolveNameXText(NameXPtg nameXPtg) {
+            throw new IllegalStateException("External names are not recorded");
+        }
+
+        public String getNameText(NamePtg namePtg) {
+            return names.get(namePtg.getIndex());
+        }
+    }
+
+    private static final class RecordedName implements EvaluationName {
+        private final String name;
+        private final int index;
+
+        RecordedName(String name, int index) {
+            this.name = name;
+            this.index = index;
+        }
+
+        public String getNameText() {
+            return name;
+        }
+
+        public boolean isFunctionName() {
+            return true;
+        }
+
+        public boolean hasFormula() {
+            return false;
+        }
+
+        public Ptg[] getNameDefinition() {
+            throw new IllegalStateException("The definitions of names are not recorded");
+        }
+
+        public boolean isRange() {
+            return true;
+        }
+
+        public NamePtg createPtg() {
+            return new NamePtg(index);
+        }
+    }
+}
@@ -18,10 +18,22 @@ package org.apache.poi.xssf.eventusermodel;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParserFactory;
 
 import org.apache.poi.POIXMLException;
 import org.apache.poi.openxml4j.exceptions.InvalidFormatException;
@@ -42,6 +54,10 @@ import org.apache.xmlbeans.XmlException;
 import org.openxmlformats.schemas.spreadsheetml.x2006.main.CTSheet;
 import org.openxmlformats.schemas.spreadsheetml.x2006.main.CTWorkbook;
 import org.openxmlformats.schemas.spreadsheetml.x2006.main.WorkbookDocument;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
 
 /**
  * This class makes it easy to get at individual parts
@@ -160,6 +176,131 @@ public class XSSFReader {
         return new SheetIterator(workbookPart);
     }
 
+    /**
+     * Parses several sheets at the same time, each with its own SAX parser and handler.
+     * <p>
+     * The factory creates the handlers one after the other on the calling thread, in the
+     *  order of the sheets in the workbook, before any sheet is parsed. This way the handlers
+     *  can share one {@link StylesTable}, which an {@link XSSFSheetXMLHandler} only reads
+     *  when it is created, and one {@link ReadOnlySharedStringsTable}, which doesn't change
+     *  once read. A <code>DataFormatter</code> must not be shared though.
+     * </p>
+     * <p>
+     * The events of a sheet are delivered to its handler by the thread parsing it. Once a
+     *  sheet fails, the sheets which haven't started yet are skipped, and the first failure
+     *  is thrown when the sheets being parsed are done.
+     * </p>
+     *
+     * @param factory creates the handler of each sheet
+     * @param sheetNames the names of the sheets to parse, or <code>null</code> for all sheets
+     * @param maxThreads the most sheets parsed at the same time
+     */
+    public void processSheets(SheetHandlerFactory factory, Collection<String> sheetNames, int maxThreads)
+            throws IOException, InvalidFormatException, SAXException {
+        if (maxThreads < 1) {
+            throw new IllegalArgumentException("maxThreads must be at least 1, but was " + maxThreads);
+        }
+        List<Callable<Object>> tasks = new ArrayList<Callable<Object>>();
+        SheetIterator it = new SheetIterator(workbookPart);
+        for (int sheetIndex = 0; it.sheetIterator.hasNext(); sheetIndex++) {
+            it.ctSheet = it.sheetIterator.next();
+            String sheetName = it.getSheetName();
+            if (sheetNames == null || sheetNames.contains(sheetName)) {
+                ContentHandler handler = factory.createHandler(sheetIndex, sheetName);
+                tasks.add(new SheetTask(it.getSheetPart(), handler));
+            }
+        }
+        if (tasks.isEmpty()) return;
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(maxThreads, tasks.size()));
+        List<Future<Object>> results = new ArrayList<Future<Object>>();
+        try {
+            for (Callable<Object> task : tasks) {
+                results.add(executor.submit(task));
+            }
+            for (Future<Object> result : results) {
+                result.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while parsing the sheets");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof SAXException) throw (SAXException)cause;
+            if (cause instanceof IOException) throw (IOException)cause;
+            if (cause instanceof RuntimeException) throw (RuntimeException)cause;
+            if (cause instanceof Error) throw (Error)cause;
+            throw new POIXMLException(cause);
+        } finally {
+            for (Future<Object> result : results) {
+                result.cancel(false);
+            }
+            executor.shutdown();
+            awaitTermination(executor);
+        }
+    }
+
+    private static void awaitTermination(ExecutorService executor) {
+        // the handlers must not be called any more once processSheets returns,
+        //  so wait for the running sheets even when interrupted
+        boolean interrupted = Thread.interrupted();
+        while (true) {
+            try {
+                if (executor.awaitTermination(1, TimeUnit.SECONDS)) break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) Thread.currentThread().interrupt();
+    }
+
+    /**
+     * Parses one sheet
+     */
+    private static final class SheetTask implements Callable<Object> {
+        private final PackagePart part;
+        private final ContentHandler handler;
+
+        SheetTask(PackagePart part, ContentHandler handler) {
+            this.part = part;
+            this.handler = handler;
+        }
+
+        public Object call() throws IOException, SAXException {
+            XMLReader parser;
+            try {
+                parser = SAXParserFactory.newInstance().newSAXParser().getXMLReader();
+            } catch (ParserConfigurationException e) {
+                throw new RuntimeException("SAX parser appears to be broken - " + e.getMessage());
+            }
+            parser.setContentHandler(handler);
+
+            InputStream stream;
+            synchronized (part.getPackage()) {
+                stream = part.getInputStream();
+            }
+            try {
+                parser.parse(new InputSource(stream));
+            } finally {
+                stream.close();
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Creates the handlers for {@link XSSFReader#processSheets(SheetHandlerFactory, Collection, int)}
+     */
+    public interface SheetHandlerFactory {
+        /**
+         * @param sheetIndex the 0-based position of the sheet in the workbook
+         * @param sheetName the name of the sheet
+         * @return the handler which receives the events of the sheet, typically
+         *  an {@link XSSFSheetXMLHandler}
+         */
+        ContentHandler createHandler(int sheetIndex, String sheetName);
+    }
+
     /**
      * Iterator over sheet data.
      */
@@ -16,8 +16,12 @@
 ==================================================================== */
 package org.apache.poi.xssf.eventusermodel;
 
+import java.util.Map;
+import java.util.WeakHashMap;
+
 import org.apache.poi.ss.usermodel.BuiltinFormats;
 import org.apache.poi.ss.usermodel.DataFormatter;
+import org.apache.poi.ss.usermodel.DateUtil;
 import org.apache.poi.xssf.model.StylesTable;
 import org.apache.poi.xssf.usermodel.XSSFCellStyle;
 import org.apache.poi.xssf.usermodel.XSSFRichTextString;
@@ -29,6 +33,11 @@ import org.xml.sax.helpers.DefaultHandler;
  * This class handles the processing of a sheet#.xml 
  *  sheet part of a XSSF .xlsx file, and generates
  *  row and cell events for it.
+ * <p>
+ * Cells are reported with their raw, typed values to a {@link SheetValuesHandler}.
+ *  The {@link SheetContentsHandler} constructors wrap the handler in an adapter
+ *  which formats the values like Excel does.
+ * </p>
  */
 public class XSSFSheetXMLHandler extends DefaultHandler {
    /**
@@ -39,23 +48,25 @@ public class XSSFSheetXMLHandler extends DefaultHandler {
    enum xssfDataType {
        BOOLEAN,
        ERROR,
+       /** A formula with a string result */
        FORMULA,
        INLINE_STRING,
        SST_STRING,
        NUMBER,
    }
-   
+
    /**
-    * Table with the styles used for formatting
+    * Powers of ten which are exactly representable as doubles
     */
-   private StylesTable stylesTable;
-
-   private ReadOnlySharedStringsTable sharedStringsTable;
+   private static final double[] POW10 = {
+       1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+       1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+   };
 
    /**
-    * Where our text is going
+    * Where our values are going
     */
-   private final SheetContentsHandler output;
+   private final SheetValuesHandler output;
 
    // Set when V start element is seen
    private boolean vIsOpen;
@@ -63,24 +74,32 @@ public class XSSFSheetXMLHandler extends DefaultHandler {
    private boolean fIsOpen;
    // Set when an Inline String "is" is seen
    private boolean isIsOpen;
+   // Set when the phonetic run of an Inline String is seen
+   private boolean rPhIsOpen;
    // Set when a header/footer element is seen
    private boolean hfIsOpen;
 
    // Set when cell start element is seen;
    // used when cell close element is seen.
    private xssfDataType nextDataType;
+   private boolean cellHasFormula;
+   private boolean cellHasValue;
+
+   // The shared formulas seen so far, and the one used by the current cell
+   private final SharedFormulaTable sharedFormulas = new SharedFormulaTable();
+   private final SharedFormulaText sharedFormulaText = new SharedFormulaText();
+   private String sharedFormulaIndex;
+   private String sharedFormulaRef;
 
-   // Used to format numeric cell values.
-   private short formatIndex;
-   private String formatString;
-   private final DataFormatter formatter;
+   private int rowNum = -1;
+   private int colNum = -1;
+   private int styleIndex = -1;
    private String cellRef;
-   private boolean formulasNotResults;
 
    // Gathers characters as they are seen.
-   private StringBuffer value = new StringBuffer();
-   private StringBuffer formula = new StringBuffer();
-   private StringBuffer headerFooter = new StringBuffer();
+   private final StringBuilder value = new StringBuilder();
+   private final StringBuilder formula = new StringBuilder();
+   private final StringBuilder headerFooter = new StringBuilder();
 
    /**
     * Accepts objects needed while parsing.
@@ -94,12 +113,9 @@ public class XSSFSheetXMLHandler extends DefaultHandler {
            SheetContentsHandler sheetContentsHandler,
            DataFormatter dataFormatter,
            boolean formulasNotResults) {
-       this.stylesTable = styles;
-       this.sharedStringsTable = strings;
-       this.output = sheetContentsHandler;
-       this.formulasNotResults = formulasNotResults;
+       this.output = new FormattingAdapter(
+             styles, strings, sheetContentsHandler, dataFormatter, formulasNotResults);
        this.nextDataType = xssfDataType.NUMBER;
-       this.formatter = dataFormatter;
    }
    /**
     * Accepts objects needed while parsing.
@@ -115,6 +131,17 @@ public class XSSFSheetXMLHandler extends DefaultHandler {
        this(styles, strings, sheetContentsHandler, new DataFormatter(), formulasNotResults);
    }
 
+   /**
+    * Reports the raw cell values without formatting them. Neither styles nor
+    *  shared strings are looked up, the handler receives their indexes.
+    *
+    * @param valuesHandler receives the rows and cells of the sheet
+    */
+   public XSSFSheetXMLHandler(SheetValuesHandler valuesHandler) {
+       this.output = valuesHandler;
+       this.nextDataType = xssfDataType.NUMBER;
+   }
+
    private boolean isTextTag(String name) {
       if("v".equals(name)) {
          // Easy, normal v text tag
@@ -124,8 +151,8 @@ public class XSSFSheetXMLHandler extends DefaultHandler {
          // Easy inline string
          return true;
       }
-      if("t".equals(name) && isIsOpen) {
-         // Inline string <is><t>...</t></is> pair
+      if("t".equals(name) && isIsOpen && !rPhIsOpen) {
+         // Inline string <is><t>...</t></is> pair, or one of its runs
          return true;
       }
       // It isn't a text tag
@@ -137,41 +164,37 @@ public class XSSFSheetXMLHandler extends DefaultHandler {
 
        if (isTextTag(name)) {
            vIsOpen = true;
-           // Clear contents cache
-           value.setLength(0);
+           if (!isIsOpen) {
+              // Clear contents cache, the runs of an inline string are joined
+              value.setLength(0);
+           }
        } else if ("is".equals(name)) {
           // Inline string outer tag
           isIsOpen = true;
+          value.setLength(0);
+       } else if ("rPh".equals(name)) {
+          rPhIsOpen = true;
        } else if ("f".equals(name)) {
           // Clear contents cache
           formula.setLength(0);
           
-          // Mark us as being a formula if not already
-          if(nextDataType == xssfDataType.NUMBER) {
-             nextDataType = xssfDataType.FORMULA;
-          }
+          // Mark us as being a formula
+          cellHasFormula = true;
           
           // Decide where to get the formula string from
           String type = attributes.getValue("t");
           if(type != null && type.equals("shared")) {
              // Is it the one that defines the shared, or uses it?
-             String ref = attributes.getValue("ref");
-             String si = attributes.getValue("si");
+             sharedFormulaIndex = attributes.getValue("si");
+             sharedFormulaRef = attributes.getValue("ref");
              
-             if(ref != null) {
-                // This one defines it
-                // TODO Save it somewhere
+             if(sharedFormulaRef != null) {
+                // This one defines it, remember it once the text is in
                 fIsOpen = true;
              } else {
-                // This one uses a shared formula
-                // TODO Retrieve the shared formula and tweak it to 
-                //  match the current cell
-                if(formulasNotResults) {
-                   System.err.println("Warning - shared formulas not yet supported!");
-                } else {
-                   // It's a shared formula, so we can't get at the formula string yet
-                   // However, they don't care about the formula string, so that's ok!
-                }
+                // This one uses a shared formula, it is shifted to
+                //  match the current cell when asked for
+                sharedFormulaText.use(sharedFormulaIndex);
              }
           } else {
              fIsOpen = true;
@@ -185,18 +208,25 @@ public class XSSFSheetXMLHandler extends DefaultHandler {
           headerFooter.setLength(0);
        }
        else if("row".equals(name)) {
-           int rowNum = Integer.parseInt(attributes.getValue("r")) - 1;
+           String r = attributes.getValue("r");
+           rowNum = r == null ? rowNum + 1 : Integer.parseInt(r) - 1;
+           colNum = -1;
            output.startRow(rowNum);
        }
        // c => cell
        else if ("c".equals(name)) {
            // Set up defaults.
            this.nextDataType = xssfDataType.NUMBER;
-           this.formatIndex = -1;
-           this.formatString = null;
+           this.cellHasFormula = false;
+           this.cellHasValue = false;
+           sharedFormulaText.use(null);
+           value.setLength(0);
+           formula.setLength(0);
            cellRef = attributes.getValue("r");
-           String cellType = attributes.getValue("t");
+           colNum = cellRef == null ? colNum + 1 : parseColumn(cellRef);
            String cellStyleStr = attributes.getValue("s");
+           styleIndex = cellStyleStr == null ? -1 : Integer.parseInt(cellStyleStr);
+           String cellType = attributes.getValue("t");
            if ("b".equals(cellType))
                nextDataType = xssfDataType.BOOLEAN;
            else if ("e".equals(cellType))
@@ -207,98 +237,33 @@ public class XSSFSheetXMLHandler extends DefaultHandler {
                nextDataType = xssfDataType.SST_STRING;
            else if ("str".equals(cellType))
                nextDataType = xssfDataType.FORMULA;
-           else if (cellStyleStr != null) {
-              // Number, but almost certainly with a special style or format
-               int styleIndex = Integer.parseInt(cellStyleStr);
-               XSSFCellStyle style = stylesTable.getStyleAt(styleIndex);
-               this.formatIndex = style.getDataFormat();
-               this.formatString = style.getDataFormatString();
-               if (this.formatString == null)
-                   this.formatString = BuiltinFormats.getBuiltinFormat(this.formatIndex);
-           }
        }
    }
 
    public void endElement(String uri, String localName, String name)
            throws SAXException {
-       String thisStr = null;
-
        // v => contents of a cell
        if (isTextTag(name)) {
            vIsOpen = false;
-           
-           // Process the value contents as required, now we have it all
-           switch (nextDataType) {
-               case BOOLEAN:
-                   char first = value.charAt(0);
-                   thisStr = first == '0' ? "FALSE" : "TRUE";
-                   break;
-
-               case ERROR:
-                   thisStr = "ERROR:" + value.toString();
-                   break;
-
-               case FORMULA:
-                   if(formulasNotResults) {
-                      thisStr = formula.toString();
-                   } else {
-                      String fv = value.toString();
-                      
-                      if (this.formatString != null) {
-                         try {
-                            // Try to use the value as a formattable number
-                            double d = Double.parseDouble(fv);
-                            thisStr = formatter.formatRawCellContents(d, this.formatIndex, this.formatString);
-                         } catch(NumberFormatException e) {
-                            // Formula is a String result not a Numeric one
-                            thisStr = fv;
-                         }
-                      } else {
-                         // No formating applied, just do raw value in all cases
-                         thisStr = fv;
-                      }
-                   }
-                   break;
-
-               case INLINE_STRING:
-                   // TODO: Can these ever have formatting on them?
-                   XSSFRichTextString rtsi = new XSSFRichTextString(value.toString());
-                   thisStr = rtsi.toString();
-                   break;
-
-               case SST_STRING:
-                   String sstIndex = value.toString();
-                   try {
-                       int idx = Integer.parseInt(sstIndex);
-                       XSSFRichTextString rtss = new XSSFRichTextString(sharedStringsTable.getEntryAt(idx));
-                       thisStr = rtss.toString();
-                   }
-                   catch (NumberFormatException ex) {
-                       System.err.println("Failed to parse SST index '" + sstIndex + "': " + ex.toString());
-                   }
-                   break;
-
-               case NUMBER:
-                   String n = value.toString();
-                   if (this.formatString != null)
-                       thisStr = formatter.formatRawCellContents(Double.parseDouble(n), this.formatIndex, this.formatString);
-                   else
-                       thisStr = n;
-                   break;
-
-               default:
-                   thisStr = "(TODO: Unexpected type: " + nextDataType + ")";
-                   break;
+           cellHasValue = true;
+       } else if ("c".equals(name)) {
+           // Output, now we have the value and the formula
+           if (cellHasValue) {
+              outputCell();
            }
-           
-           // Output
-           output.cell(cellRef, thisStr);
        } else if ("f".equals(name)) {
+          if (fIsOpen && sharedFormulaRef != null && sharedFormulaIndex != null) {
+             sharedFormulas.addMaster(sharedFormulaIndex, sharedFormulaRef, formula.toString());
+          }
           fIsOpen = false;
+          sharedFormulaIndex = null;
+          sharedFormulaRef = null;
+       } else if ("rPh".equals(name)) {
+          rPhIsOpen = false;
        } else if ("is".equals(name)) {
           isIsOpen = false;
        } else if ("row".equals(name)) {
-          output.endRow();
+          output.endRow(rowNum);
        }
        else if("oddHeader".equals(name) || "evenHeader".equals(name) ||
              "firstHeader".equals(name)) {
@@ -329,6 +294,352 @@ public class XSSFSheetXMLHandler extends DefaultHandler {
        }
    }
 
+   /**
+    * Process the value contents as required, now we have it all
+    */
+   private void outputCell() {
+       CharSequence f = null;
+       if (sharedFormulaText.isUsed()) {
+          f = sharedFormulaText;
+       } else if (cellHasFormula) {
+          f = formula;
+       }
+       switch (nextDataType) {
+           case BOOLEAN:
+               output.booleanCell(rowNum, colNum, styleIndex,
+                     value.length() > 0 && value.charAt(0) != '0', f);
+               break;
+
+           case ERROR:
+               output.errorCell(rowNum, colNum, styleIndex, value, f);
+               break;
+
+           case FORMULA:
+               output.stringCell(rowNum, colNum, styleIndex, value, f);
+               break;
+
+           case INLINE_STRING:
+               if (value.indexOf("_x") >= 0) {
+                  // escaped characters are rare, only decode them if needed
+                  output.stringCell(rowNum, colNum, styleIndex,
+                        new XSSFRichTextString(value.toString()).getString(), null);
+               } else {
+                  output.stringCell(rowNum, colNum, styleIndex, value, null);
+               }
+               break;
+
+           case SST_STRING:
+               int idx = parseIndex(value);
+               if (idx < 0) {
+                   System.err.println("Failed to parse SST index '" + value + "'");
+               } else {
+                   output.sharedStringCell(rowNum, colNum, styleIndex, idx);
+               }
+               break;
+
+           default:
+               double d;
+               try {
+                   d = parseDouble(value);
+               } catch (NumberFormatException e) {
+                   // not a number after all, pass it on as it is
+                   output.stringCell(rowNum, colNum, styleIndex, value, f);
+                   break;
+               }
+               output.numericCell(rowNum, colNum, styleIndex, d, f);
+               break;
+       }
+   }
+
+   /**
+    * @return the 0-based column index of a cell reference like "AB12"
+    */
+   private static int parseColumn(String ref) {
+       int col = 0;
+       for (int i = 0; i < ref.length(); i++) {
+           char c = ref.charAt(i);
+           if (c < 'A' || c > 'Z') break;
+           col = col * 26 + (c - 'A' + 1);
+       }
+       return col - 1;
+   }
+
+   /**
+    * @return the non-negative integer held by the text or <code>-1</code> if it isn't one
+    */
+   private static int parseIndex(CharSequence s) {
+       int len = s.length();
+       if (len == 0 || len > 9) return -1;
+       int idx = 0;
+       for (int i = 0; i < len; i++) {
+           char c = s.charAt(i);
+           if (c < '0' || c > '9') return -1;
+           idx = idx * 10 + (c - '0');
+       }
+       return idx;
+   }
+
+   /**
+    * Parse a number without creating a string.
+    * <p>
+    * Plain decimals with up to 15 significant digits and a small exponent, which cover the
+    *  numbers written by Excel, are converted exactly with a single multiplication or
+    *  division. Everything else is left to {@link Double#parseDouble(String)}.
+    * </p>
+    *
+    * @throws NumberFormatException if the text isn't a number
+    */
+   static double parseDouble(CharSequence s) {
+       int len = s.length();
+       int i = 0;
+       boolean negative = false;
+       if (len > 0 && (s.charAt(0) == '-' || s.charAt(0) == '+')) {
+           negative = s.charAt(0) == '-';
+           i++;
+       }
+       long mantissa = 0;
+       int digits = 0;
+       int scale = 0;
+       boolean seenDigit = false;
+       boolean seenPoint = false;
+       for (; i < len; i++) {
+           char c = s.charAt(i);
+           if (c >= '0' && c <= '9') {
+               seenDigit = true;
+               if (mantissa != 0 || c != '0') {
+                   if (++digits > 15) return Double.parseDouble(s.toString());
+               }
+               mantissa = mantissa * 10 + (c - '0');
+               if (seenPoint) scale--;
+           } else if (c == '.' && !seenPoint) {
+               seenPoint = true;
+           } else {
+               break;
+           }
+       }
+       if (!seenDigit) return Double.parseDouble(s.toString());
+       if (i < len) {
+           char c = s.charAt(i++);
+           if ((c != 'E' && c != 'e') || i == len) return Double.parseDouble(s.toString());
+           boolean negativeExp = false;
+           c = s.charAt(i);
+           if (c == '-' || c == '+') {
+               negativeExp = c == '-';
+               if (++i == len) return Double.parseDouble(s.toString());
+           }
+           int exp = 0;
+           for (; i < len; i++) {
+               c = s.charAt(i);
+               if (c < '0' || c > '9' || exp > 1000) return Double.parseDouble(s.toString());
+               exp = exp * 10 + (c - '0');
+           }
+           scale += negativeExp ? -exp : exp;
+       }
+       double d;
+       if (mantissa == 0) {
+           d = 0.0;
+       } else if (scale >= 0 && scale < POW10.length) {
+           d = mantissa * POW10[scale];
+       } else if (scale < 0 && -scale < POW10.length) {
+           d = mantissa / POW10[-scale];
+       } else {
+           return Double.parseDouble(s.toString());
+       }
+       return negative ? -d : d;
+   }
+
+   /**
+    * The formula of a cell using a shared formula. It is only rendered if it is read,
+    *  so that handlers which don't look at formulas don't pay for them.
+    */
+   private final class SharedFormulaText implements CharSequence {
+      private String si;
+      private String text;
+
+      void use(String si) {
+         this.si = si;
+         this.text = null;
+      }
+
+      boolean isUsed() {
+         return si != null;
+      }
+
+      public int length() {
+         return toString().length();
+      }
+
+      public char charAt(int index) {
+         return toString().charAt(index);
+      }
+
+      public CharSequence subSequence(int start, int end) {
+         return toString().subSequence(start, end);
+      }
+
+      public String toString() {
+         if (text == null) {
+            text = sharedFormulas.getFormula(si, rowNum, colNum);
+            if (text == null) text = "";
+         }
+         return text;
+      }
+   }
+
+   /**
+    * Formats the typed values for a {@link SheetContentsHandler}
+    */
+   private final class FormattingAdapter implements SheetValuesHandler {
+      private final ReadOnlySharedStringsTable sharedStringsTable;
+      private final SheetContentsHandler handler;
+      private final DataFormatter formatter;
+      private final boolean formulasNotResults;
+
+      // The number formats of the cell styles, shared by the handlers of all sheets
+      private final StylesTable styles;
+      private final CellFormats formats;
+
+      FormattingAdapter(StylesTable styles, ReadOnlySharedStringsTable strings,
+            SheetContentsHandler handler, DataFormatter formatter, boolean formulasNotResults) {
+         this.sharedStringsTable = strings;
+         this.handler = handler;
+         this.formatter = formatter;
+         this.formulasNotResults = formulasNotResults;
+         this.styles = styles;
+         this.formats = CellFormats.forStyles(styles);
+      }
+
+      public void startRow(int rowNum) {
+         handler.startRow(rowNum);
+      }
+
+      public void endRow(int rowNum) {
+         handler.endRow();
+      }
+
+      public void numericCell(int rowNum, int column, int styleIndex, double value, CharSequence formula) {
+         if (formula != null && formulasNotResults) {
+            handler.cell(cellRef, formula.toString());
+            return;
+         }
+         String thisStr;
+         CellFormat format = formats == null ? null : formats.get(styles, styleIndex);
+         if (format != null) {
+            // Number, but almost certainly with a special style or format
+            thisStr = formatter.formatRawCellContents(value, format.index,
+                  format.string, false, format.date);
+         } else {
+            // No formating applied, just do raw value
+            thisStr = XSSFSheetXMLHandler.this.value.toString();
+         }
+         handler.cell(cellRef, thisStr);
+      }
+
+      public void booleanCell(int rowNum, int column, int styleIndex, boolean value, CharSequence formula) {
+         if (formula != null && formulasNotResults) {
+            handler.cell(cellRef, formula.toString());
+         } else {
+            handler.cell(cellRef, value ? "TRUE" : "FALSE");
+         }
+      }
+
+      public void errorCell(int rowNum, int column, int styleIndex, CharSequence errorCode, CharSequence formula) {
+         if (formula != null && formulasNotResults) {
+            handler.cell(cellRef, formula.toString());
+         } else {
+            handler.cell(cellRef, "ERROR:" + errorCode);
+         }
+      }
+
+      public void sharedStringCell(int rowNum, int column, int styleIndex, int sstIndex) {
+         XSSFRichTextString rtss = new XSSFRichTextString(sharedStringsTable.getEntryAt(sstIndex));
+         handler.cell(cellRef, rtss.toString());
+      }
+
+      public void stringCell(int rowNum, int column, int styleIndex, CharSequence text, CharSequence formula) {
+         if (formula != null && formulasNotResults) {
+            handler.cell(cellRef, formula.toString());
+         } else {
+            handler.cell(cellRef, text.toString());
+         }
+      }
+
+      public void headerFooter(String text, boolean isHeader, String tagName) {
+         handler.headerFooter(text, isHeader, tagName);
+      }
+   }
+
+   /**
+    * The number format of a cell style
+    */
+   private static final class CellFormat {
+      final short index;
+      final String string;
+      final boolean date;
+
+      CellFormat(short index, String string) {
+         this.index = index;
+         this.string = string;
+         this.date = DateUtil.isADateFormat(index, string);
+      }
+   }
+
+   /**
+    * The number formats of the cell styles of a {@link StylesTable}, looked up when a style
+    *  is first used. There is one table per styles table, shared by the handlers of all
+    *  sheets, which may parse concurrently: the formats are immutable, so a race only
+    *  looks up a format twice. The table does not refer to the styles table, so that
+    *  it is released along with it.
+    */
+   private static final class CellFormats {
+      private static final Map<StylesTable, CellFormats> tables = new WeakHashMap<StylesTable, CellFormats>();
+
+      private final CellFormat[] formats;
+
+      private CellFormats(int numStyles) {
+         this.formats = new CellFormat[numStyles];
+      }
+
+      /**
+       * @return the table of the styles, <code>null</code> if there are no styles
+       */
+      static CellFormats forStyles(StylesTable styles) {
+         if (styles == null) {
+            return null;
+         }
+         synchronized (tables) {
+            CellFormats table = tables.get(styles);
+            // styles may have been added since, e.g. to a table of a workbook being edited
+            if (table == null || table.formats.length != styles.getNumCellStyles()) {
+               table = new CellFormats(styles.getNumCellStyles());
+               tables.put(styles, table);
+            }
+            return table;
+         }
+      }
+
+      /**
+       * @param styles the styles table this table was created for
+       * @return the format of the style, <code>null</code> if there is no such style
+       */
+      CellFormat get(StylesTable styles, int styleIndex) {
+         if (styleIndex < 0 || styleIndex >= formats.length) {
+            return null;
+         }
+         CellFormat format = formats[styleIndex];
+         if (format == null) {
+            XSSFCellStyle style = styles.getStyleAt(styleIndex);
+            short formatIndex = style.getDataFormat();
+            String formatString = style.getDataFormatString();
+            if (formatString == null)
+               formatString = BuiltinFormats.getBuiltinFormat(formatIndex);
+            format = new CellFormat(formatIndex, formatString);
+            formats[styleIndex] = format;
+         }
+         return format;
+      }
+   }
+
    /**
     * You need to implement this to handle the results
     *  of the sheet parsing.
@@ -343,4 +654,39 @@ public class XSSFSheetXMLHandler extends DefaultHandler {
       /** A header or footer has been encountered */
       public void headerFooter(String text, boolean isHeader, String tagName);
    }
+
+   /**
+    * Receives the raw values of the cells without any formatting applied, see
+    *  {@link XSSFSheetXMLHandler#XSSFSheetXMLHandler(SheetValuesHandler)}.
+    * <p>
+    * Rows and columns are zero based. The style index refers to the cell formats of
+    *  the {@link StylesTable}, it is <code>-1</code> if the cell doesn't specify one and
+    *  thus has the default style. The formula is <code>null</code> unless the cell holds
+    *  a formula. Cells using a shared formula get it shifted to their position, it is
+    *  only rendered when the formula is read.
+    * </p>
+    * <p>
+    * The <code>CharSequence</code>s are only valid during the call, they are reused for
+    *  the next cell. Numbers, booleans and shared strings are reported without creating
+    *  any string.
+    * </p>
+    */
+   public interface SheetValuesHandler {
+      /** A row with the (zero based) row number has started */
+      public void startRow(int rowNum);
+      /** A row with the (zero based) row number has ended */
+      public void endRow(int rowNum);
+      /** A numeric cell, or a formula with a numeric result, was encountered */
+      public void numericCell(int rowNum, int column, int styleIndex, double value, CharSequence formula);
+      /** A boolean cell, or a formula with a boolean result, was encountered */
+      public void booleanCell(int rowNum, int column, int styleIndex, boolean value, CharSequence formula);
+      /** An error cell, or a formula with an error result, was encountered */
+      public void errorCell(int rowNum, int column, int styleIndex, CharSequence errorCode, CharSequence formula);
+      /** A cell holding the index of an entry of the shared strings table was encountered */
+      public void sharedStringCell(int rowNum, int column, int styleIndex, int sstIndex);
+      /** An inline string cell, or a formula with a string result, was encountered */
+      public void stringCell(int rowNum, int column, int styleIndex, CharSequence text, CharSequence formula);
+      /** A header or footer has been encountered */
+      public void headerFooter(String text, boolean isHeader, String tagName);
+   }
 }
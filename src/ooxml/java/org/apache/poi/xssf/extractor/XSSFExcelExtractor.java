@@ -199,7 +199,7 @@ public class XSSFExcelExtractor extends POIXMLTextExtractor implements org.apach
 	}
 	
    private void handleStringCell(StringBuffer text, Cell cell) {
-      text.append(cell.getRichStringCellValue().getString());
+      text.append(cell.getStringCellValue());
    }
    private void handleNonStringCell(StringBuffer text, Cell cell, DataFormatter formatter) {
       int type = cell.getCellType();
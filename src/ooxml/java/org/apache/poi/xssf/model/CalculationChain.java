@@ -19,6 +19,9 @@ package org.apache.poi.xssf.model;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
 
 import org.apache.poi.POIXMLDocumentPart;
 import org.apache.xmlbeans.XmlException;
@@ -97,4 +100,46 @@ public class CalculationChain extends POIXMLDocumentPart {
             }
         }
     }
+
+    /**
+     * Remove the formula references of several cells of a sheet from the calculation chain.
+     * <p>
+     * The chain is scanned once, where calling {@link #removeItem(int, String)} for each
+     * cell scans it once per cell.
+     * </p>
+     *
+     * @param sheetId  the sheet Id of a sheet the formulas belong to.
+     * @param refs  A1 style references to the cells containing the formulas.
+     */
+    @SuppressWarnings("deprecation") //  getXYZArray() array accessors are deprecated
+    public void removeItems(int sheetId, Set<String> refs) {
+        if (refs.isEmpty()) return;
+
+        CTCalcCell[] c = chain.getCArray();
+        List<CTCalcCell> kept = new ArrayList<CTCalcCell>(c.length);
+        List<Integer> keptIds = new ArrayList<Integer>(c.length);
+        int id = -1;
+        for (int i = 0; i < c.length; i++){
+            //If sheet Id  is omitted, it is assumed to be the same as the value of the previous cell.
+            if(c[i].isSetI()) id = c[i].getI();
+
+            if(id != sheetId || !refs.contains(c[i].getR())){
+                kept.add(c[i]);
+                keptIds.add(id);
+            }
+        }
+        if (kept.size() == c.length) return;
+
+        CTCalcCell[] cells = new CTCalcCell[kept.size()];
+        int previousId = -1;
+        for (int i = 0; i < cells.length; i++){
+            CTCalcCell cell = (CTCalcCell)kept.get(i).copy();
+            int cellId = keptIds.get(i);
+            // a removed cell may have carried the sheet Id inherited by this one
+            if(!cell.isSetI() && cellId != previousId) cell.setI(cellId);
+            previousId = cellId;
+            cells[i] = cell;
+        }
+        chain.setCArray(cells);
+    }
 }
\ No newline at end of file
@@ -67,6 +67,14 @@ public class CommentsTable extends POIXMLDocumentPart {
         doc.save(out, DEFAULT_XML_OPTIONS);
     }
 
+    /**
+     * Comments are edited through the owning sheet, an untouched sheet leaves them unmodified.
+     */
+    @Override
+    public boolean isDirty() {
+        return getParent() == null || getParent().isDirty();
+    }
+
     @Override
     protected void commit() throws IOException {
         PackagePart part = getPackagePart();
@@ -0,0 +1,138 @@
+/* ====================================================================
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+==================================================================== */
+
+package org.apache.poi.xssf.model;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Hash index over one of the lists kept by {@link StylesTable}. It maps the key of an entry
+ * to the position of its first occurrence, replacing linear scans with <code>indexOf</code>.
+ * <p>
+ * The entries are live objects that may be modified after they have been registered,
+ * e.g. a font returned by <code>createFont()</code>. The styles table reports every
+ * entry it replaces or hands out, and such entries are re-keyed on the next lookup.
+ * The entry found by a lookup is verified against the key, so a lookup never returns a wrong
+ * position. An entry modified after the lookup following its hand-out is only found again
+ * once it has been handed out anew, which at worst results in a duplicate entry.
+ * </p>
+ */
+abstract class ContentIndex<T> {
+    private final List<T> _list;
+
+    /**
+     * positions of the entries by key, in ascending order
+     */
+    private final Map<Object, TreeSet<Integer>> _positions = new HashMap<Object, TreeSet<Integer>>();
+
+    /**
+     * the key each indexed position is currently registered under
+     */
+    private final List<Object> _keys = new ArrayList<Object>();
+
+    /**
+     * positions that have been handed out or replaced since the last lookup
+     */
+    private final Set<Integer> _stale = new HashSet<Integer>();
+
+    private boolean _rebuild;
+
+    ContentIndex(List<T> list) {
+        _list = list;
+    }
+
+    /**
+     * @return the key of the given entry, equal keys for equal entries
+     */
+    protected abstract Object keyOf(T entry);
+
+    /**
+     * The entry at the given position may have been modified or replaced
+     */
+    void touch(int idx) {
+        if (!_rebuild) _stale.add(idx);
+    }
+
+    /**
+     * The underlying list may have been modified in any way, e.g. after it has been handed out
+     */
+    void touchAll() {
+        _rebuild = true;
+        _stale.clear();
+    }
+
+    /**
+     * @return the position of the first entry registered under the given key or -1
+     */
+    int indexOf(Object key) {
+        for (;;) {
+            refresh();
+            TreeSet<Integer> positions = _positions.get(key);
+            if (positions == null) return -1;
+            int idx = positions.first();
+            if (key.equals(keyOf(_list.get(idx)))) return idx;
+            // modified since it was indexed, re-key it and look again
+            _stale.add(idx);
+        }
+    }
+
+    private void refresh() {
+        if (_rebuild || _keys.size() > _list.size()) {
+            _positions.clear();
+            _keys.clear();
+            _rebuild = false;
+        } else {
+            for (Integer idx : _stale) {
+                if (idx < _keys.size()) {
+                    Object key = keyOf(_list.get(idx));
+                    Object oldKey = _keys.set(idx, key);
+                    if (!key.equals(oldKey)) {
+                        remove(oldKey, idx);
+                        add(key, idx);
+                    }
+                }
+            }
+        }
+        _stale.clear();
+        for (int idx = _keys.size(); idx < _list.size(); idx++) {
+            Object key = keyOf(_list.get(idx));
+            _keys.add(key);
+            add(key, idx);
+        }
+    }
+
+    private void add(Object key, int idx) {
+        TreeSet<Integer> positions = _positions.get(key);
+        if (positions == null) {
+            positions = new TreeSet<Integer>();
+            _positions.put(key, positions);
+        }
+        positions.add(idx);
+    }
+
+    private void remove(Object key, int idx) {
+        TreeSet<Integer> positions = _positions.get(key);
+        positions.remove(idx);
+        if (positions.isEmpty()) _positions.remove(key);
+    }
+}
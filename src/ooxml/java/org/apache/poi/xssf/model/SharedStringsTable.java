@@ -14,22 +14,38 @@
    See the License for the specific language governing permissions and
    limitations under the License.
 ==================================================================== */
-
 package org.apache.poi.xssf.model;
 
+import java.io.BufferedWriter;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.util.*;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+
+import javax.xml.namespace.QName;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParserFactory;
 
-import org.apache.xmlbeans.XmlException;
-import org.apache.xmlbeans.XmlOptions;
 import org.apache.poi.POIXMLDocumentPart;
-import org.openxmlformats.schemas.spreadsheetml.x2006.main.CTRst;
-import org.openxmlformats.schemas.spreadsheetml.x2006.main.CTSst;
-import org.openxmlformats.schemas.spreadsheetml.x2006.main.SstDocument;
 import org.apache.poi.openxml4j.opc.PackagePart;
 import org.apache.poi.openxml4j.opc.PackageRelationship;
+import org.apache.poi.openxml4j.opc.PartContentWriter;
+import org.apache.poi.xssf.usermodel.XSSFRichTextString;
+import org.apache.xmlbeans.XmlCursor;
+import org.apache.xmlbeans.XmlException;
+import org.apache.xmlbeans.XmlOptions;
+import org.openxmlformats.schemas.spreadsheetml.x2006.main.CTRst;
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.DefaultHandler;
 
 
 /**
@@ -52,21 +68,59 @@ import org.apache.poi.openxml4j.opc.PackageRelationship;
  * The shared string table contains all the necessary information for displaying the string: the text, formatting
  * properties, and phonetic properties (for East Asian languages).
  * </p>
+ * <p>
+ * Workbooks may hold millions of unique strings, so the table does not keep a bean per entry.
+ * The text of plain entries is stored back to back in a single character array and
+ * <code>CTRst</code> beans are only held for rich text entries and for entries handed out
+ * by {@link #getEntryAt(int)}. Entries are deduplicated through an open addressing hash table
+ * of entry indexes. The part is read with a SAX parser and written without building a document.
+ * </p>
  *
  * @author Nick Birch
  * @author Yegor Kozlov
  */
 public class SharedStringsTable extends POIXMLDocumentPart {
+    private static final String MAIN_NS = "http://schemas.openxmlformats.org/spreadsheetml/2006/main";
+    private static final String XML_NS = "http://www.w3.org/XML/1998/namespace";
+
+    /**
+     * The characters of the plain entries, one entry after the other
+     */
+    private char[] _chars = new char[1024];
+
+    private int _charCount;
+
+    /**
+     * Start of each entry in <code>_chars</code>, entry <code>i</code> ends where entry
+     * <code>i + 1</code> starts. Entries held as beans take no characters.
+     */
+    private int[] _offsets = new int[17];
+
+    /**
+     * Hash code of the key of each entry, see {@link #addEntry(CTRst)}
+     */
+    private int[] _hashes = new int[16];
+
+    /**
+     * Beans of the rich text entries and of the plain entries handed out for modification,
+     * <code>null</code> for the other entries. Allocated along with the first such entry.
+     */
+    private CTRst[] _beans;
+
+    /**
+     * The number of entries
+     */
+    private int _size;
 
     /**
-     *  Array of individual string items in the Shared String table.
+     * Open addressing hash table of entry indexes plus one, <code>0</code> marks a free slot
      */
-    private final List<CTRst> strings = new ArrayList<CTRst>();
+    private int[] _slots = new int[32];
 
     /**
-     *  Maps strings and their indexes in the <code>strings</code> arrays
+     * The number of entries in <code>_slots</code>
      */
-    private final Map<String, Integer> stmap = new HashMap<String, Integer>();
+    private int _indexed;
 
     /**
      * An integer representing the total count of strings in the workbook. This count does not
@@ -75,31 +129,71 @@ public class SharedStringsTable extends POIXMLDocumentPart {
     private int count;
 
     /**
-     * An integer representing the total count of unique strings in the Shared String Table.
+     * An integer representing the total count of unique strings in the Shared String table.
      * A string is unique even if it is a copy of another string, but has different formatting applied
      * at the character level.
      */
     private int uniqueCount;
 
-    private SstDocument _sstDoc;
+    /**
+     * The default number of characters kept by the cache of decoded strings
+     */
+    public static final int DEFAULT_STRING_CACHE_LIMIT = 4 * 1024 * 1024;
+
+    /**
+     * Plain text of the entries, filled lazily by {@link #getStringAt(int)}
+     */
+    private String[] _decoded = new String[0];
+
+    /**
+     * The number of characters which may still be cached in <code>_decoded</code>
+     */
+    private int _cacheBudget = DEFAULT_STRING_CACHE_LIMIT;
+
+    /**
+     * Entries whose beans have been handed out and may be modified behind our back.
+     * Their text is decoded on every call and never cached.
+     */
+    private final BitSet _liveEntries = new BitSet();
+
+    /**
+     * Scratch bean used to compute the key of rich text entries being added
+     */
+    private CTRst _keyBean;
 
+    /**
+     * Beans are standalone, so that a bean which is replaced or dropped is garbage collected.
+     * They are keyed and written as an "si" element, relying on the namespace declaration
+     * of the enclosing "sst" element.
+     */
     private final static XmlOptions options = new XmlOptions();
     static {
-        options.put( XmlOptions.SAVE_INNER );
-     	options.put( XmlOptions.SAVE_AGGRESSIVE_NAMESPACES );
-     	options.put( XmlOptions.SAVE_USE_DEFAULT_NAMESPACE );
-        options.setSaveImplicitNamespaces(Collections.singletonMap("", "http://schemas.openxmlformats.org/spreadsheetml/2006/main"));
+        options.setSaveSyntheticDocumentElement(new QName(MAIN_NS, "si"));
+        options.setSaveAggressiveNamespaces();
+        options.setUseDefaultNamespace();
+        options.setSaveImplicitNamespaces(Collections.singletonMap("", MAIN_NS));
+        // turn off writing CDATA, see Bugzilla 48936
+        options.setSaveCDataLengthThreshold(1000000);
+        options.setSaveCDataEntityCountThreshold(-1);
+    }
+
+    /**
+     * Rich text entries are parsed from their "si" element
+     */
+    private final static XmlOptions loadOptions = new XmlOptions();
+    static {
+        loadOptions.setLoadReplaceDocumentElement(null);
     }
 
     public SharedStringsTable() {
         super();
-        _sstDoc = SstDocument.Factory.newInstance();
-        _sstDoc.addNewSst();
     }
 
     public SharedStringsTable(PackagePart part, PackageRelationship rel) throws IOException {
         super(part, rel);
         readFrom(part.getInputStream());
+        // as long as no entry is added or handed out for modification the part is written as is
+        setDirty(false);
     }
 
     /**
@@ -108,20 +202,16 @@ public class SharedStringsTable extends POIXMLDocumentPart {
      * @param is The input stream containing the XML document.
      * @throws IOException if an error occurs while reading.
      */
-    @SuppressWarnings("deprecation") //YK: getXYZArray() array accessors are deprecated in xmlbeans with JDK 1.5 support
     public void readFrom(InputStream is) throws IOException {
+        SAXParserFactory saxFactory = SAXParserFactory.newInstance();
+        saxFactory.setNamespaceAware(true);
         try {
-            int cnt = 0;
-            _sstDoc = SstDocument.Factory.parse(is);
-            CTSst sst = _sstDoc.getSst();
-            count = (int)sst.getCount();
-            uniqueCount = (int)sst.getUniqueCount();
-            for (CTRst st : sst.getSiArray()) {
-                stmap.put(getKey(st), cnt);
-                strings.add(st);
-                cnt++;
-            }
-        } catch (XmlException e) {
+            XMLReader reader = saxFactory.newSAXParser().getXMLReader();
+            reader.setContentHandler(new SstHandler());
+            reader.parse(new InputSource(is));
+        } catch (ParserConfigurationException e) {
+            throw new RuntimeException("SAX parser appears to be broken - " + e.getMessage());
+        } catch (SAXException e) {
             throw new IOException(e.getLocalizedMessage());
         }
     }
@@ -137,7 +227,84 @@ public class SharedStringsTable extends POIXMLDocumentPart {
      * @return the item at the specified position in this Shared String table.
      */
     public CTRst getEntryAt(int idx) {
-        return strings.get(idx);
+        checkIndex(idx);
+        CTRst st = getBean(idx);
+        if (st == null) {
+            // materialize the plain entry, from now on the bean is the entry
+            String text = new String(_chars, _offsets[idx], _offsets[idx + 1] - _offsets[idx]);
+            st = newBean();
+            st.setT(text);
+            preserveSpaces(st, text);
+            setBean(idx, st);
+        }
+        // the returned bean is live and may be modified, e.g. by XSSFRichTextString
+        setDirty(true);
+        _liveEntries.set(idx);
+        if (idx < _decoded.length && _decoded[idx] != null) {
+            _cacheBudget += _decoded[idx].length();
+            _decoded[idx] = null;
+        }
+        return st;
+    }
+
+    /**
+     * Return the plain text of a string item by index, without any formatting.
+     * <p>
+     * Unlike {@link #getEntryAt(int)} this does not hand out a bean, so the
+     * decoded text is cached and repeated lookups of the same item return the same
+     * <code>String</code> instance. The cache holds up to
+     * {@link #setStringCacheLimit(int) a limited number} of characters, items
+     * looked up after the limit is reached are decoded on every call.
+     * </p>
+     *
+     * @param idx index of item to return.
+     * @return the text of the item at the specified position in this Shared String table.
+     */
+    public String getStringAt(int idx) {
+        if (idx < _decoded.length) {
+            String text = _decoded[idx];
+            if (text != null) return text;
+        }
+        checkIndex(idx);
+        CTRst st = getBean(idx);
+        String text;
+        if (st != null) {
+            text = new XSSFRichTextString(st).getString();
+        } else {
+            text = new String(_chars, _offsets[idx], _offsets[idx + 1] - _offsets[idx]);
+            if (text.indexOf("_x") >= 0) {
+                // the text may contain escaped characters, let XSSFRichTextString decode them
+                CTRst tmp = CTRst.Factory.newInstance();
+                tmp.setT(text);
+                text = new XSSFRichTextString(tmp).getString();
+            }
+        }
+        if (_liveEntries.get(idx) || text.length() > _cacheBudget) {
+            return text;
+        }
+        if (idx >= _decoded.length) {
+            String[] decoded = new String[_size];
+            System.arraycopy(_decoded, 0, decoded, 0, _decoded.length);
+            _decoded = decoded;
+        }
+        _decoded[idx] = text;
+        _cacheBudget -= text.length();
+        return text;
+    }
+
+    /**
+     * Set the maximum number of characters kept by the cache of decoded strings used by
+     * {@link #getStringAt(int)}. Setting a limit clears the cache, <code>0</code> disables it.
+     *
+     * @param maxChars the maximum number of cached characters,
+     *      {@link #DEFAULT_STRING_CACHE_LIMIT} by default
+     */
+    public void setStringCacheLimit(int maxChars) {
+        if (maxChars < 0) {
+            throw new IllegalArgumentException("Cache limit must not be negative: " + maxChars);
+        }
+        _decoded = new String[0];
+        _cacheBudget = maxChars;
     }
 
     /**
@@ -168,33 +335,163 @@ public class SharedStringsTable extends POIXMLDocumentPart {
      * If the Shared String table already contains this <code>CTRst</code> bean, its index is returned.
      * Otherwise a new entry is aded.
      * </p>
+     * <p>
+     * Plain entries are compared by their text, rich text entries by their XML.
+     * </p>
      *
      * @param st the entry to add
      * @return index the index of added entry
      */
     public int addEntry(CTRst st) {
-        String s = getKey(st);
         count++;
-        if (stmap.containsKey(s)) {
-            return stmap.get(s);
+        setDirty(true);
+        boolean plain = isPlain(st);
+        String key;
+        if (plain) {
+            key = st.getT();
+        } else {
+            if (_keyBean == null) {
+                _keyBean = newBean();
+            }
+            _keyBean.set(st);
+            key = getKey(_keyBean);
+        }
+        int hash = key.hashCode();
+        int idx = find(key, plain, hash);
+        if (idx >= 0) {
+            return idx;
         }
 
         uniqueCount++;
-        //create a CTRst bean attached to this SstDocument and copy the argument CTRst into it
-        CTRst newSt = _sstDoc.getSst().addNewSi();
-        newSt.set(st);
-        int idx = strings.size();
-        stmap.put(s, idx);
-        strings.add(newSt);
+        if (plain) {
+            idx = appendPlain(key, hash);
+        } else {
+            //create a CTRst bean attached to the document of the beans and copy the argument CTRst into it
+            CTRst newSt = newBean();
+            newSt.set(st);
+            idx = appendEntry(hash);
+            setBean(idx, newSt);
+        }
+        index(idx);
+        return idx;
+    }
+
+    /**
+     * Record one more use of an existing entry.
+     * <p>
+     * Callers which keep their own lookup from text to index, e.g. the streaming workbook,
+     * call this method instead of {@link #addEntry(CTRst)} so that the total count of strings
+     * stays accurate without the entry being serialized and looked up again.
+     * </p>
+     *
+     * @param idx index of an existing entry
+     * @return the index
+     * @throws IndexOutOfBoundsException if there is no entry at the specified index
+     */
+    public int addReference(int idx) {
+        checkIndex(idx);
+        count++;
+        setDirty(true);
         return idx;
     }
+
     /**
      * Provide low-level access to the underlying array of CTRst beans
+     * <p>
+     * The entries are materialized as beans when they are accessed through the returned list,
+     * just like by {@link #getEntryAt(int)}. The list can be modified, beans set or added
+     * are copied into the table like by {@link #addEntry(CTRst)}. As before, modifying the
+     * list does not update the count and the unique count of strings.
+     * </p>
      *
      * @return array of CTRst beans
      */
     public List<CTRst> getItems() {
-        return strings;
+        return new AbstractList<CTRst>() {
+            public CTRst get(int index) {
+                return getEntryAt(index);
+            }
+
+            public int size() {
+                return _size;
+            }
+
+            public CTRst set(int index, CTRst element) {
+                CTRst previous = getEntryAt(index);
+                CTRst st = newBean();
+                st.set(element);
+                setBean(index, st);
+                // lookups of the previous key check the bean and skip the entry
+                _hashes[index] = keyHash(st);
+                index(index);
+                return previous;
+            }
+
+            public void add(int index, CTRst element) {
+                if (index < 0 || index > _size) {
+                    throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + _size);
+                }
+                CTRst st = newBean();
+                st.set(element);
+                List<Object> entries = getEntries();
+                entries.add(index, st);
+                setEntries(entries);
+                modCount++;
+            }
+
+            public CTRst remove(int index) {
+                CTRst previous = getEntryAt(index);
+                List<Object> entries = getEntries();
+                entries.remove(index);
+                setEntries(entries);
+                modCount++;
+                return previous;
+            }
+        };
+    }
+
+    /**
+     * @return the entries of the table, the text of plain entries and the beans of the others
+     */
+    private List<Object> getEntries() {
+        List<Object> entries = new ArrayList<Object>(_size + 1);
+        for (int i = 0; i < _size; i++) {
+            CTRst st = getBean(i);
+            entries.add(st == null ? new String(_chars, _offsets[i], _offsets[i + 1] - _offsets[i]) : st);
+        }
+        return entries;
+    }
+
+    /**
+     * Replace the entries of the table, used when entries are inserted or removed through
+     * {@link #getItems()}. Beans remain the entries they are, so handed out beans stay live.
+     */
+    private void setEntries(List<Object> entries) {
+        for (int i = 0; i < _decoded.length; i++) {
+            if (_decoded[i] != null) _cacheBudget += _decoded[i].length();
+        }
+        _decoded = new String[0];
+        _charCount = 0;
+        _size = 0;
+        _beans = null;
+        _slots = new int[32];
+        _indexed = 0;
+        _liveEntries.clear();
+        ensureCapacity(entries.size());
+        for (Object entry : entries) {
+            int idx;
+            if (entry instanceof String) {
+                String text = (String)entry;
+                idx = appendPlain(text, text.hashCode());
+            } else {
+                CTRst st = (CTRst)entry;
+                idx = appendEntry(keyHash(st));
+                setBean(idx, st);
+                _liveEntries.set(idx);
+            }
+            index(idx);
+        }
+        setDirty(true);
     }
 
     /**
@@ -204,25 +501,368 @@ public class SharedStringsTable extends POIXMLDocumentPart {
      * @throws IOException if an error occurs while writing.
      */
     public void writeTo(OutputStream out) throws IOException {
-        XmlOptions options = new XmlOptions(DEFAULT_XML_OPTIONS);
-        // the following two lines turn off writing CDATA
-        // see Bugzilla 48936
-        options.setSaveCDataLengthThreshold(1000000);
-        options.setSaveCDataEntityCountThreshold(-1);
-
-        //re-create the sst table every time saving a workbook
-        CTSst sst = _sstDoc.getSst();
-        sst.setCount(count);
-        sst.setUniqueCount(uniqueCount);
-
-        _sstDoc.save(out, options);
+        Writer w = new BufferedWriter(new OutputStreamWriter(out, "UTF-8"));
+        w.write("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\n");
+        w.write("<sst xmlns=\"" + MAIN_NS + "\" count=\"" + count + "\" uniqueCount=\"" + uniqueCount + "\">");
+        for (int i = 0; i < _size; i++) {
+            CTRst st = getBean(i);
+            if (st == null) {
+                int start = _offsets[i];
+                int end = _offsets[i + 1];
+                boolean preserve = end > start
+                        && (Character.isWhitespace(_chars[start]) || Character.isWhitespace(_chars[end - 1]));
+                w.write(preserve ? "<si><t xml:space=\"preserve\">" : "<si><t>");
+                writeEscaped(w, _chars, start, end);
+                w.write("</t></si>");
+            } else {
+                w.write(getKey(st));
+            }
+        }
+        w.write("</sst>");
+        w.flush();
     }
 
+    /**
+     * The table is written when the package is saved, straight into the zip entry of the part
+     */
     @Override
     protected void commit() throws IOException {
         PackagePart part = getPackagePart();
-        OutputStream out = part.getOutputStream();
-        writeTo(out);
-        out.close();
+        part.setContentWriter(new PartContentWriter() {
+            public void write(OutputStream out) throws IOException {
+                writeTo(out);
+            }
+        });
+    }
+
+    private void checkIndex(int idx) {
+        if (idx < 0 || idx >= _size) {
+            throw new IndexOutOfBoundsException("Shared string index " + idx +
+                    " is out of range (0.." + (_size - 1) + ")");
+        }
+    }
+
+    private CTRst getBean(int idx) {
+        return _beans == null ? null : _beans[idx];
+    }
+
+    private void setBean(int idx, CTRst st) {
+        if (_beans == null) {
+            _beans = new CTRst[_hashes.length];
+        }
+        _beans[idx] = st;
+    }
+
+    private static CTRst newBean() {
+        return CTRst.Factory.newInstance();
+    }
+
+    /**
+     * @return the hash code of the key of a stored bean, see {@link #addEntry(CTRst)}
+     */
+    private int keyHash(CTRst st) {
+        return (isPlain(st) ? st.getT() : getKey(st)).hashCode();
+    }
+
+    /**
+     * Whether the entry consists of nothing but its text
+     */
+    private static boolean isPlain(CTRst st) {
+        return st.isSetT() && st.sizeOfRArray() == 0 && st.sizeOfRPhArray() == 0 && !st.isSetPhoneticPr();
+    }
+
+    private static void preserveSpaces(CTRst st, String text) {
+        if (text.length() > 0 && (Character.isWhitespace(text.charAt(0))
+                || Character.isWhitespace(text.charAt(text.length() - 1)))) {
+            XmlCursor c = st.xgetT().newCursor();
+            c.toNextToken();
+            c.insertAttributeWithValue(new QName(XML_NS, "space"), "preserve");
+            c.dispose();
+        }
+    }
+
+    /**
+     * Append a plain entry to the end of the table without indexing it
+     */
+    private int appendPlain(String text, int hash) {
+        int len = text.length();
+        if (_charCount + len > _chars.length) {
+            long capacity = Math.max((long)_chars.length * 3 / 2, (long)_charCount + len);
+            char[] chars = new char[(int)Math.min(capacity, Integer.MAX_VALUE)];
+            System.arraycopy(_chars, 0, chars, 0, _charCount);
+            _chars = chars;
+        }
+        text.getChars(0, len, _chars, _charCount);
+        _charCount += len;
+        return appendEntry(hash);
+    }
+
+    /**
+     * Append an entry taking the characters appended since the previous one
+     */
+    private int appendEntry(int hash) {
+        if (_size == _hashes.length) {
+            ensureCapacity(_size * 2);
+        }
+        int idx = _size++;
+        _hashes[idx] = hash;
+        _offsets[_size] = _charCount;
+        return idx;
+    }
+
+    private void ensureCapacity(int entries) {
+        if (entries <= _hashes.length) {
+            return;
+        }
+        int[] hashes = new int[entries];
+        System.arraycopy(_hashes, 0, hashes, 0, _size);
+        _hashes = hashes;
+        int[] offsets = new int[entries + 1];
+        System.arraycopy(_offsets, 0, offsets, 0, _size + 1);
+        _offsets = offsets;
+        if (_beans != null) {
+            CTRst[] beans = new CTRst[entries];
+            System.arraycopy(_beans, 0, beans, 0, _size);
+            _beans = beans;
+        }
+    }
+
+    private static int slot(int hash, int mask) {
+        int h = hash * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & mask;
+    }
+
+    /**
+     * @return the index of the entry with the specified key or <code>-1</code>
+     */
+    private int find(String key, boolean plain, int hash) {
+        int mask = _slots.length - 1;
+        for (int i = slot(hash, mask); ; i = (i + 1) & mask) {
+            int idx = _slots[i] - 1;
+            if (idx < 0) {
+                return -1;
+            }
+            if (_hashes[idx] == hash && matches(idx, key, plain)) {
+                return idx;
+            }
+        }
+    }
+
+    private boolean matches(int idx, String key, boolean plain) {
+        CTRst st = getBean(idx);
+        if (st != null) {
+            // handed out beans may have changed since they were indexed
+            if (isPlain(st)) {
+                return plain && key.equals(st.getT());
+            }
+            return !plain && key.equals(getKey(st));
+        }
+        if (!plain) {
+            return false;
+        }
+        int start = _offsets[idx];
+        int len = _offsets[idx + 1] - start;
+        if (len != key.length()) {
+            return false;
+        }
+        for (int i = 0; i < len; i++) {
+            if (_chars[start + i] != key.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Add an entry to the hash table
+     */
+    private void index(int idx) {
+        if ((_indexed + 1) * 2 > _slots.length) {
+            int[] old = _slots;
+            _slots = new int[old.length * 2];
+            for (int slot : old) {
+                if (slot != 0) insert(slot - 1);
+            }
+        }
+        insert(idx);
+        _indexed++;
+    }
+
+    private void insert(int idx) {
+        int mask = _slots.length - 1;
+        int i = slot(_hashes[idx], mask);
+        while (_slots[i] != 0) {
+            i = (i + 1) & mask;
+        }
+        _slots[i] = idx + 1;
+    }
+
+    private static void writeEscaped(Writer w, char[] chars, int start, int end) throws IOException {
+        int run = start;
+        for (int i = start; i < end; i++) {
+            char c = chars[i];
+            String esc;
+            if (c == '<') {
+                esc = "&lt;";
+            } else if (c == '>') {
+                esc = "&gt;";
+            } else if (c == '&') {
+                esc = "&amp;";
+            } else if ((c < ' ' && c != '\t' && c != '\n' && c != '\r') || c == '\uFFFE' || c == '\uFFFF') {
+                // not allowed in XML 1.0, replaced like XmlBeans does
+                esc = "?";
+            } else {
+                continue;
+            }
+            w.write(chars, run, i - run);
+            w.write(esc);
+            run = i + 1;
+        }
+        w.write(chars, run, end - run);
+    }
+
+    /**
+     * Adds the entries of a shared strings part to the table. Entries with nothing but a
+     * "t" element are stored as plain text, the others are serialized back to XML as they
+     * are read and parsed into beans.
+     */
+    private final class SstHandler extends DefaultHandler {
+        /**
+         * Nesting depth below the current "si" element, 0 outside of it
+         */
+        private int _depth;
+        private int _children;
+        private boolean _plain;
+        private boolean _inText;
+        private final StringBuilder _text = new StringBuilder();
+        private final StringBuilder _xml = new StringBuilder();
+        /**
+         * Namespaces of the open elements of a rich text entry
+         */
+        private final List<String> _namespaces = new ArrayList<String>();
+
+        public void startElement(String uri, String localName, String qName, Attributes attributes)
+                throws SAXException {
+            if (_depth == 0) {
+                if ("si".equals(localName)) {
+                    _depth = 1;
+                    _children = 0;
+                    _plain = true;
+                    _text.setLength(0);
+                    _xml.setLength(0);
+                    _xml.append("<si xmlns=\"").append(MAIN_NS).append("\">");
+                    _namespaces.clear();
+                    _namespaces.add(MAIN_NS);
+                } else if ("sst".equals(localName)) {
+                    String cnt = attributes.getValue("count");
+                    if (cnt != null) count = Integer.parseInt(cnt);
+                    String unique = attributes.getValue("uniqueCount");
+                    if (unique != null) {
+                        uniqueCount = Integer.parseInt(unique);
+                        // pre-size for the expected entries, but don't trust the file too much
+                        ensureCapacity(Math.min(uniqueCount, 1 << 20));
+                    }
+                }
+                return;
+            }
+            if (_depth == 1) {
+                _children++;
+                _plain = _children == 1 && "t".equals(localName) && MAIN_NS.equals(uri);
+                _inText = _plain;
+            } else {
+                _plain = false;
+            }
+            _depth++;
+
+            _xml.append('<').append(localName);
+            if (!uri.equals(_namespaces.get(_namespaces.size() - 1))) {
+                _xml.append(" xmlns=\"");
+                appendEscaped(uri);
+                _xml.append('"');
+            }
+            _namespaces.add(uri);
+            for (int i = 0; i < attributes.getLength(); i++) {
+                String attrUri = attributes.getURI(i);
+                _xml.append(' ');
+                if (XML_NS.equals(attrUri)) {
+                    _xml.append("xml:");
+                } else if (attrUri.length() > 0) {
+                    _xml.append("xmlns:a").append(i).append("=\"");
+                    appendEscaped(attrUri);
+                    _xml.append("\" a").append(i).append(':');
+                }
+                _xml.append(attributes.getLocalName(i)).append("=\"");
+                appendEscaped(attributes.getValue(i));
+                _xml.append('"');
+            }
+            _xml.append('>');
+        }
+
+        public void endElement(String uri, String localName, String qName) throws SAXException {
+            if (_depth == 0) {
+                return;
+            }
+            if (--_depth > 0) {
+                _inText = false;
+                _namespaces.remove(_namespaces.size() - 1);
+                _xml.append("</").append(localName).append('>');
+                return;
+            }
+
+            // end of the entry
+            int idx;
+            if (_plain && _children == 1) {
+                String text = _text.toString();
+                int hash = text.hashCode();
+                boolean duplicate = find(text, true, hash) >= 0;
+                idx = appendPlain(text, hash);
+                if (!duplicate) index(idx);
+            } else {
+                _xml.append("</si>");
+                CTRst st;
+                try {
+                    st = CTRst.Factory.parse(_xml.toString(), loadOptions);
+                } catch (XmlException e) {
+                    throw new SAXException(e);
+                }
+                String key = getKey(st);
+                int hash = key.hashCode();
+                boolean duplicate = find(key, false, hash) >= 0;
+                idx = appendEntry(hash);
+                setBean(idx, st);
+                if (!duplicate) index(idx);
+            }
+        }
+
+        public void characters(char[] ch, int start, int length) throws SAXException {
+            if (_depth == 0) {
+                return;
+            }
+            if (_inText) {
+                _text.append(ch, start, length);
+            }
+            for (int i = start; i < start + length; i++) {
+                char c = ch[i];
+                switch (c) {
+                    case '<': _xml.append("&lt;"); break;
+                    case '>': _xml.append("&gt;"); break;
+                    case '&': _xml.append("&amp;"); break;
+                    case '\r': _xml.append("&#xd;"); break;
+                    default: _xml.append(c);
+                }
+            }
+        }
+
+        private void appendEscaped(String value) {
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                switch (c) {
+                    case '<': _xml.append("&lt;"); break;
+                    case '&': _xml.append("&amp;"); break;
+                    case '"': _xml.append("&quot;"); break;
+                    default: _xml.append(c);
+                }
+            }
+        }
     }
 }
@@ -0,0 +1,108 @@
+/* ====================================================================
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+==================================================================== */
+
+package org.apache.poi.xssf.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.xmlbeans.XmlCursor;
+import org.apache.xmlbeans.XmlObject;
+import org.openxmlformats.schemas.spreadsheetml.x2006.main.CTXf;
+
+/**
+ * Keys under which {@link StylesTable} indexes its fonts, fills, borders and cell XFs.
+ * <p>
+ * Equal keys mean equal content, regardless of how the beans were built: the order in
+ *  which attributes were set, namespace prefixes and whether the bean is attached to the
+ *  styles document don't matter.
+ * </p>
+ */
+final class StyleKeys {
+    private StyleKeys() {
+        // no instances of this class
+    }
+
+    /**
+     * @return the properties of a cell XF: the ids of its number format, font, fill, border
+     *  and cell style XF, its apply flags, alignment and protection
+     */
+    static Object xfKey(CTXf xf) {
+        return Arrays.asList(
+                xf.isSetNumFmtId() ? Long.valueOf(xf.getNumFmtId()) : null,
+                xf.isSetFontId() ? Long.valueOf(xf.getFontId()) : null,
+                xf.isSetFillId() ? Long.valueOf(xf.getFillId()) : null,
+                xf.isSetBorderId() ? Long.valueOf(xf.getBorderId()) : null,
+                xf.isSetXfId() ? Long.valueOf(xf.getXfId()) : null,
+                xf.isSetApplyNumberFormat() ? Boolean.valueOf(xf.getApplyNumberFormat()) : null,
+                xf.isSetApplyFont() ? Boolean.valueOf(xf.getApplyFont()) : null,
+                xf.isSetApplyFill() ? Boolean.valueOf(xf.getApplyFill()) : null,
+                xf.isSetApplyBorder() ? Boolean.valueOf(xf.getApplyBorder()) : null,
+                xf.isSetApplyAlignment() ? Boolean.valueOf(xf.getApplyAlignment()) : null,
+                xf.isSetApplyProtection() ? Boolean.valueOf(xf.getApplyProtection()) : null,
+                // both default to false
+                Boolean.valueOf(xf.isSetQuotePrefix() && xf.getQuotePrefix()),
+                Boolean.valueOf(xf.isSetPivotButton() && xf.getPivotButton()),
+                xf.isSetAlignment() ? contentKey(xf.getAlignment()) : null,
+                xf.isSetProtection() ? contentKey(xf.getProtection()) : null,
+                xf.isSetExtLst() ? contentKey(xf.getExtLst()) : null);
+    }
+
+    /**
+     * @return the content of a bean with the attributes of every element in a fixed order,
+     *  the name of the bean's own element is left out
+     */
+    static String contentKey(XmlObject bean) {
+        StringBuilder key = new StringBuilder();
+        List<String> attributes = new ArrayList<String>();
+        XmlCursor cur = bean.newCursor();
+        try {
+            int depth = 0;
+            XmlCursor.TokenType token = cur.currentTokenType();
+            while (!token.isNone()) {
+                if (token.isAttr()) {
+                    attributes.add(cur.getName() + "=" + cur.getTextValue());
+                } else if (!token.isNamespace() && !token.isComment() && !token.isProcinst()) {
+                    appendAttributes(key, attributes);
+                    if (token.isStart() || token.isStartdoc()) {
+                        key.append('<');
+                        if (depth > 0) key.append(cur.getName());
+                        depth++;
+                    } else if (token.isEnd() || token.isEnddoc()) {
+                        key.append('>');
+                        if (--depth == 0) break;
+                    } else if (token.isText()) {
+                        key.append('"').append(cur.getChars()).append('"');
+                    }
+                }
+                token = cur.toNextToken();
+            }
+        } finally {
+            cur.dispose();
+        }
+        return key.toString();
+    }
+
+    private static void appendAttributes(StringBuilder key, List<String> attributes) {
+        if (attributes.isEmpty()) return;
+        Collections.sort(attributes);
+        key.append(attributes);
+        attributes.clear();
+    }
+}
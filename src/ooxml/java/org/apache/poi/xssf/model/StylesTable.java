@@ -68,6 +68,42 @@ public class StylesTable extends POIXMLDocumentPart {
 
 	private final List<CTDxf> dxfs = new ArrayList<CTDxf>();
 
+	// hash indexes over the lists above, see ContentIndex
+	private final ContentIndex<XSSFFont> fontsByContent = new ContentIndex<XSSFFont>(fonts) {
+		protected Object keyOf(XSSFFont font) {
+			return StyleKeys.contentKey(font.getCTFont());
+		}
+	};
+	private final ContentIndex<XSSFFont> fontsByProperties = new ContentIndex<XSSFFont>(fonts) {
+		protected Object keyOf(XSSFFont font) {
+			return fontKey(font.getBoldweight(), font.getColor(), font.getFontHeight(), font.getFontName(),
+					font.getItalic(), font.getStrikeout(), font.getTypeOffset(), font.getUnderline());
+		}
+	};
+	private final ContentIndex<XSSFCellFill> fillsByContent = new ContentIndex<XSSFCellFill>(fills) {
+		protected Object keyOf(XSSFCellFill fill) {
+			return StyleKeys.contentKey(fill.getCTFill());
+		}
+	};
+	private final ContentIndex<XSSFCellBorder> bordersByContent = new ContentIndex<XSSFCellBorder>(borders) {
+		protected Object keyOf(XSSFCellBorder border) {
+			return StyleKeys.contentKey(border.getCTBorder());
+		}
+	};
+	private final ContentIndex<CTXf> xfsByContent = new ContentIndex<CTXf>(xfs) {
+		protected Object keyOf(CTXf xf) {
+			return StyleKeys.xfKey(xf);
+		}
+	};
+	/**
+	 * Mutable XmlBeans compare by identity, which is what putStyle needs
+	 */
+	private final ContentIndex<CTXf> xfsByIdentity = new ContentIndex<CTXf>(xfs) {
+		protected Object keyOf(CTXf xf) {
+			return xf;
+		}
+	};
+
 	/**
 	 * The first style id available for use as a custom style
 	 */
@@ -90,6 +126,8 @@ public class StylesTable extends POIXMLDocumentPart {
 	public StylesTable(PackagePart part, PackageRelationship rel) throws IOException {
 		super(part, rel);
 		readFrom(part.getInputStream());
+		// fonts, fills and styles are live objects, the table is dirty once any of them is handed out
+		setDirty(false);
 	}
 
 	public ThemesTable getTheme() {
@@ -177,6 +215,7 @@ public class StylesTable extends POIXMLDocumentPart {
 	}
 
 	public int putNumberFormat(String fmt) {
+		setDirty(true);
 		if (numberFormats.containsValue(fmt)) {
 			// Find the key, and return that
 			for(Integer key : numberFormats.keySet() ) {
@@ -197,6 +236,8 @@ public class StylesTable extends POIXMLDocumentPart {
 	}
 
 	public XSSFFont getFontAt(int idx) {
+		setDirty(true);
+		touchFont(idx);
 		return fonts.get(idx);
 	}
 
@@ -211,9 +252,10 @@ public class StylesTable extends POIXMLDocumentPart {
 	 *  {@link XSSFFont#registerTo(StylesTable)}
 	 */
 	public int putFont(XSSFFont font, boolean forceRegistration) {
+		setDirty(true);
 		int idx = -1;
 		if(!forceRegistration) {
-			idx = fonts.indexOf(font);
+			idx = fontsByContent.indexOf(StyleKeys.contentKey(font.getCTFont()));
 		}
 
 		if (idx != -1) {
@@ -239,20 +281,26 @@ public class StylesTable extends POIXMLDocumentPart {
 		return new XSSFCellStyle(idx, styleXfId, this, theme);
 	}
 	public int putStyle(XSSFCellStyle style) {
+		setDirty(true);
 		CTXf mainXF = style.getCoreXf();
 
-		if(! xfs.contains(mainXF)) {
+		int idx = xfsByIdentity.indexOf(mainXF);
+		if(idx == -1) {
+			idx = xfs.size();
 			xfs.add(mainXF);
 		}
-		return xfs.indexOf(mainXF);
+		return idx;
 	}
 
 	public XSSFCellBorder getBorderAt(int idx) {
+		setDirty(true);
+		bordersByContent.touch(idx);
 		return borders.get(idx);
 	}
 
 	public int putBorder(XSSFCellBorder border) {
-		int idx = borders.indexOf(border);
+		setDirty(true);
+		int idx = bordersByContent.indexOf(StyleKeys.contentKey(border.getCTBorder()));
 		if (idx != -1) {
 			return idx;
 		}
@@ -262,27 +310,38 @@ public class StylesTable extends POIXMLDocumentPart {
 	}
 
 	public XSSFCellFill getFillAt(int idx) {
+		setDirty(true);
+		fillsByContent.touch(idx);
 		return fills.get(idx);
 	}
 
 	public List<XSSFCellBorder> getBorders(){
+		setDirty(true);
+		bordersByContent.touchAll();
 		return borders;
 	}
 
 	public List<XSSFCellFill> getFills(){
+		setDirty(true);
+		fillsByContent.touchAll();
 		return fills;
 	}
 
 	public List<XSSFFont> getFonts(){
+		setDirty(true);
+		fontsByContent.touchAll();
+		fontsByProperties.touchAll();
 		return fonts;
 	}
 
 	public Map<Integer, String> getNumberFormats(){
+		setDirty(true);
 		return numberFormats;
 	}
 
 	public int putFill(XSSFCellFill fill) {
-		int idx = fills.indexOf(fill);
+		setDirty(true);
+		int idx = fillsByContent.indexOf(StyleKeys.contentKey(fill.getCTFill()));
 		if (idx != -1) {
 			return idx;
 		}
@@ -291,24 +350,33 @@ public class StylesTable extends POIXMLDocumentPart {
 	}
 
 	public CTXf getCellXfAt(int idx) {
+		setDirty(true);
+		xfsByContent.touch(idx);
 		return xfs.get(idx);
 	}
 	public int putCellXf(CTXf cellXf) {
+		setDirty(true);
 		xfs.add(cellXf);
 		return xfs.size();
 	}
    public void replaceCellXfAt(int idx, CTXf cellXf) {
+      setDirty(true);
       xfs.set(idx, cellXf);
+      xfsByContent.touch(idx);
+      xfsByIdentity.touch(idx);
    }
 
 	public CTXf getCellStyleXfAt(int idx) {
+		setDirty(true);
 		return styleXfs.get(idx);
 	}
 	public int putCellStyleXf(CTXf cellStyleXf) {
+		setDirty(true);
 		styleXfs.add(cellStyleXf);
 		return styleXfs.size();
 	}
 	public void replaceCellStyleXfAt(int idx, CTXf cellStyleXf) {
+	   setDirty(true);
 	   styleXfs.set(idx, cellStyleXf);
 	}
 	
@@ -344,6 +412,7 @@ public class StylesTable extends POIXMLDocumentPart {
 	 * For unit testing only!
 	 */
 	public CTStylesheet getCTStylesheet() {
+		setDirty(true);
 		return doc.getStyleSheet();
 	}
     public int _getDXfsSize() {
@@ -501,10 +570,12 @@ public class StylesTable extends POIXMLDocumentPart {
 	}
 
 	public CTDxf getDxfAt(int idx) {
+		setDirty(true);
 		return dxfs.get(idx);
 	}
 
 	public int putDxf(CTDxf dxf) {
+		setDirty(true);
 		this.dxfs.add(dxf);
 		return this.dxfs.size();
 	}
@@ -525,19 +596,64 @@ public class StylesTable extends POIXMLDocumentPart {
 	 * Finds a font that matches the one with the supplied attributes
 	 */
 	public XSSFFont findFont(short boldWeight, short color, short fontHeight, String name, boolean italic, boolean strikeout, short typeOffset, byte underline) {
-		for (XSSFFont font : fonts) {
-			if (	(font.getBoldweight() == boldWeight)
-					&& font.getColor() == color
-					&& font.getFontHeight() == fontHeight
-					&& font.getFontName().equals(name)
-					&& font.getItalic() == italic
-					&& font.getStrikeout() == strikeout
-					&& font.getTypeOffset() == typeOffset
-					&& font.getUnderline() == underline)
-			{
-				return font;
+		setDirty(true);
+		int idx = fontsByProperties.indexOf(fontKey(boldWeight, color, fontHeight, name, italic, strikeout, typeOffset, underline));
+		if (idx == -1) {
+			return null;
+		}
+		touchFont(idx);
+		return fonts.get(idx);
+	}
+
+	/**
+	 * Finds the first cell style whose core XF has the same content as the given one,
+	 *  i.e. the same number format, font, fill, border, alignment and protection.
+	 * The lookup is a hash lookup and does not depend on the number of styles.
+	 *
+	 * @param xf the XF describing the wanted style, not necessarily one from this table
+	 * @return the matching cell style or <code>null</code> if there is none
+	 */
+	public XSSFCellStyle findCellStyle(CTXf xf) {
+		int idx = xfsByContent.indexOf(StyleKeys.xfKey(xf));
+		return idx == -1 ? null : getStyleAt(idx);
+	}
+
+	/**
+	 * Removes the cell XFs which have the same content as an earlier one.
+	 * Cells, rows and columns still refer to the old positions and have to be
+	 *  updated by the caller, see {@link org.apache.poi.xssf.usermodel.XSSFOptimiser}.
+	 *
+	 * @return the new position of every XF, indexed by its old position
+	 */
+	public int[] removeDuplicateCellXfs() {
+		setDirty(true);
+		int[] newPos = new int[xfs.size()];
+		Map<Object, Integer> firstPos = new HashMap<Object, Integer>();
+		List<CTXf> kept = new ArrayList<CTXf>();
+		for (int i = 0; i < newPos.length; i++) {
+			CTXf xf = xfs.get(i);
+			Object key = StyleKeys.xfKey(xf);
+			Integer pos = firstPos.get(key);
+			if (pos == null) {
+				pos = kept.size();
+				firstPos.put(key, pos);
+				kept.add(xf);
 			}
+			newPos[i] = pos;
 		}
-		return null;
+		xfs.clear();
+		xfs.addAll(kept);
+		xfsByContent.touchAll();
+		xfsByIdentity.touchAll();
+		return newPos;
+	}
+
+	private void touchFont(int idx) {
+		fontsByContent.touch(idx);
+		fontsByProperties.touch(idx);
+	}
+
+	private static Object fontKey(short boldWeight, short color, short fontHeight, String name, boolean italic, boolean strikeout, short typeOffset, byte underline) {
+		return Arrays.asList(boldWeight, color, fontHeight, name, italic, strikeout, typeOffset, underline);
 	}
 }
@@ -0,0 +1,478 @@
+/* ====================================================================
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+==================================================================== */
+
+package org.apache.poi.xssf.readonly;
+
+import java.text.DateFormat;
+import java.text.SimpleDateFormat;
+import java.util.Calendar;
+import java.util.Date;
+
+import org.apache.poi.ss.formula.eval.ErrorEval;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.CellValue;
+import org.apache.poi.ss.usermodel.Comment;
+import org.apache.poi.ss.usermodel.DateUtil;
+import org.apache.poi.ss.usermodel.FormulaError;
+import org.apache.poi.ss.usermodel.Hyperlink;
+import org.apache.poi.ss.usermodel.RichTextString;
+import org.apache.poi.ss.util.CellRangeAddress;
+import org.apache.poi.ss.util.CellReference;
+import org.apache.poi.xssf.model.StylesTable;
+import org.apache.poi.xssf.usermodel.XSSFCellStyle;
+import org.apache.poi.xssf.usermodel.XSSFComment;
+import org.apache.poi.xssf.usermodel.XSSFHyperlink;
+import org.apache.poi.xssf.usermodel.XSSFRichTextString;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+
+/**
+ * A cell of a {@link ReadOnlyXSSFRow}.
+ * <p>
+ * Cells are light-weight views of the values stored in their row and are created each time
+ * they are requested, so compare them with <code>equals</code> rather than by identity.
+ * Values are read the same way as {@link org.apache.poi.xssf.usermodel.XSSFCell} reads them,
+ * except that inline strings are returned without rich text formatting.
+ * </p>
+ */
+public final class ReadOnlyXSSFCell implements Cell {
+    private final ReadOnlyXSSFRow _row;
+
+    /** the slot of the cell in the row, -1 for a blank cell which does not exist in the row */
+    private final int _slot;
+    private final int _column;
+
+    ReadOnlyXSSFCell(ReadOnlyXSSFRow row, int slot, int column) {
+        _row = row;
+        _slot = slot;
+        _column = column;
+    }
+
+    public int getColumnIndex() {
+        return _column;
+    }
+
+    public int getRowIndex() {
+        return _row.getRowNum();
+    }
+
+    public ReadOnlyXSSFSheet getSheet() {
+        return _row.getSheet();
+    }
+
+    public ReadOnlyXSSFRow getRow() {
+        return _row;
+    }
+
+    /**
+     * Return the cell type.
+     *
+     * @return the cell type
+     * @see Cell#CELL_TYPE_BLANK
+     * @see Cell#CELL_TYPE_NUMERIC
+     * @see Cell#CELL_TYPE_STRING
+     * @see Cell#CELL_TYPE_FORMULA
+     * @see Cell#CELL_TYPE_BOOLEAN
+     * @see Cell#CELL_TYPE_ERROR
+     */
+    public int getCellType() {
+        if (_slot < 0) {
+            return CELL_TYPE_BLANK;
+        }
+        int kind = _row.getKind(_slot);
+        if ((kind & ReadOnlyXSSFRow.FORMULA) != 0) {
+            return CELL_TYPE_FORMULA;
+        }
+        return kind & ReadOnlyXSSFRow.VALUE_TYPE_MASK;
+    }
+
+    /**
+     * Only valid for formula cells
+     * @return one of ({@link #CELL_TYPE_NUMERIC}, {@link #CELL_TYPE_STRING},
+     *     {@link #CELL_TYPE_BOOLEAN}, {@link #CELL_TYPE_ERROR}) depending
+     * on the cached value of the formula
+     */
+    public int getCachedFormulaResultType() {
+        if (getCellType() != CELL_TYPE_FORMULA) {
+            throw new IllegalStateException("Only formula cells have cached results");
+        }
+        return getValueType();
+    }
+
+    /**
+     * Get the value of the cell as a number.
+     * <p>
+     * For strings we throw an exception. For blank cells we return a 0.
+     * For formulas we return the precalculated value.
+     * </p>
+     * @return the value of the cell as a number
+     * @throws IllegalStateException if the cell type returned by {@link #getCellType()} is CELL_TYPE_STRING
+     *  or the cell does not hold a number
+     */
+    public double getNumericCellValue() {
+        int cellType = getCellType();
+        switch(cellType) {
+            case CELL_TYPE_BLANK:
+                return 0.0;
+            case CELL_TYPE_FORMULA:
+            case CELL_TYPE_NUMERIC:
+                int valueType = getValueType();
+                if (valueType != CELL_TYPE_NUMERIC || (_row.getKind(_slot) & ReadOnlyXSSFRow.UNPARSABLE) != 0) {
+                    throw typeMismatch(CELL_TYPE_NUMERIC, valueType == CELL_TYPE_NUMERIC ? CELL_TYPE_STRING : valueType,
+                            cellType == CELL_TYPE_FORMULA);
+                }
+                return Double.longBitsToDouble(_row.getValue(_slot));
+            default:
+                throw typeMismatch(CELL_TYPE_NUMERIC, cellType, false);
+        }
+    }
+
+    /**
+     * Get the value of the cell as a date.
+     * <p>
+     * For strings we throw an exception. For blank cells we return a null.
+     * </p>
+     * @return the value of the cell as a date
+     * @throws IllegalStateException if the cell type returned by {@link #getCellType()} is CELL_TYPE_STRING
+     */
+    public Date getDateCellValue() {
+        if (getCellType() == CELL_TYPE_BLANK) {
+            return null;
+        }
+        double value = getNumericCellValue();
+        boolean date1904 = getSheet().getWorkbook().isDate1904();
+        return DateUtil.getJavaDate(value, date1904);
+    }
+
+    /**
+     * Get the value of the cell as a XSSFRichTextString
+     * <p>
+     * For numeric cells we throw an exception. For blank cells we return an empty string.
+     * For formula cells we return the pre-calculated value if a string, otherwise an exception
+     * </p>
+     * @return the value of the cell as a XSSFRichTextString
+     */
+    public XSSFRichTextString getRichStringCellValue() {
+        int cellType = getCellType();
+        XSSFRichTextString rt;
+        switch (cellType) {
+            case CELL_TYPE_BLANK:
+                rt = new XSSFRichTextString("");
+                break;
+            case CELL_TYPE_STRING:
+                if ((_row.getKind(_slot) & ReadOnlyXSSFRow.SHARED_STRING) != 0) {
+                    int idx = (int)_row.getValue(_slot);
+                    rt = new XSSFRichTextString(getXSSFWorkbook().getSharedStringSource().getEntryAt(idx));
+                } else {
+                    rt = new XSSFRichTextString(getText());
+                }
+                break;
+            case CELL_TYPE_FORMULA:
+                int valueType = getValueType();
+                if (valueType != CELL_TYPE_STRING) {
+                    throw typeMismatch(CELL_TYPE_STRING, valueType, true);
+                }
+                rt = new XSSFRichTextString(getText());
+                break;
+            default:
+                throw typeMismatch(CELL_TYPE_STRING, cellType, false);
+        }
+        return rt;
+    }
+
+    /**
+     * Get the value of the cell as a string
+     * <p>
+     * For numeric cells we throw an exception. For blank cells we return an empty string.
+     * For formulaCells that are not string Formulas, we throw an exception
+     * </p>
+     * @return the value of the cell as a string
+     */
+    public String getStringCellValue() {
+        if (getCellType() == CELL_TYPE_STRING && (_row.getKind(_slot) & ReadOnlyXSSFRow.SHARED_STRING) != 0) {
+            return getXSSFWorkbook().getSharedStringSource().getStringAt((int)_row.getValue(_slot));
+        }
+        return getRichStringCellValue().getString();
+    }
+
+    /**
+     * Get the value of the cell as a boolean.
+     * <p>
+     * For strings, numbers, and errors, we throw an exception. For blank cells we return a false.
+     * </p>
+     * @return the value of the cell as a boolean
+     * @throws IllegalStateException if the cell type returned by {@link #getCellType()}
+     *   is not CELL_TYPE_BOOLEAN, CELL_TYPE_BLANK or CELL_TYPE_FORMULA
+     */
+    public boolean getBooleanCellValue() {
+        int cellType = getCellType();
+        switch(cellType) {
+            case CELL_TYPE_BLANK:
+                return false;
+            case CELL_TYPE_BOOLEAN:
+            case CELL_TYPE_FORMULA:
+                return getValueType() == CELL_TYPE_BOOLEAN && _row.getValue(_slot) != 0;
+            default:
+                throw typeMismatch(CELL_TYPE_BOOLEAN, cellType, false);
+        }
+    }
+
+    /**
+     * Returns the error message, such as #VALUE!
+     *
+     * @return the error message such as #VALUE!
+     * @throws IllegalStateException if the value of the cell is not an error
+     * @see FormulaError
+     */
+    public String getErrorCellString() {
+        int valueType = _slot < 0 ? CELL_TYPE_BLANK : getValueType();
+        if(valueType != CELL_TYPE_ERROR) throw typeMismatch(CELL_TYPE_ERROR, valueType, false);
+
+        return _row.getText(_slot);
+    }
+
+    /**
+     * Get the value of the cell as an error code.
+     *
+     * @return the value of the cell as an error code
+     * @throws IllegalStateException if the value of the cell is not an error
+     * @see FormulaError
+     */
+    public byte getErrorCellValue() {
+        String code = getErrorCellString();
+        if (code == null) {
+            return 0;
+        }
+        return FormulaError.forString(code).getCode();
+    }
+
+    /**
+     * Return a formula for the cell, for example, <code>SUM(C4:E4)</code>
+     *
+     * @return a formula for the cell
+     * @throws IllegalStateException if the cell type returned by {@link #getCellType()} is not CELL_TYPE_FORMULA
+     */
+    public String getCellFormula() {
+        int cellType = getCellType();
+        if(cellType != CELL_TYPE_FORMULA) throw typeMismatch(CELL_TYPE_FORMULA, cellType, false);
+
+        return getSheet().getCellFormula(_row.getFormula(_slot), getRowIndex(), _column);
+    }
+
+    /**
+     * @return the formula of this cell or the <code>Integer</code> index of its shared formula
+     */
+    Object getFormula() {
+        return _row.getFormula(_slot);
+    }
+
+    /**
+     * Return the cell's style.
+     *
+     * @return the cell's style.
+     */
+    public XSSFCellStyle getCellStyle() {
+        StylesTable stylesSource = getXSSFWorkbook().getStylesSource();
+        if(stylesSource.getNumCellStyles() > 0) {
+            return stylesSource.getStyleAt(_slot < 0 ? 0 : _row.getStyleIndex(_slot));
+        }
+        return null;
+    }
+
+    /**
+     * Returns cell comment associated with this cell
+     *
+     * @return the cell comment associated with this cell or <code>null</code>
+     */
+    public XSSFComment getCellComment() {
+        return getSheet().getCellComment(getRowIndex(), _column);
+    }
+
+    /**
+     * Returns hyperlink associated with this cell
+     *
+     * @return hyperlink associated with this cell or <code>null</code> if not found
+     */
+    public XSSFHyperlink getHyperlink() {
+        return getSheet().getHyperlink(getRowIndex(), _column);
+    }
+
+    public CellRangeAddress getArrayFormulaRange() {
+        CellRangeAddress range = getSheet().getArrayFormulaRange(getRowIndex(), _column);
+        if (range == null) {
+            CellReference ref = new CellReference(getRowIndex(), _column);
+            throw new IllegalStateException("Cell " + ref.formatAsString()
+                    + " is not part of an array formula.");
+        }
+        return range;
+    }
+
+    public boolean isPartOfArrayFormulaGroup() {
+        return getSheet().getArrayFormulaRange(getRowIndex(), _column) != null;
+    }
+
+    /**
+     * Store the result of evaluating the formula of this cell as its cached value
+     */
+    void setFormulaResult(CellValue cv) {
+        _row.setFormulaResult(_slot, cv);
+    }
+
+    public void setCellType(int cellType) {
+        throw ReadOnlyXSSFWorkbook.readOnly();
+    }
+
+    public void setCellValue(double value) {
+        throw ReadOnlyXSSFWorkbook.readOnly();
+    }
+
+    public void setCellValue(Date value) {
+        throw ReadOnlyXSSFWorkbook.readOnly();
+    }
+
+    public void setCellValue(Calendar value) {
+        throw ReadOnlyXSSFWorkbook.readOnly();
+    }
+
+    public void setCellValue(RichTextString value) {
+        throw ReadOnlyXSSFWorkbook.readOnly();
+    }
+
+    public void setCellValue(String value) {
+        throw ReadOnlyXSSFWorkbook.readOnly();
+    }
+
+    public void setCellFormula(String formula) {
+        throw ReadOnlyXSSFWorkbook.readOnly();
+    }
+
+    public void setCellValue(boolean value) {
+        throw ReadOnlyXSSFWorkbook.readOnly();
+    }
+
+    public void setCellErrorValue(byte value) {
+        throw ReadOnlyXSSFWorkbook.readOnly();
+    }
+
+    public void setCellStyle(CellStyle style) {
+        throw ReadOnlyXSSFWorkbook.readOnly();
+    }
+
+    public void setAsActiveCell() {
+        throw ReadOnlyXSSFWorkbook.readOnly();
+    }
+
+    public void setCellComment(Comment comment) {
+        throw ReadOnlyXSSFWorkbook.readOnly();
+    }
+
+    public void removeCellComment() {
+        throw ReadOnlyXSSFWorkbook.readOnly();
+    }
+
+    public void setHyperlink(Hyperlink link) {
+        throw ReadOnlyXSSFWorkbook.readOnly();
+    }
+
+    /**
+     * Cells are views of the same row slot if they have the same row and column
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof ReadOnlyXSSFCell)) return false;
+        ReadOnlyXSSFCell other = (ReadOnlyXSSFCell)o;
+        return _row == other._row && _column == other._column;
+    }
+
+    @Override
+    public int hashCode() {
+        return _row.hashCode() * 31 + _column;
+    }
+
+    /**
+     * Returns a string representation of the cell
+     * <p>
+     * Formula cells return the formula string, rather than the formula result.
+     * Dates are displayed in dd-MMM-yyyy format
+     * Errors are displayed as #ERR&lt;errIdx&gt;
+     * </p>
+     */
+    @Override
+    public String toString() {
+        switch (getCellType()) {
+            case CELL_TYPE_BLANK:
+                return "";
+            case CELL_TYPE_BOOLEAN:
+                return getBooleanCellValue() ? "TRUE" : "FALSE";
+            case CELL_TYPE_ERROR:
+                return ErrorEval.getText(getErrorCellValue());
+            case CELL_TYPE_FORMULA:
+                return getCellFormula();
+            case CELL_TYPE_NUMERIC:
+                if (DateUtil.isCellDateFormatted(this)) {
+                    DateFormat sdf = new SimpleDateFormat("dd-MMM-yyyy");
+                    return sdf.format(getDateCellValue());
+                }
+                return getNumericCellValue() + "";
+            case CELL_TYPE_STRING:
+                return getRichStringCellValue().toString();
+            default:
+                return "Unknown Cell Type: " + getCellType();
+        }
+    }
+
+    /**
+     * @return the type of the value, for formulas the type of the cached result
+     */
+    private int getValueType() {
+        return _row.getKind(_slot) & ReadOnlyXSSFRow.VALUE_TYPE_MASK;
+    }
+
+    private String getText() {
+        String text = _row.getText(_slot);
+        return text == null ? "" : text;
+    }
+
+    private XSSFWorkbook getXSSFWorkbook() {
+        return getSheet().getWorkbook().getXSSFWorkbook();
+    }
+
+    /**
+     * Used to help format error messages
+     */
+    private static String getCellTypeName(int cellTypeCode) {
+        switch (cellTypeCode) {
+            case CELL_TYPE_BLANK:   return "blank";
+            case CELL_TYPE_STRING:  return "text";
+            case CELL_TYPE_BOOLEAN: return "boolean";
+            case CELL_TYPE_ERROR:   return "error";
+            case CELL_TYPE_NUMERIC: return "numeric";
+            case CELL_TYPE_FORMULA: return "formula";
+        }
+        return "#unknown cell type (" + cellTypeCode + ")#";
+    }
+
+    /**
+     * Used to help format error messages
+     */
+    private static RuntimeException typeMismatch(int expectedTypeCode, int actualTypeCode, boolean isFormulaCell) {
+        String msg = "Cannot get a "
+            + getCellTypeName(expectedTypeCode) + " value from a "
+            + getCellTypeName(actualTypeCode) + " " + (isFormulaCell ? "formula " : "") + "cell";
+        return new IllegalStateException(msg);
+    }
+}
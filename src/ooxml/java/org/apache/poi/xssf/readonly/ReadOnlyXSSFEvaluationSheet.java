@@ -0,0 +1,49 @@
+/* ====================================================================
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+==================================================================== */
+
+package org.apache.poi.xssf.readonly;
+
+import org.apache.poi.ss.formula.EvaluationCell;
+import org.apache.poi.ss.formula.EvaluationSheet;
+import org.apache.poi.ss.usermodel.Row;
+
+/**
+ * Read-only XSSF wrapper for a sheet under evaluation
+ */
+final class ReadOnlyXSSFEvaluationSheet implements EvaluationSheet {
+    private final ReadOnlyXSSFSheet _sheet;
+
+    ReadOnlyXSSFEvaluationSheet(ReadOnlyXSSFSheet sheet) {
+        _sheet = sheet;
+    }
+
+    ReadOnlyXSSFSheet getReadOnlyXSSFSheet() {
+        return _sheet;
+    }
+
+    public EvaluationCell getCell(int rowIndex, int columnIndex) {
+        ReadOnlyXSSFRow row = _sheet.getRow(rowIndex);
+        if (row == null) {
+            return null;
+        }
+        ReadOnlyXSSFCell cell = row.getCell(columnIndex, Row.RETURN_NULL_AND_BLANK);
+        if (cell == null) {
+            return null;
+        }
+        return new ReadOnlyXSSFEvaluationCell(cell, this);
+    }
+}
@@ -0,0 +1,112 @@
+/* ====================================================================
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+==================================================================== */
+
+package org.apache.poi.xssf.readonly;
+
+import org.apache.poi.ss.SpreadsheetVersion;
+import org.apache.poi.ss.formula.EvaluationCell;
+import org.apache.poi.ss.formula.EvaluationName;
+import org.apache.poi.ss.formula.EvaluationSheet;
+import org.apache.poi.ss.formula.EvaluationWorkbook;
+import org.apache.poi.ss.formula.ptg.NamePtg;
+import org.apache.poi.ss.formula.ptg.NameXPtg;
+import org.apache.poi.ss.formula.ptg.Ptg;
+import org.apache.poi.ss.formula.udf.UDFFinder;
+import org.apache.poi.xssf.usermodel.XSSFEvaluationWorkbook;
+
+/**
+ * Internal POI use only
+ * <p>
+ * Cells are read from the compact rows of the {@link ReadOnlyXSSFSheet}s, names are delegated
+ * to the evaluation workbook of the underlying XSSF workbook. Shared formulas are parsed once
+ * per group and shifted for each cell.
+ * </p>
+ */
+final class ReadOnlyXSSFEvaluationWorkbook implements EvaluationWorkbook {
+    private final ReadOnlyXSSFWorkbook _uBook;
+    private final XSSFEvaluationWorkbook _xBook;
+
+    /**
+     * One wrapper per sheet, the evaluator looks sheets up by identity
+     */
+    private final ReadOnlyXSSFEvaluationSheet[] _evalSheets;
+
+    ReadOnlyXSSFEvaluationWorkbook(ReadOnlyXSSFWorkbook book) {
+        _uBook = book;
+        _xBook = book.getXSSFEvaluationWorkbook();
+        _evalSheets = new ReadOnlyXSSFEvaluationSheet[book.getNumberOfSheets()];
+    }
+
+    public String getSheetName(int sheetIndex) {
+        return _uBook.getSheetName(sheetIndex);
+    }
+
+    public int getSheetIndex(EvaluationSheet evalSheet) {
+        ReadOnlyXSSFSheet sheet = ((ReadOnlyXSSFEvaluationSheet)evalSheet).getReadOnlyXSSFSheet();
+        return _uBook.getSheetIndex(sheet);
+    }
+
+    public int getSheetIndex(String sheetName) {
+        return _uBook.getSheetIndex(sheetName);
+    }
+
+    public ReadOnlyXSSFEvaluationSheet getSheet(int sheetIndex) {
+        ReadOnlyXSSFEvaluationSheet evalSheet = _evalSheets[sheetIndex];
+        if (evalSheet == null) {
+            evalSheet = new ReadOnlyXSSFEvaluationSheet(_uBook.getSheetAt(sheetIndex));
+            _evalSheets[sheetIndex] = evalSheet;
+        }
+        return evalSheet;
+    }
+
+    public ExternalSheet getExternalSheet(int externSheetIndex) {
+        return _xBook.getExternalSheet(externSheetIndex);
+    }
+
+    public int convertFromExternSheetIndex(int externSheetIndex) {
+        return _xBook.convertFromExternSheetIndex(externSheetIndex);
+    }
+
+    public ExternalName getExternalName(int externSheetIndex, int externNameIndex) {
+        return _xBook.getExternalName(externSheetIndex, externNameIndex);
+    }
+
+    public EvaluationName getName(NamePtg namePtg) {
+        return _xBook.getName(namePtg);
+    }
+
+    public EvaluationName getName(String name, int sheetIndex) {
+        return _xBook.getName(name, sheetIndex);
+    }
+
+    public String resolveNameXText(NameXPtg ptg) {
+        return _xBook.resolveNameXText(ptg);
+    }
+
+    public Ptg[] getFormulaTokens(EvaluationCell evalCell) {
+        ReadOnlyXSSFCell cell = ((ReadOnlyXSSFEvaluationCell)evalCell).getReadOnlyXSSFCell();
+        return cell.getSheet().getFormulaTokens(cell.getFormula(), cell.getRowIndex(), cell.getColumnIndex());
+    }
+
+    public UDFFinder getUDFFinder() {
+        return _xBook.getUDFFinder();
+    }
+
+    public SpreadsheetVersion getSpreadsheetVersion() {
+        return SpreadsheetVersion.EXCEL2007;
+    }
+}
@@ -0,0 +1,197 @@
+/* ====================================================================
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+==================================================================== */
+
+package org.apache.poi.xssf.readonly;
+
+import org.apache.poi.ss.formula.IStabilityClassifier;
+import org.apache.poi.ss.formula.WorkbookEvaluator;
+import org.apache.poi.ss.formula.eval.BoolEval;
+import org.apache.poi.ss.formula.eval.ErrorEval;
+import org.apache.poi.ss.formula.eval.NumberEval;
+import org.apache.poi.ss.formula.eval.StringEval;
+import org.apache.poi.ss.formula.eval.ValueEval;
+import org.apache.poi.ss.formula.udf.UDFFinder;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellValue;
+import org.apache.poi.ss.usermodel.FormulaEvaluator;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+
+/**
+ * Evaluates formula cells of a {@link ReadOnlyXSSFWorkbook}.
+ * <p>
+ * The workbook cannot be changed, so {@link #evaluateInCell(Cell)} is not supported.
+ * {@link #evaluateFormulaCell(Cell)} keeps the result as the cached value of the cell in memory,
+ * where it is returned by the getters of the cell until the workbook is discarded.
+ * </p>
+ */
+public class ReadOnlyXSSFFormulaEvaluator implements FormulaEvaluator {
+    private final ReadOnlyXSSFWorkbook _book;
+    private final ReadOnlyXSSFEvaluationWorkbook _evalBook;
+    private final WorkbookEvaluator _bookEvaluator;
+
+    public ReadOnlyXSSFFormulaEvaluator(ReadOnlyXSSFWorkbook workbook) {
+        this(workbook, null, null);
+    }
+
+    private ReadOnlyXSSFFormulaEvaluator(ReadOnlyXSSFWorkbook workbook, IStabilityClassifier stabilityClassifier, UDFFinder udfFinder) {
+        _book = workbook;
+        _evalBook = new ReadOnlyXSSFEvaluationWorkbook(workbook);
+        _bookEvaluator = new WorkbookEvaluator(_evalBook, stabilityClassifier, udfFinder);
+    }
+
+    /**
+     * @param stabilityClassifier used to optimise caching performance. Pass <code>null</code>
+     * for the (conservative) assumption that any cell may have its definition changed after
+     * evaluation begins.
+     * @param udfFinder pass <code>null</code> for default (AnalysisToolPak only)
+     */
+    public static ReadOnlyXSSFFormulaEvaluator create(ReadOnlyXSSFWorkbook workbook, IStabilityClassifier stabilityClassifier, UDFFinder udfFinder) {
+        return new ReadOnlyXSSFFormulaEvaluator(workbook, stabilityClassifier, udfFinder);
+    }
+
+    /**
+     * Should be called whenever there are major changes (e.g. moving sheets) to input cells
+     * in the evaluated workbook.
+     * Failure to call this method after changing cell values will cause incorrect behaviour
+     * of the evaluate~ methods of this class
+     */
+    public void clearAllCachedResultValues() {
+        _bookEvaluator.clearAllCachedResultValues();
+    }
+
+    public void notifySetFormula(Cell cell) {
+        _bookEvaluator.notifyUpdateCell(toEvaluationCell(cell));
+    }
+
+    public void notifyDeleteCell(Cell cell) {
+        _bookEvaluator.notifyDeleteCell(toEvaluationCell(cell));
+    }
+
+    public void notifyUpdateCell(Cell cell) {
+        _bookEvaluator.notifyUpdateCell(toEvaluationCell(cell));
+    }
+
+    /**
+     * If cell contains a formula, the formula is evaluated and returned,
+     * else the CellValue simply copies the appropriate cell value from
+     * the cell and also its cell type.
+     *
+     * @param cell the cell to evaluate
+     */
+    public CellValue evaluate(Cell cell) {
+        if (cell == null) {
+            return null;
+        }
+
+        switch (cell.getCellType()) {
+            case Cell.CELL_TYPE_BOOLEAN:
+                return CellValue.valueOf(cell.getBooleanCellValue());
+            case Cell.CELL_TYPE_ERROR:
+                return CellValue.getError(cell.getErrorCellValue());
+            case Cell.CELL_TYPE_FORMULA:
+                return evaluateFormulaCellValue(cell);
+            case Cell.CELL_TYPE_NUMERIC:
+                return new CellValue(cell.getNumericCellValue());
+            case Cell.CELL_TYPE_STRING:
+                return new CellValue(cell.getRichStringCellValue().getString());
+            case Cell.CELL_TYPE_BLANK:
+                return null;
+        }
+        throw new IllegalStateException("Bad cell type (" + cell.getCellType() + ")");
+    }
+
+    /**
+     * If cell contains formula, it evaluates the formula and keeps the result
+     * as the cached value of the cell. The cell remains a formula cell.
+     * Else if cell does not contain formula, this method leaves
+     * the cell unchanged.
+     *
+     * @param cell the cell to evaluate
+     * @return the type of the formula result or -1 if the cell is not a formula cell
+     */
+    public int evaluateFormulaCell(Cell cell) {
+        if (cell == null || cell.getCellType() != Cell.CELL_TYPE_FORMULA) {
+            return -1;
+        }
+        CellValue cv = evaluateFormulaCellValue(cell);
+        toReadOnlyXSSFCell(cell).setFormulaResult(cv);
+        return cv.getCellType();
+    }
+
+    /**
+     * Not supported, the formula of a cell in a read-only workbook cannot be replaced
+     *
+     * @throws UnsupportedOperationException always
+     */
+    public Cell evaluateInCell(Cell cell) {
+        throw ReadOnlyXSSFWorkbook.readOnly();
+    }
+
+    /**
+     * Evaluates all formula cells of the workbook and keeps their results as cached values
+     */
+    public void evaluateAll() {
+        for (int i = 0; i < _book.getNumberOfSheets(); i++) {
+            Sheet sheet = _book.getSheetAt(i);
+            for (Row r : sheet) {
+                for (Cell c : r) {
+                    if (c.getCellType() == Cell.CELL_TYPE_FORMULA) {
+                        evaluateFormulaCell(c);
+                    }
+                }
+            }
+        }
+    }
+
+    private static ReadOnlyXSSFCell toReadOnlyXSSFCell(Cell cell) {
+        if (!(cell instanceof ReadOnlyXSSFCell)) {
+            throw new IllegalArgumentException("Unexpected type of cell: " + cell.getClass() + "." +
+                    " Only ReadOnlyXSSFCells can be evaluated.");
+        }
+        return (ReadOnlyXSSFCell)cell;
+    }
+
+    private ReadOnlyXSSFEvaluationCell toEvaluationCell(Cell cell) {
+        ReadOnlyXSSFCell roCell = toReadOnlyXSSFCell(cell);
+        int sheetIndex = _book.getSheetIndex(roCell.getSheet());
+        return new ReadOnlyXSSFEvaluationCell(roCell, _evalBook.getSheet(sheetIndex));
+    }
+
+    /**
+     * Returns a CellValue wrapper around the supplied ValueEval instance.
+     */
+    private CellValue evaluateFormulaCellValue(Cell cell) {
+        ValueEval eval = _bookEvaluator.evaluate(toEvaluationCell(cell));
+        if (eval instanceof NumberEval) {
+            NumberEval ne = (NumberEval) eval;
+            return new CellValue(ne.getNumberValue());
+        }
+        if (eval instanceof BoolEval) {
+            BoolEval be = (BoolEval) eval;
+            return CellValue.valueOf(be.getBooleanValue());
+        }
+        if (eval instanceof StringEval) {
+            StringEval ne = (StringEval) eval;
+            return new CellValue(ne.getStringValue());
+        }
+        if (eval instanceof ErrorEval) {
+            return CellValue.getError(((ErrorEval)eval).getErrorCode());
+        }
+        throw new RuntimeException("Unexpected eval class (" + eval.getClass().getName() + ")");
+    }
+}
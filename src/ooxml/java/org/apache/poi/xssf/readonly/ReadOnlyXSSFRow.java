@@ -0,0 +1,345 @@
+/* ====================================================================
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+==================================================================== */
+
+package org.apache.poi.xssf.readonly;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.CellValue;
+import org.apache.poi.ss.usermodel.FormulaError;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.xssf.model.StylesTable;
+import org.apache.poi.xssf.usermodel.XSSFCellStyle;
+
+/**
+ * A row of a {@link ReadOnlyXSSFSheet}.
+ * <p>
+ * The cells are not kept as objects. Their column indexes, types, style indexes and
+ * values are held in primitive arrays ordered by column, one slot per cell, and
+ * {@link ReadOnlyXSSFCell}s are created as views of a slot when they are requested.
+ * Numbers and booleans are stored in place, strings of the shared strings table as their index.
+ * Only inline strings, cached string results of formulas and formulas need objects.
+ * </p>
+ */
+public final class ReadOnlyXSSFRow implements Row {
+    // layout of the kind of a cell
+    /** the Cell.CELL_TYPE_* of the value, for formulas the type of the cached result */
+    static final int VALUE_TYPE_MASK = 0x07;
+    /** the cell has a formula */
+    static final int FORMULA = 0x08;
+    /** the value is an index into the shared strings table */
+    static final int SHARED_STRING = 0x10;
+    /** the numeric value could not be parsed and is kept as text */
+    static final int UNPARSABLE = 0x20;
+
+    private final ReadOnlyXSSFSheet _sheet;
+    private final int _rowNum;
+
+    /** the height in points, negative if the row uses the default height */
+    private final float _height;
+    private final boolean _hidden;
+
+    /** the index of the row style, -1 if the row is not formatted */
+    private final int _style;
+
+    private final short[] _columns;
+    private final byte[] _kinds;
+    private final short[] _styles;
+
+    /** numbers as raw double bits, booleans as 0/1 and shared strings as their index */
+    private final long[] _values;
+
+    /** inline strings, cached string results and error codes, <code>null</code> if no cell has text */
+    private String[] _texts;
+
+    /** formula text or the <code>Integer</code> group index of shared formulas, <code>null</code> if no cell has a formula */
+    private final Object[] _formulas;
+
+    ReadOnlyXSSFRow(ReadOnlyXSSFSheet sheet, int rowNum, float height, boolean hidden, int style,
+            short[] columns, byte[] kinds, short[] styles, long[] values, String[] texts, Object[] formulas) {
+        _sheet = sheet;
+        _rowNum = rowNum;
+        _height = height;
+        _hidden = hidden;
+        _style = style;
+        _columns = columns;
+        _kinds = kinds;
+        _styles = styles;
+        _values = values;
+        _texts = texts;
+        _formulas = formulas;
+    }
+
+    public ReadOnlyXSSFSheet getSheet() {
+        return _sheet;
+    }
+
+    public int getRowNum() {
+        return _rowNum;
+    }
+
+    /**
+     * Returns the cell at the given (0 based) index,
+     *  with the {@link org.apache.poi.ss.usermodel.Row.MissingCellPolicy} from the parent Workbook.
+     *
+     * @return the cell at the given (0 based) index
+     */
+    public ReadOnlyXSSFCell getCell(int cellnum) {
+        return getCell(cellnum, _sheet.getWorkbook().getMissingCellPolicy());
+    }
+
+    /**
+     * Returns the cell at the given (0 based) index, with the specified {@link org.apache.poi.ss.usermodel.Row.MissingCellPolicy}.
+     * Cells which do not exist are never added to the row, {@link Row#CREATE_NULL_AS_BLANK} returns
+     * a blank cell which is not part of the row.
+     *
+     * @return the cell at the given (0 based) index
+     * @throws IllegalArgumentException if cellnum < 0 or the specified MissingCellPolicy is invalid
+     */
+    public ReadOnlyXSSFCell getCell(int cellnum, MissingCellPolicy policy) {
+        if(cellnum < 0) throw new IllegalArgumentException("Cell index must be >= 0");
+
+        int slot = indexOf(cellnum);
+        ReadOnlyXSSFCell cell = slot < 0 ? null : new ReadOnlyXSSFCell(this, slot, cellnum);
+        if(policy == RETURN_NULL_AND_BLANK) {
+            return cell;
+        }
+        if(policy == RETURN_BLANK_AS_NULL) {
+            if(cell == null || cell.getCellType() == Cell.CELL_TYPE_BLANK) {
+                return null;
+            }
+            return cell;
+        }
+        if(policy == CREATE_NULL_AS_BLANK) {
+            if(cell == null) {
+                return new ReadOnlyXSSFCell(this, -1, cellnum);
+            }
+            return cell;
+        }
+        throw new IllegalArgumentException("Illegal policy " + policy + " (" + policy.id + ")");
+    }
+
+    /**
+     * Get the number of the first cell contained in this row.
+     *
+     * @return short representing the first logical cell in the row,
+     *  or -1 if the row does not contain any cells.
+     */
+    public short getFirstCellNum() {
+        return _columns.length == 0 ? -1 : _columns[0];
+    }
+
+    /**
+     * Gets the index of the last cell contained in this row <b>PLUS ONE</b>.
+     *
+     * @return short representing the last logical cell in the row <b>PLUS ONE</b>,
+     *   or -1 if the row does not contain any cells.
+     */
+    public short getLastCellNum() {
+        return (short)(_columns.length == 0 ? -1 : _columns[_columns.length - 1] + 1);
+    }
+
+    public int getPhysicalNumberOfCells() {
+        return _columns.length;
+    }
+
+    /**
+     * Get the row's height measured in twips (1/20th of a point). If the height is not set,
+     * the default worksheet value is returned.
+     */
+    public short getHeight() {
+        return (short)(getHeightInPoints()*20);
+    }
+
+    /**
+     * Returns row height measured in point size. If the height is not set, the default
+     * worksheet value is returned.
+     */
+    public float getHeightInPoints() {
+        if (_height >= 0) {
+            return _height;
+        }
+        return _sheet.getDefaultRowHeightInPoints();
+    }
+
+    public boolean getZeroHeight() {
+        return _hidden;
+    }
+
+    public boolean isFormatted() {
+        return _style >= 0;
+    }
+
+    public XSSFCellStyle getRowStyle() {
+        if(!isFormatted()) return null;
+        StylesTable stylesSource = _sheet.getWorkbook().getXSSFWorkbook().getStylesSource();
+        if(stylesSource.getNumCellStyles() > 0) {
+            return stylesSource.getStyleAt(_style);
+        }
+        return null;
+    }
+
+    /**
+     * @return an iterator over the cells of this row. The iterator does not support <code>remove()</code>.
+     */
+    public Iterator<Cell> cellIterator() {
+        return new Iterator<Cell>() {
+            private int _next;
+
+            public boolean hasNext() {
+                return _next < _columns.length;
+            }
+
+            public Cell next() {
+                if (_next >= _columns.length) throw new NoSuchElementException();
+                int slot = _next++;
+                return new ReadOnlyXSSFCell(ReadOnlyXSSFRow.this, slot, _columns[slot]);
+            }
+
+            public void remove() {
+                throw ReadOnlyXSSFWorkbook.readOnly();
+            }
+        };
+    }
+
+    public Iterator<Cell> iterator() {
+        return cellIterator();
+    }
+
+    public Cell createCell(int column) {
+        throw ReadOnlyXSSFWorkbook.readOnly();
+    }
+
+    public Cell createCell(int column, int type) {
+        throw ReadOnlyXSSFWorkbook.readOnly();
+    }
+
+    public void removeCell(Cell cell) {
+        throw ReadOnlyXSSFWorkbook.readOnly();
+    }
+
+    public void setRowNum(int rowNum) {
+        throw ReadOnlyXSSFWorkbook.readOnly();
+    }
+
+    public void setHeight(short height) {
+        throw ReadOnlyXSSFWorkbook.readOnly();
+    }
+
+    public void setZeroHeight(boolean zHeight) {
+        throw ReadOnlyXSSFWorkbook.readOnly();
+    }
+
+    public void setHeightInPoints(float height) {
+        throw ReadOnlyXSSFWorkbook.readOnly();
+    }
+
+    public void setRowStyle(CellStyle style) {
+        throw ReadOnlyXSSFWorkbook.readOnly();
+    }
+
+    int getKind(int slot) {
+        return _kinds[slot];
+    }
+
+    int getStyleIndex(int slot) {
+        return _styles[slot] & 0xFFFF;
+    }
+
+    long getValue(int slot) {
+        return _values[slot];
+    }
+
+    String getText(int slot) {
+        return _texts == null ? null : _texts[slot];
+    }
+
+    Object getFormula(int slot) {
+        return _formulas == null ? null : _formulas[slot];
+    }
+
+    /**
+     * Replace the cached result of the formula in a slot
+     */
+    void setFormulaResult(int slot, CellValue cv) {
+        int type = cv.getCellType();
+        String text = null;
+        long value = 0;
+        switch (type) {
+            case Cell.CELL_TYPE_NUMERIC:
+                value = Double.doubleToLongBits(cv.getNumberValue());
+                break;
+            case Cell.CELL_TYPE_BOOLEAN:
+                value = cv.getBooleanValue() ? 1 : 0;
+                break;
+            case Cell.CELL_TYPE_STRING:
+                text = cv.getStringValue();
+                break;
+            case Cell.CELL_TYPE_ERROR:
+                text = FormulaError.forInt(cv.getErrorValue()).getString();
+                break;
+            default:
+                throw new IllegalStateException("Unexpected formula result type (" + type + ")");
+        }
+        if (text != null && _texts == null) {
+            _texts = new String[_columns.length];
+        }
+        if (_texts != null) {
+            _texts[slot] = text;
+        }
+        _values[slot] = value;
+        _kinds[slot] = (byte)(FORMULA | type);
+    }
+
+    /**
+     * @return the slot of the cell in the given column, negative if there is no such cell
+     */
+    private int indexOf(int column) {
+        int size = _columns.length;
+        if (size == 0) return -1;
+        // fast path for rows without gaps
+        int guess = column - _columns[0];
+        if (guess >= 0 && guess < size && _columns[guess] == column) {
+            return guess;
+        }
+        int low = 0;
+        int high = size - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int midColumn = _columns[mid];
+            if (midColumn < column) {
+                low = mid + 1;
+            } else if (midColumn > column) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return the row number and the number of cells of this row
+     */
+    @Override
+    public String toString() {
+        return "ReadOnlyXSSFRow [" + (_rowNum + 1) + "], " + _columns.length + " cells";
+    }
+}
@@ -0,0 +1,713 @@
+/* ====================================================================
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+==================================================================== */
+
+package org.apache.poi.xssf.readonly;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+import org.apache.poi.POIXMLException;
+import org.apache.poi.hssf.util.PaneInformation;
+import org.apache.poi.ss.SpreadsheetVersion;
+import org.apache.poi.ss.formula.FormulaParser;
+import org.apache.poi.ss.formula.FormulaRenderer;
+import org.apache.poi.ss.formula.FormulaType;
+import org.apache.poi.ss.formula.SharedFormula;
+import org.apache.poi.ss.formula.ptg.Ptg;
+import org.apache.poi.ss.usermodel.AutoFilter;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellRange;
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.DataValidation;
+import org.apache.poi.ss.usermodel.DataValidationHelper;
+import org.apache.poi.ss.usermodel.Drawing;
+import org.apache.poi.ss.usermodel.Footer;
+import org.apache.poi.ss.usermodel.Header;
+import org.apache.poi.ss.usermodel.PrintSetup;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.SheetConditionalFormatting;
+import org.apache.poi.ss.util.CellRangeAddress;
+import org.apache.poi.xssf.usermodel.XSSFComment;
+import org.apache.poi.xssf.usermodel.XSSFEvaluationWorkbook;
+import org.apache.poi.xssf.usermodel.XSSFHyperlink;
+import org.apache.poi.xssf.usermodel.XSSFSheet;
+import org.xml.sax.SAXException;
+
+/**
+ * A sheet of a {@link ReadOnlyXSSFWorkbook}.
+ * <p>
+ * The rows are read from the worksheet part with a SAX parser into {@link ReadOnlyXSSFRow}s.
+ * Everything else, such as column widths, merged regions, comments and page setup,
+ * comes from an {@link XSSFSheet} parsed from the worksheet without its rows.
+ * Methods which would change the sheet throw an <code>UnsupportedOperationException</code>.
+ * </p>
+ */
+public class ReadOnlyXSSFSheet implements Sheet {
+    private final ReadOnlyXSSFWorkbook _workbook;
+    private final XSSFSheet _sh;
+
+    /** the rows ordered by row number */
+    private ReadOnlyXSSFRow[] _rows;
+    private int[] _rowNums;
+
+    /** masters of the shared formulas keyed by their group index */
+    private final Map<Integer, SharedFormulaGroup> _sharedFormulas = new HashMap<Integer, SharedFormulaGroup>();
+    /** array formulas keyed by every row they cover */
+    private final Map<Integer, List<ArrayFormula>> _arrayFormulas = new HashMap<Integer, List<ArrayFormula>>();
+
+    ReadOnlyXSSFSheet(ReadOnlyXSSFWorkbook workbook, XSSFSheet xSheet) {
+        _workbook = workbook;
+        _sh = xSheet;
+        try {
+            InputStream is = xSheet.getPackagePart().getInputStream();
+            try {
+                RowStrippingInputStream stripping = new RowStrippingInputStream(is);
+                setRows(new SheetRowsReader(this).read(stripping));
+                xSheet.readWorksheet(new ByteArrayInputStream(stripping.toByteArrayWithoutRows()));
+            } finally {
+                is.close();
+            }
+        } catch (IOException e) {
+            throw new POIXMLException(e);
+        } catch (SAXException e) {
+            throw new POIXMLException(e);
+        }
+    }
+
+    private void setRows(List<ReadOnlyXSSFRow> rows) {
+        boolean ordered = true;
+        for (int i = 1; i < rows.size() && ordered; i++) {
+            ordered = rows.get(i - 1).getRowNum() < rows.get(i).getRowNum();
+        }
+        if (!ordered) {
+            // the sort is stable, so of rows with the same number the last one wins
+            Collections.sort(rows, new Comparator<ReadOnlyXSSFRow>() {
+                public int compare(ReadOnlyXSSFRow r1, ReadOnlyXSSFRow r2) {
+                    int n1 = r1.getRowNum();
+                    int n2 = r2.getRowNum();
+                    return n1 < n2 ? -1 : (n1 == n2 ? 0 : 1);
+                }
+            });
+            for (int i = rows.size() - 1; i > 0; i--) {
+                if (rows.get(i - 1).getRowNum() == rows.get(i).getRowNum()) rows.remove(i - 1);
+            }
+        }
+        _rows = rows.toArray(new ReadOnlyXSSFRow[rows.size()]);
+        _rowNums = new int[_rows.length];
+        for (int i = 0; i < _rows.length; i++) {
+            _rowNums[i] = _rows[i].getRowNum();
+        }
+    }
+
+    /**
+     * Returns the logical row (not physical) 0-based. If you ask for a row that is not
+     * defined you get a null. This is to say row 4 represents the fifth row on a sheet.
+     *
+     * @param rownum  row to get (0-based)
+     * @return the row or <code>null</code> if it is not defined on the sheet
+     */
+    public ReadOnlyXSSFRow getRow(int rownum) {
+        int idx = indexOf(rownum);
+        return idx < 0 ? null : _rows[idx];
+    }
+
+    /**
+     * Returns the number of physically defined rows (NOT the number of rows in the sheet)
+     */
+    public int getPhysicalNumberOfRows() {
+        return _rows.length;
+    }
+
+    /**
+     * Gets the first row on the sheet
+     *
+     * @return the number of the first logical row on the sheet, zero based
+     */
+    public int getFirstRowNum() {
+        return _rows.length == 0 ? 0 : _rowNums[0];
+    }
+
+    /**
+     * Gets the last row on the sheet
+     *
+     * @return last row contained n this sheet (0-based)
+     */
+    public int getLastRowNum() {
+        return _rows.length == 0 ? 0 : _rowNums[_rowNums.length - 1];
+    }
+
+    /**
+     * @return an iterator of the physical rows. The iterator does not support <code>remove()</code>.
+     */
+    public Iterator<Row> rowIterator() {
+        return new Iterator<Row>() {
+            private int _next;
+
+            public boolean hasNext() {
+                return _next < _rows.length;
+            }
+
+            public Row next() {
+                if (_next >= _rows.length) throw new NoSuchElementException();
+                return _rows[_next++];
+            }
+
+            public void remove() {
+                throw ReadOnlyXSSFWorkbook.readOnly();
+            }
+        };
+    }
+
+    public Iterator<Row> iterator() {
+        return rowIterator();
+    }
+
+    public ReadOnlyXSSFWorkbook getWorkbook() {
+        return _workbook;
+    }
+
+    public String getSheetName() {
+        return _sh.getSheetName();
+    }
+
+    public boolean isSelected() {
+        return _sh.isSelected();
+    }
+
+    public boolean isColumnHidden(int columnIndex) {
+        return _sh.isColumnHidden(columnIndex);
+    }
+
+    public boolean isRightToLeft() {
+        return _sh.isRightToLeft();
+    }
+
+    public int getColumnWidth(int columnIndex) {
+        return _sh.getColumnWidth(columnIndex);
+    }
+
+    public int getDefaultColumnWidth() {
+        return _sh.getDefaultColumnWidth();
+    }
+
+    public short getDefaultRowHeight() {
+        return _sh.getDefaultRowHeight();
+    }
+
+    public float getDefaultRowHeightInPoints() {
+        return _sh.getDefaultRowHeightInPoints();
+    }
+
+    public CellStyle getColumnStyle(int column) {
+        return _sh.getColumnStyle(column);
+    }
+
+    public boolean getHorizontallyCenter() {
+        return _sh.getHorizontallyCenter();
+    }
+
+    public boolean getVerticallyCenter() {
+        return _sh.getVerticallyCenter();
+    }
+
+    public int getNumMergedRegions() {
+        return _sh.getNumMergedRegions();
+    }
+
+    public CellRangeAddress getMergedRegion(int index) {
+        return _sh.getMergedRegion(index);
+    }
+
+    public boolean getForceFormulaRecalculation() {
+        return _sh.getForceFormulaRecalculation();
+    }
+
+    public boolean isDisplayZeros() {
+        return _sh.isDisplayZeros();
+    }
+
+    public boolean getAutobreaks() {
+        return _sh.getAutobreaks();
+    }
+
+    public boolean getDisplayGuts() {
+        return _sh.getDisplayGuts();
+    }
+
+    public boolean getFitToPage() {
+        return _sh.getFitToPage();
+    }
+
+    public boolean getRowSumsBelow() {
+        return _sh.getRowSumsBelow();
+    }
+
+    public boolean getRowSumsRight() {
+        return _sh.getRowSumsRight();
+    }
+
+    public boolean isPrintGridlines() {
+        return _sh.isPrintGridlines();
+    }
+
+    public PrintSetup getPrintSetup() {
+        return _sh.getPrintSetup();
+    }
+
+    public Header getHeader() {
+        return _sh.getHeader();
+    }
+
+    public Footer getFooter() {
+        return _sh.getFooter();
+    }
+
+    public double getMargin(short margin) {
+        return _sh.getMargin(margin);
+    }
+
+    public boolean getProtect() {
+        return _sh.getProtect();
+    }
+
+    public boolean getScenarioProtect() {
+        return _sh.getScenarioProtect();
+    }
+
+    public short getTopRow() {
+        return _sh.getTopRow();
+    }
+
+    public short getLeftCol() {
+        return _sh.getLeftCol();
+    }
+
+    public PaneInformation getPaneInformation() {
+        return _sh.getPaneInformation();
+    }
+
+    public boolean isDisplayGridlines() {
+        return _sh.isDisplayGridlines();
+    }
+
+    public boolean isDisplayFormulas() {
+        return _sh.isDisplayFormulas();
+    }
+
+    public boolean isDisplayRowColHeadings() {
+        return _sh.isDisplayRowColHeadings();
+    }
+
+    public boolean isRowBroken(int row) {
+        return _sh.isRowBroken(row);
+    }
+
+    public int[] getRowBreaks() {
+        return _sh.getRowBreaks();
+    }
+
+    public int[] getColumnBreaks() {
+        return _sh.getColumnBreaks();
+    }
+
+    public boolean isColumnBroken(int column) {
+        return _sh.isColumnBroken(column);
+    }
+
+    public XSSFComment getCellComment(int row, int column) {
+        return _sh.getCellComment(row, column);
+    }
+
+    /**
+     * @return the hyperlink of the cell at the given position or <code>null</code>
+     */
+    public XSSFHyperlink getHyperlink(int row, int column) {
+        return _sh.getHyperlink(row, column);
+    }
+
+    public DataValidationHelper getDataValidationHelper() {
+        return _sh.getDataValidationHelper();
+    }
+
+    public SheetConditionalFormatting getSheetConditionalFormatting() {
+        return _sh.getSheetConditionalFormatting();
+    }
+
+    public CellRangeAddress getRepeatingRows() {
+        return _sh.getRepeatingRows();
+    }
+
+    public CellRangeAddress getRepeatingColumns() {
+        return _sh.getRepeatingColumns();
+    }
+
+    public Row createRow(int rownum) {
+        throw ReadOnlyXSSFWorkbook.readOnly();
+    }
+
+    public void removeRow(Row row) {
+        throw ReadOnlyXSSFWorkbook.readOnly();
+    }
+
+    public void setColumnHidden(int columnIndex, boolean hidden) {
+        throw ReadOnlyXSSFWorkbook.readOnly();
+    }
+
+    public void setRightToLeft(boolean value) {
+        throw ReadOnlyXSSFWorkbook.readOnly();
+    }
+
+    public void setColumnWidth(int columnIndex, int width) {
+        throw ReadOnlyXSSFWorkbook.readOnly();
+    }
+
+    public void setDefaultColumnWidth(int width) {
+        throw ReadOnlyXSSFWorkbook.readOnly();
+    }
+
+    public void setDefaultRowHeight(short height) {
+        throw ReadOnlyXSSFWorkbook.readOnly();
+    }
+
+    public void setDefaultRowHeightInPoints(float height) {
+        throw ReadOnlyXSSFWorkbook.readOnly();
+    }
+
+    public int addMergedRegion(CellRangeAddress region) {
+        throw ReadOnlyXSSFWorkbook.readOnly();
+    }
+
+    public void setVerticallyCenter(boolean value) {
+        throw ReadOnlyXSSFWorkbook.readOnly();
+    }
+
+    public void setHorizontallyCenter(boolean value) {
+        throw ReadOnlyXSSFWorkbook.readOnly();
+    }
+
+    public void removeMergedRegion(int index) {
+        throw ReadOnlyXSSFWorkbook.readOnly();
+    }
+
+    public void setForceFormulaRecalculation(boolean value) {
+        throw ReadOnlyXSSFWorkbook.readOnly();
+    }
+
+    public void setAutobreaks(boolean value) {
+        throw ReadOnlyXSSFWorkbook.readOnly();
+    }
+
+    public void setDisplayGuts(boolean value) {
+        throw ReadOnlyXSSFWorkbook.readOnly();
+    }
+
+    public void setDisplayZeros(boolean value) {
+        throw ReadOnlyXSSFWorkbook.readOnly();
+    }
+
+    public void setFitToPage(boolean value) {
+        throw ReadOnlyXSSFWorkbook.readOnly();
+    }
+
+    public void setRowSumsBelow(boolean value) {
+        throw ReadOnlyXSSFWorkbook.readOnly();
+    }
+
+    public void setRowSumsRight(boolean value) {
+        throw ReadOnlyXSSFWorkbook.readOnly();
+    }
+
+    public void setPrintGridlines(boolean show) {
+        throw ReadOnlyXSSFWorkbook.readOnly();
+    }
+
+    public void setSelected(boolean value) {
+        throw ReadOnlyXSSFWorkbook.readOnly();
+    }
+
+    public void setMargin(short margin, double size) {
+        throw ReadOnlyXSSFWorkbook.readOnly();
+    }
+
+    public void protectSheet(String password) {
+        throw ReadOnlyXSSFWorkbook.readOnly();
+    }
+
+    public void setZoom(int numerator, int denominator) {
+        throw ReadOnlyXSSFWorkbook.readOnly();
+    }
+
+    public void showInPane(short toprow, short leftcol) {
+        throw ReadOnlyXSSFWorkbook.readOnly();
+    }
+
+    public void shiftRows(int startRow, int endRow, int n) {
+        throw ReadOnlyXSSFWorkbook.readOnly();
+    }
+
+    public void shiftRows(int startRow, int endRow, int n, boolean copyRowHeight, boolean resetOriginalRowHeight) {
+        throw ReadOnlyXSSFWorkbook.readOnly();
+    }
+
+    public void createFreezePane(int colSplit, int rowSplit, int leftmostColumn, int topRow) {
+        throw ReadOnlyXSSFWorkbook.readOnly();
+    }
+
+    public void createFreezePane(int colSplit, int rowSplit) {
+        throw ReadOnlyXSSFWorkbook.readOnly();
+    }
+
+    public void createSplitPane(int xSplitPos, int ySplitPos, int leftmostColumn, int topRow, int activePane) {
+        throw ReadOnlyXSSFWorkbook.readOnly();
+    }
+
+    public void setDisplayGridlines(boolean show) {
+        throw ReadOnlyXSSFWorkbook.readOnly();
+    }
+
+    public void setDisplayFormulas(boolean show) {
+        throw ReadOnlyXSSFWorkbook.readOnly();
+    }
+
+    public void setDisplayRowColHeadings(boolean show) {
+        throw ReadOnlyXSSFWorkbook.readOnly();
+    }
+
+    public void setRowBreak(int row) {
+        throw ReadOnlyXSSFWorkbook.readOnly();
+    }
+
+    public void removeRowBreak(int row) {
+        throw ReadOnlyXSSFWorkbook.readOnly();
+    }
+
+    public void setColumnBreak(int column) {
+        throw ReadOnlyXSSFWorkbook.readOnly();
+    }
+
+    public void removeColumnBreak(int column) {
+        throw ReadOnlyXSSFWorkbook.readOnly();
+    }
+
+    public void setColumnGroupCollapsed(int columnNumber, boolean collapsed) {
+        throw ReadOnlyXSSFWorkbook.readOnly();
+    }
+
+    public void groupColumn(int fromColumn, int toColumn) {
+        throw ReadOnlyXSSFWorkbook.readOnly();
+    }
+
+    public void ungroupColumn(int fromColumn, int toColumn) {
+        throw ReadOnlyXSSFWorkbook.readOnly();
+    }
+
+    public void groupRow(int fromRow, int toRow) {
+        throw ReadOnlyXSSFWorkbook.readOnly();
+    }
+
+    public void ungroupRow(int fromRow, int toRow) {
+        throw ReadOnlyXSSFWorkbook.readOnly();
+    }
+
+    public void setRowGroupCollapsed(int row, boolean collapse) {
+        throw ReadOnlyXSSFWorkbook.readOnly();
+    }
+
+    public void setDefaultColumnStyle(int column, CellStyle style) {
+        throw ReadOnlyXSSFWorkbook.readOnly();
+    }
+
+    public void autoSizeColumn(int column) {
+        throw ReadOnlyXSSFWorkbook.readOnly();
+    }
+
+    public void autoSizeColumn(int column, boolean useMergedCells) {
+        throw ReadOnlyXSSFWorkbook.readOnly();
+    }
+
+    public Drawing createDrawingPatriarch() {
+        throw ReadOnlyXSSFWorkbook.readOnly();
+    }
+
+    public CellRange<? extends Cell> setArrayFormula(String formula, CellRangeAddress range) {
+        throw ReadOnlyXSSFWorkbook.readOnly();
+    }
+
+    public CellRange<? extends Cell> removeArrayFormula(Cell cell) {
+        throw ReadOnlyXSSFWorkbook.readOnly();
+    }
+
+    public void addValidationData(DataValidation dataValidation) {
+        throw ReadOnlyXSSFWorkbook.readOnly();
+    }
+
+    public AutoFilter setAutoFilter(CellRangeAddress range) {
+        throw ReadOnlyXSSFWorkbook.readOnly();
+    }
+
+    public void setRepeatingRows(CellRangeAddress rowRangeRef) {
+        throw ReadOnlyXSSFWorkbook.readOnly();
+    }
+
+    public void setRepeatingColumns(CellRangeAddress columnRangeRef) {
+        throw ReadOnlyXSSFWorkbook.readOnly();
+    }
+
+    void addSharedFormula(int si, String formula, CellRangeAddress range) {
+        _sharedFormulas.put(Integer.valueOf(si), new SharedFormulaGroup(formula, range));
+    }
+
+    void addArrayFormula(String formula, CellRangeAddress range) {
+        ArrayFormula f = new ArrayFormula(formula, range);
+        for (int row = range.getFirstRow(); row <= range.getLastRow(); row++) {
+            Integer key = Integer.valueOf(row);
+            List<ArrayFormula> inRow = _arrayFormulas.get(key);
+            if (inRow == null) {
+                inRow = new ArrayList<ArrayFormula>(1);
+                _arrayFormulas.put(key, inRow);
+            }
+            inRow.add(f);
+        }
+    }
+
+    /**
+     * @return the formula of the array formula covering the cell, <code>null</code> if there is none
+     */
+    String getArrayFormula(int row, int column) {
+        ArrayFormula f = findArrayFormula(row, column);
+        return f == null ? null : f._formula;
+    }
+
+    /**
+     * @return the range of the array formula covering the cell, <code>null</code> if there is none
+     */
+    CellRangeAddress getArrayFormulaRange(int row, int column) {
+        ArrayFormula f = findArrayFormula(row, column);
+        return f == null ? null : f._range;
+    }
+
+    private ArrayFormula findArrayFormula(int row, int column) {
+        if (_arrayFormulas.isEmpty()) return null;
+        List<ArrayFormula> inRow = _arrayFormulas.get(Integer.valueOf(row));
+        if (inRow == null) return null;
+        for (int i = 0; i < inRow.size(); i++) {
+            ArrayFormula f = inRow.get(i);
+            if (f._range.isInRange(row, column)) return f;
+        }
+        return null;
+    }
+
+    /**
+     * @param formula the formula text of a cell or the <code>Integer</code> index of its shared formula
+     * @return the formula text as it applies to the cell
+     */
+    String getCellFormula(Object formula, int row, int column) {
+        if (formula instanceof String) {
+            return (String)formula;
+        }
+        XSSFEvaluationWorkbook fpb = _workbook.getXSSFEvaluationWorkbook();
+        return FormulaRenderer.toFormulaString(fpb, getSharedFormulaTokens((Integer)formula, row, column));
+    }
+
+    /**
+     * @param formula the formula text of a cell or the <code>Integer</code> index of its shared formula
+     * @return the parsed formula as it applies to the cell
+     */
+    Ptg[] getFormulaTokens(Object formula, int row, int column) {
+        if (formula instanceof String) {
+            return FormulaParser.parse((String)formula, _workbook.getXSSFEvaluationWorkbook(),
+                    FormulaType.CELL, _workbook.getSheetIndex(this));
+        }
+        return getSharedFormulaTokens((Integer)formula, row, column);
+    }
+
+    /**
+     * Creates a non shared formula from the shared formula counterpart
+     */
+    private Ptg[] getSharedFormulaTokens(Integer si, int row, int column) {
+        SharedFormulaGroup group = _sharedFormulas.get(si);
+        if (group == null) throw new IllegalStateException(
+                "Master cell of a shared formula with sid=" + si + " was not found");
+
+        if (group._ptgs == null) {
+            // the tokens of the master are parsed once and shifted for each cell of the group
+            group._ptgs = FormulaParser.parse(group._formula, _workbook.getXSSFEvaluationWorkbook(),
+                    FormulaType.CELL, _workbook.getSheetIndex(this));
+        }
+        SharedFormula sf = new SharedFormula(SpreadsheetVersion.EXCEL2007);
+        return sf.convertSharedFormulas(group._ptgs,
+                row - group._range.getFirstRow(), column - group._range.getFirstColumn());
+    }
+
+    /**
+     * @return the index of the row with the given number in the rows array, negative if there is none
+     */
+    private int indexOf(int rownum) {
+        int size = _rowNums.length;
+        if (size == 0) return -1;
+        // fast path for sheets without empty rows
+        int guess = rownum - _rowNums[0];
+        if (guess >= 0 && guess < size && _rowNums[guess] == rownum) {
+            return guess;
+        }
+        int low = 0;
+        int high = size - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int midRow = _rowNums[mid];
+            if (midRow < rownum) {
+                low = mid + 1;
+            } else if (midRow > rownum) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    private static final class SharedFormulaGroup {
+        final String _formula;
+        final CellRangeAddress _range;
+        Ptg[] _ptgs;
+
+        SharedFormulaGroup(String formula, CellRangeAddress range) {
+            _formula = formula;
+            _range = range;
+        }
+    }
+
+    private static final class ArrayFormula {
+        final String _formula;
+        final CellRangeAddress _range;
+
+        ArrayFormula(String formula, CellRangeAddress range) {
+            _formula = formula;
+            _range = range;
+        }
+    }
+}
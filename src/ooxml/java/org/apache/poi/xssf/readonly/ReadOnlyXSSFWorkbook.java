@@ -0,0 +1,427 @@
+/* ====================================================================
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+==================================================================== */
+
+package org.apache.poi.xssf.readonly;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.poi.POIXMLDocumentPart;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.ss.formula.udf.UDFFinder;
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.ClientAnchor;
+import org.apache.poi.ss.usermodel.CreationHelper;
+import org.apache.poi.ss.usermodel.DataFormat;
+import org.apache.poi.ss.usermodel.Font;
+import org.apache.poi.ss.usermodel.Hyperlink;
+import org.apache.poi.ss.usermodel.Name;
+import org.apache.poi.ss.usermodel.PictureData;
+import org.apache.poi.ss.usermodel.RichTextString;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Row.MissingCellPolicy;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.util.PackageHelper;
+import org.apache.poi.xssf.usermodel.XSSFEvaluationWorkbook;
+import org.apache.poi.xssf.usermodel.XSSFSheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.openxmlformats.schemas.spreadsheetml.x2006.main.CTSheet;
+import org.openxmlformats.schemas.spreadsheetml.x2006.main.CTWorkbookPr;
+
+/**
+ * A read-only .xlsx workbook which keeps the cells of its sheets in compact primitive storage.
+ * <p>
+ * {@link XSSFWorkbook} parses every worksheet into XmlBeans, one <code>CTRow</code> and
+ * <code>CTCell</code> bean per row and cell plus the <code>XSSFRow</code> and
+ * <code>XSSFCell</code> wrappers, which takes many times the size of the sheet in memory.
+ * This workbook reads the rows of a worksheet with a SAX parser into {@link ReadOnlyXSSFRow}s,
+ * a handful of primitive arrays per row, and creates cells as views when they are requested.
+ * Random access to rows and cells, styles, shared strings, names and the other sheet properties
+ * work as with {@link XSSFWorkbook}, and formulas can be evaluated with a
+ * {@link ReadOnlyXSSFFormulaEvaluator}.
+ * </p>
+ * <p>
+ * Methods which would change the workbook throw an <code>UnsupportedOperationException</code>.
+ * A sheet is read the first time it is accessed.
+ * </p>
+ */
+public class ReadOnlyXSSFWorkbook implements Workbook {
+    private final XSSFWorkbook _wb;
+    private final List<XSSFSheet> _xSheets = new ArrayList<XSSFSheet>();
+    private final ReadOnlyXSSFSheet[] _sheets;
+    private final boolean _date1904;
+    private XSSFEvaluationWorkbook _evaluationWorkbook;
+    private MissingCellPolicy _missingCellPolicy = Row.RETURN_NULL_AND_BLANK;
+
+    /**
+     * Read a workbook from an OpenXML4J <code>Package</code>.
+     * Opening the package read-only avoids buffering its parts in memory.
+     *
+     * @param pkg the OpenXML4J <code>OPC Package</code> object.
+     */
+    @SuppressWarnings("deprecation") // getXYZArray() array accessors are deprecated
+    public ReadOnlyXSSFWorkbook(OPCPackage pkg) throws IOException {
+        _wb = new XSSFWorkbook(pkg);
+
+        // the same sheets in the same order as XSSFWorkbook, whose worksheets are parsed on first access
+        for (CTSheet ctSheet : _wb.getCTWorkbook().getSheets().getSheetArray()) {
+            POIXMLDocumentPart p = _wb.getRelationById(ctSheet.getId());
+            if (p instanceof XSSFSheet) {
+                _xSheets.add((XSSFSheet)p);
+            }
+        }
+        _sheets = new ReadOnlyXSSFSheet[_xSheets.size()];
+
+        CTWorkbookPr workbookPr = _wb.getCTWorkbook().getWorkbookPr();
+        _date1904 = workbookPr != null && workbookPr.getDate1904();
+    }
+
+    /**
+     * Read a workbook from a stream, which is buffered in memory.
+     */
+    public ReadOnlyXSSFWorkbook(InputStream is) throws IOException {
+        this(PackageHelper.open(is));
+    }
+
+    /**
+     * Read a workbook from a file.
+     *
+     * @param path the file name.
+     */
+    public ReadOnlyXSSFWorkbook(String path) throws IOException {
+        this(XSSFWorkbook.openPackage(path));
+    }
+
+    static UnsupportedOperationException readOnly() {
+        return new UnsupportedOperationException("The workbook is read-only");
+    }
+
+    /**
+     * @return the workbook which holds everything but the rows of the sheets
+     */
+    XSSFWorkbook getXSSFWorkbook() {
+        return _wb;
+    }
+
+    /**
+     * @return the workbook the formulas of the sheets are parsed with
+     */
+    XSSFEvaluationWorkbook getXSSFEvaluationWorkbook() {
+        if (_evaluationWorkbook == null) {
+            _evaluationWorkbook = XSSFEvaluationWorkbook.create(_wb);
+        }
+        return _evaluationWorkbook;
+    }
+
+    /**
+     * @return whether the date systems used in the workbook starts in 1904
+     */
+    public boolean isDate1904() {
+        return _date1904;
+    }
+
+    public int getNumberOfSheets() {
+        return _sheets.length;
+    }
+
+    /**
+     * Get the sheet at the given index, reading its rows if this has not been done yet.
+     *
+     * @param index of the sheet number (0-based physical & logical)
+     * @return the sheet at the given index
+     * @throws IllegalArgumentException if the index is out of range
+     */
+    public ReadOnlyXSSFSheet getSheetAt(int index) {
+        validateSheetIndex(index);
+        ReadOnlyXSSFSheet sheet = _sheets[index];
+        if (sheet == null) {
+            sheet = new ReadOnlyXSSFSheet(this, _xSheets.get(index));
+            _sheets[index] = sheet;
+        }
+        return sheet;
+    }
+
+    /**
+     * Get the sheet with the given name (case insensitive match)
+     *
+     * @return the sheet with the given name or <code>null</code> if it does not exist
+     */
+    public ReadOnlyXSSFSheet getSheet(String name) {
+        int index = getSheetIndex(name);
+        return index < 0 ? null : getSheetAt(index);
+    }
+
+    public String getSheetName(int sheet) {
+        validateSheetIndex(sheet);
+        return _xSheets.get(sheet).getSheetName();
+    }
+
+    public int getSheetIndex(String name) {
+        for (int i = 0; i < _xSheets.size(); i++) {
+            if (_xSheets.get(i).getSheetName().equalsIgnoreCase(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    public int getSheetIndex(Sheet sheet) {
+        for (int i = 0; i < _sheets.length; i++) {
+            if (_sheets[i] == sheet) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    public int getActiveSheetIndex() {
+        return _wb.getActiveSheetIndex();
+    }
+
+    public int getFirstVisibleTab() {
+        return _wb.getFirstVisibleTab();
+    }
+
+    public short getNumberOfFonts() {
+        return _wb.getNumberOfFonts();
+    }
+
+    public Font getFontAt(short idx) {
+        return _wb.getFontAt(idx);
+    }
+
+    public Font findFont(short boldWeight, short color, short fontHeight, String name, boolean italic, boolean strikeout, short typeOffset, byte underline) {
+        return _wb.findFont(boldWeight, color, fontHeight, name, italic, strikeout, typeOffset, underline);
+    }
+
+    public short getNumCellStyles() {
+        return _wb.getNumCellStyles();
+    }
+
+    public CellStyle getCellStyleAt(short idx) {
+        return _wb.getCellStyleAt(idx);
+    }
+
+    public int getNumberOfNames() {
+        return _wb.getNumberOfNames();
+    }
+
+    public Name getName(String name) {
+        return _wb.getName(name);
+    }
+
+    public Name getNameAt(int nameIndex) {
+        return _wb.getNameAt(nameIndex);
+    }
+
+    public int getNameIndex(String name) {
+        return _wb.getNameIndex(name);
+    }
+
+    public String getPrintArea(int sheetIndex) {
+        return _wb.getPrintArea(sheetIndex);
+    }
+
+    public MissingCellPolicy getMissingCellPolicy() {
+        return _missingCellPolicy;
+    }
+
+    /**
+     * Sets the policy on what to do when getting missing or blank cells from a row.
+     * This only affects how cells are returned, the workbook itself is not changed.
+     */
+    public void setMissingCellPolicy(MissingCellPolicy missingCellPolicy) {
+        _missingCellPolicy = missingCellPolicy;
+    }
+
+    public List<? extends PictureData> getAllPictures() {
+        return _wb.getAllPictures();
+    }
+
+    /**
+     * Returns a creation helper whose formula evaluators are {@link ReadOnlyXSSFFormulaEvaluator}s
+     */
+    public CreationHelper getCreationHelper() {
+        final CreationHelper helper = _wb.getCreationHelper();
+        return new CreationHelper() {
+            public RichTextString createRichTextString(String text) {
+                return helper.createRichTextString(text);
+            }
+
+            public DataFormat createDataFormat() {
+                return helper.createDataFormat();
+            }
+
+            public Hyperlink createHyperlink(int type) {
+                return helper.createHyperlink(type);
+            }
+
+            public ReadOnlyXSSFFormulaEvaluator createFormulaEvaluator() {
+                return new ReadOnlyXSSFFormulaEvaluator(ReadOnlyXSSFWorkbook.this);
+            }
+
+            public ClientAnchor createClientAnchor() {
+                return helper.createClientAnchor();
+            }
+        };
+    }
+
+    /**
+     * Returns the instance of DataFormat for this workbook, used to look up formats
+     */
+    public DataFormat createDataFormat() {
+        return _wb.createDataFormat();
+    }
+
+    public boolean isHidden() {
+        return _wb.isHidden();
+    }
+
+    public boolean isSheetHidden(int sheetIx) {
+        return _wb.isSheetHidden(sheetIx);
+    }
+
+    public boolean isSheetVeryHidden(int sheetIx) {
+        return _wb.isSheetVeryHidden(sheetIx);
+    }
+
+    /**
+     * Register a new toolpack in this workbook, used by formula evaluation
+     *
+     * @param toopack the toolpack to register
+     */
+    public void addToolPack(UDFFinder toopack) {
+        _wb.addToolPack(toopack);
+    }
+
+    public boolean getForceFormulaRecalculation() {
+        return _wb.getForceFormulaRecalculation();
+    }
+
+    public void setActiveSheet(int sheetIndex) {
+        throw readOnly();
+    }
+
+    public void setFirstVisibleTab(int sheetIndex) {
+        throw readOnly();
+    }
+
+    public void setSheetOrder(String sheetname, int pos) {
+        throw readOnly();
+    }
+
+    public void setSelectedTab(int index) {
+        throw readOnly();
+    }
+
+    public void setSheetName(int sheet, String name) {
+        throw readOnly();
+    }
+
+    public Sheet createSheet() {
+        throw readOnly();
+    }
+
+    public Sheet createSheet(String sheetname) {
+        throw readOnly();
+    }
+
+    public Sheet cloneSheet(int sheetNum) {
+        throw readOnly();
+    }
+
+    public void removeSheetAt(int index) {
+        throw readOnly();
+    }
+
+    /**
+     * @deprecated use {@link Sheet#setRepeatingRows(org.apache.poi.ss.util.CellRangeAddress)}
+     *        or {@link Sheet#setRepeatingColumns(org.apache.poi.ss.util.CellRangeAddress)}
+     */
+    @Deprecated
+    public void setRepeatingRowsAndColumns(int sheetIndex, int startColumn, int endColumn, int startRow, int endRow) {
+        throw readOnly();
+    }
+
+    public Font createFont() {
+        throw readOnly();
+    }
+
+    public CellStyle createCellStyle() {
+        throw readOnly();
+    }
+
+    public void write(OutputStream stream) throws IOException {
+        throw readOnly();
+    }
+
+    public Name createName() {
+        throw readOnly();
+    }
+
+    public void removeName(int index) {
+        throw readOnly();
+    }
+
+    public void removeName(String name) {
+        throw readOnly();
+    }
+
+    public void setPrintArea(int sheetIndex, String reference) {
+        throw readOnly();
+    }
+
+    public void setPrintArea(int sheetIndex, int startColumn, int endColumn, int startRow, int endRow) {
+        throw readOnly();
+    }
+
+    public void removePrintArea(int sheetIndex) {
+        throw readOnly();
+    }
+
+    public int addPicture(byte[] pictureData, int format) {
+        throw readOnly();
+    }
+
+    public void setHidden(boolean hiddenFlag) {
+        throw readOnly();
+    }
+
+    public void setSheetHidden(int sheetIx, boolean hidden) {
+        throw readOnly();
+    }
+
+    public void setSheetHidden(int sheetIx, int hidden) {
+        throw readOnly();
+    }
+
+    public void setForceFormulaRecalculation(boolean value) {
+        throw readOnly();
+    }
+
+    private void validateSheetIndex(int index) {
+        int lastSheetIx = _sheets.length - 1;
+        if (index < 0 || index > lastSheetIx) {
+            throw new IllegalArgumentException("Sheet index ("
+                    + index +") is out of range (0.." + lastSheetIx + ")");
+        }
+    }
+}
@@ -0,0 +1,204 @@
+/* ====================================================================
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+==================================================================== */
+
+package org.apache.poi.xssf.readonly;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Passes a worksheet through unchanged while keeping a copy of it without the content
+ * of its "sheetData" element.
+ * <p>
+ * The rows are read by the SAX parser consuming this stream and the copy, which holds
+ * everything else in the worksheet such as column definitions, merged regions and page setup,
+ * is small enough to be parsed into beans afterwards. This way the worksheet part is
+ * inflated once.
+ * </p>
+ * <p>
+ * The markers searched for are plain ASCII, so scanning the UTF-8 encoded bytes is safe.
+ * Worksheets which use a namespace prefix for the sheetData element are copied as a whole.
+ * </p>
+ */
+final class RowStrippingInputStream extends FilterInputStream {
+    private static final byte[] START_TAG = ascii("<sheetData");
+    private static final byte[] END_TAG = ascii("</sheetData>");
+
+    // states of the scanner
+    private static final int SEARCH_START_TAG = 0;
+    private static final int AFTER_START_TAG_NAME = 1;
+    private static final int IN_START_TAG = 2;
+    private static final int SEARCH_END_TAG = 3;
+    private static final int COPY = 4;
+
+    private final ByteArrayOutputStream _copy = new ByteArrayOutputStream(8192);
+    private int _state = SEARCH_START_TAG;
+    private int _matched;
+    private int _previous;
+
+    RowStrippingInputStream(InputStream in) {
+        super(in);
+    }
+
+    /**
+     * Read the rest of the worksheet and return the copy without rows
+     */
+    byte[] toByteArrayWithoutRows() throws IOException {
+        byte[] skip = new byte[8192];
+        while (read(skip, 0, skip.length) >= 0) {
+            // the parser may stop before the end of the stream
+        }
+        return _copy.toByteArray();
+    }
+
+    @Override
+    public int read() throws IOException {
+        int b = in.read();
+        if (b >= 0) scan(b);
+        return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        int count = in.read(b, off, len);
+        if (count <= 0) return count;
+        if (_state == COPY) {
+            _copy.write(b, off, count);
+            return count;
+        }
+        // copy pass-through bytes in runs rather than one at a time
+        int runStart = off;
+        int end = off + count;
+        for (int i = off; i < end; i++) {
+            if (_state == SEARCH_END_TAG) {
+                if (runStart < i) _copy.write(b, runStart, i - runStart);
+                runStart = end;
+                i = skipRows(b, i, end);
+                if (_state == COPY) runStart = i + 1;
+            } else if (_state == COPY) {
+                break;
+            } else {
+                scanStart(b[i] & 0xFF);
+            }
+        }
+        if (runStart < end) _copy.write(b, runStart, end - runStart);
+        return count;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        // route skipped bytes through read so that the copy stays complete
+        byte[] buf = new byte[(int)Math.min(n, 8192)];
+        long remaining = n;
+        while (remaining > 0) {
+            int count = read(buf, 0, (int)Math.min(remaining, buf.length));
+            if (count < 0) break;
+            remaining -= count;
+        }
+        return n - remaining;
+    }
+
+    @Override
+    public void close() {
+        // the parser may close its input at the end of the document, the rest of
+        // the stream is still needed for the copy and the caller closes the source
+    }
+
+    private void scan(int c) {
+        if (_state == SEARCH_END_TAG) {
+            matchEndTag(c);
+        } else {
+            if (_state != COPY) scanStart(c);
+            _copy.write(c);
+        }
+    }
+
+    /**
+     * Advance the search for the start tag by a byte which is copied
+     */
+    private void scanStart(int c) {
+        switch (_state) {
+            case SEARCH_START_TAG:
+                if (c == START_TAG[_matched]) {
+                    if (++_matched == START_TAG.length) {
+                        _matched = 0;
+                        _state = AFTER_START_TAG_NAME;
+                    }
+                } else {
+                    _matched = c == START_TAG[0] ? 1 : 0;
+                }
+                break;
+            case AFTER_START_TAG_NAME:
+                if (c == '>' || c == '/' || Character.isWhitespace(c)) {
+                    _state = IN_START_TAG;
+                    scanStart(c);
+                } else {
+                    // another element whose name starts with sheetData
+                    _state = SEARCH_START_TAG;
+                    _matched = c == START_TAG[0] ? 1 : 0;
+                }
+                break;
+            case IN_START_TAG:
+                if (c == '>') {
+                    // nothing to strip from <sheetData/>
+                    _state = _previous == '/' ? COPY : SEARCH_END_TAG;
+                }
+                _previous = c;
+                break;
+        }
+    }
+
+    /**
+     * Skip the bytes of the rows up to and including the end tag
+     *
+     * @return the index of the last byte consumed
+     */
+    private int skipRows(byte[] b, int i, int end) {
+        for (; i < end; i++) {
+            matchEndTag(b[i] & 0xFF);
+            if (_state == COPY) return i;
+        }
+        return end - 1;
+    }
+
+    private void matchEndTag(int c) {
+        if (c == END_TAG[_matched]) {
+            if (++_matched == END_TAG.length) {
+                _copy.write(END_TAG, 0, END_TAG.length);
+                _matched = 0;
+                _state = COPY;
+            }
+        } else {
+            _matched = c == END_TAG[0] ? 1 : 0;
+        }
+    }
+
+    private static byte[] ascii(String s) {
+        byte[] bytes = new byte[s.length()];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte)s.charAt(i);
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,384 @@
+/* ====================================================================
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+==================================================================== */
+
+package org.apache.poi.xssf.readonly;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParser;
+import javax.xml.parsers.SAXParserFactory;
+
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.util.CellRangeAddress;
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * Reads the rows of a worksheet with a SAX parser into the primitive storage of
+ * {@link ReadOnlyXSSFRow}s. The cells of the row being read are collected in growable
+ * arrays which are copied into a row of the exact size at the end of each row.
+ */
+final class SheetRowsReader extends DefaultHandler {
+    private static final short[] NO_COLUMNS = {};
+    private static final byte[] NO_KINDS = {};
+    private static final long[] NO_VALUES = {};
+
+    private final ReadOnlyXSSFSheet _sheet;
+    private final List<ReadOnlyXSSFRow> _rows = new ArrayList<ReadOnlyXSSFRow>();
+    private boolean _inSheetData;
+
+    // the row being read
+    private int _rowNum = -1;
+    private float _height;
+    private boolean _hidden;
+    private int _rowStyle;
+    private int _size;
+    private int _lastColumn;
+    private boolean _ordered;
+    private short[] _columns = new short[16];
+    private byte[] _kinds = new byte[16];
+    private short[] _styles = new short[16];
+    private long[] _values = new long[16];
+    private String[] _texts = new String[16];
+    private Object[] _formulas = new Object[16];
+    private boolean _hasTexts;
+    private boolean _hasFormulas;
+
+    // the cell being read
+    private int _column;
+    private String _type;
+    private int _style;
+    private String _value;
+    private boolean _hasFormula;
+    private String _formula;
+    private String _formulaType;
+    private String _formulaRef;
+    private String _formulaSi;
+    private StringBuilder _inlineString;
+    private boolean _inInlineString;
+    private boolean _inPhonetic;
+
+    // characters of the v, f or t element being read
+    private final StringBuilder _chars = new StringBuilder();
+    private boolean _collect;
+
+    SheetRowsReader(ReadOnlyXSSFSheet sheet) {
+        _sheet = sheet;
+    }
+
+    /**
+     * Parse the worksheet and return its rows in document order
+     */
+    List<ReadOnlyXSSFRow> read(InputStream is) throws IOException, SAXException {
+        SAXParserFactory saxFactory = SAXParserFactory.newInstance();
+        saxFactory.setNamespaceAware(true);
+        try {
+            SAXParser saxParser = saxFactory.newSAXParser();
+            XMLReader sheetParser = saxParser.getXMLReader();
+            sheetParser.setContentHandler(this);
+            sheetParser.parse(new InputSource(is));
+        } catch(ParserConfigurationException e) {
+            throw new RuntimeException("SAX parser appears to be broken - " + e.getMessage());
+        }
+        return _rows;
+    }
+
+    @Override
+    public void startElement(String uri, String localName, String qName, Attributes attributes) {
+        if (!_inSheetData) {
+            if ("sheetData".equals(localName)) _inSheetData = true;
+            return;
+        }
+        if ("c".equals(localName)) {
+            startCell(attributes);
+        } else if ("v".equals(localName)) {
+            startCollecting();
+        } else if ("f".equals(localName)) {
+            _hasFormula = true;
+            _formulaType = attributes.getValue("t");
+            _formulaRef = attributes.getValue("ref");
+            _formulaSi = attributes.getValue("si");
+            startCollecting();
+        } else if ("is".equals(localName)) {
+            _inInlineString = true;
+            _inlineString = new StringBuilder();
+        } else if ("rPh".equals(localName)) {
+            _inPhonetic = true;
+        } else if ("t".equals(localName)) {
+            if (_inInlineString && !_inPhonetic) startCollecting();
+        } else if ("row".equals(localName)) {
+            startRow(attributes);
+        }
+    }
+
+    @Override
+    public void endElement(String uri, String localName, String qName) {
+        if (!_inSheetData) return;
+
+        if ("v".equals(localName)) {
+            _value = stopCollecting();
+        } else if ("f".equals(localName)) {
+            _formula = stopCollecting();
+        } else if ("t".equals(localName)) {
+            if (_collect) _inlineString.append(stopCollecting());
+        } else if ("rPh".equals(localName)) {
+            _inPhonetic = false;
+        } else if ("is".equals(localName)) {
+            _inInlineString = false;
+        } else if ("c".equals(localName)) {
+            endCell();
+        } else if ("row".equals(localName)) {
+            endRow();
+        } else if ("sheetData".equals(localName)) {
+            _inSheetData = false;
+        }
+    }
+
+    @Override
+    public void characters(char[] ch, int start, int length) {
+        if (_collect) {
+            _chars.append(ch, start, length);
+        }
+    }
+
+    private void startCollecting() {
+        _chars.setLength(0);
+        _collect = true;
+    }
+
+    private String stopCollecting() {
+        _collect = false;
+        return _chars.toString();
+    }
+
+    private void startRow(Attributes attributes) {
+        String r = attributes.getValue("r");
+        _rowNum = r == null ? _rowNum + 1 : Integer.parseInt(r) - 1;
+        String ht = attributes.getValue("ht");
+        _height = ht == null ? -1 : Float.parseFloat(ht);
+        _hidden = isTrue(attributes.getValue("hidden"));
+        String s = attributes.getValue("s");
+        _rowStyle = s == null ? -1 : Integer.parseInt(s);
+        _size = 0;
+        _lastColumn = -1;
+        _ordered = true;
+        _hasTexts = false;
+        _hasFormulas = false;
+    }
+
+    private void startCell(Attributes attributes) {
+        String r = attributes.getValue("r");
+        _column = r == null ? _lastColumn + 1 : parseColumn(r);
+        _type = attributes.getValue("t");
+        String s = attributes.getValue("s");
+        _style = s == null ? 0 : Integer.parseInt(s);
+        _value = null;
+        _hasFormula = false;
+        _formula = null;
+        _formulaType = null;
+        _formulaRef = null;
+        _formulaSi = null;
+        _inlineString = null;
+    }
+
+    private void endCell() {
+        Object formula = null;
+        boolean isFormula = _hasFormula;
+        if (isFormula) {
+            if ("shared".equals(_formulaType) && _formulaSi != null) {
+                int si = Integer.parseInt(_formulaSi);
+                if (_formulaRef != null && _formula != null && _formula.length() > 0) {
+                    _sheet.addSharedFormula(si, _formula, CellRangeAddress.valueOf(_formulaRef));
+                }
+                formula = Integer.valueOf(si);
+            } else {
+                // a shared formula without a group index is taken as it is
+                formula = _formula == null ? "" : _formula;
+                if ("array".equals(_formulaType) && _formulaRef != null) {
+                    _sheet.addArrayFormula((String)formula, CellRangeAddress.valueOf(_formulaRef));
+                }
+            }
+        } else {
+            // the other cells of an array formula have only a value
+            String arrayFormula = _sheet.getArrayFormula(_rowNum, _column);
+            if (arrayFormula != null) {
+                isFormula = true;
+                formula = arrayFormula;
+            }
+        }
+
+        int kind;
+        long value = 0;
+        String text = null;
+        if ("s".equals(_type)) {
+            if (_value != null) {
+                kind = Cell.CELL_TYPE_STRING | ReadOnlyXSSFRow.SHARED_STRING;
+                value = Integer.parseInt(_value);
+            } else {
+                kind = Cell.CELL_TYPE_STRING;
+            }
+        } else if ("str".equals(_type)) {
+            kind = Cell.CELL_TYPE_STRING;
+            text = _value;
+        } else if ("inlineStr".equals(_type)) {
+            kind = Cell.CELL_TYPE_STRING;
+            text = _inlineString != null ? _inlineString.toString() : _value;
+        } else if ("b".equals(_type)) {
+            kind = Cell.CELL_TYPE_BOOLEAN;
+            value = "1".equals(_value) ? 1 : 0;
+        } else if ("e".equals(_type)) {
+            kind = Cell.CELL_TYPE_ERROR;
+            text = _value;
+        } else if (_value == null) {
+            // a numeric cell without a value is blank, unless it is a formula
+            kind = isFormula ? Cell.CELL_TYPE_NUMERIC : Cell.CELL_TYPE_BLANK;
+        } else {
+            kind = Cell.CELL_TYPE_NUMERIC;
+            try {
+                value = Double.doubleToLongBits(Double.parseDouble(_value));
+            } catch (NumberFormatException e) {
+                kind |= ReadOnlyXSSFRow.UNPARSABLE;
+                text = _value;
+            }
+        }
+        if (isFormula) {
+            kind |= ReadOnlyXSSFRow.FORMULA;
+        }
+
+        ensureCapacity(_size + 1);
+        _columns[_size] = (short)_column;
+        _kinds[_size] = (byte)kind;
+        _styles[_size] = (short)_style;
+        _values[_size] = value;
+        _texts[_size] = text;
+        _formulas[_size] = formula;
+        _hasTexts |= text != null;
+        _hasFormulas |= formula != null;
+        _ordered &= _column > _lastColumn;
+        _lastColumn = _column;
+        _size++;
+    }
+
+    private void endRow() {
+        if (!_ordered) sortCells();
+
+        int size = _size;
+        short[] columns = NO_COLUMNS;
+        byte[] kinds = NO_KINDS;
+        short[] styles = NO_COLUMNS;
+        long[] values = NO_VALUES;
+        String[] texts = null;
+        Object[] formulas = null;
+        if (size > 0) {
+            columns = new short[size];
+            System.arraycopy(_columns, 0, columns, 0, size);
+            kinds = new byte[size];
+            System.arraycopy(_kinds, 0, kinds, 0, size);
+            styles = new short[size];
+            System.arraycopy(_styles, 0, styles, 0, size);
+            values = new long[size];
+            System.arraycopy(_values, 0, values, 0, size);
+            if (_hasTexts) {
+                texts = new String[size];
+                System.arraycopy(_texts, 0, texts, 0, size);
+            }
+            if (_hasFormulas) {
+                formulas = new Object[size];
+                System.arraycopy(_formulas, 0, formulas, 0, size);
+            }
+        }
+        for (int i = 0; i < size; i++) {
+            _texts[i] = null;
+            _formulas[i] = null;
+        }
+        _rows.add(new ReadOnlyXSSFRow(_sheet, _rowNum, _height, _hidden, _rowStyle,
+                columns, kinds, styles, values, texts, formulas));
+    }
+
+    /**
+     * Cells are written in column order by Excel, other producers may not do so
+     */
+    private void sortCells() {
+        for (int i = 1; i < _size; i++) {
+            for (int j = i; j > 0 && _columns[j - 1] > _columns[j]; j--) {
+                swap(j - 1, j);
+            }
+        }
+    }
+
+    private void swap(int i, int j) {
+        short column = _columns[i]; _columns[i] = _columns[j]; _columns[j] = column;
+        byte kind = _kinds[i]; _kinds[i] = _kinds[j]; _kinds[j] = kind;
+        short style = _styles[i]; _styles[i] = _styles[j]; _styles[j] = style;
+        long value = _values[i]; _values[i] = _values[j]; _values[j] = value;
+        String text = _texts[i]; _texts[i] = _texts[j]; _texts[j] = text;
+        Object formula = _formulas[i]; _formulas[i] = _formulas[j]; _formulas[j] = formula;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= _columns.length) return;
+        int newCapacity = Math.max(capacity, _columns.length * 2);
+
+        short[] columns = new short[newCapacity];
+        System.arraycopy(_columns, 0, columns, 0, _size);
+        _columns = columns;
+        byte[] kinds = new byte[newCapacity];
+        System.arraycopy(_kinds, 0, kinds, 0, _size);
+        _kinds = kinds;
+        short[] styles = new short[newCapacity];
+        System.arraycopy(_styles, 0, styles, 0, _size);
+        _styles = styles;
+        long[] values = new long[newCapacity];
+        System.arraycopy(_values, 0, values, 0, _size);
+        _values = values;
+        String[] texts = new String[newCapacity];
+        System.arraycopy(_texts, 0, texts, 0, _size);
+        _texts = texts;
+        Object[] formulas = new Object[newCapacity];
+        System.arraycopy(_formulas, 0, formulas, 0, _size);
+        _formulas = formulas;
+    }
+
+    /**
+     * Parse the column of a cell reference like "AB12" without creating a CellReference
+     */
+    private static int parseColumn(String ref) {
+        int column = 0;
+        for (int i = 0; i < ref.length(); i++) {
+            char ch = ref.charAt(i);
+            if (ch >= 'A' && ch <= 'Z') {
+                column = column * 26 + (ch - 'A' + 1);
+            } else if (ch >= 'a' && ch <= 'z') {
+                column = column * 26 + (ch - 'a' + 1);
+            } else if (ch != '$') {
+                break;
+            }
+        }
+        return column - 1;
+    }
+
+    private static boolean isTrue(String value) {
+        return "1".equals(value) || "true".equals(value);
+    }
+}
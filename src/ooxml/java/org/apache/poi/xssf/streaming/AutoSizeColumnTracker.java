@@ -0,0 +1,251 @@
+/* ====================================================================
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+==================================================================== */
+
+
+package org.apache.poi.xssf.streaming;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.DataFormatter;
+import org.apache.poi.ss.usermodel.Font;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.ss.util.CellRangeAddress;
+import org.apache.poi.ss.util.SheetUtil;
+
+/**
+ * Keeps the width of the widest cell of selected columns of a {@link SXSSFSheet}
+ * while its rows are flushed, so that the columns can be auto-sized after the rows are gone.
+ * <p>
+ * Cells are measured with the same font metrics as {@link SheetUtil#getCellWidth}.
+ * Only the maximum width is kept per column, two values actually: one ignoring and one using
+ * the contents of merged cells. Streamed data tends to repeat the same texts,
+ * so the measured widths are cached per font, rotation and text in a small LRU cache.
+ * Memory use does not grow with the number of rows.
+ * </p>
+ */
+final class AutoSizeColumnTracker
+{
+    /**
+     * The maximum number of measured texts to remember
+     */
+    private static final int CACHE_SIZE = 1024;
+
+    private final Sheet _sheet;
+    private final DataFormatter _formatter = new DataFormatter();
+    private final int _defaultCharWidth;
+    private final BitSet _trackedColumns = new BitSet();
+    private boolean _trackAllColumns;
+    /**
+     * Maximum width per column ignoring merged cells, -1 if not measured yet
+     */
+    private double[] _widths = new double[0];
+    /**
+     * Maximum width per column using the contents of merged cells, -1 if not measured yet
+     */
+    private double[] _mergedWidths = new double[0];
+    private final Map<MeasuredText, Double> _cache = new LinkedHashMap<MeasuredText, Double>(16, 0.75f, true)
+    {
+        protected boolean removeEldestEntry(Map.Entry<MeasuredText, Double> eldest)
+        {
+            return size() > CACHE_SIZE;
+        }
+    };
+    private final MeasuredText _lookup = new MeasuredText();
+    private SXSSFCell _cellView;
+
+    AutoSizeColumnTracker(Sheet sheet)
+    {
+        _sheet = sheet;
+        _defaultCharWidth = SheetUtil.getDefaultCharWidth(sheet.getWorkbook());
+    }
+
+    void trackColumn(int column)
+    {
+        _trackedColumns.set(column);
+    }
+
+    void trackAllColumns()
+    {
+        _trackAllColumns = true;
+    }
+
+    void untrackColumn(int column)
+    {
+        _trackedColumns.clear(column);
+        if (column < _widths.length)
+        {
+            _widths[column] = -1;
+            _mergedWidths[column] = -1;
+        }
+    }
+
+    void untrackAllColumns()
+    {
+        _trackAllColumns = false;
+        _trackedColumns.clear();
+        Arrays.fill(_widths, -1);
+        Arrays.fill(_mergedWidths, -1);
+    }
+
+    boolean isColumnTracked(int column)
+    {
+        return _trackAllColumns || _trackedColumns.get(column);
+    }
+
+    /**
+     * @return the width of the widest cell of the measured rows in units of the default character width,
+     *  -1 if no cell was measured
+     */
+    double getColumnWidth(int column, boolean useMergedCells)
+    {
+        if (column >= _widths.length) return -1;
+        return useMergedCells ? _mergedWidths[column] : _widths[column];
+    }
+
+    /**
+     * Measure the cells of the tracked columns of a row before it is flushed
+     *
+     * @param rownum the 0-based row index
+     * @param row the row
+     */
+    void updateColumnWidths(int rownum, SXSSFRow row)
+    {
+        if (_cellView == null) _cellView = new SXSSFCell(row, row, 0);
+        int numMergedRegions = _sheet.getNumMergedRegions();
+        for (int column = 0; column <= row._maxColumn; column++)
+        {
+            if (!isColumnTracked(column)) continue;
+            SXSSFCell cell = row.getCellView(column, _cellView);
+            if (cell == null) continue;
+
+            CellRangeAddress region = null;
+            for (int i = 0; i < numMergedRegions; i++)
+            {
+                CellRangeAddress r = _sheet.getMergedRegion(i);
+                if (SheetUtil.containsCell(r, rownum, column))
+                {
+                    region = r;
+                }
+            }
+            if (region == null)
+            {
+                double width = getCellWidth(cell, 1);
+                updateWidth(column, width, false);
+                updateWidth(column, width, true);
+            }
+            else if (region.getFirstColumn() == column)
+            {
+                // the value of a merged region is shared by all of its columns
+                int colspan = 1 + region.getLastColumn() - region.getFirstColumn();
+                double width = getCellWidth(cell, colspan);
+                for (int c = region.getFirstColumn(); c <= region.getLastColumn(); c++)
+                {
+                    if (isColumnTracked(c)) updateWidth(c, width, true);
+                }
+            }
+        }
+    }
+
+    private void updateWidth(int column, double width, boolean useMergedCells)
+    {
+        if (column >= _widths.length)
+        {
+            int length = Math.max(column + 1, _widths.length * 2);
+            _widths = grow(_widths, length);
+            _mergedWidths = grow(_mergedWidths, length);
+        }
+        double[] widths = useMergedCells ? _mergedWidths : _widths;
+        if (width > widths[column]) widths[column] = width;
+    }
+
+    private static double[] grow(double[] widths, int length)
+    {
+        double[] newWidths = new double[length];
+        System.arraycopy(widths, 0, newWidths, 0, widths.length);
+        Arrays.fill(newWidths, widths.length, length, -1);
+        return newWidths;
+    }
+
+    /**
+     * Same as {@link SheetUtil#getCellWidth} but with the merged region already resolved
+     */
+    private double getCellWidth(SXSSFCell cell, int colspan)
+    {
+        String[] lines = SheetUtil.getCellLines(cell, _formatter);
+        if (lines == null) return -1;
+
+        CellStyle style = cell.getCellStyle();
+        double width = -1;
+        for (int i = 0; i < lines.length; i++)
+        {
+            double textWidth = getStringWidth(lines[i], style.getFontIndex(), style.getRotation());
+            width = Math.max(width, ((textWidth / colspan) / _defaultCharWidth) + style.getIndention());
+        }
+        return width;
+    }
+
+    private double getStringWidth(String text, short fontIndex, short rotation)
+    {
+        _lookup.set(text, fontIndex, rotation);
+        Double width = _cache.get(_lookup);
+        if (width == null)
+        {
+            Workbook wb = _sheet.getWorkbook();
+            Font font = wb.getFontAt(fontIndex);
+            width = Double.valueOf(SheetUtil.getStringWidth(text, font, rotation));
+            MeasuredText key = new MeasuredText();
+            key.set(text, fontIndex, rotation);
+            _cache.put(key, width);
+        }
+        return width.doubleValue();
+    }
+
+    /**
+     * Key of the cache of measured texts
+     */
+    private static final class MeasuredText
+    {
+        private String _text;
+        private short _fontIndex;
+        private short _rotation;
+
+        void set(String text, short fontIndex, short rotation)
+        {
+            _text = text;
+            _fontIndex = fontIndex;
+            _rotation = rotation;
+        }
+
+        public int hashCode()
+        {
+            return (_text.hashCode() * 31 + _fontIndex) * 31 + _rotation;
+        }
+
+        public boolean equals(Object o)
+        {
+            if (!(o instanceof MeasuredText)) return false;
+            MeasuredText other = (MeasuredText)o;
+            return _fontIndex == other._fontIndex && _rotation == other._rotation
+                    && _text.equals(other._text);
+        }
+    }
+}
@@ -0,0 +1,88 @@
+/* ====================================================================
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+==================================================================== */
+
+package org.apache.poi.xssf.streaming;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.poi.xssf.model.SharedStringsTable;
+import org.apache.poi.xssf.usermodel.XSSFRichTextString;
+
+/**
+ * Routes the string cells of a streaming workbook through the workbook's
+ * {@link SharedStringsTable}, keeping memory bounded.
+ * <p>
+ * Plain strings are looked up in a map from text to index so that a repeating label
+ * is serialized only once. The number of distinct strings accepted into the table is capped:
+ * once the cap is reached, strings which are not in the table yet are reported as not shared
+ * and the caller writes them inline. Labels repeating across many rows normally show up early,
+ * so they are still deduplicated while a stream of unique values cannot exhaust the heap.
+ * </p>
+ * <p>
+ * Sheets of a streaming workbook may be flushed from different threads, so adding entries
+ * is synchronized.
+ * </p>
+ */
+final class BoundedSharedStrings {
+    private final SharedStringsTable _sst;
+    private final Map<String, Integer> _index = new HashMap<String, Integer>();
+    private int _limit;
+
+    BoundedSharedStrings(SharedStringsTable sst, int limit) {
+        _sst = sst;
+        setLimit(limit);
+    }
+
+    synchronized void setLimit(int limit) {
+        if (limit < 0) {
+            throw new IllegalArgumentException("limit must be greater than or equal to 0");
+        }
+        _limit = limit;
+    }
+
+    synchronized int getLimit() {
+        return _limit;
+    }
+
+    /**
+     * @return number of distinct strings routed through the shared strings table
+     */
+    synchronized int size() {
+        return _index.size();
+    }
+
+    /**
+     * Get the index of the specified text in the shared strings table, adding it if necessary.
+     *
+     * @param text the plain text of a cell
+     * @return the 0-based index in the shared strings table or <code>-1</code> if the limit
+     *  of distinct strings is reached and the text must be written inline
+     */
+    synchronized int addEntry(String text) {
+        Integer idx = _index.get(text);
+        if (idx != null) {
+            return _sst.addReference(idx);
+        }
+        if (_index.size() >= _limit) {
+            return -1;
+        }
+        int i = _sst.addEntry(new XSSFRichTextString(text).getCTRst());
+        _index.put(text, i);
+        return i;
+    }
+}
@@ -20,18 +20,53 @@
 package org.apache.poi.xssf.streaming;
 
 import java.io.*;
+import java.util.zip.Deflater;
 import java.util.zip.GZIPInputStream;
 import java.util.zip.GZIPOutputStream;
 
 /**
  * Sheet writer that supports gzip compression of the temp files.
+ * <p>
+ * The compression level can be chosen, e.g. {@link Deflater#BEST_SPEED} when disk I/O is fast
+ * and the deflate cost would outweigh the savings.
+ * </p>
  */
 public class GZIPSheetDataWriter extends SheetDataWriter {
 
+    // assigned from createWriter while the super constructor runs, so it must not have an initializer
+    private LevelGZIPOutputStream _gzip;
+
     public GZIPSheetDataWriter() throws IOException {
         super();
     }
 
+    /**
+     * @param compressionLevel the deflate level, 0-9 or {@link Deflater#DEFAULT_COMPRESSION}
+     */
+    public GZIPSheetDataWriter(int compressionLevel) throws IOException {
+        super();
+        setCompressionLevel(compressionLevel);
+    }
+
+    GZIPSheetDataWriter(BoundedSharedStrings sharedStringSource) throws IOException {
+        super(sharedStringSource);
+    }
+
+    GZIPSheetDataWriter(int compressionLevel, BoundedSharedStrings sharedStringSource) throws IOException {
+        super(sharedStringSource);
+        setCompressionLevel(compressionLevel);
+    }
+
+    /**
+     * Nothing has been compressed when the constructor returns, so the level applies to all data
+     */
+    private void setCompressionLevel(int compressionLevel) {
+        if (_gzip == null) {
+            throw new IllegalStateException("createWriter was overridden, the compression level cannot be set");
+        }
+        _gzip.setLevel(compressionLevel);
+    }
+
     /**
      * @return temp file to write sheet data
      */
@@ -45,7 +80,8 @@ public class GZIPSheetDataWriter extends SheetDataWriter {
      * @return a wrapped instance of GZIPOutputStream
      */
     public Writer createWriter(File fd)throws IOException {
-        return new OutputStreamWriter(new GZIPOutputStream(new FileOutputStream(fd)));
+        _gzip = new LevelGZIPOutputStream(new FileOutputStream(fd));
+        return new OutputStreamWriter(_gzip);
     }
 
 
@@ -57,4 +93,13 @@ public class GZIPSheetDataWriter extends SheetDataWriter {
         return new GZIPInputStream(new FileInputStream(fd));
     }
 
+    private static final class LevelGZIPOutputStream extends GZIPOutputStream {
+        LevelGZIPOutputStream(OutputStream out) throws IOException {
+            super(out);
+        }
+
+        void setLevel(int level) {
+            def.setLevel(level);
+        }
+    }
 }
@@ -0,0 +1,232 @@
+/* ====================================================================
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+==================================================================== */
+
+
+package org.apache.poi.xssf.streaming;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Sheet writer that keeps the sheet data in memory instead of a temp file.
+ * <p>
+ * The UTF-8 encoded data is stored in a list of fixed size segments, so growing the buffer
+ * never copies data already written. Once the data exceeds the spill threshold,
+ * the segments are written to a temp file and the remaining rows go to that file,
+ * so small sheets never touch the disk while large sheets do not exhaust the heap.
+ * </p>
+ *
+ * @see SheetDataWriterFactory
+ */
+public class InMemorySheetDataWriter extends Utf8SheetDataWriter {
+    /**
+     * The default number of bytes kept in memory before spilling to a temp file
+     */
+    public static final int DEFAULT_SPILL_THRESHOLD = 16 * 1024 * 1024;
+
+    // assigned from createOutputStream while the super constructor runs, so it must not have an initializer
+    private SegmentedOutputStream _buffer;
+
+    public InMemorySheetDataWriter() throws IOException {
+        this(DEFAULT_SPILL_THRESHOLD);
+    }
+
+    /**
+     * @param spillThreshold the number of bytes kept in memory before the data is moved to a temp file,
+     *  <code>-1</code> to never spill
+     */
+    public InMemorySheetDataWriter(int spillThreshold) throws IOException {
+        super();
+        if (spillThreshold < -1) {
+            throw new IllegalArgumentException("spillThreshold must be greater than or equal to -1");
+        }
+        _buffer._spillThreshold = spillThreshold;
+    }
+
+    /**
+     * No temp file is created up front
+     *
+     * @return <code>null</code>
+     */
+    public File createTempFile() throws IOException {
+        return null;
+    }
+
+    protected OutputStream createOutputStream(File fd) throws IOException {
+        _buffer = new SegmentedOutputStream();
+        return _buffer;
+    }
+
+    /**
+     * @return whether the data exceeded the spill threshold and was moved to a temp file
+     */
+    public boolean isSpilled() {
+        return _buffer._spillFile != null;
+    }
+
+    /**
+     * @return the temp file the data was spilled to, <code>null</code> while the data is kept in memory
+     */
+    File getTempFile() {
+        return _buffer._spillFile;
+    }
+
+    /**
+     * @return a stream to read the buffered sheet data
+     */
+    public InputStream getWorksheetXMLInputStream() throws IOException {
+        return _buffer.getInputStream();
+    }
+
+    protected void finalize() throws Throwable {
+        super.finalize();
+        File spillFile = getTempFile();
+        if (spillFile != null) spillFile.delete();
+    }
+
+    private static final class SegmentedOutputStream extends OutputStream {
+        private static final int FIRST_SEGMENT_SIZE = 8 * 1024;
+        private static final int SEGMENT_SIZE = 64 * 1024;
+
+        private final List<byte[]> _segments = new ArrayList<byte[]>();
+        private byte[] _segment;
+        private int _pos;
+        private long _size;
+        int _spillThreshold = DEFAULT_SPILL_THRESHOLD;
+        File _spillFile;
+        private OutputStream _spill;
+
+        public void write(int b) throws IOException {
+            if (_spill == null && _spillThreshold != -1 && _size + 1 > _spillThreshold) {
+                spill();
+            }
+            _size++;
+            if (_spill != null) {
+                _spill.write(b);
+                return;
+            }
+            if (_segment == null || _pos == _segment.length) {
+                nextSegment();
+            }
+            _segment[_pos++] = (byte)b;
+        }
+
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (_spill == null && _spillThreshold != -1 && _size + len > _spillThreshold) {
+                spill();
+            }
+            _size += len;
+            if (_spill != null) {
+                _spill.write(b, off, len);
+                return;
+            }
+            while (len > 0) {
+                if (_segment == null || _pos == _segment.length) {
+                    nextSegment();
+                }
+                int n = Math.min(len, _segment.length - _pos);
+                System.arraycopy(b, off, _segment, _pos, n);
+                _pos += n;
+                off += n;
+                len -= n;
+            }
+        }
+
+        private void nextSegment() {
+            // the first segment is small so that tiny sheets stay small
+            _segment = new byte[_segments.isEmpty() ? FIRST_SEGMENT_SIZE : SEGMENT_SIZE];
+            _segments.add(_segment);
+            _pos = 0;
+        }
+
+        private void spill() throws IOException {
+            File fd = File.createTempFile("poi-sxssf-sheet", ".xml");
+            fd.deleteOnExit();
+            _spillFile = fd;
+            _spill = new FileOutputStream(fd);
+            for (int i = 0; i < _segments.size(); i++) {
+                byte[] segment = _segments.get(i);
+                _spill.write(segment, 0, i == _segments.size() - 1 ? _pos : segment.length);
+            }
+            _segments.clear();
+            _segment = null;
+        }
+
+        public void close() throws IOException {
+            if (_spill != null) _spill.close();
+        }
+
+        InputStream getInputStream() throws IOException {
+            if (_spillFile != null) {
+                return new FileInputStream(_spillFile);
+            }
+            return new SegmentedInputStream(_segments, _pos);
+        }
+    }
+
+    private static final class SegmentedInputStream extends InputStream {
+        private final List<byte[]> _segments;
+        private final int _lastLength;
+        private int _index;
+        private int _pos;
+
+        SegmentedInputStream(List<byte[]> segments, int lastLength) {
+            _segments = segments;
+            _lastLength = lastLength;
+        }
+
+        private int available(int index) {
+            return index == _segments.size() - 1 ? _lastLength : _segments.get(index).length;
+        }
+
+        /**
+         * Move past the exhausted segments
+         *
+         * @return whether there is data left
+         */
+        private boolean nextSegment() {
+            while (_index < _segments.size() && _pos == available(_index)) {
+                _index++;
+                _pos = 0;
+            }
+            return _index < _segments.size();
+        }
+
+        public int read() throws IOException {
+            if (!nextSegment()) {
+                return -1;
+            }
+            return _segments.get(_index)[_pos++] & 0xFF;
+        }
+
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (!nextSegment()) {
+                return -1;
+            }
+            int n = Math.min(len, available(_index) - _pos);
+            System.arraycopy(_segments.get(_index), _pos, b, off, n);
+            _pos += n;
+            return n;
+        }
+    }
+}
@@ -31,6 +31,13 @@ import org.apache.poi.xssf.usermodel.XSSFHyperlink;
 
 /**
  * Streaming version of XSSFRow implementing the "BigGridDemo" strategy.
+ * <p>
+ * The value and style of a cell are stored in the column arrays of its row,
+ * the cell object itself is only a handle to the column which the row does not keep,
+ * so {@link SXSSFRow#getCell(int)} may return different objects for the same cell.
+ * A cell passed to {@link SXSSFRow#removeCell(Cell)} moves its data to a private storage
+ * and keeps its value, handles of a replaced cell refer to the new cell of the column.
+ * </p>
  *
  * @author Alex Geller, Four J's Development Tools
 */
@@ -38,14 +45,25 @@ public class SXSSFCell implements Cell
 {
 
     SXSSFRow _row;
-    Value _value;
-    CellStyle _style;
+    /**
+     * The storage of the value, the row of the cell unless the cell was removed from it.
+     * <code>null</code> for a blank cell created outside of a row until it is written to
+     */
+    SXSSFRow _data;
+    int _column;
     Property _firstProperty;
 
     public SXSSFCell(SXSSFRow row,int cellType)
+    {
+        this(row,null,0);
+        if(cellType!=CELL_TYPE_BLANK) setType(cellType);
+    }
+
+    SXSSFCell(SXSSFRow row,SXSSFRow data,int column)
     {
         _row=row;
-        setType(cellType);
+        _data=data;
+        _column=column;
     }
 
 //start of interface implementation
@@ -119,7 +137,7 @@ public class SXSSFCell implements Cell
      */
     public int getCellType()
     {
-        return _value.getType();
+        return _data==null?CELL_TYPE_BLANK:_data.getCellType(_column);
     }
 
     /**
@@ -130,11 +148,11 @@ public class SXSSFCell implements Cell
      */
     public int getCachedFormulaResultType()
     {
-        if (_value.getType() != CELL_TYPE_FORMULA) {
+        if (getCellType() != CELL_TYPE_FORMULA) {
             throw new IllegalStateException("Only formula cells have cached results");
         }
 
-        return ((FormulaValue)_value).getFormulaType();
+        return getFormulaValue().getFormulaType();
     }
 
     /**
@@ -154,10 +172,8 @@ public class SXSSFCell implements Cell
             setCellErrorValue(FormulaError.NUM.getCode());
         } else {
             ensureTypeOrFormulaType(CELL_TYPE_NUMERIC);
-            if(_value.getType()==CELL_TYPE_FORMULA)
-                ((NumericFormulaValue)_value).setPreEvaluatedValue(value);
-            else
-                ((NumericValue)_value).setValue(value);
+            // the pre-evaluated value of formulas is kept in the same column
+            data()._numbers[_column]=value;
         }
     }
 
@@ -219,7 +235,7 @@ public class SXSSFCell implements Cell
     public void setCellValue(RichTextString value)
     {
         ensureRichTextStringType();
-        ((RichTextValue)_value).setValue(value);
+        data().setValue(_column,value);
     }
 
     /**
@@ -233,10 +249,10 @@ public class SXSSFCell implements Cell
     public void setCellValue(String value)
     {
         ensureTypeOrFormulaType(CELL_TYPE_STRING);
-        if(_value.getType()==CELL_TYPE_FORMULA)
-            ((StringFormulaValue)_value).setPreEvaluatedValue(value);
+        if(getCellType()==CELL_TYPE_FORMULA)
+            getFormulaValue().setPreEvaluatedValue(value);
         else
-            ((PlainStringValue)_value).setValue(value);
+            data().setValue(_column,value);
     }
 
     /**
@@ -258,7 +274,7 @@ public class SXSSFCell implements Cell
         }
 
         ensureFormulaType(computeTypeFromFormula(formula));
-        ((FormulaValue)_value).setValue(formula);
+        getFormulaValue().setValue(formula);
     }
     /**
      * Return a formula for the cell, for example, <code>SUM(C4:E4)</code>
@@ -268,9 +284,10 @@ public class SXSSFCell implements Cell
      */
     public String getCellFormula()
     {
-       if(_value.getType()!=CELL_TYPE_FORMULA)
-           throw typeMismatch(CELL_TYPE_FORMULA,_value.getType(),false);
-        return ((FormulaValue)_value).getValue();
+       int cellType = getCellType();
+       if(cellType!=CELL_TYPE_FORMULA)
+           throw typeMismatch(CELL_TYPE_FORMULA,cellType,false);
+        return getFormulaValue().getValue();
     }
 
     /**
@@ -293,13 +310,13 @@ public class SXSSFCell implements Cell
                 return 0.0;
             case CELL_TYPE_FORMULA:
             {
-                FormulaValue fv=(FormulaValue)_value;
+                FormulaValue fv=getFormulaValue();
                 if(fv.getFormulaType()!=CELL_TYPE_NUMERIC)
                       throw typeMismatch(CELL_TYPE_NUMERIC, CELL_TYPE_FORMULA, false);
-                return ((NumericFormulaValue)_value).getPreEvaluatedValue();
+                return _data._numbers[_column];
             }
             case CELL_TYPE_NUMERIC:
-                return ((NumericValue)_value).getValue();
+                return _data._numbers[_column];
             default:
                 throw typeMismatch(CELL_TYPE_NUMERIC, cellType, false);
         }
@@ -341,12 +358,15 @@ public class SXSSFCell implements Cell
     public RichTextString getRichStringCellValue()
     {
         int cellType = getCellType();
-        if(getCellType() != CELL_TYPE_STRING)
+        if(cellType != CELL_TYPE_STRING && cellType != CELL_TYPE_FORMULA)
             throw typeMismatch(CELL_TYPE_STRING, cellType, false);
 
-        StringValue sval = (StringValue)_value;
-        if(sval.isRichText())
-            return ((RichTextValue)_value).getValue();
+        if(cellType == CELL_TYPE_FORMULA
+           && getFormulaValue().getFormulaType() != CELL_TYPE_STRING)
+            throw typeMismatch(CELL_TYPE_STRING, getFormulaValue().getFormulaType(), true);
+
+        if(isRichText())
+            return (RichTextString)_data.getValue(_column);
         else {
             String plainText = getStringCellValue();
             return getSheet().getWorkbook().getCreationHelper().createRichTextString(plainText);
@@ -371,17 +391,18 @@ public class SXSSFCell implements Cell
                 return "";
             case CELL_TYPE_FORMULA:
             {
-                FormulaValue fv=(FormulaValue)_value;
+                FormulaValue fv=getFormulaValue();
                 if(fv.getFormulaType()!=CELL_TYPE_STRING)
                       throw typeMismatch(CELL_TYPE_STRING, CELL_TYPE_FORMULA, false);
-                return ((StringFormulaValue)_value).getPreEvaluatedValue();
+                return fv.getPreEvaluatedValue();
             }
             case CELL_TYPE_STRING:
             {
-                if(((StringValue)_value).isRichText())
-                    return ((RichTextValue)_value).getValue().getString();
+                Object value=_data.getValue(_column);
+                if(value instanceof RichTextString)
+                    return ((RichTextString)value).getString();
                 else
-                    return ((PlainStringValue)_value).getValue();
+                    return (String)value;
             }
             default:
                 throw typeMismatch(CELL_TYPE_STRING, cellType, false);
@@ -398,10 +419,7 @@ public class SXSSFCell implements Cell
     public void setCellValue(boolean value)
     {
         ensureTypeOrFormulaType(CELL_TYPE_BOOLEAN);
-        if(_value.getType()==CELL_TYPE_FORMULA)
-            ((BooleanFormulaValue)_value).setPreEvaluatedValue(value);
-        else
-            ((BooleanValue)_value).setValue(value);
+        data()._numbers[_column]=value?1:0;
     }
 
     /**
@@ -415,11 +433,8 @@ public class SXSSFCell implements Cell
      */
     public void setCellErrorValue(byte value)
     {
-        ensureType(CELL_TYPE_ERROR);
-        if(_value.getType()==CELL_TYPE_FORMULA)
-            ((ErrorFormulaValue)_value).setPreEvaluatedValue(value);
-        else
-            ((ErrorValue)_value).setValue(value);
+        ensureTypeOrFormulaType(CELL_TYPE_ERROR);
+        data()._numbers[_column]=value;
     }
 
     /**
@@ -440,14 +455,14 @@ public class SXSSFCell implements Cell
                 return false;
             case CELL_TYPE_FORMULA:
             {
-                FormulaValue fv=(FormulaValue)_value;
+                FormulaValue fv=getFormulaValue();
                 if(fv.getFormulaType()!=CELL_TYPE_BOOLEAN)
                       throw typeMismatch(CELL_TYPE_BOOLEAN, CELL_TYPE_FORMULA, false);
-                return ((BooleanFormulaValue)_value).getPreEvaluatedValue();
+                return _data._numbers[_column]!=0;
             }
             case CELL_TYPE_BOOLEAN:
             {
-                return ((BooleanValue)_value).getValue();
+                return _data._numbers[_column]!=0;
             }
             default:
                 throw typeMismatch(CELL_TYPE_BOOLEAN, cellType, false);
@@ -474,14 +489,14 @@ public class SXSSFCell implements Cell
                 return 0;
             case CELL_TYPE_FORMULA:
             {
-                FormulaValue fv=(FormulaValue)_value;
+                FormulaValue fv=getFormulaValue();
                 if(fv.getFormulaType()!=CELL_TYPE_ERROR)
                       throw typeMismatch(CELL_TYPE_ERROR, CELL_TYPE_FORMULA, false);
-                return ((ErrorFormulaValue)_value).getPreEvaluatedValue();
+                return (byte)_data._numbers[_column];
             }
             case CELL_TYPE_ERROR:
             {
-                return ((ErrorValue)_value).getValue();
+                return (byte)_data._numbers[_column];
             }
             default:
                 throw typeMismatch(CELL_TYPE_ERROR, cellType, false);
@@ -498,7 +513,7 @@ public class SXSSFCell implements Cell
      */
     public void setCellStyle(CellStyle style)
     {
-        _style=style;
+        data().setCellStyle(_column,style);
     }
 
     /**
@@ -510,14 +525,23 @@ public class SXSSFCell implements Cell
      */
     public CellStyle getCellStyle()
     {
-        if(_style == null){
+        CellStyle style = getExplicitCellStyle();
+        if(style == null){
             SXSSFWorkbook wb = (SXSSFWorkbook)getRow().getSheet().getWorkbook();
             return wb.getCellStyleAt((short)0);
         } else {
-            return _style;
+            return style;
         }
     }
 
+    /**
+     * @return the style set on this cell or <code>null</code> if the cell uses the default style
+     */
+    CellStyle getExplicitCellStyle()
+    {
+        return _data==null?null:_data.getCellStyle(_column);
+    }
+
     /**
      * Sets this cell as the active cell for the worksheet
      */
@@ -703,40 +727,78 @@ public class SXSSFCell implements Cell
         while(current!=null&&current.getType()!=type) current=current._next;
         return current==null?defaultValue:current.getValue();
     }
+    FormulaValue getFormulaValue()
+    {
+        return (FormulaValue)_data.getValue(_column);
+    }
+    /**
+     * @return <code>true</code> if this is a formula cell whose cached result was computed by a {@link SXSSFFormulaEvaluator}
+     */
+    boolean isFormulaEvaluated()
+    {
+        return getCellType()==CELL_TYPE_FORMULA&&getFormulaValue()._evaluated;
+    }
+    void setFormulaEvaluated()
+    {
+        getFormulaValue()._evaluated=true;
+    }
+    boolean isRichText()
+    {
+        return _data!=null&&_data.getValue(_column) instanceof RichTextString;
+    }
+    /**
+     * Move the data of this cell to a private storage, the column of the row is reused by another cell
+     */
+    void detach()
+    {
+        SXSSFRow data=new SXSSFRow(_row._sheet,1);
+        _data.copyCell(_column,data,0);
+        _data=data;
+        _column=0;
+    }
+    /**
+     * @return the storage of the value, allocated for a cell created outside of a row when it is first written to
+     */
+    private SXSSFRow data()
+    {
+        if(_data==null) _data=new SXSSFRow(_row==null?null:_row._sheet,1);
+        return _data;
+    }
     void ensurePlainStringType()
     {
-        if(_value.getType()!=CELL_TYPE_STRING
-           ||((StringValue)_value).isRichText())
-            _value=new PlainStringValue();
+        if(getCellType()!=CELL_TYPE_STRING
+           ||isRichText())
+            data().setCell(_column,CELL_TYPE_STRING,0,null);
     }
     void ensureRichTextStringType()
     {
-        if(_value.getType()!=CELL_TYPE_STRING
-           ||!((StringValue)_value).isRichText())
-            _value=new RichTextValue();
+        if(getCellType()!=CELL_TYPE_STRING
+           ||!isRichText())
+            data().setCell(_column,CELL_TYPE_STRING,0,null);
     }
     void ensureType(int type)
     {
-        if(_value.getType()!=type)
+        if(getCellType()!=type)
             setType(type);
     }
     void ensureFormulaType(int type)
     {
-        if(_value.getType()!=CELL_TYPE_FORMULA
-           ||((FormulaValue)_value).getFormulaType()!=type)
+        if(getCellType()!=CELL_TYPE_FORMULA
+           ||getFormulaValue().getFormulaType()!=type)
             setFormulaType(type);
     }
     void ensureTypeOrFormulaType(int type)
     {
-        if(_value.getType()==type)
+        int cellType=getCellType();
+        if(cellType==type)
         {
-            if(type==CELL_TYPE_STRING&&((StringValue)_value).isRichText())
+            if(type==CELL_TYPE_STRING&&isRichText())
                 setType(CELL_TYPE_STRING);
             return;
         }
-        if(_value.getType()==CELL_TYPE_FORMULA)
+        if(cellType==CELL_TYPE_FORMULA)
         {
-            if(((FormulaValue)_value).getFormulaType()==type)
+            if(getFormulaValue().getFormulaType()==type)
                 return;
             setFormulaType(type); // once a formula, always a formula
             return;
@@ -745,48 +807,33 @@ public class SXSSFCell implements Cell
     }
     void setType(int type)
     {
+        boolean hasValue=getCellType()!=SXSSFRow.NO_CELL;
         switch(type)
         {
             case CELL_TYPE_NUMERIC:
+            case CELL_TYPE_BLANK:
+            case CELL_TYPE_ERROR:
             {
-                _value=new NumericValue();
+                data().setCell(_column,type,0,null);
                 break;
             }
             case CELL_TYPE_STRING:
             {
-                PlainStringValue sval = new PlainStringValue();
-                if(_value != null){
-                    // if a cell is not blank then convert the old value to string
-                    String str = convertCellValueToString();
-                    sval.setValue(str);
-                }
-                _value = sval;
+                // if a cell is not blank then convert the old value to string
+                String str=hasValue?convertCellValueToString():null;
+                data().setCell(_column,type,0,str);
                 break;
             }
             case CELL_TYPE_FORMULA:
             {
-                _value=new NumericFormulaValue();
-                break;
-            }
-            case CELL_TYPE_BLANK:
-            {
-                _value=new BlankValue();
+                data().setCell(_column,type,0,new FormulaValue(CELL_TYPE_NUMERIC));
                 break;
             }
             case CELL_TYPE_BOOLEAN:
             {
-                BooleanValue bval = new BooleanValue();
-                if(_value != null){
-                    // if a cell is not blank then convert the old value to string
-                    boolean val = convertCellValueToBoolean();
-                    bval.setValue(val);
-                }
-                _value = bval;
-                break;
-            }
-            case CELL_TYPE_ERROR:
-            {
-                _value=new ErrorValue();
+                // if a cell is not blank then convert the old value to boolean
+                boolean val=hasValue&&convertCellValueToBoolean();
+                data().setCell(_column,type,val?1:0,null);
                 break;
             }
             default:
@@ -800,23 +847,14 @@ public class SXSSFCell implements Cell
         switch(type)
         {
             case CELL_TYPE_NUMERIC:
-            {
-                _value=new NumericFormulaValue();
-                break;
-            }
             case CELL_TYPE_STRING:
-            {
-                _value=new StringFormulaValue();
-                break;
-            }
             case CELL_TYPE_BOOLEAN:
-            {
-                _value=new BooleanFormulaValue();
-                break;
-            }
             case CELL_TYPE_ERROR:
             {
-                _value=new ErrorFormulaValue();
+                FormulaValue fv=new FormulaValue(type);
+                if(getCellType()==CELL_TYPE_FORMULA)
+                    fv.setValue(getFormulaValue().getValue());
+                data().setCell(_column,CELL_TYPE_FORMULA,0,fv);
                 break;
             }
             default:
@@ -941,110 +979,35 @@ public class SXSSFCell implements Cell
             return HYPERLINK;
         }
     }
-    interface Value
-    {
-        int getType();
-    }
-    static class NumericValue implements Value
-    {
-        double _value;
-        public int getType()
-        {
-            return CELL_TYPE_NUMERIC;
-        }
-        void setValue(double value)
-        {
-            _value=value;
-        }
-        double getValue()
-        {
-            return _value;
-        }
-    }
-    static abstract class StringValue implements Value
-    {
-        public int getType()
-        {
-            return CELL_TYPE_STRING;
-        }
-//We cannot introduce a new type CELL_TYPE_RICH_TEXT because the types are public so we have to make rich text as a type of string
-        abstract boolean isRichText(); // using the POI style which seems to avoid "instanceof".
-    }
-    static class PlainStringValue extends StringValue
-    {
-        String _value;
-        void setValue(String value)
-        {
-            _value=value;
-        }
-        String getValue()
-        {
-            return _value;
-        }
-        boolean isRichText()
-        {
-            return false;
-        }
-    }
-    static class RichTextValue extends StringValue
-    {
-        RichTextString _value;
-        public int getType()
-        {
-            return CELL_TYPE_STRING;
-        }
-        void setValue(RichTextString value)
-        {
-            _value=value;
-        }
-        RichTextString getValue()
-        {
-            return _value;
-        }
-        boolean isRichText()
-        {
-            return true;
-        }
-    }
-    static abstract class FormulaValue implements Value
+    /**
+     * The formula of a formula cell and its string result. Numeric, boolean and error results
+     * are stored in the numeric column of the row like the values of plain cells.
+     */
+    static class FormulaValue
     {
+        final int _formulaType;
         String _value;
-        public int getType()
+        String _preEvaluatedValue;
+        /**
+         * Whether the cached result was computed by a {@link SXSSFFormulaEvaluator}
+         */
+        boolean _evaluated;
+        FormulaValue(int formulaType)
         {
-            return CELL_TYPE_FORMULA;
+            _formulaType=formulaType;
         }
         void setValue(String value)
         {
             _value=value;
+            _evaluated=false;
         }
         String getValue()
         {
             return _value;
         }
-        abstract int getFormulaType();
-    }
-    static class NumericFormulaValue extends FormulaValue
-    {
-        double _preEvaluatedValue;
         int getFormulaType()
         {
-            return CELL_TYPE_NUMERIC;
-        }
-        void setPreEvaluatedValue(double value)
-        {
-            _preEvaluatedValue=value;
-        }
-        double getPreEvaluatedValue()
-        {
-            return _preEvaluatedValue;
-        }
-    }
-    static class StringFormulaValue extends FormulaValue
-    {
-        String _preEvaluatedValue;
-        int getFormulaType()
-        {
-            return CELL_TYPE_STRING;
+            return _formulaType;
         }
         void setPreEvaluatedValue(String value)
         {
@@ -1055,75 +1018,4 @@ public class SXSSFCell implements Cell
             return _preEvaluatedValue;
         }
     }
-    static class BooleanFormulaValue extends FormulaValue
-    {
-        boolean _preEvaluatedValue;
-        int getFormulaType()
-        {
-            return CELL_TYPE_BOOLEAN;
-        }
-        void setPreEvaluatedValue(boolean value)
-        {
-            _preEvaluatedValue=value;
-        }
-        boolean getPreEvaluatedValue()
-        {
-            return _preEvaluatedValue;
-        }
-    }
-    static class ErrorFormulaValue extends FormulaValue
-    {
-        byte _preEvaluatedValue;
-        int getFormulaType()
-        {
-            return CELL_TYPE_ERROR;
-        }
-        void setPreEvaluatedValue(byte value)
-        {
-            _preEvaluatedValue=value;
-        }
-        byte getPreEvaluatedValue()
-        {
-            return _preEvaluatedValue;
-        }
-    }
-    static class BlankValue implements Value
-    {
-        public int getType()
-        {
-            return CELL_TYPE_BLANK;
-        }
-    }
-    static class BooleanValue implements Value
-    {
-        boolean _value;
-        public int getType()
-        {
-            return CELL_TYPE_BOOLEAN;
-        }
-        void setValue(boolean value)
-        {
-            _value=value;
-        }
-        boolean getValue()
-        {
-            return _value;
-        }
-    }
-    static class ErrorValue implements Value
-    {
-        byte _value;
-        public int getType()
-        {
-            return CELL_TYPE_ERROR;
-        }
-        void setValue(byte value)
-        {
-            _value=value;
-        }
-        byte getValue()
-        {
-            return _value;
-        }
-    }
 }
@@ -0,0 +1,131 @@
+/* ====================================================================
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+==================================================================== */
+
+
+package org.apache.poi.xssf.streaming;
+
+import org.apache.poi.ss.formula.EvaluationCell;
+import org.apache.poi.ss.formula.EvaluationSheet;
+import org.apache.poi.ss.usermodel.Cell;
+
+/**
+ * SXSSF wrapper for a cell under evaluation
+ * <p>
+ * A formula cell whose result was already computed by the {@link SXSSFFormulaEvaluator}
+ * presents itself as a plain value, so that chains of formulas, such as running totals,
+ * do not re-evaluate rows which may have left the window in the meantime.
+ * </p>
+ */
+final class SXSSFEvaluationCell implements EvaluationCell
+{
+    private final SXSSFEvaluationSheet _evalSheet;
+    private final SXSSFCell _cell;
+    private final int _rowIndex;
+    private final boolean _evaluate;
+
+    /**
+     * @param evaluate whether to evaluate the formula even if the cell has an evaluated result
+     */
+    SXSSFEvaluationCell(SXSSFCell cell, SXSSFEvaluationSheet evaluationSheet, int rowIndex, boolean evaluate)
+    {
+        _cell = cell;
+        _evalSheet = evaluationSheet;
+        _rowIndex = rowIndex;
+        _evaluate = evaluate;
+    }
+
+    public Object getIdentityKey()
+    {
+        // cell handles are created on demand, the storage and the column identify the cell
+        return this;
+    }
+
+    public boolean equals(Object obj)
+    {
+        if (!(obj instanceof SXSSFEvaluationCell))
+        {
+            return false;
+        }
+        SXSSFCell other = ((SXSSFEvaluationCell)obj)._cell;
+        if (_cell._data == null || other._data == null)
+        {
+            return _cell == other;
+        }
+        return _cell._data == other._data && _cell._column == other._column;
+    }
+
+    public int hashCode()
+    {
+        return _cell._data == null ? _cell.hashCode() : System.identityHashCode(_cell._data) * 31 + _cell._column;
+    }
+
+    SXSSFCell getSXSSFCell()
+    {
+        return _cell;
+    }
+
+    public boolean getBooleanCellValue()
+    {
+        return _cell.getBooleanCellValue();
+    }
+
+    public int getCellType()
+    {
+        if (!_evaluate && _cell.isFormulaEvaluated())
+        {
+            return _cell.getCachedFormulaResultType();
+        }
+        return _cell.getCellType();
+    }
+
+    public int getColumnIndex()
+    {
+        return _cell.getColumnIndex();
+    }
+
+    public int getErrorCellValue()
+    {
+        return _cell.getErrorCellValue();
+    }
+
+    public double getNumericCellValue()
+    {
+        return _cell.getNumericCellValue();
+    }
+
+    public int getRowIndex()
+    {
+        return _rowIndex;
+    }
+
+    public EvaluationSheet getSheet()
+    {
+        return _evalSheet;
+    }
+
+    public String getStringCellValue()
+    {
+        String value = _cell.getStringCellValue();
+        // the result of a string formula may not have been set
+        return value == null && _cell.getCellType() == Cell.CELL_TYPE_FORMULA ? "" : value;
+    }
+
+    public int getCachedFormulaResultType()
+    {
+        return _cell.getCachedFormulaResultType();
+    }
+}
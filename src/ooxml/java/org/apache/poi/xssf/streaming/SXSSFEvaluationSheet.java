@@ -0,0 +1,70 @@
+/* ====================================================================
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+==================================================================== */
+
+
+package org.apache.poi.xssf.streaming;
+
+import org.apache.poi.ss.formula.EvaluationCell;
+import org.apache.poi.ss.formula.EvaluationSheet;
+import org.apache.poi.ss.util.CellReference;
+
+/**
+ * SXSSF wrapper for a sheet under evaluation, only the rows in the window
+ * and the last rows flushed with evaluated formulas can be read
+ */
+final class SXSSFEvaluationSheet implements EvaluationSheet
+{
+    private final SXSSFSheet _xs;
+
+    SXSSFEvaluationSheet(SXSSFSheet sheet)
+    {
+        _xs = sheet;
+    }
+
+    SXSSFSheet getSXSSFSheet()
+    {
+        return _xs;
+    }
+
+    /**
+     * @throws SXSSFFormulaEvaluator.RowFlushedException if the row is no longer in the window
+     */
+    public EvaluationCell getCell(int rowIndex, int columnIndex)
+    {
+        SXSSFRow row = (SXSSFRow)_xs.getRow(rowIndex);
+        if (row == null)
+        {
+            row = _xs.getFlushedRow(rowIndex);
+        }
+        if (row == null)
+        {
+            if (rowIndex <= _xs.getLastFlushedRowNum())
+            {
+                CellReference ref = new CellReference(_xs.getSheetName(), rowIndex, columnIndex, false, false);
+                throw new SXSSFFormulaEvaluator.RowFlushedException("Cell " + ref.formatAsString()
+                        + " is outside the row window, row " + (rowIndex + 1) + " has already been flushed");
+            }
+            return null;
+        }
+        SXSSFCell cell = row.getCellHandle(columnIndex);
+        if (cell == null)
+        {
+            return null;
+        }
+        return new SXSSFEvaluationCell(cell, this, rowIndex, false);
+    }
+}
@@ -0,0 +1,119 @@
+/* ====================================================================
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+==================================================================== */
+
+
+package org.apache.poi.xssf.streaming;
+
+import org.apache.poi.ss.SpreadsheetVersion;
+import org.apache.poi.ss.formula.EvaluationCell;
+import org.apache.poi.ss.formula.EvaluationName;
+import org.apache.poi.ss.formula.EvaluationSheet;
+import org.apache.poi.ss.formula.EvaluationWorkbook;
+import org.apache.poi.ss.formula.FormulaParser;
+import org.apache.poi.ss.formula.FormulaType;
+import org.apache.poi.ss.formula.ptg.NamePtg;
+import org.apache.poi.ss.formula.ptg.NameXPtg;
+import org.apache.poi.ss.formula.ptg.Ptg;
+import org.apache.poi.ss.formula.udf.UDFFinder;
+import org.apache.poi.xssf.usermodel.XSSFEvaluationWorkbook;
+
+/**
+ * Internal POI use only
+ * <p>
+ * Sheets are read through the row window of the {@link SXSSFSheet}s, names and formula
+ * parsing are delegated to the evaluation workbook of the underlying XSSF workbook.
+ * </p>
+ */
+final class SXSSFEvaluationWorkbook implements EvaluationWorkbook
+{
+    private final SXSSFWorkbook _uBook;
+    private final XSSFEvaluationWorkbook _xBook;
+
+    SXSSFEvaluationWorkbook(SXSSFWorkbook book)
+    {
+        _uBook = book;
+        _xBook = XSSFEvaluationWorkbook.create(book.getXSSFWorkbook());
+    }
+
+    public String getSheetName(int sheetIndex)
+    {
+        return _uBook.getSheetName(sheetIndex);
+    }
+
+    public int getSheetIndex(EvaluationSheet evalSheet)
+    {
+        SXSSFSheet sheet = ((SXSSFEvaluationSheet)evalSheet).getSXSSFSheet();
+        return _uBook.getSheetIndex(sheet);
+    }
+
+    public int getSheetIndex(String sheetName)
+    {
+        return _uBook.getSheetIndex(sheetName);
+    }
+
+    public EvaluationSheet getSheet(int sheetIndex)
+    {
+        return new SXSSFEvaluationSheet((SXSSFSheet)_uBook.getSheetAt(sheetIndex));
+    }
+
+    public ExternalSheet getExternalSheet(int externSheetIndex)
+    {
+        return _xBook.getExternalSheet(externSheetIndex);
+    }
+
+    public int convertFromExternSheetIndex(int externSheetIndex)
+    {
+        return _xBook.convertFromExternSheetIndex(externSheetIndex);
+    }
+
+    public ExternalName getExternalName(int externSheetIndex, int externNameIndex)
+    {
+        return _xBook.getExternalName(externSheetIndex, externNameIndex);
+    }
+
+    public EvaluationName getName(NamePtg namePtg)
+    {
+        return _xBook.getName(namePtg);
+    }
+
+    public EvaluationName getName(String name, int sheetIndex)
+    {
+        return _xBook.getName(name, sheetIndex);
+    }
+
+    public String resolveNameXText(NameXPtg ptg)
+    {
+        return _xBook.resolveNameXText(ptg);
+    }
+
+    public Ptg[] getFormulaTokens(EvaluationCell evalCell)
+    {
+        SXSSFEvaluationCell cell = (SXSSFEvaluationCell)evalCell;
+        int sheetIndex = getSheetIndex(cell.getSheet());
+        return FormulaParser.parse(cell.getSXSSFCell().getCellFormula(), _xBook, FormulaType.CELL, sheetIndex);
+    }
+
+    public UDFFinder getUDFFinder()
+    {
+        return _xBook.getUDFFinder();
+    }
+
+    public SpreadsheetVersion getSpreadsheetVersion()
+    {
+        return SpreadsheetVersion.EXCEL2007;
+    }
+}
@@ -0,0 +1,336 @@
+/* ====================================================================
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+==================================================================== */
+
+
+package org.apache.poi.xssf.streaming;
+
+import org.apache.poi.ss.formula.IStabilityClassifier;
+import org.apache.poi.ss.formula.WorkbookEvaluator;
+import org.apache.poi.ss.formula.eval.BoolEval;
+import org.apache.poi.ss.formula.eval.ErrorEval;
+import org.apache.poi.ss.formula.eval.NumberEval;
+import org.apache.poi.ss.formula.eval.StringEval;
+import org.apache.poi.ss.formula.eval.ValueEval;
+import org.apache.poi.ss.formula.udf.UDFFinder;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellValue;
+import org.apache.poi.ss.usermodel.FormulaEvaluator;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.util.CellReference;
+
+/**
+ * Evaluates formula cells of a {@link SXSSFWorkbook}.
+ * <p>
+ * Only the rows in the random access window of each sheet can be read. A formula which
+ * references a row that has already been flushed cannot be evaluated and a
+ * {@link RowFlushedException} naming the formula and the referenced cell is thrown.
+ * Use a window large enough to hold the rows referenced by the formulas, or let the
+ * workbook evaluate each row right before it is flushed, see
+ * {@link SXSSFWorkbook#setEvaluateFormulasOnFlush(boolean)}.
+ * </p>
+ * <p>
+ * The result of each evaluated formula is kept as its cached value and written to the sheet.
+ * Formulas are evaluated only once: cells referencing an evaluated formula use the
+ * cached value, so chains of formulas like running totals need only the previous row in the window.
+ * </p>
+ */
+public class SXSSFFormulaEvaluator implements FormulaEvaluator
+{
+    private final SXSSFWorkbook _book;
+    private final WorkbookEvaluator _bookEvaluator;
+
+    public SXSSFFormulaEvaluator(SXSSFWorkbook workbook)
+    {
+        this(workbook, null, null);
+    }
+
+    private SXSSFFormulaEvaluator(SXSSFWorkbook workbook, IStabilityClassifier stabilityClassifier, UDFFinder udfFinder)
+    {
+        _bookEvaluator = new WorkbookEvaluator(new SXSSFEvaluationWorkbook(workbook), stabilityClassifier, udfFinder);
+        _book = workbook;
+    }
+
+    /**
+     * @param stabilityClassifier used to optimise caching performance. Pass <code>null</code>
+     * for the (conservative) assumption that any cell may have its definition changed after
+     * evaluation begins.
+     * @param udfFinder pass <code>null</code> for default (AnalysisToolPak only)
+     */
+    public static SXSSFFormulaEvaluator create(SXSSFWorkbook workbook, IStabilityClassifier stabilityClassifier, UDFFinder udfFinder)
+    {
+        return new SXSSFFormulaEvaluator(workbook, stabilityClassifier, udfFinder);
+    }
+
+    /**
+     * Thrown when a formula references a row which is no longer in the random access window
+     */
+    public static class RowFlushedException extends IllegalStateException
+    {
+        private static final long serialVersionUID = 3768371955874993989L;
+
+        public RowFlushedException(String message)
+        {
+            super(message);
+        }
+    }
+
+    /**
+     * Should be called whenever there are major changes (e.g. moving sheets) to input cells
+     * in the evaluated workbook.
+     * Failure to call this method after changing cell values will cause incorrect behaviour
+     * of the evaluate~ methods of this class
+     */
+    public void clearAllCachedResultValues()
+    {
+        _bookEvaluator.clearAllCachedResultValues();
+    }
+
+    public void notifySetFormula(Cell cell)
+    {
+        _bookEvaluator.notifyUpdateCell(toEvaluationCell(cell));
+    }
+
+    public void notifyDeleteCell(Cell cell)
+    {
+        _bookEvaluator.notifyDeleteCell(toEvaluationCell(cell));
+    }
+
+    public void notifyUpdateCell(Cell cell)
+    {
+        _bookEvaluator.notifyUpdateCell(toEvaluationCell(cell));
+    }
+
+    /**
+     * If cell contains a formula, the formula is evaluated and returned,
+     * else the CellValue simply copies the appropriate cell value from
+     * the cell and also its cell type. This method should be preferred over
+     * evaluateInCell() when the call should not modify the contents of the
+     * original cell.
+     *
+     * @param cell the cell to evaluate, its row must be in the window
+     * @throws RowFlushedException if the formula references a row which has been flushed
+     */
+    public CellValue evaluate(Cell cell)
+    {
+        if (cell == null)
+        {
+            return null;
+        }
+
+        switch (cell.getCellType())
+        {
+            case Cell.CELL_TYPE_BOOLEAN:
+                return CellValue.valueOf(cell.getBooleanCellValue());
+            case Cell.CELL_TYPE_ERROR:
+                return CellValue.getError(cell.getErrorCellValue());
+            case Cell.CELL_TYPE_FORMULA:
+                return evaluateFormulaCellValue(toSXSSFCell(cell), cell.getRowIndex());
+            case Cell.CELL_TYPE_NUMERIC:
+                return new CellValue(cell.getNumericCellValue());
+            case Cell.CELL_TYPE_STRING:
+                return new CellValue(cell.getRichStringCellValue().getString());
+            case Cell.CELL_TYPE_BLANK:
+                return null;
+        }
+        throw new IllegalStateException("Bad cell type (" + cell.getCellType() + ")");
+    }
+
+    /**
+     * If cell contains formula, it evaluates the formula,
+     *  and saves the result of the formula. The cell
+     *  remains as a formula cell.
+     * Else if cell does not contain formula, this method leaves
+     *  the cell unchanged.
+     *
+     * @param cell the cell to evaluate, its row must be in the window
+     * @return the type of the formula result or -1 if the cell is not a formula cell
+     * @throws RowFlushedException if the formula references a row which has been flushed
+     */
+    public int evaluateFormulaCell(Cell cell)
+    {
+        if (cell == null || cell.getCellType() != Cell.CELL_TYPE_FORMULA)
+        {
+            return -1;
+        }
+        return evaluateFormulaCell(toSXSSFCell(cell), cell.getRowIndex());
+    }
+
+    /**
+     * If cell contains formula, it evaluates the formula, and
+     *  puts the formula result back into the cell, in place
+     *  of the old formula.
+     * Else if cell does not contain formula, this method leaves
+     *  the cell unchanged.
+     *
+     * @param cell the cell to evaluate, its row must be in the window
+     * @throws RowFlushedException if the formula references a row which has been flushed
+     */
+    public SXSSFCell evaluateInCell(Cell cell)
+    {
+        if (cell == null)
+        {
+            return null;
+        }
+        SXSSFCell result = toSXSSFCell(cell);
+        if (cell.getCellType() == Cell.CELL_TYPE_FORMULA)
+        {
+            CellValue cv = evaluateFormulaCellValue(result, cell.getRowIndex());
+            cell.setCellType(cv.getCellType()); // cell will no longer be a formula cell
+            setCellValue(result, cv);
+        }
+        return result;
+    }
+
+    /**
+     * Evaluates the formula cells of the rows in the window of each sheet and saves
+     * their results. Rows which have already been flushed are not evaluated.
+     *
+     * @throws RowFlushedException if a formula references a row which has been flushed
+     */
+    public void evaluateAll()
+    {
+        for (int i = 0; i < _book.getNumberOfSheets(); i++)
+        {
+            Sheet sheet = _book.getSheetAt(i);
+            for (Row r : sheet)
+            {
+                for (Cell c : r)
+                {
+                    if (c.getCellType() == Cell.CELL_TYPE_FORMULA)
+                    {
+                        evaluateFormulaCell(c);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Evaluate the formula cells of a row which is about to be flushed, unless they have been evaluated already.
+     * The cached results are cleared afterwards so the memory used does not grow with the number of rows.
+     */
+    void evaluateRow(int rownum, SXSSFRow row)
+    {
+        boolean evaluated = false;
+        for (int column = 0; column <= row._maxColumn; column++)
+        {
+            if (row.getCellType(column) != Cell.CELL_TYPE_FORMULA) continue;
+            SXSSFCell cell = row.getCellHandle(column);
+            if (!cell.isFormulaEvaluated())
+            {
+                evaluateFormulaCell(cell, rownum);
+                evaluated = true;
+            }
+        }
+        if (evaluated)
+        {
+            _bookEvaluator.clearAllCachedResultValues();
+        }
+    }
+
+    private int evaluateFormulaCell(SXSSFCell cell, int rowIndex)
+    {
+        CellValue cv = evaluateFormulaCellValue(cell, rowIndex);
+        // cell remains a formula cell, but the cached value is changed
+        setCellValue(cell, cv);
+        cell.setFormulaEvaluated();
+        return cv.getCellType();
+    }
+
+    private static void setCellValue(Cell cell, CellValue cv)
+    {
+        int cellType = cv.getCellType();
+        switch (cellType)
+        {
+            case Cell.CELL_TYPE_BOOLEAN:
+                cell.setCellValue(cv.getBooleanValue());
+                break;
+            case Cell.CELL_TYPE_ERROR:
+                cell.setCellErrorValue(cv.getErrorValue());
+                break;
+            case Cell.CELL_TYPE_NUMERIC:
+                cell.setCellValue(cv.getNumberValue());
+                break;
+            case Cell.CELL_TYPE_STRING:
+                cell.setCellValue(cv.getStringValue());
+                break;
+            case Cell.CELL_TYPE_BLANK:
+                // never happens - blanks eventually get translated to zero
+            case Cell.CELL_TYPE_FORMULA:
+                // this will never happen, we have already evaluated the formula
+            default:
+                throw new IllegalStateException("Unexpected cell value type (" + cellType + ")");
+        }
+    }
+
+    private static SXSSFCell toSXSSFCell(Cell cell)
+    {
+        if (!(cell instanceof SXSSFCell))
+        {
+            throw new IllegalArgumentException("Unexpected type of cell: " + cell.getClass() + "." +
+                    " Only SXSSFCells can be evaluated.");
+        }
+        return (SXSSFCell)cell;
+    }
+
+    private static SXSSFEvaluationCell toEvaluationCell(Cell cell)
+    {
+        SXSSFCell sxCell = toSXSSFCell(cell);
+        SXSSFEvaluationSheet evalSheet = new SXSSFEvaluationSheet((SXSSFSheet)cell.getSheet());
+        return new SXSSFEvaluationCell(sxCell, evalSheet, cell.getRowIndex(), true);
+    }
+
+    /**
+     * Returns a CellValue wrapper around the supplied ValueEval instance.
+     */
+    private CellValue evaluateFormulaCellValue(SXSSFCell cell, int rowIndex)
+    {
+        SXSSFEvaluationSheet evalSheet = new SXSSFEvaluationSheet((SXSSFSheet)cell.getSheet());
+        ValueEval eval;
+        try
+        {
+            eval = _bookEvaluator.evaluate(new SXSSFEvaluationCell(cell, evalSheet, rowIndex, true));
+        }
+        catch (RowFlushedException e)
+        {
+            CellReference ref = new CellReference(cell.getSheet().getSheetName(), rowIndex, cell.getColumnIndex(), false, false);
+            throw new RowFlushedException("Cannot evaluate " + ref.formatAsString()
+                    + " (" + cell.getCellFormula() + "): " + e.getMessage());
+        }
+        if (eval instanceof NumberEval)
+        {
+            NumberEval ne = (NumberEval) eval;
+            return new CellValue(ne.getNumberValue());
+        }
+        if (eval instanceof BoolEval)
+        {
+            BoolEval be = (BoolEval) eval;
+            return CellValue.valueOf(be.getBooleanValue());
+        }
+        if (eval instanceof StringEval)
+        {
+            StringEval ne = (StringEval) eval;
+            return new CellValue(ne.getStringValue());
+        }
+        if (eval instanceof ErrorEval)
+        {
+            return CellValue.getError(((ErrorEval)eval).getErrorCode());
+        }
+        throw new RuntimeException("Unexpected eval class (" + eval.getClass().getName() + ")");
+    }
+}
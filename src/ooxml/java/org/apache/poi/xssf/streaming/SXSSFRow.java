@@ -17,24 +17,55 @@
 
 package org.apache.poi.xssf.streaming;
 
+import java.util.Calendar;
+import java.util.Date;
 import java.util.Iterator;
 import java.util.NoSuchElementException;
 
 import org.apache.poi.ss.SpreadsheetVersion;
 import org.apache.poi.ss.usermodel.Cell;
 import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.DateUtil;
+import org.apache.poi.ss.usermodel.FormulaError;
+import org.apache.poi.ss.usermodel.RichTextString;
 import org.apache.poi.ss.usermodel.Row;
 import org.apache.poi.ss.usermodel.Sheet;
 
 /**
  * Streaming version of XSSFRow implementing the "BigGridDemo" strategy.
+ * <p>
+ * The cells of a row are stored column-wise in primitive arrays: the cell type,
+ * a double holding numeric, boolean and error values, and on demand the string or
+ * formula values and the styles. {@link SXSSFCell} objects are handles to a column,
+ * they are created when a cell is requested through the API and not kept by the row.
+ * </p>
  *
  * @author Alex Geller, Four J's Development Tools
 */
 public class SXSSFRow implements Row
 {
+    /**
+     * Cell type of columns without a cell
+     */
+    static final int NO_CELL=-1;
+
     SXSSFSheet _sheet;
-    SXSSFCell[] _cells;
+    /**
+     * Cell type plus one per column, 0 if the column has no cell
+     */
+    byte[] _types;
+    /**
+     * Numeric, boolean (1 or 0) and error values including the cached results of formulas
+     */
+    double[] _numbers;
+    /**
+     * String, RichTextString or FormulaValue per column, <code>null</code> until needed
+     */
+    Object[] _values;
+    /**
+     * Explicit cell styles per column, <code>null</code> until needed
+     */
+    CellStyle[] _styles;
     int _maxColumn=-1;
     short _style=-1;
     short _height=-1;
@@ -44,7 +75,8 @@ public class SXSSFRow implements Row
     public SXSSFRow(SXSSFSheet sheet, int initialSize)
     {
         _sheet=sheet;
-        _cells=new SXSSFCell[initialSize];
+        _types=new byte[initialSize];
+        _numbers=new double[initialSize];
     }
     public Iterator<Cell> allCellsIterator()
     {
@@ -99,15 +131,11 @@ public class SXSSFRow implements Row
     {
         checkBounds(column);
 
-        if(column>=_cells.length)
-        {
-            SXSSFCell[] newCells=new SXSSFCell[Math.max(column+1,_cells.length*2)];
-            System.arraycopy(_cells,0,newCells,0,_cells.length);
-            _cells=newCells;
-        }
-        _cells[column]=new SXSSFCell(this,type);
+        clearColumn(column);
+        SXSSFCell cell=new SXSSFCell(this,this,column);
+        cell.setType(type);
         if(column>_maxColumn) _maxColumn=column;
-        return _cells[column];
+        return cell;
     }
 
     /**
@@ -125,26 +153,220 @@ public class SXSSFRow implements Row
 
     /**
      * Remove the Cell from this row.
+     * <p>
+     * The cell keeps its value, other cells returned for the same column must not be used afterwards.
      *
      * @param cell the cell to remove
      */
     public void removeCell(Cell cell)
     {
         int index=getCellIndex(cell);
-        if(index>=0)
+        if(index>=0&&_types[index]!=0)
         {
-            _cells[index]=null;
-            while(_maxColumn>=0&&_cells[_maxColumn]==null) _maxColumn--;
+            ((SXSSFCell)cell).detach();
+            _types[index]=0;
+            if(_values!=null) _values[index]=null;
+            if(_styles!=null) _styles[index]=null;
+            while(_maxColumn>=0&&_types[_maxColumn]==0) _maxColumn--;
         }
     }
 
     int getCellIndex(Cell cell)
+    {
+        if(!(cell instanceof SXSSFCell)) return -1;
+        SXSSFCell sxCell=(SXSSFCell)cell;
+        return sxCell._data==this&&sxCell._column<=_maxColumn?sxCell._column:-1;
+    }
+
+    /**
+     * Make room for the column and remove the cell in it, cells returned for the column before refer to the new cell
+     */
+    private void clearColumn(int column)
+    {
+        if(column>=_types.length)
+        {
+            ensureCapacity(column);
+        }
+        else if(_types[column]!=0)
+        {
+            _types[column]=0;
+            if(_values!=null) _values[column]=null;
+            if(_styles!=null) _styles[column]=null;
+        }
+    }
+
+    private void ensureCapacity(int column)
+    {
+        if(column>=_types.length)
+        {
+            int length=Math.max(column+1,_types.length*2);
+            byte[] types=new byte[length];
+            System.arraycopy(_types,0,types,0,_types.length);
+            _types=types;
+            double[] numbers=new double[length];
+            System.arraycopy(_numbers,0,numbers,0,_numbers.length);
+            _numbers=numbers;
+            if(_values!=null)
+            {
+                Object[] values=new Object[length];
+                System.arraycopy(_values,0,values,0,_values.length);
+                _values=values;
+            }
+            if(_styles!=null)
+            {
+                CellStyle[] styles=new CellStyle[length];
+                System.arraycopy(_styles,0,styles,0,_styles.length);
+                _styles=styles;
+            }
+        }
+    }
+
+    /**
+     * Remove all cells, used to reuse the row for appending rows in bulk.
+     * The row must not have handed out any cell handles.
+     */
+    void clear()
     {
         for(int i=0;i<=_maxColumn;i++)
         {
-            if(_cells[i]==cell) return i;
+            _types[i]=0;
+            if(_values!=null) _values[i]=null;
+            if(_styles!=null) _styles[i]=null;
         }
-        return -1;
+        _maxColumn=-1;
+    }
+
+    /**
+     * Set a numeric cell without creating a cell handle, like {@link SXSSFCell#setCellValue(double)}
+     */
+    void setNumericCell(int column,double value,CellStyle style)
+    {
+        checkBounds(column);
+        ensureCapacity(column);
+        if(Double.isInfinite(value))
+            setCell(column,Cell.CELL_TYPE_ERROR,FormulaError.DIV0.getCode(),null);
+        else if(Double.isNaN(value))
+            setCell(column,Cell.CELL_TYPE_ERROR,FormulaError.NUM.getCode(),null);
+        else
+            setCell(column,Cell.CELL_TYPE_NUMERIC,value,null);
+        setCellStyle(column,style);
+        if(column>_maxColumn) _maxColumn=column;
+    }
+
+    /**
+     * Set a cell from a value without creating a cell handle.
+     * Numbers, strings, rich text, booleans, dates and calendars are supported,
+     * a <code>null</code> value leaves the column without a cell.
+     *
+     * @throws IllegalArgumentException if the type of the value is not supported
+     */
+    void setCell(int column,Object value,CellStyle style)
+    {
+        if(value==null) return;
+        if(value instanceof Number)
+        {
+            setNumericCell(column,((Number)value).doubleValue(),style);
+            return;
+        }
+        if(value instanceof Date)
+        {
+            setNumericCell(column,DateUtil.getExcelDate((Date)value,false),style);
+            return;
+        }
+        if(value instanceof Calendar)
+        {
+            setNumericCell(column,DateUtil.getExcelDate((Calendar)value,false),style);
+            return;
+        }
+        checkBounds(column);
+        ensureCapacity(column);
+        if(value instanceof String||value instanceof RichTextString)
+            setCell(column,Cell.CELL_TYPE_STRING,0,value);
+        else if(value instanceof Boolean)
+            setCell(column,Cell.CELL_TYPE_BOOLEAN,((Boolean)value).booleanValue()?1:0,null);
+        else
+            throw new IllegalArgumentException("Unsupported cell value type " + value.getClass().getName());
+        setCellStyle(column,style);
+        if(column>_maxColumn) _maxColumn=column;
+    }
+
+    int getCellType(int column)
+    {
+        return _types[column]-1;
+    }
+
+    Object getValue(int column)
+    {
+        return _values==null?null:_values[column];
+    }
+
+    void setValue(int column,Object value)
+    {
+        if(_values==null)
+        {
+            if(value==null) return;
+            _values=new Object[_types.length];
+        }
+        _values[column]=value;
+    }
+
+    /**
+     * Set the type and value of the cell in a column, replacing the previous value
+     */
+    void setCell(int column,int type,double number,Object value)
+    {
+        _types[column]=(byte)(type+1);
+        _numbers[column]=number;
+        setValue(column,value);
+    }
+
+    CellStyle getCellStyle(int column)
+    {
+        return _styles==null?null:_styles[column];
+    }
+
+    void setCellStyle(int column,CellStyle style)
+    {
+        if(_styles==null)
+        {
+            if(style==null) return;
+            _styles=new CellStyle[_types.length];
+        }
+        _styles[column]=style;
+    }
+
+    /**
+     * Copy type, value and style of a column to another row
+     */
+    void copyCell(int column,SXSSFRow target,int targetColumn)
+    {
+        target.setCell(targetColumn,getCellType(column),_numbers[column],getValue(column));
+        target.setCellStyle(targetColumn,getCellStyle(column));
+    }
+
+    /**
+     * @return a new handle of the cell in the column or <code>null</code> if there is no cell,
+     * handles are not kept by the row
+     */
+    SXSSFCell getCellHandle(int column)
+    {
+        if(column>_maxColumn||_types[column]==0) return null;
+        return new SXSSFCell(this,this,column);
+    }
+
+    /**
+     * Get a cell to read the column without creating a handle for it
+     *
+     * @param view a cell which is pointed to the column
+     * @return the cell or <code>null</code> if the column has no cell
+     */
+    SXSSFCell getCellView(int column,SXSSFCell view)
+    {
+        if(_types[column]==0) return null;
+        view._row=this;
+        view._data=this;
+        view._column=column;
+        return view;
     }
 
     /**
@@ -179,7 +401,7 @@ public class SXSSFRow implements Row
     public Cell getCell(int cellnum) {
         if(cellnum < 0) throw new IllegalArgumentException("Cell index must be >= 0");
 
-        Cell cell = cellnum > _maxColumn ? null : _cells[cellnum];
+        Cell cell = getCellHandle(cellnum);
 
         MissingCellPolicy policy = _sheet.getWorkbook().getMissingCellPolicy();
         if(policy == RETURN_NULL_AND_BLANK) {
@@ -246,7 +468,7 @@ public class SXSSFRow implements Row
     public short getFirstCellNum()
     {
         for(int i=0;i<=_maxColumn;i++)
-            if(_cells[i]!=null) return (short)i;
+            if(_types[i]!=0) return (short)i;
         return -1;
     }
 
@@ -285,7 +507,7 @@ public class SXSSFRow implements Row
         int count=0;
         for(int i=0;i<=_maxColumn;i++)
         {
-            if(_cells[i]!=null) count++;
+            if(_types[i]!=0) count++;
         }
         return count;
     }
@@ -416,7 +638,7 @@ public class SXSSFRow implements Row
 
         FilledCellIterator(){
             for (int i = 0; i <= _maxColumn; i++) {
-                if (_cells[i] != null) {
+                if (_types[i] != 0) {
                     pos = i;
                     break;
                 }
@@ -430,13 +652,13 @@ public class SXSSFRow implements Row
         void advanceToNext()
         {
             pos++;
-            while(pos<=_maxColumn&&_cells[pos]==null) pos++;
+            while(pos<=_maxColumn&&_types[pos]==0) pos++;
         }
         public Cell next() throws NoSuchElementException
         {
             if (hasNext())
             {
-                Cell retval=_cells[pos];
+                Cell retval=getCellHandle(pos);
                 advanceToNext();
                 return retval;
             }
@@ -461,7 +683,7 @@ public class SXSSFRow implements Row
         public Cell next() throws NoSuchElementException
         {
             if (hasNext())
-                return _cells[pos++];
+                return getCellHandle(pos++);
             else
                 throw new NoSuchElementException();
         }
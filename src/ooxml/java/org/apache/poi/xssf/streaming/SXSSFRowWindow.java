@@ -0,0 +1,310 @@
+/* ====================================================================
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+==================================================================== */
+
+
+package org.apache.poi.xssf.streaming;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.TreeMap;
+
+/**
+ * The rows of a {@link SXSSFSheet} which have not been flushed yet, ordered by row index.
+ * <p>
+ * Streaming writes almost always create rows in ascending order. For that case the rows
+ * are kept in a ring buffer of primitive row indexes and row references:
+ * creating a row appends to the tail, flushing removes from the head and lookups
+ * compute the position from the row index, all without boxing or allocating entries.
+ * When a row is created below the last row, the window falls back to a sorted map
+ * until it is empty again.
+ * </p>
+ */
+final class SXSSFRowWindow implements Iterable<SXSSFRow> {
+    private static final int INITIAL_CAPACITY = 16;
+
+    private int[] _rowNums;
+    private SXSSFRow[] _rows;
+    private int _head;
+    private int _size;
+
+    /**
+     * The rows if they were created out of order, <code>null</code> while the ring buffer is used
+     */
+    private TreeMap<Integer, SXSSFRow> _tree;
+
+    SXSSFRowWindow(int windowSize) {
+        // createRow adds a row before flushing the window back to its size
+        int capacity = windowSize > 0 ? windowSize + 1 : INITIAL_CAPACITY;
+        _rowNums = new int[capacity];
+        _rows = new SXSSFRow[capacity];
+    }
+
+    int size() {
+        return _tree == null ? _size : _tree.size();
+    }
+
+    /**
+     * @return the lowest row index, undefined if the window is empty
+     */
+    int firstRowNum() {
+        return _tree == null ? _rowNums[_head] : _tree.firstKey().intValue();
+    }
+
+    /**
+     * @return the highest row index, undefined if the window is empty
+     */
+    int lastRowNum() {
+        return _tree == null ? _rowNums[slot(_size - 1)] : _tree.lastKey().intValue();
+    }
+
+    /**
+     * @return the row with the lowest row index or <code>null</code> if the window is empty
+     */
+    SXSSFRow first() {
+        if (_tree != null) return _tree.get(_tree.firstKey());
+        return _size == 0 ? null : _rows[_head];
+    }
+
+    /**
+     * Add a row, replacing a row with the same index
+     */
+    void put(int rownum, SXSSFRow row) {
+        if (_tree == null) {
+            if (_size == 0 || rownum > _rowNums[slot(_size - 1)]) {
+                if (_size == _rows.length) grow();
+                int s = slot(_size);
+                _rowNums[s] = rownum;
+                _rows[s] = row;
+                _size++;
+                return;
+            }
+            if (rownum == _rowNums[slot(_size - 1)]) {
+                _rows[slot(_size - 1)] = row;
+                return;
+            }
+            toTree();
+        }
+        _tree.put(Integer.valueOf(rownum), row);
+    }
+
+    SXSSFRow get(int rownum) {
+        if (_tree != null) return _tree.get(Integer.valueOf(rownum));
+        int i = indexOf(rownum);
+        return i < 0 ? null : _rows[slot(i)];
+    }
+
+    /**
+     * Remove the row with the lowest row index
+     */
+    void removeFirst() {
+        if (_tree != null) {
+            _tree.remove(_tree.firstKey());
+            if (_tree.isEmpty()) _tree = null;
+            return;
+        }
+        if (_size == 0) return;
+        _rows[_head] = null;
+        _head = slot(1);
+        _size--;
+    }
+
+    /**
+     * Remove the specified row object
+     *
+     * @return whether the row was found
+     */
+    boolean remove(SXSSFRow row) {
+        if (_tree != null) {
+            for (Iterator<Map.Entry<Integer, SXSSFRow>> iter = _tree.entrySet().iterator(); iter.hasNext();) {
+                if (iter.next().getValue() == row) {
+                    iter.remove();
+                    if (_tree.isEmpty()) _tree = null;
+                    return true;
+                }
+            }
+            return false;
+        }
+        // rows are usually removed from the tail or the head, search from the tail
+        for (int i = _size - 1; i >= 0; i--) {
+            if (_rows[slot(i)] == row) {
+                removeAt(i);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the row index of the specified row object or -1 if it is not in the window
+     */
+    int getRowNum(SXSSFRow row) {
+        if (_tree != null) {
+            for (Map.Entry<Integer, SXSSFRow> entry : _tree.entrySet()) {
+                if (entry.getValue() == row) return entry.getKey().intValue();
+            }
+            return -1;
+        }
+        for (int i = _size - 1; i >= 0; i--) {
+            int s = slot(i);
+            if (_rows[s] == row) return _rowNums[s];
+        }
+        return -1;
+    }
+
+    /**
+     * @return the rows in ascending order
+     */
+    public Iterator<SXSSFRow> iterator() {
+        if (_tree != null) return new TreeIterator(_tree.values().iterator());
+        return new RingIterator(0, _size);
+    }
+
+    /**
+     * @param fromRowNum the lowest row index, inclusive
+     * @param toRowNum the highest row index, inclusive
+     * @return the rows in the range in ascending order
+     */
+    Iterator<SXSSFRow> iterator(int fromRowNum, int toRowNum) {
+        if (_tree != null) {
+            return new TreeIterator(_tree.subMap(Integer.valueOf(fromRowNum),
+                    Integer.valueOf(toRowNum + 1)).values().iterator());
+        }
+        return new RingIterator(ceiling(fromRowNum), ceiling(toRowNum + 1));
+    }
+
+    private int slot(int i) {
+        int s = _head + i;
+        return s >= _rows.length ? s - _rows.length : s;
+    }
+
+    /**
+     * @return the logical position of the row or -1
+     */
+    private int indexOf(int rownum) {
+        if (_size == 0) return -1;
+        // rows are mostly contiguous, so the offset from the first row is the position
+        int i = rownum - _rowNums[_head];
+        if (i >= 0 && i < _size && _rowNums[slot(i)] == rownum) return i;
+        i = ceiling(rownum);
+        return i < _size && _rowNums[slot(i)] == rownum ? i : -1;
+    }
+
+    /**
+     * @return the logical position of the first row with an index greater than or equal to rownum
+     */
+    private int ceiling(int rownum) {
+        int lo = 0;
+        int hi = _size;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (_rowNums[slot(mid)] < rownum) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    private void removeAt(int i) {
+        if (i == 0) {
+            removeFirst();
+            return;
+        }
+        for (int j = i; j < _size - 1; j++) {
+            int s = slot(j);
+            int next = slot(j + 1);
+            _rowNums[s] = _rowNums[next];
+            _rows[s] = _rows[next];
+        }
+        _rows[slot(_size - 1)] = null;
+        _size--;
+    }
+
+    private void grow() {
+        int capacity = _rows.length * 2;
+        int[] rowNums = new int[capacity];
+        SXSSFRow[] rows = new SXSSFRow[capacity];
+        for (int i = 0; i < _size; i++) {
+            int s = slot(i);
+            rowNums[i] = _rowNums[s];
+            rows[i] = _rows[s];
+        }
+        _rowNums = rowNums;
+        _rows = rows;
+        _head = 0;
+    }
+
+    private void toTree() {
+        _tree = new TreeMap<Integer, SXSSFRow>();
+        for (int i = 0; i < _size; i++) {
+            int s = slot(i);
+            _tree.put(Integer.valueOf(_rowNums[s]), _rows[s]);
+            _rows[s] = null;
+        }
+        _head = 0;
+        _size = 0;
+    }
+
+    private final class RingIterator implements Iterator<SXSSFRow> {
+        private int _next;
+        private int _end;
+        private int _last = -1;
+
+        RingIterator(int from, int end) {
+            _next = from;
+            _end = end;
+        }
+
+        public boolean hasNext() {
+            return _next < _end;
+        }
+
+        public SXSSFRow next() {
+            if (_next >= _end) throw new NoSuchElementException();
+            _last = _next++;
+            return _rows[slot(_last)];
+        }
+
+        public void remove() {
+            if (_last < 0) throw new IllegalStateException();
+            removeAt(_last);
+            _next = _last;
+            _end--;
+            _last = -1;
+        }
+    }
+
+    private final class TreeIterator implements Iterator<SXSSFRow> {
+        private final Iterator<SXSSFRow> _iter;
+
+        TreeIterator(Iterator<SXSSFRow> iter) {
+            _iter = iter;
+        }
+
+        public boolean hasNext() {
+            return _iter.hasNext();
+        }
+
+        public SXSSFRow next() {
+            return _iter.next();
+        }
+
+        public void remove() {
+            _iter.remove();
+            if (_tree != null && _tree.isEmpty()) _tree = null;
+        }
+    }
+}
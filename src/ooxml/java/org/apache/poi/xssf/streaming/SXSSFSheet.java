@@ -20,8 +20,6 @@ package org.apache.poi.xssf.streaming;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.Iterator;
-import java.util.Map;
-import java.util.TreeMap;
 
 import org.apache.poi.hssf.util.PaneInformation;
 import org.apache.poi.ss.SpreadsheetVersion;
@@ -55,10 +53,25 @@ public class SXSSFSheet implements Sheet, Cloneable
 {
     SXSSFWorkbook _workbook;
     XSSFSheet _sh;
-    TreeMap<Integer,SXSSFRow> _rows=new TreeMap<Integer,SXSSFRow>();
+    SXSSFRowWindow _rows;
     SheetDataWriter _writer;
     int _randomAccessWindowSize = SXSSFWorkbook.DEFAULT_WINDOW_SIZE;
     int outlineLevelRow = 0;
+    /**
+     * Reused to write the rows appended in bulk, never part of the window
+     */
+    private SXSSFRow _appendRow;
+    /**
+     * Widths of the columns tracked for auto-sizing, <code>null</code> if no column is tracked
+     */
+    private AutoSizeColumnTracker _autoSizeColumnTracker;
+    /**
+     * The last rows flushed while formulas are evaluated on flush, <code>null</code> until needed.
+     * Formulas of the following rows may still reference them. Holds up to as many rows
+     * as the random access window, so the rows kept in memory double while formulas are
+     * evaluated on flush.
+     */
+    private SXSSFRowWindow _flushedRows;
 
     public SXSSFSheet(SXSSFWorkbook workbook, XSSFSheet xSheet) throws IOException
     {
@@ -66,6 +79,7 @@ public class SXSSFSheet implements Sheet, Cloneable
         _sh=xSheet;
         _writer = workbook.createSheetDataWriter();
         setRandomAccessWindowSize(_workbook.getRandomAccessWindowSize());
+        _rows = new SXSSFRowWindow(_randomAccessWindowSize);
 
     }
 
@@ -119,7 +133,7 @@ public class SXSSFSheet implements Sheet, Cloneable
         if(initialAllocationSize<=0)
             initialAllocationSize=10;
         SXSSFRow newRow=new SXSSFRow(this,initialAllocationSize);
-        _rows.put(new Integer(rownum),newRow);
+        _rows.put(rownum,newRow);
         if(_randomAccessWindowSize>=0&&_rows.size()>_randomAccessWindowSize)
         {
             try
@@ -145,15 +159,7 @@ public class SXSSFSheet implements Sheet, Cloneable
             throw new IllegalArgumentException("Specified row does not belong to this sheet");
         }
 
-        for(Iterator<Map.Entry<Integer,SXSSFRow>> iter=_rows.entrySet().iterator();iter.hasNext();)
-        {
-            Map.Entry<Integer,SXSSFRow> entry=iter.next();
-            if(entry.getValue()==row)
-            {
-                iter.remove();
-                return;
-            }
-        }
+        _rows.remove((SXSSFRow)row);
     }
 
     /**
@@ -165,7 +171,7 @@ public class SXSSFSheet implements Sheet, Cloneable
      */
     public Row getRow(int rownum)
     {
-        return _rows.get(new Integer(rownum));
+        return _rows.get(rownum);
     }
 
     /**
@@ -187,7 +193,7 @@ public class SXSSFSheet implements Sheet, Cloneable
     {
         if(_writer.getNumberOfFlushedRows() > 0)
             return _writer.getLowestIndexOfFlushedRows();
-        return _rows.size() == 0 ? 0 : _rows.firstKey();
+        return _rows.size() == 0 ? 0 : _rows.firstRowNum();
     }
 
     /**
@@ -197,7 +203,7 @@ public class SXSSFSheet implements Sheet, Cloneable
      */
     public int getLastRowNum()
     {
-        return _rows.size() == 0 ? 0 : _rows.lastKey();
+        return _rows.size() == 0 ? 0 : _rows.lastRowNum();
     }
 
     /**
@@ -418,7 +424,7 @@ public class SXSSFSheet implements Sheet, Cloneable
     public Iterator<Row> rowIterator()
     {
         @SuppressWarnings("unchecked")
-        Iterator<Row> result = (Iterator<Row>)(Iterator<? extends Row>)_rows.values().iterator();
+        Iterator<Row> result = (Iterator<Row>)(Iterator<? extends Row>)_rows.iterator();
         return result;
     }
 
@@ -1082,7 +1088,8 @@ public class SXSSFSheet implements Sheet, Cloneable
      */
     public void groupRow(int fromRow, int toRow)
     {
-        for(SXSSFRow row : _rows.subMap(fromRow, toRow + 1).values()){
+        for(Iterator<SXSSFRow> iter = _rows.iterator(fromRow, toRow); iter.hasNext(); ){
+            SXSSFRow row = iter.next();
             int level = row.getOutlineLevel() + 1;
             row.setOutlineLevel(level);
 
@@ -1157,6 +1164,10 @@ public class SXSSFSheet implements Sheet, Cloneable
      * </p>
      * You can specify whether the content of merged cells should be considered or ignored.
      *  Default is to ignore merged cells.
+     * <p>
+     * Only the rows in the window are measured, unless the column is tracked for auto-sizing
+     *  before the rows are flushed, see {@link #trackColumnForAutoSizing(int)}.
+     * </p>
      *
      * @param column the column index
      * @param useMergedCells whether to use the contents of merged cells when calculating the width of the column
@@ -1164,6 +1175,11 @@ public class SXSSFSheet implements Sheet, Cloneable
     public void autoSizeColumn(int column, boolean useMergedCells)
     {
         double width = SheetUtil.getColumnWidth(this, column, useMergedCells);
+        if (_autoSizeColumnTracker != null)
+        {
+            // the rows already flushed
+            width = Math.max(width, _autoSizeColumnTracker.getColumnWidth(column, useMergedCells));
+        }
 
         if (width != -1) {
             width *= 256;
@@ -1175,6 +1191,68 @@ public class SXSSFSheet implements Sheet, Cloneable
         }
     }
 
+    /**
+     * Track the widths of the cells of a column as the rows are flushed, so that
+     * {@link #autoSizeColumn(int)} also accounts for rows that are no longer in memory.
+     * <p>
+     * Only rows flushed after this call are measured. The memory used does not depend on the
+     *  number of rows.
+     * </p>
+     *
+     * @param column the column index
+     */
+    public void trackColumnForAutoSizing(int column)
+    {
+        getAutoSizeColumnTracker().trackColumn(column);
+    }
+
+    /**
+     * Track the widths of the cells of all columns as the rows are flushed.
+     *
+     * @see #trackColumnForAutoSizing(int)
+     */
+    public void trackAllColumnsForAutoSizing()
+    {
+        getAutoSizeColumnTracker().trackAllColumns();
+    }
+
+    /**
+     * Stop tracking the widths of the cells of a column and forget the widths measured so far.
+     * Has no effect if {@link #trackAllColumnsForAutoSizing()} was called.
+     *
+     * @param column the column index
+     */
+    public void untrackColumnForAutoSizing(int column)
+    {
+        if (_autoSizeColumnTracker != null) _autoSizeColumnTracker.untrackColumn(column);
+    }
+
+    /**
+     * Stop tracking the widths of the cells of all columns and forget the widths measured so far.
+     */
+    public void untrackAllColumnsForAutoSizing()
+    {
+        if (_autoSizeColumnTracker != null) _autoSizeColumnTracker.untrackAllColumns();
+    }
+
+    /**
+     * @param column the column index
+     * @return whether the widths of the cells of the column are tracked as the rows are flushed
+     */
+    public boolean isColumnTrackedForAutoSizing(int column)
+    {
+        return _autoSizeColumnTracker != null && _autoSizeColumnTracker.isColumnTracked(column);
+    }
+
+    private AutoSizeColumnTracker getAutoSizeColumnTracker()
+    {
+        if (_autoSizeColumnTracker == null)
+        {
+            _autoSizeColumnTracker = new AutoSizeColumnTracker(this);
+        }
+        return _autoSizeColumnTracker;
+    }
+
     /**
      * Returns cell comment for the specified row and column
      *
@@ -1317,6 +1395,111 @@ public class SXSSFSheet implements Sheet, Cloneable
          _randomAccessWindowSize=value;
     }
 
+    /**
+     * Append a row below the last row of the sheet and write it out immediately.
+     * <p>
+     * The cells are written straight to the sheet data without creating {@link Row} or
+     * {@link Cell} objects, which is considerably cheaper than <code>createRow</code>,
+     * <code>createCell</code> and <code>setCellValue</code> for every cell.
+     * Supported values are {@link Number}, {@link String}, {@link org.apache.poi.ss.usermodel.RichTextString},
+     * {@link Boolean}, {@link java.util.Date} and {@link java.util.Calendar}. A <code>null</code>
+     * element leaves the column without a cell.
+     * </p>
+     * <p>
+     * All rows in the random access window are flushed first, so the appended row
+     * as well as all rows created before cannot be accessed via getRow() afterwards.
+     * </p>
+     *
+     * @param values the cell values, the element index is the column index
+     * @param columnStyles the style of each column, <code>null</code> or a shorter array
+     *  for the default style
+     * @return the 0-based index of the appended row
+     * @throws IllegalArgumentException if a value has an unsupported type
+     */
+    public int appendRow(Object[] values, CellStyle[] columnStyles) throws IOException
+    {
+        SXSSFRow row = prepareAppendRow();
+        for (int i = 0; i < values.length; i++)
+        {
+            row.setCell(i, values[i], getColumnStyle(columnStyles, i));
+        }
+        return writeAppendRow(row);
+    }
+
+    /**
+     * Append a row of numeric cells below the last row of the sheet and write it out immediately.
+     *
+     * @param values the cell values, the element index is the column index
+     * @param columnStyles the style of each column, <code>null</code> or a shorter array
+     *  for the default style
+     * @return the 0-based index of the appended row
+     * @see #appendRow(Object[], CellStyle[])
+     */
+    public int appendRow(double[] values, CellStyle[] columnStyles) throws IOException
+    {
+        SXSSFRow row = prepareAppendRow();
+        for (int i = 0; i < values.length; i++)
+        {
+            row.setNumericCell(i, values[i], getColumnStyle(columnStyles, i));
+        }
+        return writeAppendRow(row);
+    }
+
+    /**
+     * Append a batch of rows below the last row of the sheet and write them out immediately.
+     *
+     * @param rows the cell values of each row
+     * @param columnStyles the style of each column, <code>null</code> or a shorter array
+     *  for the default style
+     * @return the 0-based index of the last appended row
+     * @see #appendRow(Object[], CellStyle[])
+     */
+    public int appendRows(Object[][] rows, CellStyle[] columnStyles) throws IOException
+    {
+        int rownum = -1;
+        for (Object[] values : rows)
+        {
+            rownum = appendRow(values, columnStyles);
+        }
+        return rownum;
+    }
+
+    private static CellStyle getColumnStyle(CellStyle[] columnStyles, int column)
+    {
+        return columnStyles == null || column >= columnStyles.length ? null : columnStyles[column];
+    }
+
+    private SXSSFRow prepareAppendRow() throws IOException
+    {
+        // the window only holds rows below the appended one
+        flushRows(0);
+        if (_appendRow == null)
+        {
+            _appendRow = new SXSSFRow(this, 10);
+        }
+        else
+        {
+            _appendRow.clear();
+        }
+        return _appendRow;
+    }
+
+    private int writeAppendRow(SXSSFRow row) throws IOException
+    {
+        int rownum;
+        if (_writer.getNumberOfFlushedRows() > 0)
+            rownum = _writer.getLastIndexOfFlushedRows() + 1;
+        else // rows of a template sheet come first
+            rownum = _sh.getPhysicalNumberOfRows() > 0 ? _sh.getLastRowNum() + 1 : 0;
+        int maxrow = SpreadsheetVersion.EXCEL2007.getLastRowIndex();
+        if (rownum > maxrow) {
+            throw new IllegalArgumentException("Invalid row number (" + rownum
+                    + ") outside allowable range (0.." + maxrow + ")");
+        }
+        writeRow(rownum, row);
+        return rownum;
+    }
+
     /**
      * Specifies how many rows can be accessed at most via getRow().
      * The exeeding rows (if any) are flushed to the disk while rows
@@ -1339,29 +1522,70 @@ public class SXSSFSheet implements Sheet, Cloneable
 
     private void flushOneRow() throws IOException
     {
-        Integer firstRowNum = _rows.firstKey();
-        if (firstRowNum!=null) {
-            int rowIndex = firstRowNum.intValue();
-            SXSSFRow row = _rows.get(firstRowNum);
-            _writer.writeRow(rowIndex, row);
-            _rows.remove(firstRowNum);
+        SXSSFRow row = _rows.first();
+        if (row!=null) {
+            int rownum = _rows.firstRowNum();
+            writeRow(rownum, row);
+            _rows.removeFirst();
+            if (_workbook.getFlushFormulaEvaluator() != null) keepFlushedRow(rownum, row);
+        }
+    }
+
+    private void keepFlushedRow(int rownum, SXSSFRow row)
+    {
+        if (_randomAccessWindowSize == 0) return;
+        if (_flushedRows == null) _flushedRows = new SXSSFRowWindow(_randomAccessWindowSize);
+        _flushedRows.put(rownum, row);
+        if (_randomAccessWindowSize > 0 && _flushedRows.size() > _randomAccessWindowSize)
+        {
+            _flushedRows.removeFirst();
         }
     }
+
+    /**
+     * @return one of the last flushed rows with evaluated formulas or <code>null</code> if it is not kept
+     */
+    SXSSFRow getFlushedRow(int rownum)
+    {
+        return _flushedRows == null ? null : _flushedRows.get(rownum);
+    }
+
+    private void writeRow(int rownum, SXSSFRow row) throws IOException
+    {
+        SXSSFFormulaEvaluator evaluator = _workbook.getFlushFormulaEvaluator();
+        if (evaluator != null)
+        {
+            evaluator.evaluateRow(rownum, row);
+        }
+        if (_autoSizeColumnTracker != null)
+        {
+            _autoSizeColumnTracker.updateColumnWidths(rownum, row);
+        }
+        _writer.writeRow(rownum, row);
+    }
+    /**
+     * @return the index of the last row which is no longer in the window, -1 if no row was flushed
+     */
+    int getLastFlushedRowNum()
+    {
+        // the rows of a template sheet are not in the window either
+        int last = _sh.getPhysicalNumberOfRows() > 0 ? _sh.getLastRowNum() : -1;
+        if (_writer.getNumberOfFlushedRows() > 0)
+        {
+            last = Math.max(last, _writer.getLastIndexOfFlushedRows());
+        }
+        return last;
+    }
+
     public void changeRowNum(SXSSFRow row, int newRowNum)
     {
         
         removeRow(row);
-        _rows.put(new Integer(newRowNum),row);
+        _rows.put(newRowNum,row);
     }
 
     public int getRowNum(SXSSFRow row)
     {
-        for(Iterator<Map.Entry<Integer,SXSSFRow>> iter=_rows.entrySet().iterator();iter.hasNext();)
-        {
-            Map.Entry<Integer,SXSSFRow> entry=iter.next();
-            if(entry.getValue()==row)
-                return entry.getKey().intValue();
-        }
-        return -1;
+        return _rows.getRowNum(row);
     }
 }
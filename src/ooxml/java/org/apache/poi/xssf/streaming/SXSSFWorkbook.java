@@ -29,23 +29,35 @@ import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 import org.apache.poi.xssf.usermodel.XSSFSheet;
 
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
-import java.io.OutputStreamWriter;
-import java.io.FileOutputStream;
-import java.io.File;
 import java.util.*;
-import java.util.zip.ZipFile;
-import java.util.zip.ZipOutputStream;
-import java.util.zip.ZipEntry;
-
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.Deflater;
+
+import org.apache.poi.openxml4j.exceptions.OpenXML4JRuntimeException;
 import org.apache.poi.ss.formula.udf.UDFFinder;
 import org.apache.poi.ss.usermodel.Row.MissingCellPolicy;
 import org.apache.poi.ss.util.CellRangeAddress;
 
 /**
  * Streaming version of XSSFWorkbook implementing the "BigGridDemo" strategy.
+ * <p>
+ * <b>Thread safety.</b> Different sheets of a workbook may be filled concurrently,
+ * one thread per sheet. Each {@link SXSSFSheet} has its own row window and temp file writer,
+ * so creating and flushing rows of one sheet does not interfere with other sheets.
+ * A single sheet, its rows and cells must only be accessed by one thread at a time.
+ * Everything which changes the workbook itself, e.g. creating or removing sheets, cell styles,
+ * fonts or names, as well as {@link #write(OutputStream)}, must not run concurrently with
+ * any other access to the workbook. With a shared strings table the strings are added
+ * in the order the threads reach them, so the indexes may differ from run to run.
+ * Formulas evaluated on flush may read other sheets, so with
+ * {@link #setEvaluateFormulasOnFlush(boolean)} the workbook must be filled by a single thread.
+ * </p>
  *
  * @author Alex Geller, Four J's Development Tools
 */
@@ -60,6 +72,13 @@ public class SXSSFWorkbook implements Workbook
      */
     public static final int DEFAULT_WINDOW_SIZE = 100;
 
+    /**
+     * Specifies how many distinct strings are put into the shared strings table
+     * when the workbook is constructed with <code>useSharedStringsTable=true</code>.
+     * Strings that are not in the table yet when the limit is reached are written inline.
+     */
+    public static final int DEFAULT_SHARED_STRINGS_LIMIT = 100000;
+
     XSSFWorkbook _wb;
 
     HashMap<SXSSFSheet,XSSFSheet> _sxFromXHash=new HashMap<SXSSFSheet,XSSFSheet>();
@@ -72,6 +91,36 @@ public class SXSSFWorkbook implements Workbook
      */
     private boolean _compressTmpFiles = false;
 
+    /**
+     * deflate level of compressed temp files.
+     */
+    private int _compressionLevel = Deflater.DEFAULT_COMPRESSION;
+
+    /**
+     * creates the sheet data writers, <code>null</code> to choose them from the flags.
+     */
+    private SheetDataWriterFactory _sheetDataWriterFactory;
+
+    /**
+     * whether sheet data should be encoded to UTF-8 bytes directly.
+     */
+    private boolean _useUtf8SheetDataWriter = false;
+
+    /**
+     * shared strings of the workbook, <code>null</code> if strings are written inline.
+     */
+    private BoundedSharedStrings _sharedStringSource;
+
+    /**
+     * number of threads used to flush the sheets in {@link #write(OutputStream)}.
+     */
+    private int _writeThreads = 1;
+
+    /**
+     * evaluates the formulas of the rows as they are flushed, <code>null</code> if formulas are not evaluated.
+     */
+    private SXSSFFormulaEvaluator _flushFormulaEvaluator;
+
     /**
      * Construct a new workbook
      */
@@ -165,15 +214,51 @@ public class SXSSFWorkbook implements Workbook
      * @param compressTmpFiles whether to use gzip compression for temporary files
      */
     public SXSSFWorkbook(XSSFWorkbook workbook, int rowAccessWindowSize, boolean compressTmpFiles){
+    	this(workbook,rowAccessWindowSize, compressTmpFiles, false);
+    }
+
+    /**
+     * Constructs an workbook from an existing workbook.
+     * <p>
+     * When a new node is created via createRow() and the total number
+     * of unflushed records would exceed the specified value, then the
+     * row with the lowest index value is flushed and cannot be accessed
+     * via getRow() anymore.
+     * </p>
+     * <p>
+     * A value of -1 indicates unlimited access. In this case all
+     * records that have not been flushed by a call to flush() are available
+     * for random access.
+     * <p>
+     * <p></p>
+     * A value of 0 is not allowed because it would flush any newly created row
+     * without having a chance to specify any cells.
+     * </p>
+     * <p>
+     * By default string cells are written inline (<code>t="inlineStr"</code>) which bloats the
+     * sheet XML when the same labels repeat across many rows. If <code>useSharedStringsTable</code>
+     * is <code>true</code> then strings are written to the shared strings table of the workbook
+     * and the cells only refer to them by index. To keep memory bounded at most
+     * {@link #DEFAULT_SHARED_STRINGS_LIMIT} distinct strings go to the table, see
+     * {@link #setSharedStringsLimit(int)}.
+     * </p>
+     *
+     * @param rowAccessWindowSize
+     * @param compressTmpFiles whether to use gzip compression for temporary files
+     * @param useSharedStringsTable whether to use a shared strings table
+     */
+    public SXSSFWorkbook(XSSFWorkbook workbook, int rowAccessWindowSize, boolean compressTmpFiles, boolean useSharedStringsTable){
     	setRandomAccessWindowSize(rowAccessWindowSize);
     	setCompressTempFiles(compressTmpFiles);
     	if (workbook == null)
     	{
     		_wb=new XSSFWorkbook();
+    		_sharedStringSource = useSharedStringsTable ? createSharedStringSource() : null;
     	}
     	else
     	{
     		_wb=workbook;
+    		_sharedStringSource = useSharedStringsTable ? createSharedStringSource() : null;
             for ( int i = 0; i < _wb.getNumberOfSheets(); i++ )
             {
                 XSSFSheet sheet = _wb.getSheetAt( i );
@@ -234,11 +319,156 @@ public class SXSSFWorkbook implements Workbook
         _compressTmpFiles = compress;
     }
 
+    /**
+     * Set the deflate level of compressed temp files.
+     * <p>
+     *   Only meaningful if temp files are compressed, see {@link #setCompressTempFiles(boolean)}.
+     *   Lower levels such as {@link Deflater#BEST_SPEED} reduce the CPU cost of compression
+     *   at the expense of larger temp files. The setting applies to sheets created after the call.
+     * </p>
+     * @param level the compression level, 0-9 or {@link Deflater#DEFAULT_COMPRESSION}
+     */
+    public void setTempFileCompressionLevel(int level){
+        if((level < 0 || level > 9) && level != Deflater.DEFAULT_COMPRESSION) {
+            throw new IllegalArgumentException("Invalid compression level: " + level);
+        }
+        _compressionLevel = level;
+    }
+
+    /**
+     * Set the factory creating the writers which hold the flushed rows of each sheet.
+     * <p>
+     *   By default the writer is chosen from {@link #setCompressTempFiles(boolean)} and
+     *   {@link #setUseUtf8SheetDataWriter(boolean)}. A factory replaces that choice, e.g. to keep
+     *   the data of small sheets in memory with {@link InMemorySheetDataWriter}.
+     *   The setting applies to sheets created after the call.
+     * </p>
+     * @param factory the factory or <code>null</code> to restore the default
+     */
+    public void setSheetDataWriterFactory(SheetDataWriterFactory factory){
+        _sheetDataWriterFactory = factory;
+    }
+
+    /**
+     * Set whether sheet data should be encoded to UTF-8 bytes directly.
+     * <p>
+     *   By default the sheet data is written as character data through a <code>Writer</code>,
+     *   building the cell references and values as Strings. If this flag is set to <code>true</code>
+     *   then a {@link Utf8SheetDataWriter} is used instead which formats cell references,
+     *   row numbers and numbers directly into a reusable byte buffer. This significantly
+     *   reduces CPU and garbage collection overhead when writing large amounts of cells.
+     * </p>
+     * <p>
+     *   The setting applies to sheets created after the call and is ignored if temp files
+     *   are compressed, see {@link #setCompressTempFiles(boolean)}.
+     * </p>
+     * @param useUtf8SheetDataWriter whether to encode sheet data directly to UTF-8 bytes
+     */
+    public void setUseUtf8SheetDataWriter(boolean useUtf8SheetDataWriter){
+        _useUtf8SheetDataWriter = useUtf8SheetDataWriter;
+    }
+
+    private BoundedSharedStrings createSharedStringSource(){
+        return new BoundedSharedStrings(_wb.getSharedStringSource(), DEFAULT_SHARED_STRINGS_LIMIT);
+    }
+
+    /**
+     * Set the maximum number of distinct strings put into the shared strings table.
+     * <p>
+     *   Only meaningful for workbooks constructed with <code>useSharedStringsTable=true</code>.
+     *   The index used to deduplicate strings holds every distinct string in memory,
+     *   so the limit bounds the memory footprint when writing many unique values.
+     *   Once the limit is reached, strings which are already in the table are still shared
+     *   and all other strings are written inline.
+     * </p>
+     * @param limit the maximum number of distinct shared strings, 0 writes all strings inline
+     * @throws IllegalStateException if the workbook does not use a shared strings table
+     */
+    public void setSharedStringsLimit(int limit){
+        if(_sharedStringSource == null) {
+            throw new IllegalStateException("This workbook does not use a shared strings table");
+        }
+        _sharedStringSource.setLimit(limit);
+    }
+
+    /**
+     * Set the number of threads used to flush and compress the sheets when the workbook is written.
+     * <p>
+     *   Before the package is saved, the rows remaining in the window of each sheet are
+     *   serialized to its temp file. With more than one thread the sheets are flushed
+     *   concurrently, unless formulas are evaluated on flush or the workbook uses a shared
+     *   strings table, and the zip entries of the sheets are deflated concurrently into temp
+     *   files. The calling thread writes the zip headers and copies the compressed entries
+     *   in the order of the template, so the package is byte for byte the same as the one
+     *   written by a single thread. This pays off for workbooks with several large sheets.
+     * </p>
+     * <p>
+     *   With a shared strings table, the index of a string is assigned when the first row
+     *   using it is flushed. Sheets filled by concurrent threads flush their rows in an
+     *   unpredictable order, so the indexes and therefore the package can differ between runs.
+     * </p>
+     * @param threads the number of threads, 1 flushes and compresses the sheets on the calling thread
+     */
+    public void setWriteThreads(int threads){
+        if(threads < 1) {
+            throw new IllegalArgumentException("threads must be greater than or equal to 1");
+        }
+        _writeThreads = threads;
+    }
+
+    /**
+     * Set whether formula cells are evaluated right before their row is flushed.
+     * <p>
+     *   The results are written as the cached values of the formulas, so that
+     *   spreadsheet applications can show them without recalculating the workbook.
+     *   A formula can only reference rows which are still in the random access window
+     *   of their sheet when its row is flushed, i.e. rows which are at most
+     *   {@link #getRandomAccessWindowSize()} rows above it, rows below it that were
+     *   already created, or rows of other sheets which are still in their windows.
+     *   Otherwise flushing fails with a {@link SXSSFFormulaEvaluator.RowFlushedException}.
+     * </p>
+     * <p>
+     *   To let formulas reference the rows just above them, each sheet keeps its last
+     *   {@link #getRandomAccessWindowSize()} flushed rows in memory in addition to the
+     *   window, which doubles the memory held by the rows of the sheets. Nothing extra is
+     *   kept while this is disabled.
+     * </p>
+     * <p>
+     *   Disabled by default, the formulas are written without results.
+     * </p>
+     * @param evaluate whether to evaluate the formulas on flush
+     * @see SXSSFFormulaEvaluator
+     */
+    public void setEvaluateFormulasOnFlush(boolean evaluate){
+        _flushFormulaEvaluator = evaluate ? new SXSSFFormulaEvaluator(this) : null;
+    }
+
+    /**
+     * @return whether formula cells are evaluated right before their row is flushed
+     * @see #setEvaluateFormulasOnFlush(boolean)
+     */
+    public boolean isEvaluateFormulasOnFlush(){
+        return _flushFormulaEvaluator != null;
+    }
+
+    /**
+     * @return the evaluator used while flushing rows, <code>null</code> if formulas are not evaluated
+     */
+    SXSSFFormulaEvaluator getFlushFormulaEvaluator(){
+        return _flushFormulaEvaluator;
+    }
+
     SheetDataWriter createSheetDataWriter() throws IOException {
-        if(_compressTmpFiles) {
-            return new GZIPSheetDataWriter();
+        if(_sheetDataWriterFactory != null) {
+            SheetDataWriter writer = _sheetDataWriterFactory.createSheetDataWriter();
+            writer._sharedStringSource = _sharedStringSource;
+            return writer;
+        } else if(_compressTmpFiles) {
+            return new GZIPSheetDataWriter(_compressionLevel, _sharedStringSource);
+        } else if(_useUtf8SheetDataWriter) {
+            return new Utf8SheetDataWriter(_sharedStringSource);
         } else {
-            return new SheetDataWriter();
+            return new SheetDataWriter(_sharedStringSource);
         }
     }
 
@@ -265,7 +495,7 @@ public class SXSSFWorkbook implements Workbook
         _sxFromXHash.remove(sxSheet);
         _xFromSxHash.remove(xSheet);
     }
-    private XSSFSheet getSheetFromZipEntryName(String sheetRef)
+    XSSFSheet getSheetFromZipEntryName(String sheetRef)
     {
         for(XSSFSheet sheet : _sxFromXHash.values())
         {
@@ -273,158 +503,6 @@ public class SXSSFWorkbook implements Workbook
         }
         return null;
     }
-    private void injectData(File zipfile, OutputStream out) throws IOException 
-    {
-        ZipFile zip = new ZipFile(zipfile);
-        try
-        {
-            ZipOutputStream zos = new ZipOutputStream(out);
-            try
-            {
-                @SuppressWarnings("unchecked")
-                Enumeration<ZipEntry> en = (Enumeration<ZipEntry>) zip.entries();
-                while (en.hasMoreElements()) 
-                {
-                    ZipEntry ze = en.nextElement();
-                    zos.putNextEntry(new ZipEntry(ze.getName()));
-                    InputStream is = zip.getInputStream(ze);
-                    XSSFSheet xSheet=getSheetFromZipEntryName(ze.getName());
-                    if(xSheet!=null)
-                    {
-                        SXSSFSheet sxSheet=getSXSSFSheet(xSheet);
-                        InputStream xis = sxSheet.getWorksheetXMLInputStream();
-                        try
-                        {
-                            copyStreamAndInjectWorksheet(is,zos,xis);
-                        }
-                        finally
-                        {
-                            xis.close();
-                        }
-                    }
-                    else
-                    {
-                        copyStream(is, zos);
-                    }
-                    is.close();
-                }
-            }
-            finally
-            {
-                zos.close();
-            }
-        }
-        finally
-        {
-            zip.close();
-        }
-    }
-    private static void copyStream(InputStream in, OutputStream out) throws IOException {
-        byte[] chunk = new byte[1024];
-        int count;
-        while ((count = in.read(chunk)) >=0 ) {
-          out.write(chunk,0,count);
-        }
-    }
-    private static void copyStreamAndInjectWorksheet(InputStream in, OutputStream out, InputStream worksheetData) throws IOException {
-        InputStreamReader inReader=new InputStreamReader(in,"UTF-8"); //TODO: Is it always UTF-8 or do we need to read the xml encoding declaration in the file? If not, we should perhaps use a SAX reader instead.
-        OutputStreamWriter outWriter=new OutputStreamWriter(out,"UTF-8");
-        boolean needsStartTag = true;
-        int c;
-        int pos=0;
-        String s="<sheetData";
-        int n=s.length();
-//Copy from "in" to "out" up to the string "<sheetData/>" or "</sheetData>" (excluding).
-        while(((c=inReader.read())!=-1))
-        {
-            if(c==s.charAt(pos))
-            {
-                pos++;
-                if(pos==n)
-                {
-                	if ("<sheetData".equals(s))
-                	{
-                    	c = inReader.read();
-                    	if (c == -1)
-                    	{
-                    		outWriter.write(s);
-                    		break;
-                    	}
-                    	if (c == '>')
-                    	{
-                    		// Found <sheetData>
-                    		outWriter.write(s);
-                    		outWriter.write(c);
-                    		s = "</sheetData>";
-                    		n = s.length();
-                    		pos = 0;
-                    		needsStartTag = false;
-                    		continue;
-                    	}
-                    	if (c == '/')
-                    	{
-                    		// Found <sheetData/
-                        	c = inReader.read();
-                        	if (c == -1)
-                        	{
-                        		outWriter.write(s);
-                        		break;
-                        	}
-                        	if (c == '>')
-                        	{
-                        		// Found <sheetData/>
-                        		break;
-                        	}
-                        	
-                    		outWriter.write(s);
-                    		outWriter.write('/');
-                    		outWriter.write(c);
-                    		pos = 0;
-                    		continue;
-                    	}
-                    	
-                		outWriter.write(s);
-                		outWriter.write('/');
-                		outWriter.write(c);
-                		pos = 0;
-                		continue;
-                	}
-                	else
-                	{
-                		// Found </sheetData>
-                    	break;
-                	}
-                }
-            }
-            else
-            {
-                if(pos>0) outWriter.write(s,0,pos);
-                if(c==s.charAt(0))
-                {
-                    pos=1;
-                }
-                else
-                {
-                    outWriter.write(c);
-                    pos=0;
-                }
-            }
-        }
-        outWriter.flush();
-        if (needsStartTag)
-        {
-        	outWriter.write("<sheetData>\n");
-        	outWriter.flush();
-        }
-//Copy the worksheet data to "out".
-        copyStream(worksheetData,out);
-        outWriter.write("</sheetData>");
-        outWriter.flush();
-//Copy the rest of "in" to "out".
-        while(((c=inReader.read())!=-1))
-            outWriter.write(c);
-        outWriter.flush();
-    }
 
     public XSSFWorkbook getXSSFWorkbook()
     {
@@ -753,21 +831,96 @@ public class SXSSFWorkbook implements Workbook
      */
     public void write(OutputStream stream) throws IOException
     {
-    	for (SXSSFSheet sheet : _xFromSxHash.values())
-    	{
-    		sheet.flushRows();
-    	}
-    	
-        //Save the template
-        File tmplFile = File.createTempFile("poi-sxssf-template", ".xlsx");
-        tmplFile.deleteOnExit();
-        FileOutputStream os = new FileOutputStream(tmplFile);
-        _wb.write(os);
-        os.close();
-
-        //Substitute the template entries with the generated sheet data files
-        injectData(tmplFile, stream);
-        tmplFile.delete();
+        flushSheets();
+
+        //Save the template and substitute the sheet data of the streamed sheets as the
+        //entries pass through, the package is compressed only once
+        int threads = Math.min(_writeThreads, _xFromSxHash.size());
+        SheetDataInjectingZipOutputStream zos = new SheetDataInjectingZipOutputStream(stream, this, threads);
+        try
+        {
+            _wb.write(zos);
+        }
+        catch (OpenXML4JRuntimeException e)
+        {
+            //the package marshallers report I/O errors as a failed save, surface the original error
+            if (zos.getError() != null) throw zos.getError();
+            throw e;
+        }
+        finally
+        {
+            zos.dispose();
+        }
+    }
+
+    /**
+     * @return the streamed sheets in the order of the workbook, so that strings get the same
+     *  shared string indexes every time
+     */
+    private List<SXSSFSheet> getSXSSFSheets()
+    {
+        List<SXSSFSheet> sheets = new ArrayList<SXSSFSheet>();
+        for (int i = 0; i < _wb.getNumberOfSheets(); i++)
+        {
+            SXSSFSheet sheet = getSXSSFSheet(_wb.getSheetAt(i));
+            if (sheet != null) sheets.add(sheet);
+        }
+        return sheets;
+    }
+
+    private void flushSheets() throws IOException
+    {
+        int threads = Math.min(_writeThreads, _xFromSxHash.size());
+        // evaluating formulas may read any sheet, shared string indexes depend on the order of the rows
+        if (threads <= 1 || _flushFormulaEvaluator != null || _sharedStringSource != null)
+        {
+            for (SXSSFSheet sheet : getSXSSFSheets())
+            {
+                sheet.flushRows();
+            }
+            return;
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try
+        {
+            List<Future<Object>> results = new ArrayList<Future<Object>>();
+            for (final SXSSFSheet sheet : getSXSSFSheets())
+            {
+                results.add(executor.submit(new Callable<Object>() {
+                    public Object call() throws IOException {
+                        sheet.flushRows();
+                        return null;
+                    }
+                }));
+            }
+            for (Future<Object> result : results)
+            {
+                try
+                {
+                    result.get();
+                }
+                catch (ExecutionException e)
+                {
+                    Throwable cause = e.getCause();
+                    if (cause instanceof IOException) throw (IOException)cause;
+                    if (cause instanceof RuntimeException) throw (RuntimeException)cause;
+                    if (cause instanceof Error) throw (Error)cause;
+                    throw new RuntimeException(cause);
+                }
+                catch (InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                    IOException ioe = new InterruptedIOException("Interrupted while flushing sheets");
+                    ioe.initCause(e);
+                    throw ioe;
+                }
+            }
+        }
+        finally
+        {
+            executor.shutdown();
+        }
     }
 
     /**
@@ -0,0 +1,404 @@
+/* ====================================================================
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+==================================================================== */
+
+package org.apache.poi.xssf.streaming;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.util.LinkedList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+
+import org.apache.poi.openxml4j.opc.internal.RawZipOutputStream;
+import org.apache.poi.xssf.usermodel.XSSFSheet;
+
+/**
+ * A <code>ZipOutputStream</code> the template package is saved into by
+ * {@link SXSSFWorkbook#write(OutputStream)}.
+ * <p>
+ * Entries of worksheets backed by an {@link SXSSFSheet} get the rows of the temp file
+ * spliced in at the end of the "sheetData" element as they pass through, see
+ * {@link SheetDataInjector}. All other entries are compressed as is. This way the final
+ * package is produced in a single pass without saving the template to a temporary file first.
+ * </p>
+ * <p>
+ * With more than one thread the worksheet entries are compressed concurrently: the XML
+ * of a worksheet in the template is kept in memory and a worker thread splices in the rows
+ * and deflates the entry into a temp file. The entries following a worksheet which is still
+ * being compressed are kept in memory, so that every entry is copied into the package at
+ * its place in the template. The entries are compressed with the same settings and written
+ * in the same form as on the calling thread, so the package is identical to the one
+ * written by a single thread.
+ * </p>
+ */
+class SheetDataInjectingZipOutputStream extends RawZipOutputStream {
+    private final SXSSFWorkbook _workbook;
+
+    /** compresses the worksheet entries, <code>null</code> to do it on the calling thread */
+    private final ExecutorService _executor;
+
+    /** the entries which could not be written yet, in the order of the template */
+    private final LinkedList<Future<DeferredEntry>> _deferred = new LinkedList<Future<DeferredEntry>>();
+
+    private SheetDataInjector _injector;
+
+    /** the entry being kept in memory, <code>null</code> if the entry is written through */
+    private ZipEntry _deferredEntry;
+    private SXSSFSheet _deferredSheet;
+    private ByteArrayOutputStream _deferredData;
+
+    /**
+     * The first I/O error raised while injecting sheet data. The package marshallers
+     * swallow <code>IOException</code>s so the workbook re-throws it after saving.
+     */
+    private IOException _error;
+
+    SheetDataInjectingZipOutputStream(OutputStream out, SXSSFWorkbook workbook, int threads) {
+        super(out);
+        _workbook = workbook;
+        _executor = threads > 1 ? Executors.newFixedThreadPool(threads) : null;
+    }
+
+    IOException getError() {
+        return _error;
+    }
+
+    @Override
+    public void putNextEntry(ZipEntry e) throws IOException {
+        XSSFSheet xSheet = _workbook.getSheetFromZipEntryName(e.getName());
+        SXSSFSheet sheet = xSheet == null ? null : _workbook.getSXSSFSheet(xSheet);
+        if (_executor != null) {
+            writeDeferred(false);
+            if (sheet != null || !_deferred.isEmpty()) {
+                // the entry is written by closeEntry() or later, with the time it is put at
+                _deferredEntry = new ZipEntry(e);
+                if (_deferredEntry.getTime() == -1) {
+                    _deferredEntry.setTime(System.currentTimeMillis());
+                }
+                _deferredSheet = sheet;
+                _deferredData = new ByteArrayOutputStream();
+                return;
+            }
+        }
+        super.putNextEntry(e);
+        if (sheet != null) {
+            _injector = new SheetDataInjector(new OutputStream() {
+                @Override
+                public void write(int b) throws IOException {
+                    write(new byte[] { (byte)b }, 0, 1);
+                }
+
+                @Override
+                public void write(byte[] b, int off, int len) throws IOException {
+                    SheetDataInjectingZipOutputStream.super.write(b, off, len);
+                }
+            }, sheet);
+        }
+    }
+
+    @Override
+    public void closeEntry() throws IOException {
+        if (_deferredEntry != null) {
+            final ZipEntry entry = _deferredEntry;
+            final SXSSFSheet sheet = _deferredSheet;
+            final byte[] data = _deferredData.toByteArray();
+            _deferredEntry = null;
+            _deferredSheet = null;
+            _deferredData = null;
+            if (entry.getMethod() == ZipEntry.STORED) {
+                entry.setCompressedSize(entry.getSize());
+                _deferred.add(done(new DeferredEntry(entry, true, null, data)));
+            } else {
+                final Deflater deflater = newDeflater();
+                _deferred.add(_executor.submit(new Callable<DeferredEntry>() {
+                    public DeferredEntry call() throws IOException {
+                        return deflate(entry, sheet, data, deflater);
+                    }
+                }));
+            }
+            return;
+        }
+        try {
+            if (_injector != null) {
+                _injector.finish();
+            }
+        } catch (IOException e) {
+            if (_error == null) _error = e;
+            throw e;
+        } finally {
+            _injector = null;
+        }
+        super.closeEntry();
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (_deferredData != null) {
+            _deferredData.write(b, off, len);
+        } else if (_injector != null) {
+            try {
+                _injector.write(b, off, len);
+            } catch (IOException e) {
+                if (_error == null) _error = e;
+                throw e;
+            }
+        } else {
+            super.write(b, off, len);
+        }
+    }
+
+    /**
+     * The XML of a worksheet from the template still needs the rows, so it is inflated
+     * and passes through {@link #putNextEntry(ZipEntry)} like any other worksheet.
+     * Other entries following a worksheet which is still being compressed are kept in memory.
+     */
+    @Override
+    public void writeRawEntry(ZipEntry e, InputStream data) throws IOException {
+        if (_workbook.getSheetFromZipEntryName(e.getName()) == null) {
+            if (_executor != null) {
+                writeDeferred(false);
+                if (!_deferred.isEmpty()) {
+                    byte[] raw = new byte[(int)e.getCompressedSize()];
+                    int pos = 0;
+                    while (pos < raw.length) {
+                        int count = data.read(raw, pos, raw.length - pos);
+                        if (count == -1) {
+                            throw new ZipException("unexpected end of data of raw entry " + e.getName());
+                        }
+                        pos += count;
+                    }
+                    ZipEntry entry = new ZipEntry(e);
+                    if (entry.getTime() == -1) {
+                        entry.setTime(System.currentTimeMillis());
+                    }
+                    _deferred.add(done(new DeferredEntry(entry, true, null, raw)));
+                    return;
+                }
+            }
+            super.writeRawEntry(e, data);
+            return;
+        }
+        InputStream is = data;
+        Inflater inflater = null;
+        if (e.getMethod() == ZipEntry.DEFLATED) {
+            // the inflater needs a dummy byte after the data when there is no zlib header
+            inflater = new Inflater(true);
+            is = new InflaterInputStream(new SequenceInputStream(data, new ByteArrayInputStream(new byte[1])), inflater);
+        }
+        try {
+            putNextEntry(new ZipEntry(e.getName()));
+            byte[] chunk = new byte[8192];
+            int count;
+            while ((count = is.read(chunk)) >= 0) {
+                write(chunk, 0, count);
+            }
+            closeEntry();
+        } finally {
+            if (inflater != null) inflater.end();
+        }
+    }
+
+    /**
+     * Copies the entries compressed by the worker threads, then writes the central directory
+     */
+    @Override
+    public void finish() throws IOException {
+        if (_executor != null) {
+            try {
+                writeDeferred(true);
+            } finally {
+                dispose();
+            }
+        }
+        super.finish();
+    }
+
+    /**
+     * Stops the worker threads and removes the temp files of the compressed entries
+     * which have not been copied, called when saving the package fails
+     */
+    void dispose() {
+        if (_executor == null) {
+            return;
+        }
+        _executor.shutdownNow();
+        for (Future<DeferredEntry> result : _deferred) {
+            try {
+                if (result.isDone() && !result.isCancelled()) {
+                    result.get().delete();
+                }
+            } catch (Exception e) {
+                // the entry failed, there is no file to remove
+            }
+        }
+        _deferred.clear();
+    }
+
+    /**
+     * Copy the deferred entries into the package in the order of the template
+     *
+     * @param wait whether to wait for all entries to be compressed, otherwise only the
+     *  entries up to the first one which is still being compressed are copied
+     */
+    private void writeDeferred(boolean wait) throws IOException {
+        while (!_deferred.isEmpty() && (wait || _deferred.getFirst().isDone())) {
+            DeferredEntry deferred = get(_deferred.removeFirst());
+            try {
+                InputStream is = deferred.open();
+                try {
+                    if (deferred._raw) {
+                        super.writeRawEntry(deferred._entry, is);
+                    } else {
+                        super.writeDeflatedEntry(deferred._entry, is);
+                    }
+                } finally {
+                    is.close();
+                }
+            } finally {
+                deferred.delete();
+            }
+        }
+    }
+
+    private DeferredEntry get(Future<DeferredEntry> result) throws IOException {
+        try {
+            return result.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                if (_error == null) _error = (IOException)cause;
+                throw (IOException)cause;
+            }
+            if (cause instanceof RuntimeException) throw (RuntimeException)cause;
+            if (cause instanceof Error) throw (Error)cause;
+            throw new RuntimeException(cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            IOException ioe = new InterruptedIOException("Interrupted while compressing sheets");
+            ioe.initCause(e);
+            throw ioe;
+        }
+    }
+
+    private static Future<DeferredEntry> done(final DeferredEntry entry) {
+        FutureTask<DeferredEntry> future = new FutureTask<DeferredEntry>(new Callable<DeferredEntry>() {
+            public DeferredEntry call() {
+                return entry;
+            }
+        });
+        future.run();
+        return future;
+    }
+
+    /**
+     * Deflate an entry, splicing the rows of the sheet into the worksheet XML of the template.
+     * Worksheets are deflated into a temp file, other entries into memory. Runs on a worker thread.
+     *
+     * @param sheet the sheet whose rows are injected, <code>null</code> for other entries
+     */
+    private static DeferredEntry deflate(ZipEntry entry, SXSSFSheet sheet, byte[] data, Deflater deflater)
+            throws IOException {
+        File file = null;
+        ByteArrayOutputStream bytes = null;
+        OutputStream sink;
+        if (sheet != null) {
+            file = File.createTempFile("poi-sxssf-entry", ".deflated");
+            file.deleteOnExit();
+            sink = new BufferedOutputStream(new FileOutputStream(file));
+        } else {
+            bytes = new ByteArrayOutputStream();
+            sink = bytes;
+        }
+        CRC32 crc = new CRC32();
+        try {
+            try {
+                DeflaterOutputStream dos = new DeflaterOutputStream(sink, deflater);
+                OutputStream out = new CheckedOutputStream(dos, crc);
+                if (sheet != null) {
+                    SheetDataInjector injector = new SheetDataInjector(out, sheet);
+                    injector.write(data, 0, data.length);
+                    injector.finish();
+                } else {
+                    out.write(data);
+                }
+                dos.finish();
+            } finally {
+                sink.close();
+            }
+            entry.setMethod(ZipEntry.DEFLATED);
+            entry.setCrc(crc.getValue());
+            entry.setSize(deflater.getBytesRead());
+            entry.setCompressedSize(deflater.getBytesWritten());
+            return new DeferredEntry(entry, false, file, bytes == null ? null : bytes.toByteArray());
+        } catch (IOException e) {
+            if (file != null) file.delete();
+            throw e;
+        } catch (RuntimeException e) {
+            if (file != null) file.delete();
+            throw e;
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * An entry waiting for its turn
+     */
+    private static final class DeferredEntry {
+        final ZipEntry _entry;
+        /** whether the entry is copied as is, or was deflated like by the calling thread */
+        final boolean _raw;
+        final File _file;
+        final byte[] _data;
+
+        DeferredEntry(ZipEntry entry, boolean raw, File file, byte[] data) {
+            _entry = entry;
+            _raw = raw;
+            _file = file;
+            _data = data;
+        }
+
+        InputStream open() throws IOException {
+            return _file == null ? new ByteArrayInputStream(_data) : new FileInputStream(_file);
+        }
+
+        void delete() {
+            if (_file != null) _file.delete();
+        }
+    }
+}
@@ -0,0 +1,187 @@
+/* ====================================================================
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+==================================================================== */
+
+package org.apache.poi.xssf.streaming;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Passes the XML of a worksheet of the template on to an output stream and splices the
+ * rows of an {@link SXSSFSheet} in at the end of the "sheetData" element.
+ * <p>
+ * The XML is scanned byte by byte as it passes through. The markers searched for are
+ * plain ASCII, so scanning the UTF-8 encoded bytes is safe.
+ * </p>
+ */
+class SheetDataInjector {
+    private static final byte[] START_TAG = Utf8Writer.ascii("<sheetData");
+    private static final byte[] END_TAG = Utf8Writer.ascii("</sheetData>");
+    private static final byte[] START_ELEMENT = Utf8Writer.ascii("<sheetData>");
+    private static final byte[] START_ELEMENT_NL = Utf8Writer.ascii("<sheetData>\n");
+
+    // states of the scanner
+    private static final int COPY = 0;
+    private static final int SEARCH_START_TAG = 1;
+    private static final int AFTER_START_TAG_NAME = 2;
+    private static final int AFTER_SLASH = 3;
+    private static final int SEARCH_END_TAG = 4;
+
+    private final OutputStream _out;
+    private final SXSSFSheet _sheet;
+    private int _state = SEARCH_START_TAG;
+    private int _matched;
+
+    SheetDataInjector(OutputStream out, SXSSFSheet sheet) {
+        _out = out;
+        _sheet = sheet;
+    }
+
+    /**
+     * Pass on the next bytes of the worksheet XML
+     */
+    void write(byte[] b, int off, int len) throws IOException {
+        if (_state == COPY) {
+            _out.write(b, off, len);
+            return;
+        }
+        // copy pass-through bytes in runs rather than one at a time
+        int runStart = off;
+        int end = off + len;
+        for (int i = off; i < end; i++) {
+            byte c = b[i];
+            switch (_state) {
+                case SEARCH_START_TAG:
+                case SEARCH_END_TAG: {
+                    byte[] tag = _state == SEARCH_START_TAG ? START_TAG : END_TAG;
+                    if (c == tag[_matched]) {
+                        if (_matched == 0 && i > runStart) {
+                            _out.write(b, runStart, i - runStart);
+                        }
+                        _matched++;
+                        runStart = i + 1;
+                        if (_matched == tag.length) {
+                            _matched = 0;
+                            if (_state == SEARCH_START_TAG) {
+                                _state = AFTER_START_TAG_NAME;
+                            } else {
+                                // found </sheetData>
+                                injectSheetData();
+                                _state = COPY;
+                            }
+                        }
+                    } else if (_matched > 0) {
+                        _out.write(tag, 0, _matched);
+                        _matched = c == tag[0] ? 1 : 0;
+                        runStart = _matched == 1 ? i + 1 : i;
+                    }
+                    break;
+                }
+                case AFTER_START_TAG_NAME: {
+                    if (c == '>') {
+                        // found <sheetData>, keep the existing rows of the template
+                        _out.write(START_ELEMENT, 0, START_ELEMENT.length);
+                        _state = SEARCH_END_TAG;
+                        runStart = i + 1;
+                    } else if (c == '/') {
+                        _state = AFTER_SLASH;
+                        runStart = i + 1;
+                    } else {
+                        _out.write(START_TAG, 0, START_TAG.length);
+                        _state = SEARCH_START_TAG;
+                        runStart = i;
+                    }
+                    break;
+                }
+                case AFTER_SLASH: {
+                    if (c == '>') {
+                        // found <sheetData/>
+                        _out.write(START_ELEMENT_NL, 0, START_ELEMENT_NL.length);
+                        injectSheetData();
+                        _state = COPY;
+                        runStart = i + 1;
+                    } else {
+                        _out.write(START_TAG, 0, START_TAG.length);
+                        _out.write('/');
+                        _state = SEARCH_START_TAG;
+                        runStart = i;
+                    }
+                    break;
+                }
+                default: {
+                    // COPY, the rest of the buffer passes through unchanged
+                    i = end;
+                    break;
+                }
+            }
+        }
+        if (_matched == 0 && runStart < end
+                && _state != AFTER_START_TAG_NAME && _state != AFTER_SLASH) {
+            _out.write(b, runStart, end - runStart);
+        }
+    }
+
+    /**
+     * Called at the end of the worksheet XML, injects the rows if that has not happened yet
+     */
+    void finish() throws IOException {
+        if (_matched > 0) {
+            _out.write(_state == SEARCH_START_TAG ? START_TAG : END_TAG, 0, _matched);
+            _matched = 0;
+        }
+        switch (_state) {
+            case SEARCH_START_TAG:
+                // the template does not contain sheetData at all, append it
+                _out.write(START_ELEMENT_NL, 0, START_ELEMENT_NL.length);
+                injectSheetData();
+                break;
+            case AFTER_START_TAG_NAME:
+                _out.write(START_TAG, 0, START_TAG.length);
+                _out.write(START_ELEMENT_NL, 0, START_ELEMENT_NL.length);
+                injectSheetData();
+                break;
+            case AFTER_SLASH:
+                _out.write(START_TAG, 0, START_TAG.length);
+                _out.write('/');
+                _out.write(START_ELEMENT_NL, 0, START_ELEMENT_NL.length);
+                injectSheetData();
+                break;
+            case SEARCH_END_TAG:
+                injectSheetData();
+                break;
+        }
+        _state = COPY;
+    }
+
+    /**
+     * Copy the rows of the sheet followed by the closing tag
+     */
+    private void injectSheetData() throws IOException {
+        InputStream xis = _sheet.getWorksheetXMLInputStream();
+        try {
+            byte[] chunk = new byte[8192];
+            int count;
+            while ((count = xis.read(chunk)) >= 0) {
+                _out.write(chunk, 0, count);
+            }
+        } finally {
+            xis.close();
+        }
+        _out.write(END_TAG, 0, END_TAG.length);
+    }
+}
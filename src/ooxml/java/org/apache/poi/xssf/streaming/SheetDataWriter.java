@@ -25,7 +25,6 @@ import org.apache.poi.ss.usermodel.FormulaError;
 import org.apache.poi.ss.util.CellReference;
 
 import java.io.*;
-import java.util.Iterator;
 
 /**
  * Initially copied from BigGridDemo "SpreadsheetWriter".
@@ -35,23 +34,36 @@ import java.util.Iterator;
  */
 public class SheetDataWriter {
     private final File _fd;
-    private final Writer _out;
-    private int _rownum;
-    private boolean _rowContainedNullCells = false;
+    final Writer _out;
+    int _rownum;
+    boolean _rowContainedNullCells = false;
     int _numberOfFlushedRows;
     int _lowestIndexOfFlushedRows; // meaningful only of _numberOfFlushedRows>0
     int _numberOfCellsOfLastFlushedRow; // meaningful only of _numberOfFlushedRows>0
+    int _lastIndexOfFlushedRows; // meaningful only of _numberOfFlushedRows>0
+    private SXSSFCell _cellView;
+
+    /**
+     * Shared strings of the workbook or <code>null</code> if strings are written inline
+     */
+    BoundedSharedStrings _sharedStringSource;
 
     public SheetDataWriter() throws IOException {
         _fd = createTempFile();
         _out = createWriter(_fd);
     }
 
+    SheetDataWriter(BoundedSharedStrings sharedStringSource) throws IOException {
+        this();
+        _sharedStringSource = sharedStringSource;
+    }
+
     /**
      * Create a temp file to write sheet data. 
      * By default, temp files are created in the default temporary-file directory
      * with a prefix "poi-sxssf-sheet" and suffix ".xml".  Subclasses can override 
      * it and specify a different temp directory or filename or suffix, e.g. <code>.gz</code>
+     * Writers which do not store the data in a file return <code>null</code>.
      * 
      * @return temp file to write sheet data
      */
@@ -103,8 +115,15 @@ public class SheetDataWriter {
         return _lowestIndexOfFlushedRows;
     }
 
+    /**
+     * @return the index of the row written last, meaningful only if rows were flushed
+     */
+    public int getLastIndexOfFlushedRows() {
+        return _lastIndexOfFlushedRows;
+    }
+
     protected void finalize() throws Throwable {
-        _fd.delete();
+        if (_fd != null) _fd.delete();
     }
 
     /**
@@ -117,12 +136,13 @@ public class SheetDataWriter {
         if (_numberOfFlushedRows == 0)
             _lowestIndexOfFlushedRows = rownum;
         _numberOfCellsOfLastFlushedRow = row.getLastCellNum();
+        _lastIndexOfFlushedRows = rownum;
         _numberOfFlushedRows++;
         beginRow(rownum, row);
-        Iterator<Cell> cells = row.allCellsIterator();
-        int columnIndex = 0;
-        while (cells.hasNext()) {
-            writeCell(columnIndex++, cells.next());
+        // read the columns through a reusable view, flushed rows do not need cell handles
+        if (_cellView == null) _cellView = new SXSSFCell(row, row, 0);
+        for (int columnIndex = 0; columnIndex <= row._maxColumn; columnIndex++) {
+            writeCell(columnIndex, row.getCellView(columnIndex, _cellView));
         }
         endRow();
     }
@@ -165,21 +185,52 @@ public class SheetDataWriter {
                 break;
             }
             case Cell.CELL_TYPE_FORMULA: {
+                int resultType = cell.getCachedFormulaResultType();
+                switch (resultType) {
+                    case Cell.CELL_TYPE_STRING:
+                        _out.write(" t=\"str\"");
+                        break;
+                    case Cell.CELL_TYPE_BOOLEAN:
+                        _out.write(" t=\"b\"");
+                        break;
+                    case Cell.CELL_TYPE_ERROR:
+                        _out.write(" t=\"e\"");
+                        break;
+                }
                 _out.write(">");
                 _out.write("<f>");
                 outputQuotedString(cell.getCellFormula());
                 _out.write("</f>");
-                switch (cell.getCachedFormulaResultType()) {
+                switch (resultType) {
                     case Cell.CELL_TYPE_NUMERIC:
                         double nval = cell.getNumericCellValue();
                         if (!Double.isNaN(nval)) {
                             _out.write("<v>" + nval + "</v>");
                         }
                         break;
+                    case Cell.CELL_TYPE_STRING:
+                        _out.write("<v>");
+                        outputQuotedString(cell.getStringCellValue());
+                        _out.write("</v>");
+                        break;
+                    case Cell.CELL_TYPE_BOOLEAN:
+                        _out.write("<v>" + (cell.getBooleanCellValue() ? "1" : "0") + "</v>");
+                        break;
+                    case Cell.CELL_TYPE_ERROR:
+                        _out.write("<v>" + FormulaError.forInt(cell.getErrorCellValue()).getString() + "</v>");
+                        break;
                 }
                 break;
             }
             case Cell.CELL_TYPE_STRING: {
+                if (_sharedStringSource != null) {
+                    int sRef = _sharedStringSource.addEntry(cell.getStringCellValue());
+                    if (sRef >= 0) {
+                        _out.write(" t=\"s\">");
+                        _out.write("<v>" + sRef + "</v>");
+                        break;
+                    }
+                }
                 _out.write(" t=\"inlineStr\">");
                 _out.write("<is><t>");
                 outputQuotedString(cell.getStringCellValue());
@@ -0,0 +1,52 @@
+/* ====================================================================
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+==================================================================== */
+
+
+package org.apache.poi.xssf.streaming;
+
+import java.io.IOException;
+
+/**
+ * Creates the writers that hold the flushed rows of the sheets of a {@link SXSSFWorkbook}
+ * until the workbook is written.
+ * <p>
+ * Implementations choose how the sheet data is stored, e.g. in a plain temp file
+ * ({@link SheetDataWriter}), in a gzipped temp file with a given compression level
+ * ({@link GZIPSheetDataWriter#GZIPSheetDataWriter(int)}) or in memory
+ * ({@link InMemorySheetDataWriter}). A plain temp file is the fastest option when disk I/O is cheap,
+ * compression trades CPU time for disk space.
+ * </p>
+ * <pre>
+ *   SXSSFWorkbook wb = new SXSSFWorkbook();
+ *   wb.setSheetDataWriterFactory(new SheetDataWriterFactory() {
+ *       public SheetDataWriter createSheetDataWriter() throws IOException {
+ *           return new InMemorySheetDataWriter(4*1024*1024);
+ *       }
+ *   });
+ * </pre>
+ *
+ * @see SXSSFWorkbook#setSheetDataWriterFactory(SheetDataWriterFactory)
+ */
+public interface SheetDataWriterFactory {
+
+    /**
+     * Create the writer for a new sheet. Every sheet must get its own writer.
+     *
+     * @return a new sheet data writer
+     */
+    SheetDataWriter createSheetDataWriter() throws IOException;
+}
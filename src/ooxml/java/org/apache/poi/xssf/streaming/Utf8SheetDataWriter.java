@@ -0,0 +1,253 @@
+/* ====================================================================
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+==================================================================== */
+
+package org.apache.poi.xssf.streaming;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.FormulaError;
+
+/**
+ * Sheet writer that encodes the "sheetData" fragment straight to UTF-8 bytes.
+ * <p>
+ * Produces the same markup as {@link SheetDataWriter} but formats cell references,
+ * row numbers and numeric values directly into a reusable byte buffer instead of
+ * building intermediate Strings and pushing them through a character encoder.
+ * Characters outside of ASCII are written as UTF-8 rather than as character references.
+ * </p>
+ *
+ * @see SXSSFWorkbook#setUseUtf8SheetDataWriter(boolean)
+ */
+public class Utf8SheetDataWriter extends SheetDataWriter {
+    private static final byte[] ROW_START = Utf8Writer.ascii("<row r=\"");
+    private static final byte[] ROW_CUSTOM_HEIGHT = Utf8Writer.ascii(" customHeight=\"true\"  ht=\"");
+    private static final byte[] ROW_HIDDEN = Utf8Writer.ascii(" hidden=\"true\"");
+    private static final byte[] ROW_STYLE = Utf8Writer.ascii(" s=\"");
+    private static final byte[] ROW_CUSTOM_FORMAT = Utf8Writer.ascii(" customFormat=\"1\"");
+    private static final byte[] ROW_OUTLINE_LEVEL = Utf8Writer.ascii(" outlineLevel=\"");
+    private static final byte[] ROW_END = Utf8Writer.ascii("</row>\n");
+    private static final byte[] TAG_END_NL = Utf8Writer.ascii(">\n");
+    private static final byte[] QUOTE = Utf8Writer.ascii("\"");
+    private static final byte[] CELL_START = Utf8Writer.ascii("<c r=\"");
+    private static final byte[] CELL_STYLE = Utf8Writer.ascii(" s=\"");
+    private static final byte[] CELL_END = Utf8Writer.ascii("</c>");
+    private static final byte[] TAG_END = Utf8Writer.ascii(">");
+    private static final byte[] FORMULA_START = Utf8Writer.ascii("><f>");
+    private static final byte[] FORMULA_END = Utf8Writer.ascii("</f>");
+    private static final byte[] FORMULA_STRING_TYPE = Utf8Writer.ascii(" t=\"str\"");
+    private static final byte[] FORMULA_BOOLEAN_TYPE = Utf8Writer.ascii(" t=\"b\"");
+    private static final byte[] FORMULA_ERROR_TYPE = Utf8Writer.ascii(" t=\"e\"");
+    private static final byte[] SHARED_STRING_START = Utf8Writer.ascii(" t=\"s\"><v>");
+    private static final byte[] INLINE_STRING_START = Utf8Writer.ascii(" t=\"inlineStr\"><is><t>");
+    private static final byte[] INLINE_STRING_END = Utf8Writer.ascii("</t></is>");
+    private static final byte[] NUMERIC_START = Utf8Writer.ascii(" t=\"n\">");
+    private static final byte[] BOOLEAN_START = Utf8Writer.ascii(" t=\"b\">");
+    private static final byte[] ERROR_START = Utf8Writer.ascii(" t=\"e\">");
+    private static final byte[] VALUE_START = Utf8Writer.ascii("<v>");
+    private static final byte[] VALUE_END = Utf8Writer.ascii("</v>");
+    private static final byte[] TRUE = Utf8Writer.ascii("1");
+    private static final byte[] FALSE = Utf8Writer.ascii("0");
+
+    private final Utf8Writer _utf8;
+
+    public Utf8SheetDataWriter() throws IOException {
+        super();
+        _utf8 = (Utf8Writer)_out;
+    }
+
+    Utf8SheetDataWriter(BoundedSharedStrings sharedStringSource) throws IOException {
+        this();
+        _sharedStringSource = sharedStringSource;
+    }
+
+    /**
+     * Create a UTF-8 encoding writer on top of {@link #createOutputStream(File)}.
+     * Subclasses should override {@link #createOutputStream(File)} rather than this method.
+     *
+     * @param  fd the file to write to
+     */
+    public Writer createWriter(File fd) throws IOException {
+        return new Utf8Writer(createOutputStream(fd));
+    }
+
+    /**
+     * Create the byte stream the encoded sheet data is written to.
+     * The returned stream does not need to be buffered.
+     *
+     * @param  fd the file to write to
+     */
+    protected OutputStream createOutputStream(File fd) throws IOException {
+        return new FileOutputStream(fd);
+    }
+
+    void beginRow(int rownum, SXSSFRow row) throws IOException {
+        _utf8.writeBytes(ROW_START);
+        _utf8.writeInt(rownum + 1);
+        _utf8.writeBytes(QUOTE);
+        if (row.hasCustomHeight()) {
+            _utf8.writeBytes(ROW_CUSTOM_HEIGHT);
+            _utf8.writeAscii(Float.toString(row.getHeightInPoints()));
+            _utf8.writeBytes(QUOTE);
+        }
+        if (row.getZeroHeight())
+            _utf8.writeBytes(ROW_HIDDEN);
+        if (row.isFormatted()) {
+            _utf8.writeBytes(ROW_STYLE);
+            _utf8.writeInt(row._style);
+            _utf8.writeBytes(QUOTE);
+            _utf8.writeBytes(ROW_CUSTOM_FORMAT);
+        }
+        if (row.getOutlineLevel() != 0) {
+            _utf8.writeBytes(ROW_OUTLINE_LEVEL);
+            _utf8.writeInt(row.getOutlineLevel());
+            _utf8.writeBytes(QUOTE);
+        }
+        _utf8.writeBytes(TAG_END_NL);
+        this._rownum = rownum;
+        _rowContainedNullCells = false;
+    }
+
+    void endRow() throws IOException {
+        _utf8.writeBytes(ROW_END);
+    }
+
+    public void writeCell(int columnIndex, Cell cell) throws IOException {
+        if (cell == null) {
+            _rowContainedNullCells = true;
+            return;
+        }
+        _utf8.writeBytes(CELL_START);
+        _utf8.writeCellReference(_rownum, columnIndex);
+        _utf8.writeBytes(QUOTE);
+        int styleIndex = getStyleIndex(cell);
+        if (styleIndex != 0) {
+            _utf8.writeBytes(CELL_STYLE);
+            _utf8.writeInt(styleIndex);
+            _utf8.writeBytes(QUOTE);
+        }
+        switch (cell.getCellType()) {
+            case Cell.CELL_TYPE_BLANK: {
+                _utf8.writeBytes(TAG_END);
+                break;
+            }
+            case Cell.CELL_TYPE_FORMULA: {
+                int resultType = cell.getCachedFormulaResultType();
+                switch (resultType) {
+                    case Cell.CELL_TYPE_STRING:
+                        _utf8.writeBytes(FORMULA_STRING_TYPE);
+                        break;
+                    case Cell.CELL_TYPE_BOOLEAN:
+                        _utf8.writeBytes(FORMULA_BOOLEAN_TYPE);
+                        break;
+                    case Cell.CELL_TYPE_ERROR:
+                        _utf8.writeBytes(FORMULA_ERROR_TYPE);
+                        break;
+                }
+                _utf8.writeBytes(FORMULA_START);
+                _utf8.writeEscaped(cell.getCellFormula());
+                _utf8.writeBytes(FORMULA_END);
+                switch (resultType) {
+                    case Cell.CELL_TYPE_NUMERIC:
+                        double nval = cell.getNumericCellValue();
+                        if (!Double.isNaN(nval)) {
+                            _utf8.writeBytes(VALUE_START);
+                            _utf8.writeDouble(nval);
+                            _utf8.writeBytes(VALUE_END);
+                        }
+                        break;
+                    case Cell.CELL_TYPE_STRING:
+                        _utf8.writeBytes(VALUE_START);
+                        _utf8.writeEscaped(cell.getStringCellValue());
+                        _utf8.writeBytes(VALUE_END);
+                        break;
+                    case Cell.CELL_TYPE_BOOLEAN:
+                        _utf8.writeBytes(VALUE_START);
+                        _utf8.writeBytes(cell.getBooleanCellValue() ? TRUE : FALSE);
+                        _utf8.writeBytes(VALUE_END);
+                        break;
+                    case Cell.CELL_TYPE_ERROR:
+                        _utf8.writeBytes(VALUE_START);
+                        _utf8.writeAscii(FormulaError.forInt(cell.getErrorCellValue()).getString());
+                        _utf8.writeBytes(VALUE_END);
+                        break;
+                }
+                break;
+            }
+            case Cell.CELL_TYPE_STRING: {
+                if (_sharedStringSource != null) {
+                    int sRef = _sharedStringSource.addEntry(cell.getStringCellValue());
+                    if (sRef >= 0) {
+                        _utf8.writeBytes(SHARED_STRING_START);
+                        _utf8.writeInt(sRef);
+                        _utf8.writeBytes(VALUE_END);
+                        break;
+                    }
+                }
+                _utf8.writeBytes(INLINE_STRING_START);
+                _utf8.writeEscaped(cell.getStringCellValue());
+                _utf8.writeBytes(INLINE_STRING_END);
+                break;
+            }
+            case Cell.CELL_TYPE_NUMERIC: {
+                _utf8.writeBytes(NUMERIC_START);
+                _utf8.writeBytes(VALUE_START);
+                _utf8.writeDouble(cell.getNumericCellValue());
+                _utf8.writeBytes(VALUE_END);
+                break;
+            }
+            case Cell.CELL_TYPE_BOOLEAN: {
+                _utf8.writeBytes(BOOLEAN_START);
+                _utf8.writeBytes(VALUE_START);
+                _utf8.writeBytes(cell.getBooleanCellValue() ? TRUE : FALSE);
+                _utf8.writeBytes(VALUE_END);
+                break;
+            }
+            case Cell.CELL_TYPE_ERROR: {
+                FormulaError error = FormulaError.forInt(cell.getErrorCellValue());
+
+                _utf8.writeBytes(ERROR_START);
+                _utf8.writeBytes(VALUE_START);
+                _utf8.writeAscii(error.getString());
+                _utf8.writeBytes(VALUE_END);
+                break;
+            }
+            default: {
+                throw new RuntimeException("Huh?");
+            }
+        }
+        _utf8.writeBytes(CELL_END);
+    }
+
+    /**
+     * Cells without an explicit style share the default style of the workbook,
+     * read the style reference directly to avoid looking it up per cell.
+     */
+    private static int getStyleIndex(Cell cell) {
+        CellStyle cellStyle = cell instanceof SXSSFCell ? ((SXSSFCell)cell).getExplicitCellStyle() : cell.getCellStyle();
+        return cellStyle == null ? 0 : cellStyle.getIndex();
+    }
+
+    protected void outputQuotedString(String s) throws IOException {
+        _utf8.writeEscaped(s);
+    }
+}
@@ -0,0 +1,329 @@
+/* ====================================================================
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+==================================================================== */
+
+package org.apache.poi.xssf.streaming;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+
+/**
+ * A <code>Writer</code> that encodes characters to UTF-8 straight into a reusable
+ * byte buffer and knows how to emit the few primitive tokens found in sheet data
+ * (integers, doubles, cell references and escaped text) without creating
+ * intermediate Strings.
+ */
+final class Utf8Writer extends Writer {
+    private static final int BUFFER_SIZE = 8192;
+
+    /**
+     * Worst case number of bytes a single token may need, see {@link #ensureCapacity()}
+     */
+    private static final int MAX_TOKEN_SIZE = 32;
+
+    private static final double TWO_POW_53 = 9007199254740992.0;
+
+    /**
+     * Powers of ten which are exactly representable as a double
+     */
+    private static final double[] POW10 = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    private static final byte[] LT = ascii("&lt;");
+    private static final byte[] GT = ascii("&gt;");
+    private static final byte[] AMP = ascii("&amp;");
+    private static final byte[] QUOT = ascii("&quot;");
+    private static final byte[] LF = ascii("&#xa;");
+    private static final byte[] TAB = ascii("&#x9;");
+    private static final byte[] NBSP = ascii("&#xa0;");
+
+    private final OutputStream _out;
+    private final byte[] _buf;
+    private int _pos;
+    private final byte[] _digits = new byte[20];
+    private char _pendingHighSurrogate;
+
+    Utf8Writer(OutputStream out) {
+        _out = out;
+        _buf = new byte[BUFFER_SIZE];
+    }
+
+    static byte[] ascii(String s) {
+        byte[] b = new byte[s.length()];
+        for (int i = 0; i < b.length; i++) b[i] = (byte) s.charAt(i);
+        return b;
+    }
+
+    private void ensureCapacity() throws IOException {
+        if (_pos > _buf.length - MAX_TOKEN_SIZE) flushBuffer();
+    }
+
+    private void flushBuffer() throws IOException {
+        if (_pos > 0) {
+            _out.write(_buf, 0, _pos);
+            _pos = 0;
+        }
+    }
+
+    /**
+     * Write pre-encoded bytes, typically a constant fragment of markup
+     */
+    void writeBytes(byte[] b) throws IOException {
+        if (b.length > _buf.length - _pos) {
+            flushBuffer();
+            if (b.length > _buf.length) {
+                _out.write(b);
+                return;
+            }
+        }
+        System.arraycopy(b, 0, _buf, _pos, b.length);
+        _pos += b.length;
+    }
+
+    /**
+     * Write a string which is known to contain only 7-bit ASCII characters
+     */
+    void writeAscii(String s) throws IOException {
+        int len = s.length();
+        for (int i = 0; i < len; i++) {
+            if (_pos == _buf.length) flushBuffer();
+            _buf[_pos++] = (byte) s.charAt(i);
+        }
+    }
+
+    void writeInt(int value) throws IOException {
+        writeLong(value);
+    }
+
+    void writeLong(long value) throws IOException {
+        ensureCapacity();
+        if (value < 0) {
+            if (value == Long.MIN_VALUE) {
+                writeAscii(Long.toString(value));
+                return;
+            }
+            _buf[_pos++] = '-';
+            value = -value;
+        }
+        int n = 0;
+        do {
+            _digits[n++] = (byte) ('0' + (int) (value % 10));
+            value /= 10;
+        } while (value != 0);
+        while (n > 0) _buf[_pos++] = _digits[--n];
+    }
+
+    /**
+     * Write a double in a form that parses back to exactly the same value.
+     * <p>
+     * Most values met in spreadsheets (integers, amounts with a few decimals) are
+     * written as a plain decimal without allocation. The remaining values are
+     * delegated to {@link Double#toString(double)}.
+     * </p>
+     */
+    void writeDouble(double value) throws IOException {
+        if (value == 0.0) {
+            writeInt(0);
+            return;
+        }
+        double abs = Math.abs(value);
+        if (abs < TWO_POW_53) {
+            for (int k = 0; k < POW10.length; k++) {
+                double scaled = abs * POW10[k];
+                if (scaled >= TWO_POW_53) break;
+                double m = Math.rint(scaled);
+                // both m and 10^k are exact, so the division yields the double closest
+                // to the decimal m*10^-k, i.e. the value any XML reader will parse
+                if (m != 0.0 && m / POW10[k] == abs) {
+                    writeDecimal(value < 0, (long) m, k);
+                    return;
+                }
+            }
+        }
+        writeAscii(Double.toString(value));
+    }
+
+    private void writeDecimal(boolean negative, long unscaled, int scale) throws IOException {
+        while (scale > 0 && unscaled % 10 == 0) {
+            unscaled /= 10;
+            scale--;
+        }
+        int n = 0;
+        do {
+            _digits[n++] = (byte) ('0' + (int) (unscaled % 10));
+            unscaled /= 10;
+        } while (unscaled != 0);
+
+        ensureCapacity();
+        if (negative) _buf[_pos++] = '-';
+        if (scale == 0) {
+            while (n > 0) _buf[_pos++] = _digits[--n];
+        } else if (n <= scale) {
+            _buf[_pos++] = '0';
+            _buf[_pos++] = '.';
+            for (int i = n; i < scale; i++) _buf[_pos++] = '0';
+            while (n > 0) _buf[_pos++] = _digits[--n];
+        } else {
+            while (n > scale) _buf[_pos++] = _digits[--n];
+            _buf[_pos++] = '.';
+            while (n > 0) _buf[_pos++] = _digits[--n];
+        }
+    }
+
+    /**
+     * Write a relative cell reference in A1 style, e.g. <code>AB12</code>
+     *
+     * @param rowIndex 0-based row index
+     * @param columnIndex 0-based column index
+     */
+    void writeCellReference(int rowIndex, int columnIndex) throws IOException {
+        ensureCapacity();
+        int n = 0;
+        int col = columnIndex + 1;
+        while (col > 0) {
+            int rem = (col - 1) % 26;
+            _digits[n++] = (byte) ('A' + rem);
+            col = (col - 1) / 26;
+        }
+        while (n > 0) _buf[_pos++] = _digits[--n];
+        writeLong(rowIndex + 1L);
+    }
+
+    /**
+     * Write XML-escaped text.
+     * <p>
+     * Follows the same rules as {@link SheetDataWriter#outputQuotedString(String)} except that
+     * characters outside of ASCII are UTF-8 encoded rather than written as character references.
+     * </p>
+     */
+    void writeEscaped(String s) throws IOException {
+        if (s == null) return;
+        int length = s.length();
+        for (int i = 0; i < length; i++) {
+            ensureCapacity();
+            char c = s.charAt(i);
+            if (c < 128) {
+                switch (c) {
+                    case '<':
+                        writeBytes(LT);
+                        break;
+                    case '>':
+                        writeBytes(GT);
+                        break;
+                    case '&':
+                        writeBytes(AMP);
+                        break;
+                    case '"':
+                        writeBytes(QUOT);
+                        break;
+                    case '\n':
+                    case '\r':
+                        writeBytes(LF);
+                        break;
+                    case '\t':
+                        writeBytes(TAB);
+                        break;
+                    default:
+                        // XmlBeans silently replaces all ISO control characters ( < 32) with question marks.
+                        _buf[_pos++] = c < ' ' ? (byte) '?' : (byte) c;
+                        break;
+                }
+            } else if (c == 0xa0) {
+                writeBytes(NBSP);
+            } else if (Character.isLowSurrogate(c) || Character.isHighSurrogate(c) ||
+                    ('\uFFFE' <= c && c <= '\uFFFF')) {
+                // the same rule applies to unicode surrogates and "not a character" symbols.
+                _buf[_pos++] = '?';
+            } else {
+                encode(c);
+            }
+        }
+    }
+
+    private void encode(char c) {
+        if (c < 0x80) {
+            _buf[_pos++] = (byte) c;
+        } else if (c < 0x800) {
+            _buf[_pos++] = (byte) (0xc0 | (c >> 6));
+            _buf[_pos++] = (byte) (0x80 | (c & 0x3f));
+        } else {
+            _buf[_pos++] = (byte) (0xe0 | (c >> 12));
+            _buf[_pos++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+            _buf[_pos++] = (byte) (0x80 | (c & 0x3f));
+        }
+    }
+
+    private void encodeSupplementary(int codePoint) {
+        _buf[_pos++] = (byte) (0xf0 | (codePoint >> 18));
+        _buf[_pos++] = (byte) (0x80 | ((codePoint >> 12) & 0x3f));
+        _buf[_pos++] = (byte) (0x80 | ((codePoint >> 6) & 0x3f));
+        _buf[_pos++] = (byte) (0x80 | (codePoint & 0x3f));
+    }
+
+    private void writeChar(char c) throws IOException {
+        ensureCapacity();
+        if (_pendingHighSurrogate != 0) {
+            char high = _pendingHighSurrogate;
+            _pendingHighSurrogate = 0;
+            if (Character.isLowSurrogate(c)) {
+                encodeSupplementary(Character.toCodePoint(high, c));
+                return;
+            }
+            _buf[_pos++] = '?';
+        }
+        if (Character.isHighSurrogate(c)) {
+            _pendingHighSurrogate = c;
+        } else if (Character.isLowSurrogate(c)) {
+            _buf[_pos++] = '?';
+        } else {
+            encode(c);
+        }
+    }
+
+    @Override
+    public void write(int c) throws IOException {
+        writeChar((char) c);
+    }
+
+    @Override
+    public void write(char[] cbuf, int off, int len) throws IOException {
+        for (int i = off; i < off + len; i++) {
+            writeChar(cbuf[i]);
+        }
+    }
+
+    @Override
+    public void write(String str, int off, int len) throws IOException {
+        for (int i = off; i < off + len; i++) {
+            writeChar(str.charAt(i));
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        flushBuffer();
+        _out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        flushBuffer();
+        _out.close();
+    }
+}
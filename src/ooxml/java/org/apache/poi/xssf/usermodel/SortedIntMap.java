@@ -0,0 +1,325 @@
+/* ====================================================================
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+==================================================================== */
+
+package org.apache.poi.xssf.usermodel;
+
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * A map of non-negative <code>int</code> keys to values, kept sorted by key.
+ * <p>
+ * Used for the rows of a sheet and the cells of a row in place of a
+ * <code>TreeMap&lt;Integer, ...&gt;</code>. Keys are held in a plain <code>int[]</code>
+ * parallel to the values, so lookups neither box the key nor walk a tree.
+ * Rows and cells are almost always dense and created in ascending order, so
+ * {@link #get(int)} first probes the slot the key would occupy if there were no gaps
+ * and falls back to a binary search otherwise, and {@link #put(int, Object)} appends
+ * past the last key without moving anything.
+ * </p>
+ * <p>
+ * The iterator returns the values in ascending key order, supports
+ * {@link Iterator#remove()} and fails fast on concurrent modification.
+ * </p>
+ */
+final class SortedIntMap<V> implements Iterable<V> {
+    private int[] _keys;
+    private Object[] _values;
+    private int _size;
+    private int _modCount;
+
+    SortedIntMap() {
+        this(8);
+    }
+
+    SortedIntMap(int initialCapacity) {
+        _keys = new int[Math.max(initialCapacity, 1)];
+        _values = new Object[_keys.length];
+    }
+
+    int size() {
+        return _size;
+    }
+
+    boolean isEmpty() {
+        return _size == 0;
+    }
+
+    /**
+     * @return the smallest key in this map
+     * @throws NoSuchElementException if the map is empty
+     */
+    int firstKey() {
+        if (_size == 0) throw new NoSuchElementException();
+        return _keys[0];
+    }
+
+    /**
+     * @return the largest key in this map
+     * @throws NoSuchElementException if the map is empty
+     */
+    int lastKey() {
+        if (_size == 0) throw new NoSuchElementException();
+        return _keys[_size - 1];
+    }
+
+    /**
+     * @return the value mapped to <code>key</code> or <code>null</code>
+     */
+    @SuppressWarnings("unchecked")
+    V get(int key) {
+        int idx = indexOf(key);
+        return idx < 0 ? null : (V)_values[idx];
+    }
+
+    /**
+     * @return the number of keys strictly less than <code>key</code>, that is
+     *  the position <code>key</code> has or would have in the iteration order
+     */
+    int headSize(int key) {
+        int idx = indexOf(key);
+        return idx < 0 ? -(idx + 1) : idx;
+    }
+
+    /**
+     * Map <code>key</code> to <code>value</code>, replacing any previous mapping
+     *
+     * @return the previous value or <code>null</code>
+     */
+    @SuppressWarnings("unchecked")
+    V put(int key, V value) {
+        if (_size == 0 || key > _keys[_size - 1]) {
+            ensureCapacity(_size + 1);
+            _keys[_size] = key;
+            _values[_size] = value;
+            _size++;
+            _modCount++;
+            return null;
+        }
+        int idx = indexOf(key);
+        if (idx >= 0) {
+            V prev = (V)_values[idx];
+            _values[idx] = value;
+            return prev;
+        }
+        idx = -(idx + 1);
+        ensureCapacity(_size + 1);
+        System.arraycopy(_keys, idx, _keys, idx + 1, _size - idx);
+        System.arraycopy(_values, idx, _values, idx + 1, _size - idx);
+        _keys[idx] = key;
+        _values[idx] = value;
+        _size++;
+        _modCount++;
+        return null;
+    }
+
+    /**
+     * Remove the mapping for <code>key</code>
+     *
+     * @return the removed value or <code>null</code> if there was no mapping
+     */
+    @SuppressWarnings("unchecked")
+    V remove(int key) {
+        int idx = indexOf(key);
+        if (idx < 0) return null;
+        V prev = (V)_values[idx];
+        removeAt(idx);
+        return prev;
+    }
+
+    /**
+     * @return the value at position <code>index</code> in the iteration order
+     */
+    @SuppressWarnings("unchecked")
+    V valueAt(int index) {
+        if (index < 0 || index >= _size) throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + _size);
+        return (V)_values[index];
+    }
+
+    /**
+     * Remove the mappings at the positions <code>fromIndex</code>, inclusive,
+     * to <code>toIndex</code>, exclusive, in the iteration order
+     */
+    void removeRange(int fromIndex, int toIndex) {
+        if (fromIndex < 0 || toIndex > _size || fromIndex > toIndex) {
+            throw new IndexOutOfBoundsException("Range [" + fromIndex + ", " + toIndex + "), Size: " + _size);
+        }
+        int count = toIndex - fromIndex;
+        if (count == 0) return;
+        System.arraycopy(_keys, toIndex, _keys, fromIndex, _size - toIndex);
+        System.arraycopy(_values, toIndex, _values, fromIndex, _size - toIndex);
+        for (int i = _size - count; i < _size; i++) _values[i] = null;
+        _size -= count;
+        _modCount++;
+    }
+
+    /**
+     * Add <code>delta</code> to the keys at the positions <code>fromIndex</code>, inclusive,
+     * to <code>toIndex</code>, exclusive, and move this block past the keys it now jumps over.
+     * The cost is proportional to the size of the block and of the keys jumped over,
+     * the rest of the map is left in place.
+     *
+     * @throws IllegalArgumentException if a shifted key would collide with a key outside the block,
+     *  such keys have to be removed first
+     */
+    void shiftKeys(int fromIndex, int toIndex, int delta) {
+        if (fromIndex < 0 || toIndex > _size || fromIndex > toIndex) {
+            throw new IndexOutOfBoundsException("Range [" + fromIndex + ", " + toIndex + "), Size: " + _size);
+        }
+        if (fromIndex == toIndex || delta == 0) return;
+
+        int first = _keys[fromIndex] + delta;
+        int last = _keys[toIndex - 1] + delta;
+        if (first < 0) throw new IllegalArgumentException("Negative key: " + first);
+        // the keys outside the block which end up on the other side of it
+        int gapStart, gapEnd;
+        if (delta > 0) {
+            gapStart = toIndex;
+            gapEnd = toIndex;
+            while (gapEnd < _size && _keys[gapEnd] <= last) gapEnd++;
+        } else {
+            gapStart = fromIndex;
+            gapEnd = fromIndex;
+            while (gapStart > 0 && _keys[gapStart - 1] >= first) gapStart--;
+        }
+        for (int i = gapStart; i < gapEnd; i++) {
+            int key = _keys[i];
+            if (key >= first && key <= last) {
+                throw new IllegalArgumentException("Shifted keys collide with key " + key);
+            }
+        }
+        for (int i = fromIndex; i < toIndex; i++) {
+            _keys[i] += delta;
+        }
+        int gap = gapEnd - gapStart;
+        if (gap > 0) {
+            int[] keys = new int[gap];
+            Object[] values = new Object[gap];
+            System.arraycopy(_keys, gapStart, keys, 0, gap);
+            System.arraycopy(_values, gapStart, values, 0, gap);
+            int blockSize = toIndex - fromIndex;
+            if (delta > 0) {
+                // [block][gap] -> [gap][block]
+                System.arraycopy(_keys, fromIndex, _keys, fromIndex + gap, blockSize);
+                System.arraycopy(_values, fromIndex, _values, fromIndex + gap, blockSize);
+                System.arraycopy(keys, 0, _keys, fromIndex, gap);
+                System.arraycopy(values, 0, _values, fromIndex, gap);
+            } else {
+                // [gap][block] -> [block][gap]
+                System.arraycopy(_keys, fromIndex, _keys, gapStart, blockSize);
+                System.arraycopy(_values, fromIndex, _values, gapStart, blockSize);
+                System.arraycopy(keys, 0, _keys, gapStart + blockSize, gap);
+                System.arraycopy(values, 0, _values, gapStart + blockSize, gap);
+            }
+        }
+        _modCount++;
+    }
+
+    void clear() {
+        for (int i = 0; i < _size; i++) _values[i] = null;
+        _size = 0;
+        _modCount++;
+    }
+
+    /**
+     * @return an iterator over the values in ascending key order
+     */
+    public Iterator<V> iterator() {
+        return new ValueIterator();
+    }
+
+    private void removeAt(int idx) {
+        int tail = _size - idx - 1;
+        if (tail > 0) {
+            System.arraycopy(_keys, idx + 1, _keys, idx, tail);
+            System.arraycopy(_values, idx + 1, _values, idx, tail);
+        }
+        _size--;
+        _values[_size] = null;
+        _modCount++;
+    }
+
+    /**
+     * @return the index of <code>key</code> if present, otherwise
+     *  <code>-(insertion point) - 1</code> as in {@link java.util.Arrays#binarySearch(int[], int)}
+     */
+    private int indexOf(int key) {
+        if (_size == 0) return -1;
+        // fast path for dense keys: with no gaps before it the key sits at key - first
+        int guess = key - _keys[0];
+        if (guess >= 0 && guess < _size && _keys[guess] == key) {
+            return guess;
+        }
+        int low = 0;
+        int high = _size - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int midKey = _keys[mid];
+            if (midKey < key) {
+                low = mid + 1;
+            } else if (midKey > key) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -(low + 1);
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= _keys.length) return;
+        int newCapacity = Math.max(capacity, _keys.length + (_keys.length >> 1) + 1);
+        int[] keys = new int[newCapacity];
+        Object[] values = new Object[newCapacity];
+        System.arraycopy(_keys, 0, keys, 0, _size);
+        System.arraycopy(_values, 0, values, 0, _size);
+        _keys = keys;
+        _values = values;
+    }
+
+    private final class ValueIterator implements Iterator<V> {
+        private int _next;
+        private int _last = -1;
+        private int _expectedModCount = _modCount;
+
+        public boolean hasNext() {
+            return _next < _size;
+        }
+
+        @SuppressWarnings("unchecked")
+        public V next() {
+            checkForComodification();
+            if (_next >= _size) throw new NoSuchElementException();
+            _last = _next++;
+            return (V)_values[_last];
+        }
+
+        public void remove() {
+            if (_last < 0) throw new IllegalStateException();
+            checkForComodification();
+            removeAt(_last);
+            _next = _last;
+            _last = -1;
+            _expectedModCount = _modCount;
+        }
+
+        private void checkForComodification() {
+            if (_modCount != _expectedModCount) throw new ConcurrentModificationException();
+        }
+    }
+}
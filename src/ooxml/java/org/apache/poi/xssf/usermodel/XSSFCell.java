@@ -243,6 +243,10 @@ public final class XSSFCell implements Cell {
      * @return the value of the cell as a string
      */
     public String getStringCellValue() {
+        if (_cell.getT() == STCellType.S && _cell.isSetV() && getCellType() == CELL_TYPE_STRING) {
+            // plain text of a shared string, cached by the table
+            return _sharedStringSource.getStringAt(Integer.parseInt(_cell.getV()));
+        }
         XSSFRichTextString str = getRichStringCellValue();
         return str == null ? null : str.getString();
     }
@@ -951,8 +955,7 @@ public final class XSSFCell implements Cell {
                 return TRUE_AS_STRING.equals(_cell.getV());
             case CELL_TYPE_STRING:
                 int sstIndex = Integer.parseInt(_cell.getV());
-                XSSFRichTextString rt = new XSSFRichTextString(_sharedStringSource.getEntryAt(sstIndex));
-                String text = rt.getString();
+                String text = _sharedStringSource.getStringAt(sstIndex);
                 return Boolean.parseBoolean(text);
             case CELL_TYPE_NUMERIC:
                 return Double.parseDouble(_cell.getV()) != 0;
@@ -974,8 +977,7 @@ public final class XSSFCell implements Cell {
                 return TRUE_AS_STRING.equals(_cell.getV()) ? "TRUE" : "FALSE";
             case CELL_TYPE_STRING:
                 int sstIndex = Integer.parseInt(_cell.getV());
-                XSSFRichTextString rt = new XSSFRichTextString(_sharedStringSource.getEntryAt(sstIndex));
-                return rt.getString();
+                return _sharedStringSource.getStringAt(sstIndex);
             case CELL_TYPE_NUMERIC:
             case CELL_TYPE_ERROR:
                 return _cell.getV();
@@ -149,6 +149,14 @@ public final class XSSFChart extends POIXMLDocumentPart implements Chart, ChartA
 		return chart;
 	}
 
+	/**
+	 * Charts are reached through the drawing they are anchored in and are saved along with it.
+	 */
+	@Override
+	public boolean isDirty() {
+		return getParent() == null || getParent().isDirty();
+	}
+
 	@Override
 	protected void commit() throws IOException {
 		XmlOptions xmlOptions = new XmlOptions(DEFAULT_XML_OPTIONS);
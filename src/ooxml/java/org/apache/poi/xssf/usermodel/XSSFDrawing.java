@@ -101,6 +101,14 @@ public final class XSSFDrawing extends POIXMLDocumentPart implements Drawing {
         return drawing;
     }
 
+    /**
+     * The drawing can only be modified through its sheet, so it is saved only if the sheet was accessed.
+     */
+    @Override
+    public boolean isDirty() {
+        return getParent() == null || getParent().isDirty();
+    }
+
     @Override
     protected void commit() throws IOException {
         XmlOptions xmlOptions = new XmlOptions(DEFAULT_XML_OPTIONS);
@@ -70,7 +70,7 @@ final class XSSFEvaluationCell implements EvaluationCell {
 		return _evalSheet;
 	}
 	public String getStringCellValue() {
-		return _cell.getRichStringCellValue().getString();
+		return _cell.getStringCellValue();
 	}
 	public int getCachedFormulaResultType() {
 		return _cell.getCachedFormulaResultType();
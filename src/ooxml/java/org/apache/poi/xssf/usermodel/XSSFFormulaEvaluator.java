@@ -118,7 +118,7 @@ public class XSSFFormulaEvaluator implements FormulaEvaluator {
 			case XSSFCell.CELL_TYPE_NUMERIC:
 				return new CellValue(cell.getNumericCellValue());
 			case XSSFCell.CELL_TYPE_STRING:
-				return new CellValue(cell.getRichStringCellValue().getString());
+				return new CellValue(cell.getStringCellValue());
             case XSSFCell.CELL_TYPE_BLANK:
                 return null;
 		}
@@ -0,0 +1,72 @@
+/* ====================================================================
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+==================================================================== */
+
+package org.apache.poi.xssf.usermodel;
+
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.openxmlformats.schemas.spreadsheetml.x2006.main.CTCell;
+import org.openxmlformats.schemas.spreadsheetml.x2006.main.CTCol;
+import org.openxmlformats.schemas.spreadsheetml.x2006.main.CTCols;
+import org.openxmlformats.schemas.spreadsheetml.x2006.main.CTRow;
+
+/**
+ * Counterpart of {@link org.apache.poi.hssf.usermodel.HSSFOptimiser} for XSSF workbooks.
+ * Excel limits the number of cell styles, and files with many duplicate styles
+ *  are large and slow to open.
+ * As with HSSF, it's much better not to create the duplicates in the first place,
+ *  e.g. by using a {@link org.apache.poi.ss.util.CellStyleInterner}.
+ */
+public class XSSFOptimiser {
+    /**
+     * Goes through the Workbook, optimising the cell styles
+     *  by removing duplicate ones, i.e. styles with the same
+     *  number format, font, fill, border, alignment and protection.
+     * The cells, rows and columns using a duplicate are changed
+     *  to use the first of the equal styles.
+     * Every sheet is parsed, and {@link XSSFCellStyle} objects
+     *  obtained before the call must not be used afterwards.
+     * @param workbook The workbook in which to optimise the cell styles
+     */
+    @SuppressWarnings("deprecation") //YK: getXYZArray() array accessors are deprecated in xmlbeans with JDK 1.5 support
+    public static void optimiseCellStyles(XSSFWorkbook workbook) {
+        int[] newPos = workbook.getStylesSource().removeDuplicateCellXfs();
+
+        for (Sheet sheet : workbook) {
+            for (CTCols cols : ((XSSFSheet)sheet).getCTWorksheet().getColsArray()) {
+                for (CTCol col : cols.getColArray()) {
+                    if (col.isSetStyle() && col.getStyle() < newPos.length) {
+                        col.setStyle(newPos[(int)col.getStyle()]);
+                    }
+                }
+            }
+            for (Row row : sheet) {
+                CTRow ctRow = ((XSSFRow)row).getCTRow();
+                if (ctRow.isSetS() && ctRow.getS() < newPos.length) {
+                    ctRow.setS(newPos[(int)ctRow.getS()]);
+                }
+                for (Cell cell : row) {
+                    CTCell ctCell = ((XSSFCell)cell).getCTCell();
+                    if (ctCell.isSetS() && ctCell.getS() < newPos.length) {
+                        ctCell.setS(newPos[(int)ctCell.getS()]);
+                    }
+                }
+            }
+        }
+    }
+}
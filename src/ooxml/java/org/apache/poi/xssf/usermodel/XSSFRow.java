@@ -18,7 +18,7 @@
 package org.apache.poi.xssf.usermodel;
 
 import java.util.Iterator;
-import java.util.TreeMap;
+import java.util.Set;
 
 import org.apache.poi.ss.SpreadsheetVersion;
 import org.apache.poi.ss.usermodel.Cell;
@@ -28,7 +28,6 @@ import org.apache.poi.ss.util.CellReference;
 import org.apache.poi.util.Internal;
 import org.apache.poi.util.POILogFactory;
 import org.apache.poi.util.POILogger;
-import org.apache.poi.xssf.model.CalculationChain;
 import org.apache.poi.xssf.model.StylesTable;
 import org.openxmlformats.schemas.spreadsheetml.x2006.main.CTCell;
 import org.openxmlformats.schemas.spreadsheetml.x2006.main.CTRow;
@@ -46,9 +45,9 @@ public class XSSFRow implements Row, Comparable<XSSFRow> {
 
     /**
      * Cells of this row keyed by their column indexes.
-     * The TreeMap ensures that the cells are ordered by columnIndex in the ascending order.
+     * The SortedIntMap ensures that the cells are ordered by columnIndex in the ascending order.
      */
-    private final TreeMap<Integer, XSSFCell> _cells;
+    private final SortedIntMap<XSSFCell> _cells;
 
     /**
      * the parent sheet
@@ -65,8 +64,9 @@ public class XSSFRow implements Row, Comparable<XSSFRow> {
     protected XSSFRow(CTRow row, XSSFSheet sheet) {
         _row = row;
         _sheet = sheet;
-        _cells = new TreeMap<Integer, XSSFCell>();
-        for (CTCell c : row.getCArray()) {
+        CTCell[] cells = row.getCArray();
+        _cells = new SortedIntMap<XSSFCell>(cells.length);
+        for (CTCell c : cells) {
             XSSFCell cell = new XSSFCell(this, c);
             _cells.put(cell.getColumnIndex(), cell);
             sheet.onReadCell(cell);
@@ -94,7 +94,7 @@ public class XSSFRow implements Row, Comparable<XSSFRow> {
      * @return an iterator over cells in this row.
      */
     public Iterator<Cell> cellIterator() {
-        return (Iterator<Cell>)(Iterator<? extends Cell>)_cells.values().iterator();
+        return (Iterator<Cell>)(Iterator<? extends Cell>)_cells.iterator();
     }
 
     /**
@@ -445,7 +445,7 @@ public class XSSFRow implements Row, Comparable<XSSFRow> {
         if(_row.sizeOfCArray() != _cells.size()) isOrdered = false;
         else {
             int i = 0;
-            for (XSSFCell cell : _cells.values()) {
+            for (XSSFCell cell : _cells) {
                 CTCell c1 = cell.getCTCell();
                 CTCell c2 = _row.getCArray(i++); 
 
@@ -461,7 +461,7 @@ public class XSSFRow implements Row, Comparable<XSSFRow> {
         if(!isOrdered){
             CTCell[] cArray = new CTCell[_cells.size()];
             int i = 0;
-            for (XSSFCell c : _cells.values()) {
+            for (XSSFCell c : _cells) {
                 cArray[i++] = c.getCTCell();
             }
             _row.setCArray(cArray);
@@ -480,25 +480,21 @@ public class XSSFRow implements Row, Comparable<XSSFRow> {
      * update cell references when shifting rows
      *
      * @param n the number of rows to move
+     * @param formerRefs collects the references the cells had before the shift, which the sheet removes
+     *  from the calculation chain in one pass, or <code>null</code> if the workbook has no calculation chain
      */
-    protected void shift(int n) {
+    protected void shift(int n, Set<String> formerRefs) {
         int rownum = getRowNum() + n;
-        CalculationChain calcChain = _sheet.getWorkbook().getCalculationChain();
-        int sheetId = (int)_sheet.sheet.getSheetId();
-        String msg = "Row[rownum="+getRowNum()+"] contains cell(s) included in a multi-cell array formula. " +
-                "You cannot change part of an array.";
-        for(Cell c : this){
-            XSSFCell cell = (XSSFCell)c;
+        String rowRef = Integer.toString(rownum + 1);
+        for(XSSFCell cell : _cells){
             if(cell.isPartOfArrayFormulaGroup()){
-                cell.notifyArrayFormulaChanging(msg);
+                cell.notifyArrayFormulaChanging("Row[rownum="+getRowNum()+"] contains cell(s) included in a multi-cell array formula. " +
+                        "You cannot change part of an array.");
             }
 
-            //remove the reference in the calculation chain
-            if(calcChain != null) calcChain.removeItem(sheetId, cell.getReference());
-
             CTCell ctCell = cell.getCTCell();
-            String r = new CellReference(rownum, cell.getColumnIndex()).formatAsString();
-            ctCell.setR(r);
+            if(formerRefs != null) formerRefs.add(ctCell.getR());
+            ctCell.setR(CellReference.convertNumToColString(cell.getColumnIndex()) + rowRef);
         }
         setRowNum(rownum);
     }
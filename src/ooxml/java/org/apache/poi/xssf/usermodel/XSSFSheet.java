@@ -23,9 +23,11 @@ import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.TreeMap;
 
 import javax.xml.namespace.QName;
@@ -39,6 +41,7 @@ import org.apache.poi.openxml4j.exceptions.PartAlreadyExistsException;
 import org.apache.poi.openxml4j.opc.PackagePart;
 import org.apache.poi.openxml4j.opc.PackageRelationship;
 import org.apache.poi.openxml4j.opc.PackageRelationshipCollection;
+import org.apache.poi.openxml4j.opc.PartContentWriter;
 import org.apache.poi.ss.SpreadsheetVersion;
 import org.apache.poi.ss.formula.FormulaShifter;
 import org.apache.poi.ss.formula.SheetNameFormatter;
@@ -52,9 +55,11 @@ import org.apache.poi.util.HexDump;
 import org.apache.poi.util.Internal;
 import org.apache.poi.util.POILogFactory;
 import org.apache.poi.util.POILogger;
+import org.apache.poi.xssf.model.CalculationChain;
 import org.apache.poi.xssf.model.CommentsTable;
 import org.apache.poi.xssf.usermodel.helpers.ColumnHelper;
 import org.apache.poi.xssf.usermodel.helpers.XSSFRowShifter;
+import org.apache.xmlbeans.XmlCursor;
 import org.apache.xmlbeans.XmlException;
 import org.apache.xmlbeans.XmlOptions;
 import org.openxmlformats.schemas.officeDocument.x2006.relationships.STRelationshipId;
@@ -76,7 +81,7 @@ public class XSSFSheet extends POIXMLDocumentPart implements Sheet {
     protected CTSheet sheet;
     protected CTWorksheet worksheet;
 
-    private TreeMap<Integer, XSSFRow> _rows;
+    private SortedIntMap<XSSFRow> _rows;
     private List<XSSFHyperlink> hyperlinks;
     private ColumnHelper columnHelper;
     private CommentsTable sheetComments;
@@ -158,6 +163,40 @@ public class XSSFSheet extends POIXMLDocumentPart implements Sheet {
         initHyperlinks();
     }
 
+    /**
+     * Parse the worksheet from the supplied stream instead of the package part.
+     * <p>
+     * Used by {@link org.apache.poi.xssf.readonly.ReadOnlyXSSFWorkbook}, which keeps the cell data
+     * itself and passes the worksheet with its rows removed.
+     * </p>
+     *
+     * @param is the worksheet XML
+     */
+    @Internal
+    public void readWorksheet(InputStream is) throws IOException {
+        read(is);
+    }
+
+    /**
+     * @return whether the worksheet has been parsed or created. The sheets of a workbook read from a package
+     *  are parsed the first time they are accessed through the workbook.
+     */
+    boolean isLoaded() {
+        return worksheet != null;
+    }
+
+    /**
+     * A sheet that has never been accessed keeps its original content when the workbook is saved.
+     * Parts owned by the sheet, such as drawings and comments, can only be reached through it
+     * and follow the state of the sheet.
+     *
+     * @return whether the worksheet has been parsed or created
+     */
+    @Override
+    public boolean isDirty() {
+        return isLoaded() && super.isDirty();
+    }
+
     /**
      * Initialize worksheet data when creating a new sheet.
      */
@@ -171,11 +210,12 @@ public class XSSFSheet extends POIXMLDocumentPart implements Sheet {
 
     @SuppressWarnings("deprecation") //YK: getXYZArray() array accessors are deprecated in xmlbeans with JDK 1.5 support
     private void initRows(CTWorksheet worksheet) {
-        _rows = new TreeMap<Integer, XSSFRow>();
+        CTRow[] rows = worksheet.getSheetData().getRowArray();
+        _rows = new SortedIntMap<XSSFRow>(rows.length);
         tables = new TreeMap<String, XSSFTable>();
         sharedFormulas = new HashMap<Integer, CTCellFormula>();
         arrayFormulas = new ArrayList<CellRangeAddress>();
-        for (CTRow row : worksheet.getSheetData().getRowArray()) {
+        for (CTRow row : rows) {
             XSSFRow r = new XSSFRow(row, this);
             _rows.put(r.getRowNum(), r);
         }
@@ -531,7 +571,7 @@ public class XSSFSheet extends POIXMLDocumentPart implements Sheet {
         	} else {
         		// get number of rows where row index < rownum
         		// --> this tells us where our row should go
-        		int idx = _rows.headMap(rownum).size();
+        		int idx = _rows.headSize(rownum);
         		ctRow = worksheet.getSheetData().insertNewRow(idx);
         	}
         }
@@ -1236,7 +1276,7 @@ public class XSSFSheet extends POIXMLDocumentPart implements Sheet {
 
     private short getMaxOutlineLevelRows(){
         short outlineLevel=0;
-        for(XSSFRow xrow : _rows.values()){
+        for(XSSFRow xrow : _rows){
             outlineLevel=xrow.getCTRow().getOutlineLevel()>outlineLevel? xrow.getCTRow().getOutlineLevel(): outlineLevel;
         }
         return outlineLevel;
@@ -1459,7 +1499,7 @@ public class XSSFSheet extends POIXMLDocumentPart implements Sheet {
 
         for(XSSFCell cell : cellsToDelete) row.removeCell(cell);
 
-        int idx = _rows.headMap(row.getRowNum()).size();
+        int idx = _rows.headSize(row.getRowNum());
         _rows.remove(row.getRowNum());
         worksheet.getSheetData().removeRow(idx);
     }
@@ -1535,7 +1575,7 @@ public class XSSFSheet extends POIXMLDocumentPart implements Sheet {
      * Call getRowNum() on each row if you care which one it is.
      */
     public Iterator<Row> rowIterator() {
-        return (Iterator<Row>)(Iterator<? extends Row>) _rows.values().iterator();
+        return (Iterator<Row>)(Iterator<? extends Row>) _rows.iterator();
     }
 
     /**
@@ -2320,35 +2360,50 @@ public class XSSFSheet extends POIXMLDocumentPart implements Sheet {
      */
     @SuppressWarnings("deprecation") //YK: getXYZArray() array accessors are deprecated in xmlbeans with JDK 1.5 support
     public void shiftRows(int startRow, int endRow, int n, boolean copyRowHeight, boolean resetOriginalRowHeight) {
-    	for (Iterator<Row> it = rowIterator() ; it.hasNext() ; ) {
-            XSSFRow row = (XSSFRow)it.next();
-            int rownum = row.getRowNum();
-            if(rownum < startRow) continue;
+        // rows in the destination which are not shifted themselves are overwritten and removed
+        int overwrittenFirst = n > 0 ? Math.max(endRow + 1, startRow + n) : startRow + n;
+        int overwrittenLast = n > 0 ? endRow + n : Math.min(startRow - 1, endRow + n);
+        if (n != 0 && overwrittenFirst <= overwrittenLast) {
+            int from = _rows.headSize(overwrittenFirst);
+            int to = _rows.headSize(overwrittenLast + 1);
+            // remove rows from worksheet.getSheetData row array. Their position in the array may differ
+            // from the rows map after earlier shifts, so the beans are removed rather than an index
+            for (int idx = from; idx < to; idx++) {
+                XmlCursor cursor = _rows.valueAt(idx).getCTRow().newCursor();
+                cursor.removeXml();
+                cursor.dispose();
+            }
+            _rows.removeRange(from, to);
+        }
 
+        // only the rows in [startRow, endRow] are touched, they are one run in the rows map
+        int first = _rows.headSize(startRow);
+        int last = _rows.headSize(endRow + 1);
+        CalculationChain calcChain = getWorkbook().getCalculationChain();
+        Set<String> formerRefs = calcChain == null ? null : new HashSet<String>();
+        for (int idx = first; idx < last; idx++) {
+            XSSFRow row = _rows.valueAt(idx);
             if (!copyRowHeight) {
                 row.setHeight((short)-1);
             }
-
-            if (removeRow(startRow, endRow, n, rownum)) {
-            	// remove row from worksheet.getSheetData row array
-            	int idx = _rows.headMap(row.getRowNum()).size();
-                worksheet.getSheetData().removeRow(idx);
-                // remove row from _rows
-                it.remove();
-            }
-            else if (rownum >= startRow && rownum <= endRow) {
-                row.shift(n);
-            }
-
-            if(sheetComments != null){
-                //TODO shift Note's anchor in the associated /xl/drawing/vmlDrawings#.vml
-                CTCommentList lst = sheetComments.getCTComments().getCommentList();
-                for (CTComment comment : lst.getCommentArray()) {
-                    CellReference ref = new CellReference(comment.getRef());
-                    if(ref.getRow() == rownum){
-                        ref = new CellReference(rownum + n, ref.getCol());
-                        comment.setRef(ref.formatAsString());
-                    }
+            row.shift(n, formerRefs);
+        }
+        _rows.shiftKeys(first, last, n);
+        if (formerRefs != null) {
+            //remove the references in the calculation chain
+            calcChain.removeItems((int)sheet.getSheetId(), formerRefs);
+        }
+
+        if(sheetComments != null){
+            //TODO shift Note's anchor in the associated /xl/drawing/vmlDrawings#.vml
+            CTCommentList lst = sheetComments.getCTComments().getCommentList();
+            for (CTComment comment : lst.getCommentArray()) {
+                String oldRef = comment.getRef();
+                CellReference ref = new CellReference(oldRef);
+                if(ref.getRow() >= startRow && ref.getRow() <= endRow){
+                    ref = new CellReference(ref.getRow() + n, ref.getCol());
+                    comment.setRef(ref.formatAsString());
+                    sheetComments.referenceUpdated(oldRef, comment);
                 }
             }
         }
@@ -2361,13 +2416,6 @@ public class XSSFSheet extends POIXMLDocumentPart implements Sheet {
         rowShifter.updateFormulas(shifter);
         rowShifter.shiftMerged(startRow, endRow, n);
         rowShifter.updateConditionalFormatting(shifter);
-
-        //rebuild the _rows map
-        TreeMap<Integer, XSSFRow> map = new TreeMap<Integer, XSSFRow>();
-        for(XSSFRow r : _rows.values()) {
-            map.put(r.getRowNum(), r);
-        }
-        _rows = map;
     }
 
     /**
@@ -2589,18 +2637,6 @@ public class XSSFSheet extends POIXMLDocumentPart implements Sheet {
         return sheetPr.isSetPageSetUpPr() ? sheetPr.getPageSetUpPr() : sheetPr.addNewPageSetUpPr();
     }
 
-    private boolean removeRow(int startRow, int endRow, int n, int rownum) {
-        if (rownum >= (startRow + n) && rownum <= (endRow + n)) {
-            if (n > 0 && rownum > endRow) {
-                return true;
-            }
-            else if (n < 0 && rownum < startRow) {
-                return true;
-            }
-        }
-        return false;
-    }
-
     private CTPane getPane() {
         if (getDefaultSheetView().getPane() == null) {
             getDefaultSheetView().addNewPane();
@@ -2645,12 +2681,19 @@ public class XSSFSheet extends POIXMLDocumentPart implements Sheet {
         }
     }
 
+    /**
+     * Register the worksheet to be written when the package is saved. The XML is
+     * streamed straight into the zip entry of the sheet rather than buffered in memory,
+     * so saving a large sheet does not need a second copy of it in serialized form.
+     */
     @Override
     protected void commit() throws IOException {
         PackagePart part = getPackagePart();
-        OutputStream out = part.getOutputStream();
-        write(out);
-        out.close();
+        part.setContentWriter(new PartContentWriter() {
+            public void write(OutputStream out) throws IOException {
+                XSSFSheet.this.write(out);
+            }
+        });
     }
 
     protected void write(OutputStream out) throws IOException {
@@ -2679,7 +2722,7 @@ public class XSSFSheet extends POIXMLDocumentPart implements Sheet {
             worksheet.getHyperlinks().setHyperlinkArray(ctHls);
         }
 
-        for(XSSFRow row : _rows.values()){
+        for(XSSFRow row : _rows){
             row.onDocumentWrite();
         }
 
@@ -86,6 +86,14 @@ public class XSSFTable extends POIXMLDocumentPart {
 		doc.save(out, DEFAULT_XML_OPTIONS);
 	}
 
+	/**
+	 * Tables are modified through the sheet they belong to and are saved if the sheet is.
+	 */
+	@Override
+	public boolean isDirty() {
+		return getParent() == null || getParent().isDirty();
+	}
+
 	@Override
 	protected void commit() throws IOException {
 		PackagePart part = getPackagePart();
@@ -169,6 +169,14 @@ public final class XSSFVMLDrawing extends POIXMLDocumentPart {
         rootObject.save(out, xmlOptions);
     }
 
+    /**
+     * Legacy drawings change only when comments of the owning sheet are edited.
+     */
+    @Override
+    public boolean isDirty() {
+        return getParent() == null || getParent().isDirty();
+    }
+
     @Override
     protected void commit() throws IOException {
         PackagePart part = getPackagePart();
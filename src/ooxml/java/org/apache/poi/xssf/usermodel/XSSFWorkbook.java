@@ -182,6 +182,10 @@ public class XSSFWorkbook extends POIXMLDocument implements Workbook, Iterable<X
      * Creating a XSSFWorkbook from a file-backed OPC Package has a lower memory
      *  footprint than an InputStream backed one.
      *
+     * Worksheets are parsed the first time they are accessed through this workbook,
+     *  e.g. by {@link #getSheetAt(int)}, {@link #getSheet(String)} or by iterating over
+     *  the sheets. Sheets which are never accessed are written back unchanged.
+     *
      * @param pkg the OpenXML4J <code>OPC Package</code> object.
      */
     public XSSFWorkbook(OPCPackage pkg) throws IOException {
@@ -288,7 +292,7 @@ public class XSSFWorkbook extends POIXMLDocument implements Workbook, Iterable<X
                     continue;
                 }
                 sh.sheet = ctSheet;
-                sh.onDocumentRead();
+                // the worksheet is parsed on first access, see loadSheet
                 sheets.add(sh);
             }
 
@@ -426,7 +430,7 @@ public class XSSFWorkbook extends POIXMLDocument implements Workbook, Iterable<X
     public XSSFSheet cloneSheet(int sheetNum) {
         validateSheetIndex(sheetNum);
 
-        XSSFSheet srcSheet = sheets.get(sheetNum);
+        XSSFSheet srcSheet = getSheetAt(sheetNum);
         String srcName = srcSheet.getSheetName();
         String clonedName = getUniqueSheetName(srcName);
 
@@ -830,7 +834,7 @@ public class XSSFWorkbook extends POIXMLDocument implements Workbook, Iterable<X
     public XSSFSheet getSheet(String name) {
         for (XSSFSheet sheet : sheets) {
             if (name.equalsIgnoreCase(sheet.getSheetName())) {
-                return sheet;
+                return loadSheet(sheet);
             }
         }
         return null;
@@ -846,7 +850,22 @@ public class XSSFWorkbook extends POIXMLDocument implements Workbook, Iterable<X
      */
     public XSSFSheet getSheetAt(int index) {
         validateSheetIndex(index);
-        return sheets.get(index);
+        return loadSheet(sheets.get(index));
+    }
+
+    /**
+     * Parse the worksheet part of a sheet read from the package if this has not been done yet.
+     * Sheets are only parsed when they are accessed, so that opening a workbook with many sheets
+     * to work with a few of them does not pay for the others.
+     *
+     * @param sheet a sheet of this workbook
+     * @return the sheet
+     */
+    private XSSFSheet loadSheet(XSSFSheet sheet) {
+        if (!sheet.isLoaded()) {
+            sheet.onDocumentRead();
+        }
+        return sheet;
     }
 
     /**
@@ -901,7 +920,20 @@ public class XSSFWorkbook extends POIXMLDocument implements Workbook, Iterable<X
      * </code></pre>
      */
     public Iterator<XSSFSheet> iterator() {
-        return sheets.iterator();
+        final Iterator<XSSFSheet> it = sheets.iterator();
+        return new Iterator<XSSFSheet>() {
+            public boolean hasNext() {
+                return it.hasNext();
+            }
+
+            public XSSFSheet next() {
+                return loadSheet(it.next());
+            }
+
+            public void remove() {
+                it.remove();
+            }
+        };
     }
     /**
      * Are we a normal workbook (.xlsx), or a
@@ -975,7 +1007,8 @@ public class XSSFWorkbook extends POIXMLDocument implements Workbook, Iterable<X
 
         onSheetDelete(index);
 
-        XSSFSheet sheet = getSheetAt(index);
+        // no need to parse a sheet which is removed
+        XSSFSheet sheet = sheets.get(index);
         removeRelation(sheet);
         sheets.remove(index);
     }
@@ -1215,7 +1248,7 @@ public class XSSFWorkbook extends POIXMLDocument implements Workbook, Iterable<X
      */
     public void setSelectedTab(int index) {
         for (int i = 0 ; i < sheets.size() ; ++i) {
-            XSSFSheet sheet = sheets.get(i);
+            XSSFSheet sheet = getSheetAt(i);
             sheet.setSelected(i == index);
         }
     }
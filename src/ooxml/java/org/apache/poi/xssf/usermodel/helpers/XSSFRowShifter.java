@@ -18,6 +18,7 @@
 package org.apache.poi.xssf.usermodel.helpers;
 
 import org.apache.poi.xssf.usermodel.*;
+import org.apache.poi.ss.SpreadsheetVersion;
 import org.apache.poi.ss.util.CellRangeAddress;
 import org.apache.poi.ss.formula.FormulaParser;
 import org.apache.poi.ss.formula.FormulaType;
@@ -33,8 +34,10 @@ import org.openxmlformats.schemas.spreadsheetml.x2006.main.CTCellFormula;
 import org.openxmlformats.schemas.spreadsheetml.x2006.main.CTConditionalFormatting;
 import org.openxmlformats.schemas.spreadsheetml.x2006.main.CTCfRule;
 
+import java.util.HashMap;
 import java.util.List;
 import java.util.ArrayList;
+import java.util.Map;
 
 /**
  * @author Yegor Kozlov
@@ -124,27 +127,35 @@ public final class XSSFRowShifter {
 
     /**
      * Update formulas.
+     * <p>
+     * Each distinct formula text of a sheet is parsed and shifted once, the cells of a shared
+     * formula only carry the text in their master cell. Formulas on other sheets can only
+     * be affected through a sheet reference, the ones without a '!' are not parsed at all.
+     * </p>
      */
     public void updateFormulas(FormulaShifter shifter) {
+        XSSFWorkbook wb = sheet.getWorkbook();
+        XSSFEvaluationWorkbook fpb = XSSFEvaluationWorkbook.create(wb);
+
         //update formulas on the parent sheet
-        updateSheetFormulas(sheet, shifter);
+        updateSheetFormulas(sheet, shifter, fpb, false);
 
         //update formulas on other sheets
-        XSSFWorkbook wb = sheet.getWorkbook();
         for (XSSFSheet sh : wb) {
             if (sheet == sh) continue;
-            updateSheetFormulas(sh, shifter);
+            updateSheetFormulas(sh, shifter, fpb, true);
         }
     }
 
-    private void updateSheetFormulas(XSSFSheet sh, FormulaShifter shifter) {
+    private void updateSheetFormulas(XSSFSheet sh, FormulaShifter shifter, XSSFEvaluationWorkbook fpb, boolean otherSheet) {
+        FormulaCache cache = new FormulaCache(sh, shifter, fpb, otherSheet);
         for (Row r : sh) {
             XSSFRow row = (XSSFRow) r;
-            updateRowFormulas(row, shifter);
+            updateRowFormulas(row, cache);
         }
     }
 
-    private void updateRowFormulas(XSSFRow row, FormulaShifter shifter) {
+    private void updateRowFormulas(XSSFRow row, FormulaCache cache) {
         for (Cell c : row) {
             XSSFCell cell = (XSSFCell) c;
 
@@ -153,7 +164,7 @@ public final class XSSFRowShifter {
                 CTCellFormula f = ctCell.getF();
                 String formula = f.getStringValue();
                 if (formula.length() > 0) {
-                    String shiftedFormula = shiftFormula(row, formula, shifter);
+                    String shiftedFormula = cache.shiftFormula(formula);
                     if (shiftedFormula != null) {
                         f.setStringValue(shiftedFormula);
                     }
@@ -161,7 +172,7 @@ public final class XSSFRowShifter {
 
                 if (f.isSetRef()) { //Range of cells which the formula applies to.
                     String ref = f.getRef();
-                    String shiftedRef = shiftFormula(row, ref, shifter);
+                    String shiftedRef = cache.shiftFormula(ref);
                     if (shiftedRef != null) f.setRef(shiftedRef);
                 }
             }
@@ -169,20 +180,83 @@ public final class XSSFRowShifter {
         }
     }
 
+    /**
+     * Shifts the formulas of one sheet, remembering the result for each distinct formula text.
+     * The parsed tokens of a formula do not depend on the cell it is in, so formulas repeated
+     * over many rows are parsed and rendered only once.
+     */
+    private static final class FormulaCache {
+        /** marks a formula which the shift does not change */
+        private static final String UNCHANGED = new String();
+        private static final int LAST_ROW_INDEX = SpreadsheetVersion.EXCEL2007.getLastRowIndex();
+
+        private final FormulaShifter _shifter;
+        private final XSSFEvaluationWorkbook _fpb;
+        private final int _sheetIndex;
+        private final boolean _otherSheet;
+        private final Map<String, String> _shifted = new HashMap<String, String>();
+
+        FormulaCache(XSSFSheet sheet, FormulaShifter shifter, XSSFEvaluationWorkbook fpb, boolean otherSheet) {
+            _shifter = shifter;
+            _fpb = fpb;
+            _sheetIndex = sheet.getWorkbook().getSheetIndex(sheet);
+            _otherSheet = otherSheet;
+        }
+
+        /**
+         * @return the shifted formula if the formula was changed,
+         *         <code>null</code> if the formula wasn't modified
+         */
+        String shiftFormula(String formula) {
+            // only references qualified with a sheet name can point into another sheet
+            if (_otherSheet && formula.indexOf('!') < 0) return null;
+            if (!mayBeAffected(formula)) return null;
+
+            String shiftedFmla = _shifted.get(formula);
+            if (shiftedFmla == null) {
+                shiftedFmla = XSSFRowShifter.shiftFormula(formula, _sheetIndex, _shifter, _fpb);
+                _shifted.put(formula, shiftedFmla == null ? UNCHANGED : shiftedFmla);
+            }
+            return shiftedFmla == UNCHANGED ? null : shiftedFmla;
+        }
+
+        /**
+         * The rows of A1 style references appear as numbers in the formula text, except
+         * for whole column references like A:A which span from the first to the last row.
+         * A formula in which no number is an affected row number cannot be changed by the
+         * shift. Numbers which are not part of a reference merely cause it to be parsed.
+         */
+        private boolean mayBeAffected(String formula) {
+            int len = formula.length();
+            for (int i = 0; i < len; i++) {
+                char c = formula.charAt(i);
+                if (c >= '0' && c <= '9') {
+                    int start = i;
+                    while (i + 1 < len && formula.charAt(i + 1) >= '0' && formula.charAt(i + 1) <= '9') i++;
+                    // row numbers have at most 7 digits
+                    if (i - start < 7) {
+                        int rowNum = Integer.parseInt(formula.substring(start, i + 1));
+                        if (rowNum > 0 && _shifter.isRowAffected(rowNum - 1)) return true;
+                    }
+                } else if (c == ':') {
+                    if (_shifter.isRowAffected(0) || _shifter.isRowAffected(LAST_ROW_INDEX)) return true;
+                }
+            }
+            return false;
+        }
+    }
+
     /**
      * Shift a formula using the supplied FormulaShifter
      *
-     * @param row     the row of the cell this formula belongs to. Used to get a reference to the parent workbook.
      * @param formula the formula to shift
+     * @param sheetIndex the index of the sheet the formula belongs to
      * @param shifter the FormulaShifter object that operates on the parsed formula tokens
+     * @param fpb the workbook the formula is parsed and rendered with
      * @return the shifted formula if the formula was changed,
      *         <code>null</code> if the formula wasn't modified
      */
-    private static String shiftFormula(XSSFRow row, String formula, FormulaShifter shifter) {
-        XSSFSheet sheet = row.getSheet();
-        XSSFWorkbook wb = sheet.getWorkbook();
-        int sheetIndex = wb.getSheetIndex(sheet);
-        XSSFEvaluationWorkbook fpb = XSSFEvaluationWorkbook.create(wb);
+    private static String shiftFormula(String formula, int sheetIndex, FormulaShifter shifter, XSSFEvaluationWorkbook fpb) {
         Ptg[] ptgs = FormulaParser.parse(formula, fpb, FormulaType.CELL, sheetIndex);
         String shiftedFmla = null;
         if (shifter.adjustFormula(ptgs, sheetIndex)) {
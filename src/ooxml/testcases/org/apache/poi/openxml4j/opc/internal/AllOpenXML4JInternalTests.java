@@ -25,6 +25,7 @@ public final class AllOpenXML4JInternalTests {
 	public static Test suite() {
 		TestSuite suite = new TestSuite(AllOpenXML4JInternalTests.class.getName());
 		suite.addTestSuite(TestContentTypeManager.class);
+		suite.addTestSuite(TestRawZipOutputStream.class);
 		return suite;
 	}
 }
@@ -0,0 +1,204 @@
+/* ====================================================================
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+==================================================================== */
+
+package org.apache.poi.openxml4j.opc.internal;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+
+import junit.framework.TestCase;
+
+public final class TestRawZipOutputStream extends TestCase {
+
+	private static final String TEXT = "<sheetData><row r=\"1\"><c r=\"A1\"><v>1</v></c></row></sheetData>";
+
+	public void testRoundTrip() throws Exception {
+		byte[] data = repeat(TEXT, 1000).getBytes("UTF-8");
+		byte[] zip = writeSample(data);
+
+		ZipInputStream zis = new ZipInputStream(new ByteArrayInputStream(zip));
+		assertEquals("a.xml", zis.getNextEntry().getName());
+		assertContent(data, zis);
+		assertEquals("b/raw.xml", zis.getNextEntry().getName());
+		assertContent(data, zis);
+		assertEquals("c/stored.bin", zis.getNextEntry().getName());
+		assertContent(data, zis);
+		assertEquals("d/ümlaut.xml", zis.getNextEntry().getName());
+		assertContent(new byte[0], zis);
+		assertNull(zis.getNextEntry());
+
+		// the central directory
+		File file = File.createTempFile("TestRawZipOutputStream", ".zip");
+		try {
+			FileOutputStream out = new FileOutputStream(file);
+			out.write(zip);
+			out.close();
+			ZipFile zf = new ZipFile(file);
+			try {
+				assertEquals(4, zf.size());
+				ZipEntry raw = zf.getEntry("b/raw.xml");
+				assertEquals(data.length, raw.getSize());
+				assertEquals(ZipEntry.DEFLATED, raw.getMethod());
+				assertContent(data, zf.getInputStream(raw));
+				assertContent(data, zf.getInputStream(zf.getEntry("a.xml")));
+				assertContent(data, zf.getInputStream(zf.getEntry("c/stored.bin")));
+				assertNotNull(zf.getEntry("d/ümlaut.xml"));
+			} finally {
+				zf.close();
+			}
+		} finally {
+			file.delete();
+		}
+	}
+
+	/**
+	 * An entry deflated elsewhere is written exactly like the same data passed to putNextEntry
+	 */
+	public void testDeflatedEntry() throws Exception {
+		byte[] data = repeat(TEXT, 1000).getBytes("UTF-8");
+		long time = 1300000000000L;
+
+		ByteArrayOutputStream expected = new ByteArrayOutputStream();
+		RawZipOutputStream zos = new RawZipOutputStream(expected);
+		ZipEntry e = new ZipEntry("a.xml");
+		e.setTime(time);
+		zos.putNextEntry(e);
+		zos.write(data);
+		zos.close();
+
+		ByteArrayOutputStream actual = new ByteArrayOutputStream();
+		zos = new RawZipOutputStream(actual);
+		Deflater deflater = zos.newDeflater();
+		byte[] deflated = deflate(data, deflater);
+		e = new ZipEntry("a.xml");
+		e.setTime(time);
+		e.setCrc(crc(data));
+		e.setSize(data.length);
+		e.setCompressedSize(deflated.length);
+		zos.writeDeflatedEntry(e, new ByteArrayInputStream(deflated));
+		zos.close();
+
+		assertTrue(java.util.Arrays.equals(expected.toByteArray(), actual.toByteArray()));
+	}
+
+	public void testInvalidEntries() throws Exception {
+		RawZipOutputStream zos = new RawZipOutputStream(new ByteArrayOutputStream());
+		zos.putNextEntry(new ZipEntry("a.xml"));
+		try {
+			zos.putNextEntry(new ZipEntry("a.xml"));
+			fail("expected ZipException");
+		} catch (ZipException e) {
+			// expected
+		}
+		try {
+			zos.writeRawEntry(new ZipEntry("b.xml"), new ByteArrayInputStream(new byte[0]));
+			fail("expected ZipException");
+		} catch (ZipException e) {
+			// expected, sizes and crc are unknown
+		}
+
+		ZipEntry truncated = new ZipEntry("c.xml");
+		truncated.setMethod(ZipEntry.DEFLATED);
+		truncated.setCrc(0);
+		truncated.setSize(10);
+		truncated.setCompressedSize(10);
+		try {
+			zos.writeRawEntry(truncated, new ByteArrayInputStream(new byte[5]));
+			fail("expected ZipException");
+		} catch (ZipException e) {
+			// expected
+		}
+	}
+
+	private static byte[] writeSample(byte[] data) throws IOException {
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		RawZipOutputStream zos = new RawZipOutputStream(bos);
+
+		zos.putNextEntry(new ZipEntry("a.xml"));
+		zos.write(data, 0, 10);
+		zos.write(data, 10, data.length - 10);
+
+		ZipEntry raw = new ZipEntry("b/raw.xml");
+		raw.setMethod(ZipEntry.DEFLATED);
+		raw.setCrc(crc(data));
+		raw.setSize(data.length);
+		byte[] deflated = deflate(data);
+		raw.setCompressedSize(deflated.length);
+		zos.writeRawEntry(raw, new ByteArrayInputStream(deflated));
+
+		ZipEntry stored = new ZipEntry("c/stored.bin");
+		stored.setMethod(ZipEntry.STORED);
+		stored.setCrc(crc(data));
+		stored.setSize(data.length);
+		zos.putNextEntry(stored);
+		zos.write(data);
+
+		zos.putNextEntry(new ZipEntry("d/ümlaut.xml"));
+		zos.close();
+		return bos.toByteArray();
+	}
+
+	private static long crc(byte[] data) {
+		CRC32 crc = new CRC32();
+		crc.update(data);
+		return crc.getValue();
+	}
+
+	private static byte[] deflate(byte[] data) {
+		return deflate(data, new Deflater(Deflater.DEFAULT_COMPRESSION, true));
+	}
+
+	private static byte[] deflate(byte[] data, Deflater deflater) {
+		deflater.setInput(data);
+		deflater.finish();
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		byte[] buf = new byte[1024];
+		while (!deflater.finished()) {
+			bos.write(buf, 0, deflater.deflate(buf));
+		}
+		deflater.end();
+		return bos.toByteArray();
+	}
+
+	private static String repeat(String s, int times) {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < times; i++) {
+			sb.append(s);
+		}
+		return sb.toString();
+	}
+
+	private static void assertContent(byte[] expected, InputStream is) throws IOException {
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		byte[] buf = new byte[1024];
+		int count;
+		while ((count = is.read(buf)) != -1) {
+			bos.write(buf, 0, count);
+		}
+		assertTrue(java.util.Arrays.equals(expected, bos.toByteArray()));
+	}
+}
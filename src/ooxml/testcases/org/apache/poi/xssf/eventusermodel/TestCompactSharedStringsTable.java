@@ -0,0 +1,104 @@
+/* ====================================================================
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+==================================================================== */
+
+package org.apache.poi.xssf.eventusermodel;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.apache.poi.POIDataSamples;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.xssf.model.SharedStringsTable;
+import org.apache.poi.xssf.usermodel.XSSFRichTextString;
+
+/**
+ * Tests for {@link CompactSharedStringsTable}
+ */
+public final class TestCompactSharedStringsTable extends TestCase {
+    private static POIDataSamples _ssTests = POIDataSamples.getSpreadSheetInstance();
+
+    public void testSameAsReadOnlyTable() throws Exception {
+        String[] files = { "SampleSS.xlsx", "WithMoreVariousData.xlsx", "51850.xlsx", "sample.xlsx" };
+        for (String file : files) {
+            OPCPackage pkg = OPCPackage.open(_ssTests.openResourceAsStream(file));
+            ReadOnlySharedStringsTable expected = new ReadOnlySharedStringsTable(pkg);
+            assertSameStrings(file, expected, new CompactSharedStringsTable(pkg));
+
+            CompactSharedStringsTable mapped = new CompactSharedStringsTable(pkg, true);
+            assertSameStrings(file, expected, mapped);
+            mapped.close();
+        }
+    }
+
+    /**
+     * Any text comes back unchanged, also when it spans the pages of the arena
+     */
+    public void testRoundTrip() throws Exception {
+        SharedStringsTable sst = new SharedStringsTable();
+        StringBuilder longText = new StringBuilder();
+        for (int i = 0; i < 100000; i++) {
+            longText.append("long text ").append(i).append(' ');
+        }
+        String[] texts = {
+                "", "plain", "caf\u00E9 na\u00EFve", "\u65E5\u672C\u8A9E", "\uD83D\uDE00 emoji",
+                "\u0080\u07FF\u0800\uFFEF", longText.toString(), "after the long one"
+        };
+        for (String text : texts) {
+            sst.addEntry(new XSSFRichTextString(text).getCTRst());
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        sst.writeTo(out);
+        byte[] xml = out.toByteArray();
+
+        for (int mode = 0; mode < 2; mode++) {
+            CompactSharedStringsTable table = new CompactSharedStringsTable(
+                    OPCPackage.create(new ByteArrayOutputStream()), mode == 1);
+            assertEquals(0, table.getUniqueCount());
+            table.readFrom(new ByteArrayInputStream(xml));
+
+            assertEquals(texts.length, table.getUniqueCount());
+            List<String> items = table.getItems();
+            assertEquals(texts.length, items.size());
+            for (int i = 0; i < texts.length; i++) {
+                assertEquals(texts[i], table.getEntryAt(i));
+                assertEquals(texts[i], items.get(i));
+            }
+            try {
+                table.getEntryAt(texts.length);
+                fail("IndexOutOfBoundsException expected");
+            } catch (IndexOutOfBoundsException e) {
+                // expected
+            }
+            table.close();
+        }
+    }
+
+    private static void assertSameStrings(String file, ReadOnlySharedStringsTable expected,
+            CompactSharedStringsTable actual) {
+        assertEquals(file, expected.getCount(), actual.getCount());
+        assertEquals(file, expected.getUniqueCount(), actual.getUniqueCount());
+        assertEquals(file, expected.getItems().size(), actual.getItems().size());
+        for (int i = 0; i < expected.getItems().size(); i++) {
+            assertEquals(file, expected.getEntryAt(i), actual.getEntryAt(i));
+            // again from the cache
+            assertEquals(file, expected.getEntryAt(i), actual.getEntryAt(i));
+        }
+    }
+}
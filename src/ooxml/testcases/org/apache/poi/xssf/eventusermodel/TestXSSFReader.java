@@ -18,16 +18,29 @@
 package org.apache.poi.xssf.eventusermodel;
 
 import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Iterator;
+import java.util.List;
+
+import javax.xml.parsers.SAXParserFactory;
 
 import junit.framework.TestCase;
 
 import org.apache.poi.openxml4j.opc.OPCPackage;
 import org.apache.poi.util.IOUtils;
 import org.apache.poi.xssf.XSSFTestDataSamples;
+import org.apache.poi.xssf.eventusermodel.XSSFSheetXMLHandler.SheetContentsHandler;
 import org.apache.poi.xssf.model.CommentsTable;
+import org.apache.poi.xssf.model.StylesTable;
 import org.apache.poi.xssf.usermodel.XSSFRichTextString;
 import org.apache.poi.POIDataSamples;
+import org.xml.sax.Attributes;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.DefaultHandler;
 
 /**
  * Tests for {@link XSSFReader}
@@ -101,6 +114,100 @@ public final class TestXSSFReader extends TestCase {
 		assertEquals(3, count);
 	}
 
+	/**
+	 * Parsing the sheets at the same time gives the same events as one after the other
+	 */
+	public void testProcessSheets() throws Exception {
+		assertSameAsSequential("SampleSS.xlsx");
+		assertSameAsSequential("FormulaEvalTestData_Copy.xlsx");
+	}
+
+	public void testProcessSelectedSheets() throws Exception {
+		OPCPackage pkg = OPCPackage.open(_ssTests.openResourceAsStream("reordered_sheets.xlsx"));
+		XSSFReader r = new XSSFReader(pkg);
+
+		final List<String> created = new ArrayList<String>();
+		r.processSheets(new XSSFReader.SheetHandlerFactory() {
+			public ContentHandler createHandler(int sheetIndex, String sheetName) {
+				created.add(sheetIndex + ":" + sheetName);
+				return new DefaultHandler();
+			}
+		}, Arrays.asList("Sheet1", "Sheet2"), 4);
+		assertEquals(Arrays.asList("1:Sheet2", "3:Sheet1"), created);
+	}
+
+	public void testProcessSheetsFailure() throws Exception {
+		OPCPackage pkg = OPCPackage.open(_ssTests.openResourceAsStream("SampleSS.xlsx"));
+		XSSFReader r = new XSSFReader(pkg);
+
+		try {
+			r.processSheets(new XSSFReader.SheetHandlerFactory() {
+				public ContentHandler createHandler(final int sheetIndex, String sheetName) {
+					return new DefaultHandler() {
+						public void startElement(String uri, String localName, String name,
+								Attributes attributes) throws SAXException {
+							if (sheetIndex == 1) throw new SAXException("failed on purpose");
+						}
+					};
+				}
+			}, null, 2);
+			fail("SAXException expected");
+		} catch (SAXException e) {
+			assertEquals("failed on purpose", e.getMessage());
+		}
+	}
+
+	private static void assertSameAsSequential(String file) throws Exception {
+		OPCPackage pkg = OPCPackage.open(_ssTests.openResourceAsStream(file));
+		final XSSFReader r = new XSSFReader(pkg);
+		final StylesTable styles = r.getStylesTable();
+		final ReadOnlySharedStringsTable strings = new ReadOnlySharedStringsTable(pkg);
+
+		List<List<String>> expected = new ArrayList<List<String>>();
+		Iterator<InputStream> it = r.getSheetsData();
+		while (it.hasNext()) {
+			List<String> events = new ArrayList<String>();
+			XMLReader parser = SAXParserFactory.newInstance().newSAXParser().getXMLReader();
+			parser.setContentHandler(new XSSFSheetXMLHandler(styles, strings, new EventCollector(events), false));
+			InputStream stream = it.next();
+			parser.parse(new InputSource(stream));
+			stream.close();
+			expected.add(events);
+		}
+
+		final List<List<String>> actual = new ArrayList<List<String>>();
+		r.processSheets(new XSSFReader.SheetHandlerFactory() {
+			public ContentHandler createHandler(int sheetIndex, String sheetName) {
+				assertEquals(actual.size(), sheetIndex);
+				List<String> events = new ArrayList<String>();
+				actual.add(events);
+				return new XSSFSheetXMLHandler(styles, strings, new EventCollector(events), false);
+			}
+		}, null, 3);
+
+		assertEquals(file, expected, actual);
+	}
+
+	private static final class EventCollector implements SheetContentsHandler {
+		private final List<String> events;
+
+		EventCollector(List<String> events) {
+			this.events = events;
+		}
+
+		public void startRow(int rowNum) {
+			events.add("row " + rowNum);
+		}
+		public void endRow() {
+		}
+		public void cell(String cellReference, String formattedValue) {
+			events.add(cellReference + "=" + formattedValue);
+		}
+		public void headerFooter(String text, boolean isHeader, String tagName) {
+			events.add(tagName + "=" + text);
+		}
+	}
+
 	/**
 	 * Check that the sheet iterator returns sheets in the logical order
 	 * (as they are defined in the workbook.xml)
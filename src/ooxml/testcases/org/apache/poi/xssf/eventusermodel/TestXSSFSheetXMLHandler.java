@@ -0,0 +1,305 @@
+/* ====================================================================
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+==================================================================== */
+
+package org.apache.poi.xssf.eventusermodel;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import javax.xml.parsers.SAXParserFactory;
+
+import junit.framework.TestCase;
+
+import org.apache.poi.POIDataSamples;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.util.CellReference;
+import org.apache.poi.xssf.eventusermodel.XSSFSheetXMLHandler.SheetContentsHandler;
+import org.apache.poi.xssf.eventusermodel.XSSFSheetXMLHandler.SheetValuesHandler;
+import org.apache.poi.xssf.usermodel.XSSFRichTextString;
+import org.apache.poi.xssf.usermodel.XSSFSheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.xml.sax.InputSource;
+import org.xml.sax.XMLReader;
+
+/**
+ * Tests for {@link XSSFSheetXMLHandler}
+ */
+public final class TestXSSFSheetXMLHandler extends TestCase {
+    private static POIDataSamples _ssTests = POIDataSamples.getSpreadSheetInstance();
+
+    /**
+     * The typed values must match what the usermodel reads from the same sheet
+     */
+    public void testTypedValues() throws Exception {
+        final XSSFWorkbook wb = new XSSFWorkbook(_ssTests.openResourceAsStream("WithMoreVariousData.xlsx"));
+        final XSSFSheet sheet = wb.getSheetAt(0);
+
+        OPCPackage pkg = OPCPackage.open(_ssTests.openResourceAsStream("WithMoreVariousData.xlsx"));
+        XSSFReader r = new XSSFReader(pkg);
+        final ReadOnlySharedStringsTable strings = new ReadOnlySharedStringsTable(pkg);
+        final List<String> seen = new ArrayList<String>();
+
+        SheetValuesHandler handler = new SheetValuesHandler() {
+            private int currentRow = -1;
+
+            public void startRow(int rowNum) {
+                currentRow = rowNum;
+            }
+            public void endRow(int rowNum) {
+                assertEquals(currentRow, rowNum);
+            }
+            public void numericCell(int rowNum, int column, int styleIndex, double value, CharSequence formula) {
+                Cell cell = cell(rowNum, column, styleIndex, formula);
+                assertEquals(cell.getNumericCellValue(), value, 0.0);
+            }
+            public void booleanCell(int rowNum, int column, int styleIndex, boolean value, CharSequence formula) {
+                Cell cell = cell(rowNum, column, styleIndex, formula);
+                assertEquals(cell.getBooleanCellValue(), value);
+            }
+            public void errorCell(int rowNum, int column, int styleIndex, CharSequence errorCode, CharSequence formula) {
+                Cell cell = cell(rowNum, column, styleIndex, formula);
+                assertEquals(Cell.CELL_TYPE_ERROR,
+                        formula == null ? cell.getCellType() : cell.getCachedFormulaResultType());
+            }
+            public void sharedStringCell(int rowNum, int column, int styleIndex, int sstIndex) {
+                Cell cell = cell(rowNum, column, styleIndex, null);
+                assertEquals(cell.getStringCellValue(),
+                        new XSSFRichTextString(strings.getEntryAt(sstIndex)).getString());
+            }
+            public void stringCell(int rowNum, int column, int styleIndex, CharSequence text, CharSequence formula) {
+                Cell cell = cell(rowNum, column, styleIndex, formula);
+                assertEquals(cell.getStringCellValue(), text.toString());
+            }
+            public void headerFooter(String text, boolean isHeader, String tagName) {
+            }
+
+            private Cell cell(int rowNum, int column, int styleIndex, CharSequence formula) {
+                assertEquals(currentRow, rowNum);
+                Row row = sheet.getRow(rowNum);
+                assertNotNull(row);
+                Cell cell = row.getCell(column);
+                assertNotNull(cell);
+                if (styleIndex >= 0) {
+                    assertEquals(styleIndex, cell.getCellStyle().getIndex());
+                }
+                if (formula == null) {
+                    assertTrue(cell.getCellType() != Cell.CELL_TYPE_FORMULA);
+                } else {
+                    assertEquals(Cell.CELL_TYPE_FORMULA, cell.getCellType());
+                }
+                seen.add(rowNum + ":" + column);
+                return cell;
+            }
+        };
+
+        InputStream stream = r.getSheetsData().next();
+        try {
+            parse(stream, new XSSFSheetXMLHandler(handler));
+        } finally {
+            stream.close();
+        }
+
+        int cells = 0;
+        for (Row row : sheet) {
+            cells += row.getPhysicalNumberOfCells();
+        }
+        assertTrue(seen.size() > 0);
+        assertEquals(cells, seen.size());
+    }
+
+    /**
+     * Inline strings are reported with their text
+     */
+    public void testInlineStrings() throws Exception {
+        OPCPackage pkg = OPCPackage.open(_ssTests.openResourceAsStream("InlineStrings.xlsx"));
+        XSSFReader r = new XSSFReader(pkg);
+        final List<String> texts = new ArrayList<String>();
+
+        SheetValuesHandler handler = new SheetValuesHandler() {
+            public void startRow(int rowNum) {}
+            public void endRow(int rowNum) {}
+            public void numericCell(int rowNum, int column, int styleIndex, double value, CharSequence formula) {}
+            public void booleanCell(int rowNum, int column, int styleIndex, boolean value, CharSequence formula) {}
+            public void errorCell(int rowNum, int column, int styleIndex, CharSequence errorCode, CharSequence formula) {}
+            public void sharedStringCell(int rowNum, int column, int styleIndex, int sstIndex) {}
+            public void stringCell(int rowNum, int column, int styleIndex, CharSequence text, CharSequence formula) {
+                if (formula == null) texts.add(text.toString());
+            }
+            public void headerFooter(String text, boolean isHeader, String tagName) {}
+        };
+
+        InputStream stream = r.getSheetsData().next();
+        try {
+            parse(stream, new XSSFSheetXMLHandler(handler));
+        } finally {
+            stream.close();
+        }
+        assertEquals(5, texts.size());
+        assertEquals("1st Inline String", texts.get(0));
+        assertEquals("2nd Inline String", texts.get(1));
+        assertEquals("More", texts.get(2));
+        assertEquals("And More", texts.get(3));
+        assertEquals("The End", texts.get(4));
+    }
+
+    /**
+     * String formula results without a formula element are reported without a formula
+     */
+    public void testStringResultWithoutFormula() throws Exception {
+        String xml = "<worksheet xmlns=\"http://schemas.openxmlformats.org/spreadsheetml/2006/main\"><sheetData>"
+                + "<row r=\"1\"><c r=\"A1\" t=\"str\"><v>no formula</v></c>"
+                + "<c r=\"B1\" t=\"str\"><f>\"with\"&amp;\" formula\"</f><v>with formula</v></c></row>"
+                + "</sheetData></worksheet>";
+        final List<String> cells = new ArrayList<String>();
+        SheetValuesHandler handler = new SheetValuesHandler() {
+            public void startRow(int rowNum) {}
+            public void endRow(int rowNum) {}
+            public void numericCell(int rowNum, int column, int styleIndex, double value, CharSequence formula) {}
+            public void booleanCell(int rowNum, int column, int styleIndex, boolean value, CharSequence formula) {}
+            public void errorCell(int rowNum, int column, int styleIndex, CharSequence errorCode, CharSequence formula) {}
+            public void sharedStringCell(int rowNum, int column, int styleIndex, int sstIndex) {}
+            public void stringCell(int rowNum, int column, int styleIndex, CharSequence text, CharSequence formula) {
+                cells.add(text + "|" + (formula == null ? null : formula.toString()));
+            }
+            public void headerFooter(String text, boolean isHeader, String tagName) {}
+        };
+        parse(new ByteArrayInputStream(xml.getBytes("UTF-8")), new XSSFSheetXMLHandler(handler));
+        assertEquals(2, cells.size());
+        assertEquals("no formula|null", cells.get(0));
+        assertEquals("with formula|\"with\"&\" formula\"", cells.get(1));
+    }
+
+    /**
+     * Cells using a shared formula get it shifted like the usermodel does
+     */
+    public void testSharedFormulas() throws Exception {
+        assertFormulasMatch("shared_formulas.xlsx");
+        assertFormulasMatch("49872.xlsx");
+        assertFormulasMatch("FormulaEvalTestData_Copy.xlsx");
+    }
+
+    /**
+     * References to other sheets keep their sheet when the shared formula is shifted
+     */
+    public void testSharedFormulasWithOtherSheets() throws Exception {
+        String xml =
+            "<worksheet xmlns=\"http://schemas.openxmlformats.org/spreadsheetml/2006/main\"><sheetData>" +
+            "<row r=\"1\"><c r=\"B1\"><f t=\"shared\" ref=\"B1:B3\" si=\"0\">" +
+            "Sheet2!A1+SUM('My Sheet'!A1:A2)+C1+Sheet2!$A$1+[1]Data!A1+Total</f><v>1</v></c></row>" +
+            "<row r=\"2\"><c r=\"B2\"><f t=\"shared\" si=\"0\"/><v>2</v></c></row>" +
+            "<row r=\"3\"><c r=\"B3\"><f t=\"shared\" si=\"0\"/><v>3</v></c></row>" +
+            "</sheetData></worksheet>";
+        final List<String> formulas = new ArrayList<String>();
+        SheetContentsHandler handler = new SheetContentsHandler() {
+            public void startRow(int rowNum) {}
+            public void endRow() {}
+            public void cell(String cellReference, String formattedValue) {
+                formulas.add(cellReference + "=" + formattedValue);
+            }
+            public void headerFooter(String text, boolean isHeader, String tagName) {}
+        };
+        parse(new ByteArrayInputStream(xml.getBytes("UTF-8")),
+                new XSSFSheetXMLHandler(null, null, handler, true));
+
+        assertEquals(3, formulas.size());
+        assertEquals("B1=Sheet2!A1+SUM('My Sheet'!A1:A2)+C1+Sheet2!$A$1+[1]Data!A1+Total", formulas.get(0));
+        assertEquals("B2=Sheet2!A2+SUM('My Sheet'!A2:A3)+C2+Sheet2!$A$1+'[1]Data'!A2+Total", formulas.get(1));
+        assertEquals("B3=Sheet2!A3+SUM('My Sheet'!A3:A4)+C3+Sheet2!$A$1+'[1]Data'!A3+Total", formulas.get(2));
+    }
+
+    private static void assertFormulasMatch(String file) throws Exception {
+        XSSFWorkbook wb = new XSSFWorkbook(_ssTests.openResourceAsStream(file));
+        OPCPackage pkg = OPCPackage.open(_ssTests.openResourceAsStream(file));
+        XSSFReader r = new XSSFReader(pkg);
+        ReadOnlySharedStringsTable strings = new ReadOnlySharedStringsTable(pkg);
+        Iterator<InputStream> it = r.getSheetsData();
+
+        int formulas = 0;
+        int sheetIndex = 0;
+        while (it.hasNext()) {
+            final XSSFSheet sheet = wb.getSheetAt(sheetIndex++);
+            final List<String> expected = new ArrayList<String>();
+            final List<String> actual = new ArrayList<String>();
+            for (Row row : sheet) {
+                for (Cell cell : row) {
+                    if (cell.getCellType() == Cell.CELL_TYPE_FORMULA) {
+                        expected.add(new CellReference(cell).formatAsString() + "=" + cell.getCellFormula());
+                    }
+                }
+            }
+
+            SheetContentsHandler handler = new SheetContentsHandler() {
+                public void startRow(int rowNum) {}
+                public void endRow() {}
+                public void cell(String cellReference, String formattedValue) {
+                    Cell cell = sheet.getRow(new CellReference(cellReference).getRow())
+                            .getCell(new CellReference(cellReference).getCol());
+                    if (cell.getCellType() == Cell.CELL_TYPE_FORMULA) {
+                        actual.add(cellReference + "=" + formattedValue);
+                    }
+                }
+                public void headerFooter(String text, boolean isHeader, String tagName) {}
+            };
+            InputStream stream = it.next();
+            try {
+                parse(stream, new XSSFSheetXMLHandler(r.getStylesTable(), strings, handler, true));
+            } finally {
+                stream.close();
+            }
+            for (int i = 0; i < Math.min(expected.size(), actual.size()); i++) {
+                assertEquals(file + " " + sheet.getSheetName(), expected.get(i), actual.get(i));
+            }
+            assertEquals(file + " " + sheet.getSheetName(), expected.size(), actual.size());
+            formulas += expected.size();
+        }
+        assertTrue(formulas > 0);
+    }
+
+    public void testParseDouble() {
+        String[] values = {
+                "0", "-0", "1", "-1", "12.5", "0.1", "0.000123", "123456789012345",
+                "1234567890123456789", "3.14159265358979", "1.7976931348623157E308",
+                "4.9E-324", "1E-7", "2.5e+10", "1e22", "1e23", ".5", "1.", "+7",
+                "41275.5", "0.30000000000000004", "9007199254740993"
+        };
+        for (String value : values) {
+            assertEquals(value, Double.parseDouble(value),
+                    XSSFSheetXMLHandler.parseDouble(new StringBuilder(value)), 0.0);
+        }
+        String[] invalid = { "", "-", "abc", "1e", "1e+", "1.2.3", "#N/A" };
+        for (String value : invalid) {
+            try {
+                XSSFSheetXMLHandler.parseDouble(value);
+                fail("NumberFormatException expected for '" + value + "'");
+            } catch (NumberFormatException e) {
+                // expected
+            }
+        }
+    }
+
+    private static void parse(InputStream stream, XSSFSheetXMLHandler handler) throws Exception {
+        SAXParserFactory factory = SAXParserFactory.newInstance();
+        XMLReader reader = factory.newSAXParser().getXMLReader();
+        reader.setContentHandler(handler);
+        reader.parse(new InputSource(stream));
+    }
+}
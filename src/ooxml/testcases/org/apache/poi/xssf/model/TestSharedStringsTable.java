@@ -176,4 +176,139 @@ public final class TestSharedStringsTable extends TestCase {
         return strs;
     }
 
+    public void testGetStringAt() {
+        SharedStringsTable sst = new SharedStringsTable();
+        CTRst st = CTRst.Factory.newInstance();
+        st.setT("Hello, World!");
+        int plain = sst.addEntry(st);
+        st = CTRst.Factory.newInstance();
+        st.addNewR().setT("Rich ");
+        st.addNewR().setT("text");
+        int rich = sst.addEntry(st);
+
+        String text = sst.getStringAt(plain);
+        assertEquals("Hello, World!", text);
+        // decoded once and then served from the cache
+        assertSame(text, sst.getStringAt(plain));
+        assertEquals("Rich text", sst.getStringAt(rich));
+
+        // beans handed out may be changed, their text is not cached any longer
+        new XSSFRichTextString(sst.getEntryAt(plain)).setString("Changed");
+        assertEquals("Changed", sst.getStringAt(plain));
+        sst.getEntryAt(plain).setT("Changed again");
+        assertEquals("Changed again", sst.getStringAt(plain));
+        assertSame(sst.getStringAt(rich), sst.getStringAt(rich));
+
+        // strings which don't fit into the cache are decoded every time
+        sst.setStringCacheLimit(5);
+        text = sst.getStringAt(rich);
+        assertEquals("Rich text", text);
+        assertNotSame(text, sst.getStringAt(rich));
+
+        try {
+            sst.getStringAt(2);
+            fail("expected IndexOutOfBoundsException");
+        } catch (IndexOutOfBoundsException e) {
+            // expected
+        }
+    }
+
+    public void testGetStringAtDoesNotDirtyTable() {
+        XSSFWorkbook wb = XSSFTestDataSamples.openSampleWorkbook("sample.xlsx");
+        SharedStringsTable sst = wb.getSharedStringSource();
+        assertFalse(sst.isDirty());
+        String text = wb.getSheetAt(0).getRow(0).getCell(0).getStringCellValue();
+        assertEquals(sst.getStringAt(0), text);
+        assertFalse(sst.isDirty());
+    }
+
+    public void testCompactStorageRoundTrip() throws IOException {
+        SharedStringsTable sst = new SharedStringsTable();
+        CTRst st = CTRst.Factory.newInstance();
+        st.setT(" a < b & c ");
+        assertEquals(0, sst.addEntry(st));
+        st = CTRst.Factory.newInstance();
+        CTRElt r = st.addNewR();
+        r.addNewRPr().addNewB().setVal(true);
+        r.setT("Bold");
+        st.addNewR().setT(" plain");
+        assertEquals(1, sst.addEntry(st));
+        // equal entries are found again, whether plain or rich
+        assertEquals(1, sst.addEntry(st));
+        st = CTRst.Factory.newInstance();
+        st.setT(" a < b & c ");
+        assertEquals(0, sst.addEntry(st));
+        assertEquals(4, sst.getCount());
+        assertEquals(2, sst.getUniqueCount());
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        sst.writeTo(out);
+        SharedStringsTable sst2 = new SharedStringsTable();
+        sst2.readFrom(new ByteArrayInputStream(out.toByteArray()));
+        assertEquals(4, sst2.getCount());
+        assertEquals(2, sst2.getUniqueCount());
+        assertEquals(" a < b & c ", sst2.getStringAt(0));
+        assertEquals("Bold plain", sst2.getStringAt(1));
+        assertEquals(2, sst2.getEntryAt(1).sizeOfRArray());
+        assertTrue(sst2.getEntryAt(1).getRArray(0).getRPr().getBArray(0).getVal());
+
+        // entries read from a file are found by addEntry
+        assertEquals(1, sst2.addEntry(sst.getEntryAt(1)));
+        assertEquals(0, sst2.addEntry(st));
+        assertEquals(2, sst2.getUniqueCount());
+        st = CTRst.Factory.newInstance();
+        st.setT("new");
+        assertEquals(2, sst2.addEntry(st));
+
+        // handed out entries are saved with their modifications
+        sst2.getEntryAt(0).setT("changed");
+        out = new ByteArrayOutputStream();
+        sst2.writeTo(out);
+        SharedStringsTable sst3 = new SharedStringsTable();
+        sst3.readFrom(new ByteArrayInputStream(out.toByteArray()));
+        assertEquals("changed", sst3.getStringAt(0));
+        assertEquals("Bold plain", sst3.getStringAt(1));
+        assertEquals("new", sst3.getStringAt(2));
+    }
+
+    public void testModifyItems() throws IOException {
+        SharedStringsTable sst = new SharedStringsTable();
+        for (String text : new String[] {"a", "b", "c"}) {
+            CTRst st = CTRst.Factory.newInstance();
+            st.setT(text);
+            sst.addEntry(st);
+        }
+        CTRst b = sst.getEntryAt(1);
+        List<CTRst> items = sst.getItems();
+
+        CTRst st = CTRst.Factory.newInstance();
+        st.setT("x");
+        assertEquals("a", items.set(0, st).getT());
+        st.setT("not stored");
+        assertEquals("x", sst.getStringAt(0));
+        CTRst x = CTRst.Factory.newInstance();
+        x.setT("x");
+        assertEquals(0, sst.addEntry(x));
+
+        st = CTRst.Factory.newInstance();
+        st.addNewR().setT("rich");
+        items.add(1, st);
+        assertEquals(4, items.size());
+        assertEquals("rich", sst.getStringAt(1));
+        assertSame(b, sst.getEntryAt(2));
+        assertEquals("c", items.remove(3).getT());
+        assertEquals(3, items.size());
+        assertEquals(1, sst.addEntry(st));
+
+        // handed out beans stay live after the entries moved
+        b.setT("changed");
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        sst.writeTo(out);
+        SharedStringsTable sst2 = new SharedStringsTable();
+        sst2.readFrom(new ByteArrayInputStream(out.toByteArray()));
+        assertEquals(3, sst2.getItems().size());
+        assertEquals("x", sst2.getStringAt(0));
+        assertEquals("rich", sst2.getStringAt(1));
+        assertEquals("changed", sst2.getStringAt(2));
+    }
 }
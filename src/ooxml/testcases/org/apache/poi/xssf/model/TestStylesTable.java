@@ -17,10 +17,18 @@
 
 package org.apache.poi.xssf.model;
 
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.Font;
 import org.apache.poi.xssf.usermodel.XSSFCellStyle;
+import org.apache.poi.xssf.usermodel.XSSFFont;
 import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.apache.poi.xssf.usermodel.extensions.XSSFCellBorder;
+import org.apache.poi.xssf.usermodel.extensions.XSSFCellFill;
 import org.apache.poi.xssf.XSSFTestDataSamples;
 
+import org.openxmlformats.schemas.spreadsheetml.x2006.main.CTFont;
+import org.openxmlformats.schemas.spreadsheetml.x2006.main.CTXf;
+
 import junit.framework.TestCase;
 
 public final class TestStylesTable extends TestCase {
@@ -148,4 +156,67 @@ public final class TestStylesTable extends TestCase {
 		assertEquals(nf1, st.putNumberFormat("YYYY-mm-dd"));
 		assertEquals(nf2, st.putNumberFormat("YYYY-mm-DD"));
 	}
+	public void testIndexedLookups() {
+		XSSFWorkbook workbook = XSSFTestDataSamples.openSampleWorkbook(testFile);
+		StylesTable st = workbook.getStylesSource();
+
+		// fonts are modified after they have been registered
+		XSSFFont font = workbook.createFont();
+		font.setBold(true);
+		font.setFontHeightInPoints((short)17);
+		assertSame(font, workbook.findFont(Font.BOLDWEIGHT_BOLD, font.getColor(), font.getFontHeight(),
+				font.getFontName(), false, false, Font.SS_NONE, Font.U_NONE));
+		assertEquals(font.getIndex(), st.putFont(new XSSFFont((CTFont)font.getCTFont().copy())));
+
+		// a stale entry is never returned
+		font.setItalic(true);
+		assertNull(workbook.findFont(Font.BOLDWEIGHT_BOLD, font.getColor(), font.getFontHeight(),
+				font.getFontName(), false, false, Font.SS_NONE, Font.U_NONE));
+		assertSame(font, workbook.findFont(Font.BOLDWEIGHT_BOLD, font.getColor(), font.getFontHeight(),
+				font.getFontName(), true, false, Font.SS_NONE, Font.U_NONE));
+
+		XSSFCellStyle style = workbook.createCellStyle();
+		style.setFont(font);
+		style.setFillPattern(CellStyle.SOLID_FOREGROUND);
+		style.setBorderTop(CellStyle.BORDER_THIN);
+		assertEquals(style.getIndex(), st.putStyle(style));
+		assertEquals(style.getCoreXf().getFillId(), st.putFill(new XSSFCellFill(st.getFillAt((int)style.getCoreXf().getFillId()).getCTFill())));
+		assertEquals(style.getCoreXf().getBorderId(), st.putBorder(new XSSFCellBorder(st.getBorderAt((int)style.getCoreXf().getBorderId()).getCTBorder())));
+
+		XSSFCellStyle found = st.findCellStyle((CTXf)style.getCoreXf().copy());
+		assertNotNull(found);
+		assertEquals(style.getIndex(), found.getIndex());
+		style.setWrapText(true);
+		assertNull(st.findCellStyle(CTXf.Factory.newInstance()));
+		CTXf wrapped = (CTXf)style.getCoreXf().copy();
+		assertEquals(style.getIndex(), st.findCellStyle(wrapped).getIndex());
+	}
+
+	public void testLookupsIgnoreAttributeOrder() {
+		StylesTable st = new StylesTable();
+
+		CTXf xf = CTXf.Factory.newInstance();
+		xf.setNumFmtId(14);
+		xf.setFontId(0);
+		xf.setFillId(0);
+		xf.setBorderId(0);
+		xf.setApplyNumberFormat(true);
+		xf.addNewAlignment().setWrapText(true);
+		xf.getAlignment().setIndent(2);
+		int idx = st.putCellXf(xf) - 1;
+
+		CTXf reordered = CTXf.Factory.newInstance();
+		reordered.addNewAlignment().setIndent(2);
+		reordered.getAlignment().setWrapText(true);
+		reordered.setApplyNumberFormat(true);
+		reordered.setBorderId(0);
+		reordered.setFillId(0);
+		reordered.setFontId(0);
+		reordered.setNumFmtId(14);
+		assertFalse(xf.toString().equals(reordered.toString()));
+		assertEquals(idx, st.findCellStyle(reordered).getIndex());
+
+		reordered.setApplyNumberFormat(false);
+		assertNull(st.findCellStyle(reordered));
+	}
 }
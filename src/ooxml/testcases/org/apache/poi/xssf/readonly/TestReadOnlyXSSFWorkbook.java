@@ -0,0 +1,237 @@
+/* ====================================================================
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+==================================================================== */
+
+package org.apache.poi.xssf.readonly;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Iterator;
+
+import junit.framework.TestCase;
+
+import org.apache.poi.hssf.HSSFTestDataSamples;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellValue;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.util.CellRangeAddress;
+import org.apache.poi.xssf.XSSFTestDataSamples;
+import org.apache.poi.xssf.usermodel.XSSFCell;
+import org.apache.poi.xssf.usermodel.XSSFFormulaEvaluator;
+import org.apache.poi.xssf.usermodel.XSSFRow;
+import org.apache.poi.xssf.usermodel.XSSFSheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.openxmlformats.schemas.spreadsheetml.x2006.main.STCellFormulaType;
+
+public final class TestReadOnlyXSSFWorkbook extends TestCase {
+
+    private static ReadOnlyXSSFWorkbook openSampleWorkbook(String sampleName) {
+        try {
+            return new ReadOnlyXSSFWorkbook(HSSFTestDataSamples.openSampleFileStream(sampleName));
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    public void testSameContentAsXSSF() {
+        String[] samples = {
+                "sample.xlsx", "shared_formulas.xlsx", "FormulaEvalTestData_Copy.xlsx",
+                "46535.xlsx", "InlineStrings.xlsx", "xlsx-jdbc.xlsx", "47813.xlsx", "DateFormatTests.xlsx"
+        };
+        for (String sample : samples) {
+            XSSFWorkbook expected = XSSFTestDataSamples.openSampleWorkbook(sample);
+            ReadOnlyXSSFWorkbook actual = openSampleWorkbook(sample);
+            assertEquals(sample, expected.getNumberOfSheets(), actual.getNumberOfSheets());
+            for (int i = 0; i < expected.getNumberOfSheets(); i++) {
+                assertSameSheet(sample, expected.getSheetAt(i), actual.getSheetAt(i));
+            }
+        }
+    }
+
+    private static void assertSameSheet(String sample, XSSFSheet expected, ReadOnlyXSSFSheet actual) {
+        String msg = sample + "!" + expected.getSheetName();
+        assertEquals(msg, expected.getSheetName(), actual.getSheetName());
+        assertEquals(msg, expected.getFirstRowNum(), actual.getFirstRowNum());
+        assertEquals(msg, expected.getLastRowNum(), actual.getLastRowNum());
+        assertEquals(msg, expected.getPhysicalNumberOfRows(), actual.getPhysicalNumberOfRows());
+        assertEquals(msg, expected.getNumMergedRegions(), actual.getNumMergedRegions());
+        for (int i = 0; i < expected.getNumMergedRegions(); i++) {
+            assertEquals(msg, expected.getMergedRegion(i).formatAsString(), actual.getMergedRegion(i).formatAsString());
+        }
+        assertEquals(msg, expected.getDefaultRowHeight(), actual.getDefaultRowHeight());
+
+        Iterator<Row> it = actual.rowIterator();
+        for (Row r : expected) {
+            XSSFRow expectedRow = (XSSFRow)r;
+            assertTrue(msg, it.hasNext());
+            Row actualRow = it.next();
+            assertSame(actualRow, actual.getRow(expectedRow.getRowNum()));
+            String rowMsg = msg + " row " + expectedRow.getRowNum();
+            assertEquals(rowMsg, expectedRow.getRowNum(), actualRow.getRowNum());
+            assertEquals(rowMsg, expectedRow.getFirstCellNum(), actualRow.getFirstCellNum());
+            assertEquals(rowMsg, expectedRow.getLastCellNum(), actualRow.getLastCellNum());
+            assertEquals(rowMsg, expectedRow.getPhysicalNumberOfCells(), actualRow.getPhysicalNumberOfCells());
+            assertEquals(rowMsg, expectedRow.getHeight(), actualRow.getHeight());
+            assertEquals(rowMsg, expectedRow.getZeroHeight(), actualRow.getZeroHeight());
+            assertEquals(rowMsg, expectedRow.isFormatted(), actualRow.isFormatted());
+
+            Iterator<Cell> cit = actualRow.cellIterator();
+            for (Cell c : expectedRow) {
+                assertTrue(rowMsg, cit.hasNext());
+                Cell actualCell = cit.next();
+                assertEquals(actualCell, actualRow.getCell(c.getColumnIndex()));
+                assertSameCell(msg + "!" + ((XSSFCell)c).getReference(), (XSSFCell)c, actualCell);
+            }
+            assertFalse(rowMsg, cit.hasNext());
+        }
+        assertFalse(msg, it.hasNext());
+    }
+
+    private static void assertSameCell(String msg, XSSFCell expected, Cell actual) {
+        assertEquals(msg, expected.getRowIndex(), actual.getRowIndex());
+        assertEquals(msg, expected.getColumnIndex(), actual.getColumnIndex());
+        assertEquals(msg, expected.getCellType(), actual.getCellType());
+        assertEquals(msg, expected.getCellStyle().getIndex(), actual.getCellStyle().getIndex());
+        int type = expected.getCellType();
+        if (type == Cell.CELL_TYPE_FORMULA) {
+            assertEquals(msg, expected.getCellFormula(), actual.getCellFormula());
+            assertEquals(msg, expected.isPartOfArrayFormulaGroup(), actual.isPartOfArrayFormulaGroup());
+            type = expected.getCachedFormulaResultType();
+            assertEquals(msg, type, actual.getCachedFormulaResultType());
+        }
+        switch (type) {
+            case Cell.CELL_TYPE_NUMERIC:
+                assertEquals(msg, expected.getNumericCellValue(), actual.getNumericCellValue(), 0);
+                break;
+            case Cell.CELL_TYPE_STRING:
+                assertEquals(msg, expected.getStringCellValue(), actual.getStringCellValue());
+                break;
+            case Cell.CELL_TYPE_BOOLEAN:
+                assertEquals(msg, expected.getBooleanCellValue(), actual.getBooleanCellValue());
+                break;
+            case Cell.CELL_TYPE_ERROR:
+                assertEquals(msg, expected.getErrorCellValue(), actual.getErrorCellValue());
+                break;
+        }
+        assertEquals(msg, expected.toString(), actual.toString());
+    }
+
+    public void testMissingCells() {
+        ReadOnlyXSSFWorkbook wb = openSampleWorkbook("sample.xlsx");
+        Sheet sheet = wb.getSheetAt(0);
+        Row row = sheet.getRow(sheet.getFirstRowNum());
+        int missing = row.getLastCellNum() + 10;
+        assertNull(row.getCell(missing));
+        Cell blank = row.getCell(missing, Row.CREATE_NULL_AS_BLANK);
+        assertEquals(Cell.CELL_TYPE_BLANK, blank.getCellType());
+        assertEquals(missing, blank.getColumnIndex());
+        assertEquals("", blank.getStringCellValue());
+        assertNull(sheet.getRow(sheet.getLastRowNum() + 1));
+    }
+
+    public void testReadOnly() {
+        ReadOnlyXSSFWorkbook wb = openSampleWorkbook("sample.xlsx");
+        Sheet sheet = wb.getSheetAt(0);
+        Row row = sheet.getRow(sheet.getFirstRowNum());
+        Cell cell = row.getCell(row.getFirstCellNum());
+        try {
+            wb.createSheet();
+            fail("expected UnsupportedOperationException");
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+        try {
+            sheet.createRow(sheet.getLastRowNum() + 1);
+            fail("expected UnsupportedOperationException");
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+        try {
+            row.createCell(0);
+            fail("expected UnsupportedOperationException");
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+        try {
+            cell.setCellValue(1.0);
+            fail("expected UnsupportedOperationException");
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+    }
+
+    public void testFormulaGroups() throws IOException {
+        XSSFWorkbook wb = new XSSFWorkbook();
+        XSSFSheet sheet = wb.createSheet();
+        for (int i = 0; i < 4; i++) {
+            sheet.createRow(i).createCell(0).setCellValue(i);
+        }
+        sheet.setArrayFormula("A1:A2*2", CellRangeAddress.valueOf("B1:B2"));
+        sheet.setArrayFormula("A3:A4*3", CellRangeAddress.valueOf("C3:C4"));
+        // a shared formula without a group index
+        XSSFCell plain = sheet.getRow(0).createCell(3);
+        plain.setCellFormula("A1+1");
+        plain.getCTCell().getF().setT(STCellFormulaType.SHARED);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        wb.write(out);
+        ReadOnlyXSSFWorkbook actual = new ReadOnlyXSSFWorkbook(new ByteArrayInputStream(out.toByteArray()));
+        Sheet actualSheet = actual.getSheetAt(0);
+
+        assertEquals("A1+1", actualSheet.getRow(0).getCell(3).getCellFormula());
+        assertEquals("A1:A2*2", actualSheet.getRow(1).getCell(1).getCellFormula());
+        assertEquals("B1:B2", actualSheet.getRow(1).getCell(1).getArrayFormulaRange().formatAsString());
+        assertEquals("A3:A4*3", actualSheet.getRow(3).getCell(2).getCellFormula());
+        assertFalse(actualSheet.getRow(3).getCell(0).isPartOfArrayFormulaGroup());
+    }
+
+    public void testEvaluate() {
+        String sample = "shared_formulas.xlsx";
+        XSSFWorkbook expected = XSSFTestDataSamples.openSampleWorkbook(sample);
+        XSSFFormulaEvaluator expectedEvaluator = new XSSFFormulaEvaluator(expected);
+        ReadOnlyXSSFWorkbook actual = openSampleWorkbook(sample);
+        ReadOnlyXSSFFormulaEvaluator evaluator = (ReadOnlyXSSFFormulaEvaluator)actual.getCreationHelper().createFormulaEvaluator();
+
+        int count = 0;
+        for (int i = 0; i < expected.getNumberOfSheets(); i++) {
+            for (Row r : expected.getSheetAt(i)) {
+                for (Cell c : r) {
+                    if (c.getCellType() != Cell.CELL_TYPE_FORMULA) continue;
+                    Cell actualCell = actual.getSheetAt(i).getRow(c.getRowIndex()).getCell(c.getColumnIndex());
+                    CellValue expectedValue = expectedEvaluator.evaluate(c);
+                    CellValue actualValue = evaluator.evaluate(actualCell);
+                    assertEquals(expectedValue.formatAsString(), actualValue.formatAsString());
+
+                    assertEquals(expectedValue.getCellType(), evaluator.evaluateFormulaCell(actualCell));
+                    assertEquals(Cell.CELL_TYPE_FORMULA, actualCell.getCellType());
+                    assertEquals(expectedValue.getCellType(), actualCell.getCachedFormulaResultType());
+                    count++;
+                }
+            }
+        }
+        assertTrue(count > 0);
+
+        evaluator.evaluateAll();
+        try {
+            evaluator.evaluateInCell(actual.getSheetAt(0).getRow(0).getCell(0));
+            fail("expected UnsupportedOperationException");
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+    }
+}
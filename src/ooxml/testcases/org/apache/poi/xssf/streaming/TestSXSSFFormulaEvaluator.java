@@ -0,0 +1,132 @@
+/* ====================================================================
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+==================================================================== */
+
+
+package org.apache.poi.xssf.streaming;
+
+import junit.framework.TestCase;
+
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellValue;
+import org.apache.poi.ss.usermodel.FormulaError;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.SXSSFITestDataProvider;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+
+public final class TestSXSSFFormulaEvaluator extends TestCase {
+
+    public void testEvaluateInWindow() {
+        SXSSFWorkbook wb = new SXSSFWorkbook(10);
+        Sheet sheet = wb.createSheet("Data");
+        Row row = sheet.createRow(0);
+        row.createCell(0).setCellValue(2);
+        row.createCell(1).setCellValue("abc");
+        Cell sum = row.createCell(2);
+        sum.setCellFormula("A1*3+A2");
+        sheet.createRow(1).createCell(0).setCellValue(1);
+
+        SXSSFFormulaEvaluator evaluator = new SXSSFFormulaEvaluator(wb);
+        CellValue cv = evaluator.evaluate(sum);
+        assertEquals(Cell.CELL_TYPE_NUMERIC, cv.getCellType());
+        assertEquals(7, cv.getNumberValue(), 0);
+
+        Cell text = row.createCell(3);
+        text.setCellFormula("UPPER(B1)");
+        assertEquals(Cell.CELL_TYPE_STRING, evaluator.evaluateFormulaCell(text));
+        assertEquals(Cell.CELL_TYPE_FORMULA, text.getCellType());
+        assertEquals("ABC", text.getStringCellValue());
+        assertEquals("ABC", text.getRichStringCellValue().getString());
+
+        Cell div0 = row.createCell(4);
+        div0.setCellFormula("A1/0");
+        evaluator.evaluateInCell(div0);
+        assertEquals(Cell.CELL_TYPE_ERROR, div0.getCellType());
+        assertEquals(FormulaError.DIV0.getCode(), div0.getErrorCellValue());
+    }
+
+    public void testEvaluateOnFlush() {
+        SXSSFWorkbook wb = new SXSSFWorkbook(5);
+        wb.setEvaluateFormulasOnFlush(true);
+        assertTrue(wb.isEvaluateFormulasOnFlush());
+        Sheet sheet = wb.createSheet("Data");
+        for (int i = 0; i < 100; i++) {
+            Row row = sheet.createRow(i);
+            row.createCell(0).setCellValue(i);
+            // running total
+            row.createCell(1).setCellFormula(i == 0 ? "A1" : "B" + i + "+A" + (i + 1));
+            row.createCell(2).setCellFormula("A" + (i + 1) + ">50");
+            row.createCell(3).setCellFormula("\"row \"&A" + (i + 1));
+            // refers to the next row, which is in the window when this one is flushed
+            row.createCell(4).setCellFormula("IF(ISNUMBER(A" + (i + 2) + "),A" + (i + 2) + ",NA())");
+        }
+
+        XSSFWorkbook xwb = (XSSFWorkbook)SXSSFITestDataProvider.instance.writeOutAndReadBack(wb);
+        Sheet xsh = xwb.getSheetAt(0);
+        for (int i = 0; i < 100; i++) {
+            Row row = xsh.getRow(i);
+            assertEquals(Cell.CELL_TYPE_NUMERIC, row.getCell(1).getCachedFormulaResultType());
+            assertEquals(i * (i + 1) / 2, row.getCell(1).getNumericCellValue(), 0);
+            assertEquals(Cell.CELL_TYPE_BOOLEAN, row.getCell(2).getCachedFormulaResultType());
+            assertEquals(i > 50, row.getCell(2).getBooleanCellValue());
+            assertEquals(Cell.CELL_TYPE_STRING, row.getCell(3).getCachedFormulaResultType());
+            assertEquals("row " + i, row.getCell(3).getStringCellValue());
+            if (i < 99) {
+                assertEquals(i + 1, row.getCell(4).getNumericCellValue(), 0);
+            } else {
+                assertEquals(Cell.CELL_TYPE_ERROR, row.getCell(4).getCachedFormulaResultType());
+                assertEquals(FormulaError.NA.getCode(), row.getCell(4).getErrorCellValue());
+            }
+        }
+    }
+
+    public void testReferenceOutsideWindow() {
+        SXSSFWorkbook wb = new SXSSFWorkbook(5);
+        Sheet sheet = wb.createSheet("Data");
+        for (int i = 0; i < 20; i++) {
+            sheet.createRow(i).createCell(0).setCellValue(i);
+        }
+        Cell cell = sheet.getRow(19).createCell(1);
+        cell.setCellFormula("SUM(A1:A20)");
+
+        SXSSFFormulaEvaluator evaluator = new SXSSFFormulaEvaluator(wb);
+        try {
+            evaluator.evaluateFormulaCell(cell);
+            fail("expected RowFlushedException");
+        } catch (SXSSFFormulaEvaluator.RowFlushedException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("Data!B20"));
+            assertTrue(e.getMessage(), e.getMessage().contains("SUM(A1:A20)"));
+            assertTrue(e.getMessage(), e.getMessage().contains("Data!A1 "));
+        }
+        // only the rows in the window are needed
+        cell.setCellFormula("SUM(A16:A20)");
+        assertEquals(Cell.CELL_TYPE_NUMERIC, evaluator.evaluateFormulaCell(cell));
+        assertEquals(85, cell.getNumericCellValue(), 0);
+
+        // the same failure while flushing
+        wb.setEvaluateFormulasOnFlush(true);
+        sheet.getRow(19).createCell(2).setCellFormula("A1");
+        try {
+            for (int i = 20; i < 30; i++) {
+                sheet.createRow(i);
+            }
+            fail("expected RowFlushedException");
+        } catch (SXSSFFormulaEvaluator.RowFlushedException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("Data!C20"));
+        }
+    }
+}
@@ -19,8 +19,12 @@
 
 package org.apache.poi.xssf.streaming;
 
+import java.util.Iterator;
+
 import org.apache.poi.ss.SpreadsheetVersion;
 import org.apache.poi.ss.usermodel.BaseTestRow;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellStyle;
 import org.apache.poi.xssf.SXSSFITestDataProvider;
 
 /**
@@ -40,4 +44,111 @@ public final class TestSXSSFRow extends BaseTestRow {
         baseTestCellBounds(SpreadsheetVersion.EXCEL2007.getLastColumnIndex());
     }
 
+    /**
+     * SXSSF does not keep the cell objects, the iterator returns new cells for the same columns
+     */
+    @Override
+    public void testCellIterator() {
+        SXSSFWorkbook wb = new SXSSFWorkbook();
+        SXSSFRow row = (SXSSFRow)wb.createSheet().createRow(0);
+
+        row.createCell(1);
+        assertColumns(row, 1);
+        row.createCell(99);
+        assertColumns(row, 1, 99);
+        row.createCell(0);
+        assertColumns(row, 0, 1, 99);
+        row.createCell(1).setCellValue("replaced");
+        assertColumns(row, 0, 1, 99);
+        assertEquals("replaced", row.getCell(1).getStringCellValue());
+        Cell cell5 = row.createCell(2, Cell.CELL_TYPE_STRING);
+        assertColumns(row, 0, 1, 2, 99);
+        assertEquals(Cell.CELL_TYPE_STRING, cell5.getCellType());
+    }
+
+    private static void assertColumns(SXSSFRow row, int... columns) {
+        Iterator<Cell> it = row.cellIterator();
+        for (int column : columns) {
+            assertTrue(it.hasNext());
+            Cell cell = it.next();
+            assertEquals(column, cell.getColumnIndex());
+            assertSame(row, cell.getRow());
+        }
+        assertFalse(it.hasNext());
+    }
+
+    /**
+     * Cells are handles to the columns of the row, removed cells must keep their data
+     */
+    public void testDetachedCells() {
+        SXSSFWorkbook wb = new SXSSFWorkbook();
+        CellStyle style = wb.createCellStyle();
+        SXSSFRow row = (SXSSFRow)wb.createSheet().createRow(0);
+
+        Cell removed = row.createCell(1);
+        removed.setCellValue("removed");
+        removed.setCellStyle(style);
+        row.removeCell(removed);
+        assertNull(row.getCell(1));
+        assertEquals(-1, row.getLastCellNum());
+        assertEquals("removed", removed.getStringCellValue());
+        assertEquals(style.getIndex(), removed.getCellStyle().getIndex());
+        assertSame(row, removed.getRow());
+
+        // the row does not keep the handles, a replaced cell refers to the new cell of the column
+        Cell replaced = row.createCell(3);
+        replaced.setCellFormula("A1+1");
+        Cell cell = row.createCell(3);
+        assertEquals(Cell.CELL_TYPE_BLANK, cell.getCellType());
+        assertEquals(Cell.CELL_TYPE_BLANK, replaced.getCellType());
+        cell.setCellValue(2.5);
+        assertNotSame(cell, row.getCell(3));
+        assertEquals(3, row.getCell(3).getColumnIndex());
+        assertEquals(2.5, row.getCell(3).getNumericCellValue(), 0);
+    }
+
+    /**
+     * A cell created outside of a row only allocates its storage when it is written to
+     */
+    public void testStandaloneCell() {
+        SXSSFWorkbook wb = new SXSSFWorkbook();
+        SXSSFRow row = (SXSSFRow)wb.createSheet().createRow(0);
+
+        SXSSFCell cell = new SXSSFCell(row, Cell.CELL_TYPE_BLANK);
+        assertNull(cell._data);
+        assertEquals(Cell.CELL_TYPE_BLANK, cell.getCellType());
+        assertEquals("", cell.getStringCellValue());
+        assertEquals(0, cell.getCellStyle().getIndex());
+        assertNull(row.getCell(0));
+
+        cell.setCellValue("standalone");
+        assertNotNull(cell._data);
+        assertNotSame(row, cell._data);
+        assertEquals("standalone", cell.getStringCellValue());
+        assertNull(row.getCell(0));
+    }
+
+    /**
+     * Values, types and styles survive growing the column arrays
+     */
+    public void testWideRow() {
+        SXSSFWorkbook wb = new SXSSFWorkbook();
+        CellStyle style = wb.createCellStyle();
+        SXSSFRow row = new SXSSFRow((SXSSFSheet)wb.createSheet(), 1);
+        for (int i = 0; i < 100; i += 3) {
+            row.createCell(i).setCellValue(i);
+            row.createCell(i + 1).setCellValue("s" + i);
+            row.getCell(i + 1).setCellStyle(style);
+        }
+        assertEquals(68, row.getPhysicalNumberOfCells());
+        assertEquals(101, row.getLastCellNum());
+        for (int i = 0; i < 100; i += 3) {
+            assertEquals(i, row.getCell(i).getNumericCellValue(), 0);
+            assertEquals(0, row.getCell(i).getCellStyle().getIndex());
+            assertEquals("s" + i, row.getCell(i + 1).getStringCellValue());
+            assertEquals(style.getIndex(), row.getCell(i + 1).getCellStyle().getIndex());
+            assertNull(row.getCell(i + 2));
+        }
+    }
+
 }
@@ -0,0 +1,156 @@
+/* ====================================================================
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+==================================================================== */
+
+
+package org.apache.poi.xssf.streaming;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import junit.framework.TestCase;
+
+public final class TestSXSSFRowWindow extends TestCase {
+
+    private static SXSSFRow newRow() {
+        return new SXSSFRow(null, 1);
+    }
+
+    public void testAppendAndFlush() {
+        SXSSFRowWindow window = new SXSSFRowWindow(3);
+        assertEquals(0, window.size());
+        assertNull(window.first());
+
+        // wrap around the ring several times
+        for (int i = 0; i < 20; i++) {
+            SXSSFRow row = newRow();
+            window.put(i * 2, row);
+            assertSame(row, window.get(i * 2));
+            assertNull(window.get(i * 2 + 1));
+            assertEquals(i * 2, window.getRowNum(row));
+            if (window.size() > 3) {
+                window.removeFirst();
+            }
+            assertEquals(i * 2, window.lastRowNum());
+        }
+        assertEquals(3, window.size());
+        assertEquals(34, window.firstRowNum());
+        assertNull(window.get(32));
+
+        Iterator<SXSSFRow> iter = window.iterator(35, 38);
+        assertSame(window.get(36), iter.next());
+        assertSame(window.get(38), iter.next());
+        assertFalse(iter.hasNext());
+    }
+
+    public void testReplaceAndRemove() {
+        SXSSFRowWindow window = new SXSSFRowWindow(-1);
+        SXSSFRow[] rows = new SXSSFRow[50];
+        for (int i = 0; i < rows.length; i++) {
+            rows[i] = newRow();
+            window.put(i, rows[i]);
+        }
+        SXSSFRow replacement = newRow();
+        window.put(49, replacement);
+        assertSame(replacement, window.get(49));
+        assertEquals(50, window.size());
+        assertEquals(-1, window.getRowNum(rows[49]));
+
+        assertTrue(window.remove(rows[10]));
+        assertFalse(window.remove(rows[10]));
+        assertNull(window.get(10));
+        assertSame(rows[11], window.get(11));
+        assertEquals(49, window.size());
+
+        Iterator<SXSSFRow> iter = window.iterator();
+        while (iter.hasNext()) {
+            if (iter.next() == rows[20]) iter.remove();
+        }
+        assertNull(window.get(20));
+        assertSame(rows[21], window.get(21));
+        assertEquals(48, window.size());
+    }
+
+    /**
+     * Rows created out of order switch to the sorted map and back once the window is empty
+     */
+    public void testOutOfOrder() {
+        SXSSFRowWindow window = new SXSSFRowWindow(10);
+        SXSSFRow row5 = newRow();
+        SXSSFRow row2 = newRow();
+        window.put(5, row5);
+        window.put(2, row2);
+        assertEquals(2, window.firstRowNum());
+        assertEquals(5, window.lastRowNum());
+        assertSame(row2, window.first());
+        assertEquals(2, window.getRowNum(row2));
+        window.removeFirst();
+        window.removeFirst();
+        assertEquals(0, window.size());
+
+        SXSSFRow row1 = newRow();
+        window.put(1, row1);
+        assertSame(row1, window.get(1));
+        assertEquals(1, window.lastRowNum());
+    }
+
+    public void testAgainstSortedMap() {
+        Random rnd = new Random(1234);
+        SXSSFRowWindow window = new SXSSFRowWindow(8);
+        TreeMap<Integer, SXSSFRow> expected = new TreeMap<Integer, SXSSFRow>();
+        int next = 0;
+        for (int i = 0; i < 10000; i++) {
+            int op = rnd.nextInt(10);
+            if (op < 6) {
+                // mostly append, sometimes go back
+                int rownum = rnd.nextInt(20) == 0 ? rnd.nextInt(next + 1) : next++;
+                SXSSFRow row = newRow();
+                window.put(rownum, row);
+                expected.put(rownum, row);
+                // like createRow, keep the window at its size
+                if (expected.size() > 8) {
+                    window.removeFirst();
+                    expected.remove(expected.firstKey());
+                }
+            } else if (op < 9) {
+                if (!expected.isEmpty()) {
+                    assertSame(expected.get(expected.firstKey()), window.first());
+                    window.removeFirst();
+                    expected.remove(expected.firstKey());
+                }
+            } else if (!expected.isEmpty()) {
+                Integer key = expected.lastKey();
+                assertTrue(window.remove(expected.remove(key)));
+            }
+
+            assertEquals(expected.size(), window.size());
+            if (!expected.isEmpty()) {
+                assertEquals(expected.firstKey().intValue(), window.firstRowNum());
+                assertEquals(expected.lastKey().intValue(), window.lastRowNum());
+            }
+            Iterator<SXSSFRow> iter = window.iterator();
+            for (Map.Entry<Integer, SXSSFRow> entry : expected.entrySet()) {
+                SXSSFRow row = iter.next();
+                assertSame(entry.getValue(), row);
+                assertSame(row, window.get(entry.getKey()));
+                assertEquals(entry.getKey().intValue(), window.getRowNum(row));
+            }
+            assertFalse(iter.hasNext());
+        }
+    }
+}
@@ -19,8 +19,21 @@
 
 package org.apache.poi.xssf.streaming;
 
+import java.io.IOException;
+import java.util.Calendar;
+import java.util.Date;
+
 import org.apache.poi.ss.usermodel.BaseTestSheet;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.DateUtil;
+import org.apache.poi.ss.usermodel.FormulaError;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.util.CellRangeAddress;
 import org.apache.poi.xssf.SXSSFITestDataProvider;
+import org.apache.poi.xssf.usermodel.XSSFRichTextString;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 
 
 public class TestSXSSFSheet extends BaseTestSheet {
@@ -83,4 +96,92 @@ public class TestSXSSFSheet extends BaseTestSheet {
     public void testDefaultColumnStyle() {
         //TODO column styles are not yet supported by XSSF
     }
+
+    public void testAppendRows() throws IOException {
+        SXSSFWorkbook wb = new SXSSFWorkbook(10);
+        CellStyle dateStyle = wb.createCellStyle();
+        dateStyle.setDataFormat(wb.createDataFormat().getFormat("yyyy-mm-dd"));
+        CellStyle[] columnStyles = { null, null, dateStyle };
+        Date date = DateUtil.getJavaDate(40000);
+
+        SXSSFSheet sheet = (SXSSFSheet)wb.createSheet();
+        sheet.createRow(0).createCell(0).setCellValue("header");
+        assertEquals(1, sheet.appendRow(new Object[] { "a", 1, date, null, true }, columnStyles));
+        assertNull(sheet.getRow(0));
+        assertEquals(3, sheet.appendRows(new Object[][] {
+                { new XSSFRichTextString("rich"), 2.5d },
+                { null, Double.POSITIVE_INFINITY, Calendar.getInstance() }
+        }, columnStyles));
+        assertEquals(4, sheet.appendRow(new double[] { 1, 2, 3 }, null));
+        assertEquals(5, sheet.getPhysicalNumberOfRows());
+        // rows can still be created after the appended ones
+        sheet.createRow(5).createCell(1).setCellValue("footer");
+
+        try {
+            sheet.appendRow(new Object[] { new Object() }, null);
+            fail("expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+
+        XSSFWorkbook xwb = (XSSFWorkbook)SXSSFITestDataProvider.instance.writeOutAndReadBack(wb);
+        Sheet xsh = xwb.getSheetAt(0);
+        assertEquals("header", xsh.getRow(0).getCell(0).getStringCellValue());
+        Row row = xsh.getRow(1);
+        assertEquals("a", row.getCell(0).getStringCellValue());
+        assertEquals(1, row.getCell(1).getNumericCellValue(), 0);
+        assertEquals(40000, row.getCell(2).getNumericCellValue(), 0);
+        assertEquals("yyyy-mm-dd", row.getCell(2).getCellStyle().getDataFormatString());
+        assertNull(row.getCell(3));
+        assertTrue(row.getCell(4).getBooleanCellValue());
+        row = xsh.getRow(2);
+        assertEquals("rich", row.getCell(0).getStringCellValue());
+        assertEquals(2.5, row.getCell(1).getNumericCellValue(), 0);
+        row = xsh.getRow(3);
+        assertNull(row.getCell(0));
+        assertEquals(Cell.CELL_TYPE_ERROR, row.getCell(1).getCellType());
+        assertEquals(FormulaError.DIV0.getCode(), row.getCell(1).getErrorCellValue());
+        assertEquals(Cell.CELL_TYPE_NUMERIC, row.getCell(2).getCellType());
+        row = xsh.getRow(4);
+        assertEquals(3, row.getCell(2).getNumericCellValue(), 0);
+        assertEquals(0, row.getCell(2).getCellStyle().getIndex());
+        assertEquals("footer", xsh.getRow(5).getCell(1).getStringCellValue());
+    }
+
+    public void testAutoSizeFlushedColumns() throws IOException {
+        XSSFWorkbook xwb = new XSSFWorkbook();
+        Sheet xsh = xwb.createSheet();
+        SXSSFWorkbook wb = new SXSSFWorkbook(10);
+        SXSSFSheet sheet = (SXSSFSheet)wb.createSheet();
+        sheet.trackColumnForAutoSizing(0);
+        sheet.trackColumnForAutoSizing(2);
+        assertTrue(sheet.isColumnTrackedForAutoSizing(0));
+        assertFalse(sheet.isColumnTrackedForAutoSizing(1));
+        for (Sheet sh : new Sheet[] { xsh, sheet }) {
+            sh.addMergedRegion(new CellRangeAddress(50, 50, 2, 3));
+            for (int i = 0; i < 100; i++) {
+                Row row = sh.createRow(i);
+                String text = i == 5 ? "a rather long text in the fifth row" : "short";
+                row.createCell(0).setCellValue(text);
+                row.createCell(1).setCellValue(text);
+                row.createCell(2).setCellValue(i == 50 ? "a merged text which is wider" : "x");
+            }
+        }
+        // the long text of column 1 is flushed and untracked
+        sheet.autoSizeColumn(1);
+        xsh.autoSizeColumn(1);
+        assertTrue(sheet.getColumnWidth(1) < xsh.getColumnWidth(1));
+        for (int column : new int[] { 0, 2 }) {
+            for (boolean useMergedCells : new boolean[] { false, true }) {
+                sheet.autoSizeColumn(column, useMergedCells);
+                xsh.autoSizeColumn(column, useMergedCells);
+                assertEquals(xsh.getColumnWidth(column), sheet.getColumnWidth(column));
+            }
+        }
+
+        sheet.untrackAllColumnsForAutoSizing();
+        assertFalse(sheet.isColumnTrackedForAutoSizing(0));
+        sheet.autoSizeColumn(0);
+        assertTrue(sheet.getColumnWidth(0) < xsh.getColumnWidth(0));
+    }
 }
@@ -19,12 +19,26 @@
 
 package org.apache.poi.xssf.streaming;
 
+import org.apache.poi.hssf.HSSFTestDataSamples;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.util.Nullable;
 import org.apache.poi.ss.usermodel.*;
 import org.apache.poi.ss.util.CellReference;
+import org.apache.poi.util.IOUtils;
 import org.apache.poi.xssf.SXSSFITestDataProvider;
 import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
 
 public final class TestSXSSFWorkbook extends BaseTestWorkbook {
 
@@ -137,6 +151,36 @@ public final class TestSXSSFWorkbook extends BaseTestWorkbook {
     	assertEquals("value 3_1_1", cell3_1_1.getStringCellValue());
     }
 
+    /**
+     * The template rows span several chunks of the zip marshaller,
+     * the sheet data must be spliced in after all of them
+     */
+    public void testAddToLargeExistingSheet() {
+        XSSFWorkbook xssfWorkbook = new XSSFWorkbook();
+        Sheet template = xssfWorkbook.createSheet("S1");
+        for(int i = 0; i < 500; i++){
+            template.createRow(i).createCell(0).setCellValue("sheetData template " + i);
+        }
+        xssfWorkbook.createSheet("S2");
+        SXSSFWorkbook wb = new SXSSFWorkbook(xssfWorkbook, 10);
+        Sheet sheet = wb.getSheetAt(0);
+        for(int i = 500; i < 600; i++){
+            sheet.createRow(i).createCell(0).setCellValue("</sheetData> streamed " + i);
+        }
+        wb.getSheetAt(1).createRow(0).createCell(0).setCellValue("<sheetData/>");
+
+        xssfWorkbook = (XSSFWorkbook) SXSSFITestDataProvider.instance.writeOutAndReadBack(wb);
+        sheet = xssfWorkbook.getSheetAt(0);
+        assertEquals(600, sheet.getPhysicalNumberOfRows());
+        for(int i = 0; i < 500; i++){
+            assertEquals("sheetData template " + i, sheet.getRow(i).getCell(0).getStringCellValue());
+        }
+        for(int i = 500; i < 600; i++){
+            assertEquals("</sheetData> streamed " + i, sheet.getRow(i).getCell(0).getStringCellValue());
+        }
+        assertEquals("<sheetData/>", xssfWorkbook.getSheetAt(1).getRow(0).getCell(0).getStringCellValue());
+    }
+
     public void testSheetdataWriter(){
         SXSSFWorkbook wb = new SXSSFWorkbook();
         SXSSFSheet sh = (SXSSFSheet)wb.createSheet();
@@ -205,4 +249,259 @@ public final class TestSXSSFWorkbook extends BaseTestWorkbook {
         
     }
 
+
+    public void testGZipCompressionLevel() throws IOException {
+        SXSSFWorkbook wb = new SXSSFWorkbook(10);
+        wb.setCompressTempFiles(true);
+        wb.setTempFileCompressionLevel(Deflater.BEST_SPEED);
+        SXSSFSheet sh = (SXSSFSheet)wb.createSheet();
+        assertTrue(sh.getSheetDataWriter() instanceof GZIPSheetDataWriter);
+        for(int i = 0; i < 100; i++){
+            sh.createRow(i).createCell(0).setCellValue("value " + i);
+        }
+        XSSFWorkbook xwb = (XSSFWorkbook)SXSSFITestDataProvider.instance.writeOutAndReadBack(wb);
+        for(int i = 0; i < 100; i++){
+            assertEquals("value " + i, xwb.getSheetAt(0).getRow(i).getCell(0).getStringCellValue());
+        }
+
+        try {
+            wb.setTempFileCompressionLevel(10);
+            fail("expected IllegalArgumentException");
+        } catch (IllegalArgumentException e){
+            // expected
+        }
+    }
+
+    public void testInMemorySheetDataWriter() throws IOException {
+        SXSSFWorkbook wb = new SXSSFWorkbook(null, 10, false, true);
+        wb.setSheetDataWriterFactory(new SheetDataWriterFactory() {
+            public SheetDataWriter createSheetDataWriter() throws IOException {
+                return new InMemorySheetDataWriter(100000);
+            }
+        });
+        SXSSFSheet small = (SXSSFSheet)wb.createSheet("small");
+        SXSSFSheet large = (SXSSFSheet)wb.createSheet("large");
+        for(int i = 0; i < 20; i++){
+            small.createRow(i).createCell(0).setCellValue("label " + (i % 3));
+        }
+        for(int i = 0; i < 5000; i++){
+            Row row = large.createRow(i);
+            row.createCell(0).setCellValue("label " + (i % 3));
+            row.createCell(1).setCellValue(i);
+        }
+        small.flushRows();
+        large.flushRows();
+        InMemorySheetDataWriter smallWriter = (InMemorySheetDataWriter)small.getSheetDataWriter();
+        InMemorySheetDataWriter largeWriter = (InMemorySheetDataWriter)large.getSheetDataWriter();
+        assertNull(smallWriter.getTempFile());
+        assertFalse(smallWriter.isSpilled());
+        assertTrue(largeWriter.isSpilled());
+        assertNotNull(largeWriter.getTempFile());
+        assertTrue(largeWriter.getTempFile().length() > 100000);
+
+        XSSFWorkbook xwb = (XSSFWorkbook)SXSSFITestDataProvider.instance.writeOutAndReadBack(wb);
+        assertEquals(3, xwb.getSharedStringSource().getUniqueCount());
+        for(int i = 0; i < 20; i++){
+            assertEquals("label " + (i % 3), xwb.getSheet("small").getRow(i).getCell(0).getStringCellValue());
+        }
+        for(int i = 0; i < 5000; i++){
+            Row row = xwb.getSheet("large").getRow(i);
+            assertEquals("label " + (i % 3), row.getCell(0).getStringCellValue());
+            assertEquals(i, (int)row.getCell(1).getNumericCellValue());
+        }
+    }
+
+    public void testSharedStringsTable(){
+        SXSSFWorkbook wb = new SXSSFWorkbook(null, 10, false, true);
+        wb.setSharedStringsLimit(5);
+        Sheet sh = wb.createSheet();
+        int rowNum = 100;
+        for(int i = 0; i < rowNum; i++){
+            Row row = sh.createRow(i);
+            // repeating labels go to the shared strings table
+            row.createCell(0).setCellValue("label" + (i % 3));
+            // unique values exceed the limit and are written inline
+            row.createCell(1).setCellValue("value" + i);
+        }
+        XSSFWorkbook xwb = (XSSFWorkbook)SXSSFITestDataProvider.instance.writeOutAndReadBack(wb);
+        // three labels plus the first two values
+        assertEquals(5, xwb.getSharedStringSource().getUniqueCount());
+        assertEquals(rowNum + 2, xwb.getSharedStringSource().getCount());
+        Sheet xsh = xwb.getSheetAt(0);
+        for(int i = 0; i < rowNum; i++){
+            Row row = xsh.getRow(i);
+            assertEquals("label" + (i % 3), row.getCell(0).getStringCellValue());
+            assertEquals("value" + i, row.getCell(1).getStringCellValue());
+        }
+
+        try {
+            new SXSSFWorkbook().setSharedStringsLimit(10);
+            fail("expected IllegalStateException");
+        } catch (IllegalStateException e){
+            // expected
+        }
+    }
+
+    public void testSharedStringsTableUtf8Writer(){
+        SXSSFWorkbook wb = new SXSSFWorkbook(null, 10, false, true);
+        wb.setUseUtf8SheetDataWriter(true);
+        Sheet sh = wb.createSheet();
+        for(int i = 0; i < 50; i++){
+            sh.createRow(i).createCell(0).setCellValue(" padded <" + (i % 4) + "> ");
+        }
+        XSSFWorkbook xwb = (XSSFWorkbook)SXSSFITestDataProvider.instance.writeOutAndReadBack(wb);
+        assertEquals(4, xwb.getSharedStringSource().getUniqueCount());
+        for(int i = 0; i < 50; i++){
+            assertEquals(" padded <" + (i % 4) + "> ", xwb.getSheetAt(0).getRow(i).getCell(0).getStringCellValue());
+        }
+    }
+
+    /**
+     * The template sheets of a package opened from a file may be copied as raw entries,
+     * the rows of the streamed sheets must still be added
+     */
+    public void testTemplateFromFile() throws Exception {
+        for(int threads = 1; threads <= 2; threads++){
+            OPCPackage pkg = OPCPackage.open(HSSFTestDataSamples.getSampleFile("sample.xlsx").getPath());
+            try {
+                XSSFWorkbook template = new XSSFWorkbook(pkg);
+                int lastRow = template.getSheetAt(0).getLastRowNum();
+                String first = template.getSheetAt(0).getRow(0).getCell(0).toString();
+                SXSSFWorkbook wb = new SXSSFWorkbook(template);
+                wb.setWriteThreads(threads);
+                wb.getSheetAt(0).createRow(lastRow + 10).createCell(0).setCellValue("streamed");
+                XSSFWorkbook wb2 = (XSSFWorkbook)SXSSFITestDataProvider.instance.writeOutAndReadBack(wb);
+                assertEquals("streamed", wb2.getSheetAt(0).getRow(lastRow + 10).getCell(0).getStringCellValue());
+                assertEquals(first, wb2.getSheetAt(0).getRow(0).getCell(0).toString());
+            } finally {
+                // leave the sample unchanged
+                pkg.revert();
+            }
+        }
+    }
+
+    public void testRawTemplateSheetEntry() throws Exception {
+        SXSSFWorkbook wb = new SXSSFWorkbook(10);
+        SXSSFSheet sheet = (SXSSFSheet)wb.createSheet();
+        sheet.createRow(0).createCell(0).setCellValue(42);
+        String name = wb.getXSSFWorkbook().getSheetAt(0).getPackagePart().getPartName().getName().substring(1);
+        byte[] template = "<worksheet><sheetData/></worksheet>".getBytes("UTF-8");
+
+        ByteArrayOutputStream deflated = new ByteArrayOutputStream();
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        DeflaterOutputStream dos = new DeflaterOutputStream(deflated, deflater);
+        dos.write(template);
+        dos.close();
+        CRC32 crc = new CRC32();
+        crc.update(template);
+        ZipEntry raw = new ZipEntry(name);
+        raw.setMethod(ZipEntry.DEFLATED);
+        raw.setCrc(crc.getValue());
+        raw.setSize(template.length);
+        raw.setCompressedSize(deflated.size());
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        SheetDataInjectingZipOutputStream zos = new SheetDataInjectingZipOutputStream(out, wb, 1);
+        zos.writeRawEntry(raw, new ByteArrayInputStream(deflated.toByteArray()));
+        zos.close();
+
+        ZipInputStream zis = new ZipInputStream(new ByteArrayInputStream(out.toByteArray()));
+        assertEquals(name, zis.getNextEntry().getName());
+        String xml = new String(IOUtils.toByteArray(zis), "UTF-8");
+        assertTrue(xml, xml.startsWith("<worksheet><sheetData>\n<row r=\"1\">"));
+        assertTrue(xml, xml.endsWith("</sheetData></worksheet>"));
+    }
+
+    /**
+     * Sheets filled from separate threads and written with several threads must produce
+     * the same package as the sequential path, byte for byte
+     */
+    public void testParallelSheets() throws Exception {
+        assertSameOutput(false, true);
+    }
+
+    /**
+     * With a shared strings table the indexes of the strings in the rows flushed by
+     * write do not depend on the number of threads
+     */
+    public void testParallelSheetsSharedStrings() throws Exception {
+        assertSameOutput(true, false);
+    }
+
+    /**
+     * @param concurrentFill whether the sheets of the parallel workbook are filled from separate threads
+     */
+    private static void assertSameOutput(boolean useSharedStringsTable, boolean concurrentFill) throws Exception {
+        final int sheetCount = 6;
+        while(true){
+            SXSSFWorkbook sequential = new SXSSFWorkbook(null, 10, false, useSharedStringsTable);
+            for(int s = 0; s < sheetCount; s++){
+                fillSheet(sequential.createSheet("Sheet" + s), s);
+            }
+
+            SXSSFWorkbook parallel = new SXSSFWorkbook(null, 10, false, useSharedStringsTable);
+            parallel.setWriteThreads(4);
+            final Sheet[] sheets = new Sheet[sheetCount];
+            for(int s = 0; s < sheetCount; s++){
+                sheets[s] = parallel.createSheet("Sheet" + s);
+            }
+            if(concurrentFill){
+                final Throwable[] errors = new Throwable[sheetCount];
+                Thread[] threads = new Thread[sheetCount];
+                for(int s = 0; s < sheetCount; s++){
+                    final int sheetIndex = s;
+                    threads[s] = new Thread(){
+                        public void run(){
+                            try {
+                                fillSheet(sheets[sheetIndex], sheetIndex);
+                            } catch (Throwable e){
+                                errors[sheetIndex] = e;
+                            }
+                        }
+                    };
+                    threads[s].start();
+                }
+                for(int s = 0; s < sheetCount; s++){
+                    threads[s].join();
+                    assertNull(errors[s]);
+                }
+            } else {
+                for(int s = 0; s < sheetCount; s++){
+                    fillSheet(sheets[s], s);
+                }
+            }
+
+            // zip entries get the time they are written at, with a resolution of two seconds
+            long time = System.currentTimeMillis() / 2000;
+            byte[] expected = writeOut(sequential);
+            byte[] actual = writeOut(parallel);
+            if(System.currentTimeMillis() / 2000 != time) continue;
+
+            assertTrue(Arrays.equals(expected, actual));
+            XSSFWorkbook xwb = new XSSFWorkbook(new ByteArrayInputStream(actual));
+            assertEquals("sheet 5 row 999", xwb.getSheetAt(5).getRow(999).getCell(0).getStringCellValue());
+            assertEquals("last", xwb.getSheetAt(5).getRow(1000).getCell(0).getStringCellValue());
+            return;
+        }
+    }
+
+    private static void fillSheet(Sheet sheet, int sheetIndex){
+        for(int i = 0; i < 1000; i++){
+            Row row = sheet.createRow(i);
+            row.createCell(0).setCellValue("sheet " + sheetIndex + " row " + i);
+            row.createCell(1).setCellValue(i * 1.5 + sheetIndex);
+            row.createCell(2).setCellValue(i % 2 == 0);
+        }
+        // a few rows remain in the window and are flushed by write
+        sheet.createRow(1000).createCell(0).setCellValue("last");
+    }
+
+    private static byte[] writeOut(SXSSFWorkbook wb) throws IOException {
+        // the core properties hold the creation time of the workbook
+        wb.getXSSFWorkbook().getProperties().getCoreProperties().setCreated(new Nullable<Date>(new Date(0)));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        wb.write(out);
+        return out.toByteArray();
+    }
+
 }
@@ -0,0 +1,148 @@
+/* ====================================================================
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+==================================================================== */
+
+package org.apache.poi.xssf.streaming;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.FormulaError;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.ss.util.CellReference;
+import org.apache.poi.xssf.SXSSFITestDataProvider;
+
+public final class TestUtf8SheetDataWriter extends TestCase {
+
+    private static String format(double value) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Utf8Writer w = new Utf8Writer(out);
+        w.writeDouble(value);
+        w.close();
+        return new String(out.toByteArray(), "UTF-8");
+    }
+
+    public void testWriteDouble() throws IOException {
+        assertEquals("0", format(0.0));
+        assertEquals("1", format(1.0));
+        assertEquals("-42", format(-42.0));
+        assertEquals("0.1", format(0.1));
+        assertEquals("1234.56", format(1234.56));
+        assertEquals("-0.005", format(-0.005));
+        assertEquals("0.3333333333333333", format(1.0 / 3));
+        assertEquals(Double.toString(1e300), format(1e300));
+
+        Random rnd = new Random(12345);
+        for (int i = 0; i < 10000; i++) {
+            double[] values = {
+                    rnd.nextDouble(),
+                    rnd.nextInt(),
+                    rnd.nextInt(1000000) / 100.0,
+                    (rnd.nextDouble() - 0.5) * Math.pow(10, rnd.nextInt(40) - 20),
+                    Double.longBitsToDouble(rnd.nextLong())
+            };
+            for (double value : values) {
+                if (Double.isNaN(value) || Double.isInfinite(value)) continue;
+                String str = format(value);
+                assertEquals(str, value, Double.parseDouble(str));
+            }
+        }
+    }
+
+    public void testWriteCellReference() throws IOException {
+        int[] columns = {0, 1, 25, 26, 27, 51, 52, 701, 702, 703, 16383};
+        int[] rows = {0, 9, 99, 1048575};
+        for (int col : columns) {
+            for (int row : rows) {
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                Utf8Writer w = new Utf8Writer(out);
+                w.writeCellReference(row, col);
+                w.close();
+                assertEquals(new CellReference(row, col).formatAsString(), new String(out.toByteArray(), "UTF-8"));
+            }
+        }
+    }
+
+    public void testWriteEscaped() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Utf8Writer w = new Utf8Writer(out);
+        w.writeEscaped("\u0000<a&b>\"\t\r\n \u00e9\u2122\uD83D\uDE00");
+        w.close();
+        assertEquals("?&lt;a&amp;b&gt;&quot;&#x9;&#xa;&#xa;&#xa0;\u00e9\u2122??",
+                new String(out.toByteArray(), "UTF-8"));
+    }
+
+    public void testSheetDataWriter() {
+        SXSSFWorkbook wb = new SXSSFWorkbook();
+        wb.setUseUtf8SheetDataWriter(true);
+        SXSSFSheet sh = (SXSSFSheet)wb.createSheet();
+        assertTrue(sh.getSheetDataWriter() instanceof Utf8SheetDataWriter);
+
+        wb.setCompressTempFiles(true);
+        sh = (SXSSFSheet)wb.createSheet();
+        assertTrue(sh.getSheetDataWriter() instanceof GZIPSheetDataWriter);
+    }
+
+    public void testRoundTrip() {
+        SXSSFWorkbook wb = new SXSSFWorkbook(10);
+        wb.setUseUtf8SheetDataWriter(true);
+        CellStyle style = wb.createCellStyle();
+        style.setDataFormat(wb.createDataFormat().getFormat("0.00"));
+        CellStyle rowStyle = wb.createCellStyle();
+
+        Sheet sh = wb.createSheet();
+        int rowNum = 300;
+        for (int i = 0; i < rowNum; i++) {
+            Row row = sh.createRow(i);
+            if (i % 7 == 0) row.setHeightInPoints(21.5f);
+            if (i % 11 == 0) row.setRowStyle(rowStyle);
+            row.createCell(0).setCellValue(i * 1.25);
+            row.createCell(1).setCellValue("text <" + i + "> & \u00fcml\u00e4ut \u2122");
+            row.createCell(2).setCellValue(i % 2 == 0);
+            row.createCell(3).setCellErrorValue(FormulaError.DIV0.getCode());
+            Cell cell = row.createCell(4);
+            cell.setCellFormula("A" + (i + 1) + "*2");
+            cell.setCellValue(i * 2.5);
+            row.createCell(5).setCellStyle(style);
+            row.createCell(30).setCellValue(-i / 3.0);
+        }
+
+        Workbook xwb = SXSSFITestDataProvider.instance.writeOutAndReadBack(wb);
+        Sheet xsh = xwb.getSheetAt(0);
+        for (int i = 0; i < rowNum; i++) {
+            Row row = xsh.getRow(i);
+            assertNotNull(row);
+            assertEquals(i % 7 == 0 ? 21.5f : xsh.getDefaultRowHeightInPoints(), row.getHeightInPoints());
+            assertEquals(i % 11 == 0, row.isFormatted());
+            assertEquals(i * 1.25, row.getCell(0).getNumericCellValue());
+            assertEquals("text <" + i + "> & \u00fcml\u00e4ut \u2122", row.getCell(1).getStringCellValue());
+            assertEquals(i % 2 == 0, row.getCell(2).getBooleanCellValue());
+            assertEquals(FormulaError.DIV0.getCode(), row.getCell(3).getErrorCellValue());
+            assertEquals("A" + (i + 1) + "*2", row.getCell(4).getCellFormula());
+            assertEquals(i * 2.5, row.getCell(4).getNumericCellValue());
+            assertEquals(Cell.CELL_TYPE_BLANK, row.getCell(5).getCellType());
+            assertEquals("0.00", row.getCell(5).getCellStyle().getDataFormatString());
+            assertEquals(-i / 3.0, row.getCell(30).getNumericCellValue());
+        }
+    }
+}
@@ -37,6 +37,7 @@ public final class AllXSSFUsermodelTests {
 		TestSuite result = new TestSuite(AllXSSFUsermodelTests.class.getName());
 		result.addTestSuite(TestFormulaEvaluatorOnXSSF.class);
 		result.addTestSuite(TestSheetHiding.class);
+		result.addTestSuite(TestSortedIntMap.class);
 		result.addTestSuite(TestXSSFBugs.class);
 		result.addTestSuite(TestXSSFDataFormat.class);
 		result.addTestSuite(TestXSSFCellStyle.class);
@@ -0,0 +1,159 @@
+/* ====================================================================
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+==================================================================== */
+
+package org.apache.poi.xssf.usermodel;
+
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests for {@link SortedIntMap}
+ */
+public final class TestSortedIntMap extends TestCase {
+
+    public void testDenseAndSparseKeys() {
+        SortedIntMap<String> map = new SortedIntMap<String>(2);
+        assertTrue(map.isEmpty());
+        assertNull(map.get(0));
+        assertEquals(0, map.headSize(5));
+
+        for (int i = 0; i < 10; i++) {
+            assertNull(map.put(i, "v" + i));
+        }
+        assertNull(map.put(100, "v100"));
+        assertNull(map.put(50, "v50"));
+        assertEquals("v3", map.put(3, "w3"));
+
+        assertEquals(12, map.size());
+        assertEquals(0, map.firstKey());
+        assertEquals(100, map.lastKey());
+        assertEquals("w3", map.get(3));
+        assertEquals("v50", map.get(50));
+        assertNull(map.get(49));
+        assertNull(map.get(-1));
+        assertEquals(10, map.headSize(50));
+        assertEquals(11, map.headSize(51));
+
+        assertEquals("v50", map.remove(50));
+        assertNull(map.remove(50));
+        assertEquals(11, map.size());
+        assertEquals("v100", map.get(100));
+    }
+
+    public void testIterator() {
+        SortedIntMap<Integer> map = new SortedIntMap<Integer>();
+        for (int i = 10; i >= 0; i -= 2) {
+            map.put(i, i);
+        }
+        int expected = 0;
+        for (Iterator<Integer> it = map.iterator(); it.hasNext(); ) {
+            int val = it.next();
+            assertEquals(expected, val);
+            if (val % 4 == 0) it.remove();
+            expected += 2;
+        }
+        assertEquals(3, map.size());
+        Iterator<Integer> it = map.iterator();
+        assertEquals(2, it.next().intValue());
+        assertEquals(6, it.next().intValue());
+        assertEquals(10, it.next().intValue());
+        assertFalse(it.hasNext());
+
+        it = map.iterator();
+        it.next();
+        map.put(20, 20);
+        try {
+            it.next();
+            fail("expected ConcurrentModificationException");
+        } catch (ConcurrentModificationException e) {
+            // expected
+        }
+    }
+
+    public void testAgainstTreeMap() {
+        Random rnd = new Random(12345);
+        SortedIntMap<Integer> map = new SortedIntMap<Integer>();
+        TreeMap<Integer, Integer> ref = new TreeMap<Integer, Integer>();
+        for (int i = 0; i < 5000; i++) {
+            int key = rnd.nextInt(500);
+            if (rnd.nextInt(3) == 0) {
+                assertEquals(ref.remove(key), map.remove(key));
+            } else {
+                assertEquals(ref.put(key, i), map.put(key, i));
+            }
+            assertEquals(ref.get(key), map.get(key));
+            assertEquals(ref.headMap(key).size(), map.headSize(key));
+        }
+        assertEquals(ref.size(), map.size());
+        Iterator<Integer> it = map.iterator();
+        for (Map.Entry<Integer, Integer> e : ref.entrySet()) {
+            assertEquals(e.getValue(), it.next());
+            assertEquals(e.getValue(), map.get(e.getKey()));
+        }
+        assertFalse(it.hasNext());
+    }
+
+    public void testShiftKeys() {
+        SortedIntMap<String> map = new SortedIntMap<String>();
+        int[] keys = {0, 1, 2, 5, 6, 9};
+        for (int key : keys) map.put(key, "v" + key);
+
+        // move 1, 2 past 5 and 6
+        map.shiftKeys(1, 3, 6);
+        assertKeys(map, new int[]{0, 5, 6, 7, 8, 9});
+        assertEquals("v1", map.get(7));
+        assertEquals("v2", map.get(8));
+        assertEquals("v5", map.get(5));
+
+        // and back again
+        map.shiftKeys(3, 5, -6);
+        assertKeys(map, new int[]{0, 1, 2, 5, 6, 9});
+        assertEquals("v1", map.get(1));
+        assertEquals("v6", map.get(6));
+
+        // a shift within the gaps leaves the order alone
+        map.shiftKeys(3, 5, 1);
+        assertKeys(map, new int[]{0, 1, 2, 6, 7, 9});
+
+        try {
+            map.shiftKeys(0, 2, 2);
+            fail("expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            // expected, 1 would become 3 and 0 would collide with 2
+        }
+        assertKeys(map, new int[]{0, 1, 2, 6, 7, 9});
+
+        map.removeRange(1, 3);
+        assertKeys(map, new int[]{0, 6, 7, 9});
+        assertEquals("v5", map.valueAt(1));
+        assertNull(map.get(1));
+    }
+
+    private static void assertKeys(SortedIntMap<String> map, int[] keys) {
+        assertEquals(keys.length, map.size());
+        for (int i = 0; i < keys.length; i++) {
+            assertEquals(i, map.headSize(keys[i]));
+            assertNotNull(map.get(keys[i]));
+            assertSame(map.get(keys[i]), map.valueAt(i));
+        }
+    }
+}
@@ -0,0 +1,111 @@
+/* ====================================================================
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+==================================================================== */
+
+package org.apache.poi.xssf.usermodel;
+
+import junit.framework.TestCase;
+
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.util.CellStyleInterner;
+import org.apache.poi.ss.util.CellUtil;
+import org.apache.poi.xssf.XSSFTestDataSamples;
+import org.apache.poi.xssf.model.StylesTable;
+import org.openxmlformats.schemas.spreadsheetml.x2006.main.CTXf;
+
+public final class TestXSSFOptimiser extends TestCase {
+
+    public void testDoesNoHarmIfNothingToDo() {
+        XSSFWorkbook wb = new XSSFWorkbook();
+        XSSFCellStyle s = wb.createCellStyle();
+        s.setWrapText(true);
+        wb.createSheet().createRow(0).createCell(0).setCellStyle(s);
+        assertEquals(2, wb.getNumCellStyles());
+
+        XSSFOptimiser.optimiseCellStyles(wb);
+
+        assertEquals(2, wb.getNumCellStyles());
+        assertTrue(wb.getSheetAt(0).getRow(0).getCell(0).getCellStyle().getWrapText());
+    }
+
+    public void testOptimiseCellStyles() {
+        XSSFWorkbook wb = new XSSFWorkbook();
+        XSSFSheet sheet = wb.createSheet();
+        XSSFRow row = sheet.createRow(0);
+        for (int i = 0; i < 10; i++) {
+            XSSFCellStyle s = wb.createCellStyle();
+            s.setRotation((short)(i % 2 == 0 ? 45 : 90));
+            row.createCell(i).setCellStyle(s);
+        }
+        // a duplicate of the default style
+        XSSFCellStyle plain = wb.createCellStyle();
+        row.setRowStyle(plain);
+        sheet.setDefaultColumnStyle(3, wb.getCellStyleAt((short)9));
+        assertEquals(12, wb.getNumCellStyles());
+
+        XSSFOptimiser.optimiseCellStyles(wb);
+
+        assertEquals(3, wb.getNumCellStyles());
+        for (int i = 0; i < 10; i++) {
+            XSSFCellStyle s = row.getCell(i).getCellStyle();
+            assertEquals(1 + i % 2, s.getIndex());
+            assertEquals(i % 2 == 0 ? 45 : 90, s.getRotation());
+        }
+        assertEquals(0, row.getRowStyle().getIndex());
+        assertEquals(1, sheet.getColumnStyle(3).getIndex());
+
+        wb = XSSFTestDataSamples.writeOutAndReadBack(wb);
+        assertEquals(3, wb.getNumCellStyles());
+        assertEquals(90, wb.getSheetAt(0).getRow(0).getCell(9).getCellStyle().getRotation());
+    }
+
+    public void testAttributeOrderDoesNotMatter() {
+        XSSFWorkbook wb = new XSSFWorkbook();
+        StylesTable st = wb.getStylesSource();
+        CTXf xf = CTXf.Factory.newInstance();
+        xf.setFontId(0);
+        xf.setNumFmtId(14);
+        xf.setApplyNumberFormat(true);
+        st.putCellXf(xf);
+        CTXf reordered = CTXf.Factory.newInstance();
+        reordered.setApplyNumberFormat(true);
+        reordered.setNumFmtId(14);
+        reordered.setFontId(0);
+        st.putCellXf(reordered);
+        XSSFRow row = wb.createSheet().createRow(0);
+        row.createCell(0).setCellStyle(wb.getCellStyleAt((short)1));
+        row.createCell(1).setCellStyle(wb.getCellStyleAt((short)2));
+        assertEquals(3, wb.getNumCellStyles());
+
+        XSSFOptimiser.optimiseCellStyles(wb);
+
+        assertEquals(2, wb.getNumCellStyles());
+        assertEquals(1, row.getCell(0).getCellStyle().getIndex());
+        assertEquals(1, row.getCell(1).getCellStyle().getIndex());
+        assertEquals(14, row.getCell(1).getCellStyle().getDataFormat());
+    }
+
+    public void testInterner() {
+        XSSFWorkbook wb = new XSSFWorkbook();
+        CellStyleInterner interner = new CellStyleInterner(wb);
+        XSSFRow row = wb.createSheet().createRow(0);
+        for (int i = 0; i < 10; i++) {
+            interner.setCellStyleProperty(row.createCell(i), CellUtil.FILL_PATTERN, Short.valueOf(CellStyle.SOLID_FOREGROUND));
+        }
+        assertEquals(2, wb.getNumCellStyles());
+        assertEquals(CellStyle.SOLID_FOREGROUND, row.getCell(9).getCellStyle().getFillPattern());
+    }
+}
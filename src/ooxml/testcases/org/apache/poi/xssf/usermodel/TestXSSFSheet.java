@@ -17,8 +17,12 @@
 
 package org.apache.poi.xssf.usermodel;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.util.List;
 
+import org.apache.poi.openxml4j.opc.PackagePart;
+import org.apache.poi.openxml4j.opc.internal.MemoryPackagePart;
 import org.apache.poi.ss.usermodel.*;
 import org.apache.poi.ss.util.CellRangeAddress;
 import org.apache.poi.xssf.XSSFITestDataProvider;
@@ -1084,4 +1088,35 @@ public final class TestXSSFSheet extends BaseTestSheet {
          sheet = workbook.getSheet("Sheet 1");
          assertEquals(false, sheet.getForceFormulaRecalculation());
 	}
+
+    /**
+     * The worksheet XML is written into the package when it is saved rather than
+     * buffered on commit, so each save reflects the current state of the sheet
+     */
+    public void testWriteStreamsWorksheet() throws Exception {
+        XSSFWorkbook workbook = XSSFTestDataSamples.openSampleWorkbook("sample.xlsx");
+        XSSFSheet sheet = workbook.getSheetAt(0);
+        sheet.getRow(0).createCell(10).setCellValue("first");
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        workbook.write(out);
+        PackagePart part = workbook.getPackage().getPart(sheet.getPackagePart().getPartName());
+        assertTrue(part instanceof MemoryPackagePart);
+        assertNotNull(((MemoryPackagePart)part).getContentWriter());
+
+        // the part can still be read
+        CTWorksheet ct = WorksheetDocument.Factory.parse(part.getInputStream()).getWorksheet();
+        assertEquals(sheet.getCTWorksheet().getSheetData().sizeOfRowArray(), ct.getSheetData().sizeOfRowArray());
+
+        XSSFWorkbook wb1 = new XSSFWorkbook(new ByteArrayInputStream(out.toByteArray()));
+        assertEquals("first", wb1.getSheetAt(0).getRow(0).getCell(10).getStringCellValue());
+
+        // a second save picks up later changes and does not append to the first one
+        sheet.getRow(0).getCell(10).setCellValue("second");
+        out = new ByteArrayOutputStream();
+        workbook.write(out);
+        XSSFWorkbook wb2 = new XSSFWorkbook(new ByteArrayInputStream(out.toByteArray()));
+        assertEquals("second", wb2.getSheetAt(0).getRow(0).getCell(10).getStringCellValue());
+        assertEquals(sheet.getPhysicalNumberOfRows(), wb2.getSheetAt(0).getPhysicalNumberOfRows());
+    }
 }
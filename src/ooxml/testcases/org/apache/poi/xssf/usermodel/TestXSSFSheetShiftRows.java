@@ -18,7 +18,9 @@
 package org.apache.poi.xssf.usermodel;
 
 import org.apache.poi.ss.usermodel.BaseTestSheetShiftRows;
+import org.apache.poi.ss.usermodel.Row;
 import org.apache.poi.xssf.XSSFITestDataProvider;
+import org.apache.poi.xssf.XSSFTestDataSamples;
 
 /**
  * @author Yegor Kozlov
@@ -36,4 +38,41 @@ public final class TestXSSFSheetShiftRows extends BaseTestSheetShiftRows {
     public void testShiftWithComments() { // disabled test from superclass
         // TODO - support shifting of comments.
     }
+
+    /**
+     * Rows overwritten by the shift are removed, also when shifting up,
+     * and a block shifted past other rows is kept in order
+     */
+    public void testShiftOverwritesAndJumpsRows() {
+        XSSFWorkbook wb = new XSSFWorkbook();
+        XSSFSheet sheet = wb.createSheet();
+        for (int i = 0; i < 10; i++) {
+            sheet.createRow(i).createCell(0).setCellValue(i);
+        }
+        sheet.getRow(9).createCell(1).setCellFormula("A1+A3");
+
+        // rows 3,4 overwrite rows 1,2
+        sheet.shiftRows(3, 4, -2);
+        assertEquals(8, sheet.getPhysicalNumberOfRows());
+        assertEquals(3.0, sheet.getRow(1).getCell(0).getNumericCellValue(), 0.0);
+        assertEquals(4.0, sheet.getRow(2).getCell(0).getNumericCellValue(), 0.0);
+        assertNull(sheet.getRow(3));
+        assertEquals("A1+#REF!", sheet.getRow(9).getCell(1).getCellFormula());
+
+        // rows 1,2 jump past 5,6,7 onto 8,9
+        sheet.shiftRows(1, 2, 7);
+        int[] expected = {0, 5, 6, 7, 8, 9};
+        int i = 0;
+        for (Row row : sheet) {
+            assertEquals(expected[i++], row.getRowNum());
+        }
+        assertEquals(expected.length, i);
+        assertEquals(3.0, sheet.getRow(8).getCell(0).getNumericCellValue(), 0.0);
+        assertNull(sheet.getRow(9).getCell(1));
+
+        sheet = XSSFTestDataSamples.writeOutAndReadBack(wb).getSheetAt(0);
+        assertEquals(6, sheet.getPhysicalNumberOfRows());
+        assertEquals(4.0, sheet.getRow(9).getCell(0).getNumericCellValue(), 0.0);
+        assertEquals(7.0, sheet.getRow(7).getCell(0).getNumericCellValue(), 0.0);
+    }
 }
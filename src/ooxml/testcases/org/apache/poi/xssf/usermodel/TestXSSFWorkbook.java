@@ -17,20 +17,29 @@
 
 package org.apache.poi.xssf.usermodel;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.OutputStream;
+import java.util.Arrays;
 import java.util.List;
 import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
 
+import org.apache.poi.POIXMLDocumentPart;
 import org.apache.poi.POIXMLProperties;
 import org.apache.poi.hssf.HSSFTestDataSamples;
 import org.apache.poi.openxml4j.opc.*;
 import org.apache.poi.openxml4j.opc.internal.PackagePropertiesPart;
+import org.apache.poi.openxml4j.util.ZipFileZipEntrySource;
 import org.apache.poi.ss.usermodel.*;
+import org.apache.poi.util.IOUtils;
 import org.apache.poi.util.TempFile;
 import org.apache.poi.xssf.XSSFITestDataProvider;
 import org.apache.poi.xssf.XSSFTestDataSamples;
+import org.apache.poi.xssf.model.CommentsTable;
+import org.apache.poi.xssf.model.SharedStringsTable;
 import org.apache.poi.xssf.model.StylesTable;
 import org.openxmlformats.schemas.spreadsheetml.x2006.main.CTCalcPr;
 import org.openxmlformats.schemas.spreadsheetml.x2006.main.CTWorkbook;
@@ -441,4 +450,137 @@ public final class TestXSSFWorkbook extends BaseTestWorkbook {
         assertEquals(IndexedColors.RED.index,
                 sh.getCTWorksheet().getSheetPr().getTabColor().getIndexed());
     }
+
+    public void testLazySheetParsing() throws Exception {
+        XSSFWorkbook wb = XSSFTestDataSamples.openSampleWorkbook("sample.xlsx");
+        // the sheets in workbook order, looked up without parsing them
+        XSSFSheet[] unparsed = new XSSFSheet[3];
+        for (POIXMLDocumentPart p : wb.getRelations()) {
+            if (p instanceof XSSFSheet) unparsed[wb.getSheetIndex((XSSFSheet)p)] = (XSSFSheet)p;
+        }
+        for (XSSFSheet sh : unparsed) {
+            assertFalse(sh.isLoaded());
+        }
+        // names are available without parsing
+        assertEquals(3, wb.getNumberOfSheets());
+        assertNotNull(wb.getSheetName(2));
+        assertFalse(unparsed[1].isLoaded());
+
+        XSSFSheet sheet = wb.getSheetAt(1);
+        assertTrue(sheet.isLoaded());
+        sheet.createRow(20).createCell(0).setCellValue("changed");
+        byte[] first = IOUtils.toByteArray(unparsed[0].getPackagePart().getInputStream());
+        byte[] last = IOUtils.toByteArray(unparsed[2].getPackagePart().getInputStream());
+
+        XSSFWorkbook wb2 = XSSFTestDataSamples.writeOutAndReadBack(wb);
+        int loaded = 0;
+        for (XSSFSheet sh : unparsed) {
+            if (sh.isLoaded()) loaded++;
+        }
+        assertEquals(1, loaded);
+        assertEquals("changed", wb2.getSheetAt(1).getRow(20).getCell(0).getStringCellValue());
+        for (POIXMLDocumentPart p : wb2.getRelations()) {
+            if (!(p instanceof XSSFSheet)) continue;
+            byte[] data = IOUtils.toByteArray(p.getPackagePart().getInputStream());
+            String name = p.getPackagePart().getPartName().getName();
+            if (name.equals(unparsed[0].getPackagePart().getPartName().getName())) {
+                assertTrue(Arrays.equals(first, data));
+            } else if (name.equals(unparsed[2].getPackagePart().getPartName().getName())) {
+                assertTrue(Arrays.equals(last, data));
+            }
+        }
+
+        // iterating parses every sheet
+        for (XSSFSheet sh : wb2) {
+            assertTrue(sh.isLoaded());
+        }
+    }
+
+    public void testUntouchedPartsAreNotCommitted() throws Exception {
+        XSSFWorkbook wb = XSSFTestDataSamples.openSampleWorkbook("comments.xlsx");
+        StylesTable styles = wb.getStylesSource();
+        SharedStringsTable sst = wb.getSharedStringSource();
+        assertFalse(styles.isDirty());
+        assertFalse(sst.isDirty());
+        // parts owned by a sheet stay clean until the sheet is parsed
+        XSSFSheet unparsed = null;
+        CommentsTable comments = null;
+        for (POIXMLDocumentPart p : wb.getRelations()) {
+            if (!(p instanceof XSSFSheet)) continue;
+            for (POIXMLDocumentPart r : p.getRelations()) {
+                if (r instanceof CommentsTable) {
+                    unparsed = (XSSFSheet)p;
+                    comments = (CommentsTable)r;
+                }
+            }
+        }
+        assertNotNull(comments);
+        assertFalse(unparsed.isDirty());
+        assertFalse(comments.isDirty());
+        byte[] stylesData = IOUtils.toByteArray(styles.getPackagePart().getInputStream());
+        byte[] commentsData = IOUtils.toByteArray(comments.getPackagePart().getInputStream());
+
+        wb.write(new ByteArrayOutputStream());
+        assertTrue(Arrays.equals(stylesData, IOUtils.toByteArray(styles.getPackagePart().getInputStream())));
+        assertTrue(Arrays.equals(commentsData, IOUtils.toByteArray(comments.getPackagePart().getInputStream())));
+
+        // numeric values leave the shared strings alone
+        XSSFSheet sheet = wb.getSheetAt(wb.getSheetIndex(unparsed));
+        assertTrue(sheet.isDirty());
+        assertTrue(comments.isDirty());
+        sheet.createRow(100).createCell(0).setCellValue(1.5);
+        assertFalse(sst.isDirty());
+        assertFalse(styles.isDirty());
+        sheet.getRow(100).createCell(1).setCellValue("new string");
+        assertTrue(sst.isDirty());
+        sheet.getRow(100).getCell(1).setCellStyle(wb.createCellStyle());
+        assertTrue(styles.isDirty());
+
+        XSSFWorkbook wb2 = XSSFTestDataSamples.writeOutAndReadBack(wb);
+        XSSFSheet sheet2 = wb2.getSheet(sheet.getSheetName());
+        assertEquals(1.5, sheet2.getRow(100).getCell(0).getNumericCellValue(), 0);
+        assertEquals("new string", sheet2.getRow(100).getCell(1).getStringCellValue());
+        assertEquals(wb.getNumCellStyles(), wb2.getNumCellStyles());
+    }
+
+    /**
+     * Parts of a package opened from a file which are not modified are copied
+     * into the new file as they are, without being inflated and deflated again
+     */
+    public void testUntouchedPartsAreCopiedRaw() throws Exception {
+        File sample = HSSFTestDataSamples.getSampleFile("comments.xlsx");
+        OPCPackage pkg = OPCPackage.open(sample.getPath());
+        File out = TempFile.createTempFile("testUntouchedPartsAreCopiedRaw", ".xlsx");
+        try {
+            XSSFWorkbook wb = new XSSFWorkbook(pkg);
+            String styles = wb.getStylesSource().getPackagePart().getPartName().getName().substring(1);
+            wb.getSheetAt(0).createRow(100).createCell(0).setCellValue(1.5);
+            FileOutputStream fos = new FileOutputStream(out);
+            wb.write(fos);
+            fos.close();
+
+            ZipFile originalZip = new ZipFile(sample);
+            ZipFile savedZip = new ZipFile(out);
+            ZipFileZipEntrySource original = new ZipFileZipEntrySource(originalZip);
+            ZipFileZipEntrySource saved = new ZipFileZipEntrySource(savedZip);
+            try {
+                ZipEntry originalStyles = originalZip.getEntry(styles);
+                ZipEntry savedStyles = savedZip.getEntry(styles);
+                assertEquals(originalStyles.getCompressedSize(), savedStyles.getCompressedSize());
+                assertTrue(Arrays.equals(IOUtils.toByteArray(original.getRawInputStream(originalStyles)),
+                        IOUtils.toByteArray(saved.getRawInputStream(savedStyles))));
+            } finally {
+                original.close();
+                saved.close();
+            }
+
+            XSSFWorkbook wb2 = new XSSFWorkbook(out.getPath());
+            assertEquals(1.5, wb2.getSheetAt(0).getRow(100).getCell(0).getNumericCellValue(), 0);
+            assertEquals(wb.getNumCellStyles(), wb2.getNumCellStyles());
+        } finally {
+            // leave the sample unchanged
+            pkg.revert();
+            out.delete();
+        }
+    }
 }
@@ -28,6 +28,7 @@ public final class AllSSUtilTests {
 	public static Test suite() {
 		TestSuite result = new TestSuite(AllSSUtilTests.class.getName());
 		result.addTestSuite(TestCellRangeAddress.class);
+		result.addTestSuite(TestCellStyleInterner.class);
 		result.addTestSuite(TestCellReference.class);
 		result.addTestSuite(TestExpandedDouble.class);
 		result.addTestSuite(TestNumberComparer.class);
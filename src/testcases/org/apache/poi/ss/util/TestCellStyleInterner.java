@@ -0,0 +1,81 @@
+/* ====================================================================
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+==================================================================== */
+
+package org.apache.poi.ss.util;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Workbook;
+
+public final class TestCellStyleInterner extends TestCase {
+
+	public void testSharesStyles() {
+		Workbook wb = new HSSFWorkbook();
+		CellStyleInterner interner = new CellStyleInterner(wb);
+		int numStyles = wb.getNumCellStyles();
+
+		Map<String, Object> properties = new HashMap<String, Object>();
+		properties.put(CellUtil.ALIGNMENT, Short.valueOf(CellStyle.ALIGN_CENTER));
+		properties.put(CellUtil.WRAP_TEXT, Boolean.TRUE);
+		CellStyle style = interner.getCellStyle(properties);
+		assertEquals(numStyles + 1, wb.getNumCellStyles());
+		assertEquals(CellStyle.ALIGN_CENTER, style.getAlignment());
+		assertTrue(style.getWrapText());
+
+		// values of other numeric types are accepted
+		properties.put(CellUtil.ALIGNMENT, Integer.valueOf(CellStyle.ALIGN_CENTER));
+		assertEquals(style.getIndex(), interner.getCellStyle(properties).getIndex());
+		assertEquals(numStyles + 1, wb.getNumCellStyles());
+
+		// cells start with the default cell style, which is locked unlike the style above
+		Row row = wb.createSheet().createRow(0);
+		for (int i = 0; i < 100; i++) {
+			Cell cell = row.createCell(i);
+			interner.setCellStyleProperty(cell, CellUtil.ALIGNMENT, Short.valueOf(CellStyle.ALIGN_CENTER));
+			interner.setCellStyleProperty(cell, CellUtil.WRAP_TEXT, Boolean.TRUE);
+			assertEquals(row.getCell(0).getCellStyle().getIndex(), cell.getCellStyle().getIndex());
+		}
+		assertTrue(row.getCell(0).getCellStyle().getLocked());
+		// one for the intermediate style with alignment only and one for the final style
+		assertEquals(numStyles + 3, wb.getNumCellStyles());
+	}
+
+	public void testStylesCreatedElsewhere() {
+		Workbook wb = new HSSFWorkbook();
+		CellStyleInterner interner = new CellStyleInterner(wb);
+		CellStyle style = wb.createCellStyle();
+		style.setRotation((short)45);
+
+		Map<String, Object> properties = CellStyleInterner.getProperties(style);
+		assertEquals(style.getIndex(), interner.getCellStyle(properties).getIndex());
+
+		// a style changed after it has been indexed is not returned for its old properties
+		style.setRotation((short)30);
+		CellStyle other = interner.getCellStyle(properties);
+		assertTrue(style.getIndex() != other.getIndex());
+		assertEquals(45, other.getRotation());
+		properties.put(CellUtil.ROTATION, Short.valueOf((short)30));
+		assertEquals(style.getIndex(), interner.getCellStyle(properties).getIndex());
+	}
+}